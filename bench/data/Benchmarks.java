@@ -0,0 +1,973 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Branch;
+import bank.Customer;
+import bank.Transaction;
+import bank.TransactionEngine;
+import utility.Address;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class provides command-line benchmarks of the storage formats and concurrent data structures used by a
+ * <code>BankManager</code>.<br><br>
+ * Run the <code>main()</code> method with one of the following commands:
+ * <ul>
+ *     <li><code>compare [file]</code> - compares the file size, load time, and heap used by the database
+ *     in the current <code>Snapshot</code> format against plain Java serialization. The file defaults to
+ *     <code>bankDatabase.ser</code> when not given</li>
+ *     <li><code>compress [accounts]</code> - generates a database with the given number of accounts, one
+ *     million by default, and compares the size and throughput of every <code>Compression</code> codec</li>
+ *     <li><code>stress [accounts]</code> - deposits, withdraws and transfers funds between the given number
+ *     of accounts, one thousand by default, from a growing number of threads at once, and prints the
+ *     throughput of each run along with whether the total funds were conserved</li>
+ *     <li><code>transfer [accounts]</code> - transfers funds between accounts from a growing number of
+ *     threads at once, both within a small set of hot accounts and across the given number of accounts,
+ *     one hundred thousand by default, and prints the throughput of each run</li>
+ *     <li><code>batch [accounts]</code> - applies a batch of random transactions between the given number of
+ *     accounts, one hundred thousand by default, on a <code>TransactionEngine</code> with a growing number of
+ *     partitions, and prints the throughput of each run along with whether its outcome matches applying the
+ *     batch on a single thread</li>
+ *     <li><code>sequence [threads]</code> - submits transfers between one hundred thousand accounts to a
+ *     <code>Sequencer</code> from the given number of threads, the number of available processors by default,
+ *     and prints the throughput along with the latency of every stage</li>
+ *     <li><code>registry</code> - adds, retrieves and removes customers at a single branch from a growing
+ *     number of threads at once, and prints the throughput of each run along with whether the number of
+ *     customers stayed consistent</li>
+ *     <li><code>versions [customers]</code> - reads and changes the given number of customers, one thousand by
+ *     default, from a growing number of threads at once, ninety-five (95) reads for every five (5) changes,
+ *     and prints the throughput of each run against the same operations made under a lock on each
+ *     customer</li>
+ *     <li><code>aggregate [accounts]</code> - generates a database with the given number of accounts, one
+ *     million by default, and adds up the totals of every bank, branch and state on a
+ *     <code>ForkJoinPool</code> with a growing number of threads, printing the time taken by each run against
+ *     adding them up in nested loops on a single thread, along with whether the totals match</li>
+ * </ul>
+ * Every multithreaded benchmark runs from one (1) thread up to twice the number of available processors,
+ * doubling every run, and starts the threads of a run together through <code>race()</code>.<br><br>
+ * Kept apart from the application, in the <code>bench</code> source folder, as none of it is needed to run
+ * the database. The tools to maintain a database file are provided by <code>DatabaseTool</code>.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see DatabaseTool
+ * @see Snapshot
+ * @see Compression
+ */
+public class Benchmarks {
+
+    /**
+     * The number of times each format is loaded when measuring load times.
+     */
+    private static final int ROUNDS = 20;
+
+    /**
+     * The number of copies of a database file held at once when measuring the heap it retains, so that a small
+     * database is not lost in the noise of the rest of the heap.
+     */
+    private static final int HEAP_COPIES = 16;
+
+    /**
+     * The number of garbage collections requested every time the heap in use is read, the lowest reading of
+     * which is kept.
+     */
+    private static final int HEAP_COLLECTIONS = 5;
+
+    /**
+     * The number of times each codec is run when measuring compression throughput.
+     */
+    private static final int COMPRESSION_ROUNDS = 5;
+
+    /**
+     * The number of operations made across every thread in each run of the stress benchmark.
+     */
+    private static final int STRESS_OPERATIONS = 4000000;
+
+    /**
+     * The balance every account starts with in the stress benchmark, in cents.
+     */
+    private static final long STRESS_BALANCE = 100000;
+
+    /**
+     * The number of accounts every transfer is made between in the hot runs of the transfer benchmark.
+     */
+    private static final int HOT_ACCOUNTS = 8;
+
+    /**
+     * The number of accounts transfers are made between in the sequencer benchmark.
+     */
+    private static final int SEQUENCE_ACCOUNTS = 100000;
+
+    /**
+     * The number of transactions in the batch of the batch benchmark.
+     */
+    private static final int BATCH_SIZE = 2000000;
+
+    /**
+     * The number of times the batch is applied in each run of the batch benchmark, the fastest of which is
+     * reported. The batch is applied once more beforehand to warm up, and is not reported.
+     */
+    private static final int BATCH_ROUNDS = 3;
+
+    /**
+     * The number of operations made across every thread in each run of the registry benchmark.
+     */
+    private static final int REGISTRY_OPERATIONS = 1000000;
+
+    /**
+     * The number of operations made across every thread in each run of the versions benchmark.
+     */
+    private static final int VERSION_OPERATIONS = 4000000;
+
+    /**
+     * The number of runs of the versions benchmark made in each mode and number of threads, the fastest of
+     * which is reported. As many runs are made beforehand to warm up, and are not reported.
+     */
+    private static final int VERSION_ROUNDS = 5;
+
+    /**
+     * The number of times the totals are added up in each run of the aggregate benchmark.
+     */
+    private static final int AGGREGATE_ROUNDS = 10;
+
+    /**
+     * The cities and states given to the addresses of a generated database.
+     */
+    private static final String[][] PLACES = {{"Springfield", "Illinois"}, {"Columbus", "Ohio"},
+            {"Madison", "Wisconsin"}, {"Portland", "Oregon"}, {"Austin", "Texas"}, {"Albany", "New York"},
+            {"Salem", "Massachusetts"}, {"Denver", "Colorado"}};
+
+    /**
+     * The street names given to the addresses of a generated database.
+     */
+    private static final String[] STREETS = {"Main Street", "Oak Avenue", "Maple Drive", "Park Road",
+            "Washington Boulevard", "Lake Street", "Hill Road", "Cedar Lane"};
+
+    /**
+     * The first names given to the customers of a generated database.
+     */
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+            "Michael", "Linda", "David", "Elizabeth", "William", "Barbara"};
+
+    /**
+     * The last names given to the customers of a generated database.
+     */
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+            "Miller", "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez"};
+
+    /**
+     * Runs the benchmark given in the command-line arguments.
+     *
+     * @param args the benchmark, followed by its argument
+     * @throws Exception if the database cannot be read or written, or a benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "compare";
+        String argument = args.length > 1 ? args[1] : null;
+        switch (command) {
+            case "compare":
+                compare(new File(argument != null ? argument : "bankDatabase.ser"));
+                break;
+            case "compress":
+                compress(argument != null ? Integer.parseInt(argument) : 1000000);
+                break;
+            case "stress":
+                stress(argument != null ? Integer.parseInt(argument) : 1000);
+                break;
+            case "transfer":
+                transfer(argument != null ? Integer.parseInt(argument) : 100000);
+                break;
+            case "batch":
+                batch(argument != null ? Integer.parseInt(argument) : 100000);
+                break;
+            case "sequence":
+                sequence(argument != null ? Integer.parseInt(argument) : Runtime.getRuntime().availableProcessors());
+                break;
+            case "registry":
+                registry();
+                break;
+            case "versions":
+                versions(argument != null ? Integer.parseInt(argument) : 1000);
+                break;
+            case "aggregate":
+                aggregate(argument != null ? Integer.parseInt(argument) : 1000000);
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + command);
+        }
+    }
+
+    /**
+     * Generates a database with the given number of accounts, split into banks of twenty (20) branches
+     * with a thousand (1000) customers each. Customers hold five (5) accounts each, and their names and
+     * addresses are drawn from short lists, as is common in real databases.<br><br>
+     * The same database is generated every time for the same number of accounts, apart from the IDs.
+     *
+     * @param accounts the number of accounts
+     * @return the generated banks
+     */
+    static List<Bank> generate(int accounts) {
+        Random random = new Random(accounts);
+        List<Bank> banks = new ArrayList<>();
+        Bank bank = null;
+        Branch branch = null;
+        int customers = (accounts + 4) / 5;
+        for (int i = 0; i < customers; i++) {
+            if (i % 20000 == 0) {
+                bank = new Bank("Generated Bank " + (banks.size() + 1));
+                banks.add(bank);
+            }
+            if (i % 1000 == 0) {
+                int branchCode = 100 + i / 1000 % 20;
+                bank.createBranch(branchCode, "Branch " + branchCode, address(random));
+                branch = bank.getBranch(branchCode);
+            }
+            Customer customer = new Customer(10000 + i % 1000, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]
+                    + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)], address(random));
+            for (int j = 0; j < 5 && i * 5 + j < accounts; j++) {
+                Account account = customer.openAccount();
+                account.deposit(random.nextInt(1000000) / 100.0);
+            }
+            branch.addCustomer(customer);
+        }
+        return banks;
+    }
+
+    /**
+     * A helper method to generate a random address.
+     *
+     * @param random the source of randomness
+     * @return the <code>Address</code>
+     */
+    private static Address address(Random random) {
+        String[] place = PLACES[random.nextInt(PLACES.length)];
+        return new Address((1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)],
+                place[0], place[1], String.valueOf(10000 + random.nextInt(90000)));
+    }
+
+    /**
+     * A helper method to create accounts which belong to no customer, numbered from the lowest 9-Digit account
+     * number.
+     *
+     * @param accounts the number of accounts
+     * @return the accounts, each with a balance of <code>STRESS_BALANCE</code>
+     */
+    private static Account[] accounts(int accounts) {
+        Account[] pool = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            pool[i] = new Account(100000000 + i);
+            pool[i].restoreCents(STRESS_BALANCE);
+        }
+        return pool;
+    }
+
+    /**
+     * A helper method to give every account its starting balance of <code>STRESS_BALANCE</code> again.
+     *
+     * @param pool the accounts
+     */
+    private static void reset(Account[] pool) {
+        for (Account account : pool) {
+            account.restoreCents(STRESS_BALANCE);
+        }
+    }
+
+    /**
+     * A helper method to add up the balances of the given accounts.
+     *
+     * @param pool the accounts
+     * @return the total funds in cents
+     */
+    private static long total(Account[] pool) {
+        long total = 0;
+        for (Account account : pool) {
+            total += account.getCents();
+        }
+        return total;
+    }
+
+    /**
+     * A helper method to run a worker on the given number of threads at once.<br><br>
+     * Every thread is started first, and waits until all of them have been started, so that the time taken
+     * does not include starting them.
+     *
+     * @param threads the number of threads
+     * @param results holds the result of the worker on each thread, or <code>null</code> if not needed
+     * @param worker  the work done by each thread
+     * @return the time taken by the slowest thread, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static long race(int threads, long[] results, Worker worker) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long result = worker.run(random);
+                if (results != null) {
+                    results[index] = result;
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * Measures the heap retained by the objects loaded from a database file.<br><br>
+     * <code>HEAP_COPIES</code> copies are loaded and held at once, and the heap in use, as reported by the
+     * <code>MemoryMXBean</code>, is read before and after, each time after several garbage collections. The
+     * difference is an estimate, which may still be thrown off by the collector, in which case no estimate is
+     * given rather than a made up one.
+     *
+     * @param loader loads the objects
+     * @return the number of bytes retained by a single copy, or negative one (-1) if the heap in use did not
+     * grow while the copies were held
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    private static long retainedHeap(Loader loader) throws IOException, ClassNotFoundException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = settledHeap(memory);
+        Object[] copies = new Object[HEAP_COPIES];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = loader.load();
+        }
+        long after = settledHeap(memory);
+        Reference.reachabilityFence(copies);
+        return after > before ? (after - before) / HEAP_COPIES : -1;
+    }
+
+    /**
+     * A helper method to read the heap in use after each of <code>HEAP_COLLECTIONS</code> garbage collections,
+     * keeping the lowest reading, as a single reading may still include objects the collector has yet to
+     * reclaim.
+     *
+     * @param memory the <code>MemoryMXBean</code> of the virtual machine
+     * @return the number of bytes of heap in use
+     */
+    private static long settledHeap(MemoryMXBean memory) {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < HEAP_COLLECTIONS; i++) {
+            memory.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * Writes the database in both formats to temporary files, and prints their sizes along with the
+     * average time taken to load each of them. Both formats are loaded once before measuring, so that
+     * neither is measured while the classes involved are still being loaded.
+     *
+     * @param file the database file
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    private static void compare(File file) throws IOException, ClassNotFoundException {
+        List<Bank> banks = DatabaseTool.load(file);
+        File serialized = File.createTempFile("bankDatabase", ".ser");
+        File compact = File.createTempFile("bankDatabase", ".db");
+        serialized.deleteOnExit();
+        compact.deleteOnExit();
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(serialized))) {
+            output.writeObject(new ArrayList<>(banks));
+        }
+        new Snapshot(compact).write(DatabaseTool.index(banks), 0);
+
+        long serializedTime = 0;
+        long compactTime = 0;
+        for (int i = 0; i <= ROUNDS; i++) {
+            long start = System.nanoTime();
+            try (ObjectInputStream input =
+                         new ObjectInputStream(new BufferedInputStream(new FileInputStream(serialized)))) {
+                input.readObject();
+            }
+            long middle = System.nanoTime();
+            new Snapshot(compact).read();
+            long end = System.nanoTime();
+            if (i > 0) {
+                serializedTime += middle - start;
+                compactTime += end - middle;
+            }
+        }
+        long serializedHeap = retainedHeap(() -> {
+            try (ObjectInputStream input =
+                         new ObjectInputStream(new BufferedInputStream(new FileInputStream(serialized)))) {
+                return input.readObject();
+            }
+        });
+        long compactHeap = retainedHeap(() -> new Snapshot(compact).read());
+        System.out.println("Original file: " + file + " (" + file.length() + " bytes)");
+        System.out.printf("%-20s %12s %14s %14s%n", "Format", "Size (bytes)", "Load (ms)", "Heap (bytes)");
+        System.out.printf("%-20s %12d %14.3f %14s%n", "Java serialization", serialized.length(),
+                serializedTime / 1e6 / ROUNDS, serializedHeap < 0 ? "n/a" : String.valueOf(serializedHeap));
+        System.out.printf("%-20s %12d %14.3f %14s%n", "Snapshot", compact.length(),
+                compactTime / 1e6 / ROUNDS, compactHeap < 0 ? "n/a" : String.valueOf(compactHeap));
+    }
+
+    /**
+     * Generates a database with the given number of accounts, and prints the size, compression ratio,
+     * and average throughput of every <code>Compression</code> codec over the binary form of its banks.
+     * Every codec is run once before measuring, so that none is measured while the classes involved are
+     * still being loaded.<br><br>
+     * Throughput is measured end to end, as saving and loading a snapshot would see it: saving encodes every
+     * bank, compresses it, and writes it to a temporary file, and loading reads it back, decompresses it, and
+     * decodes it. It is given in megabytes of the binary form per second, so that every codec, including
+     * <code>NONE</code>, is measured against the same work.
+     *
+     * @param accounts the number of accounts
+     * @throws IOException if an I/O error occurs, or a codec fails to restore what it has compressed
+     */
+    private static void compress(int accounts) throws IOException {
+        List<Bank> banks = generate(accounts);
+        long size = 0;
+        for (Bank bank : banks) {
+            size += BankCodec.encode(bank).length;
+        }
+        File file = File.createTempFile("bankDatabase", ".segment");
+        file.deleteOnExit();
+        System.out.println("Generated " + accounts + " accounts in " + banks.size() + " banks (" + size
+                + " bytes)");
+        System.out.printf("%-12s %12s %8s %18s %18s%n", "Codec", "Size (bytes)", "Ratio", "Save (MB/s)",
+                "Load (MB/s)");
+        Compression[] codecs = {Compression.NONE, Compression.LZ, Compression.deflate(1),
+                Compression.deflate(6), Compression.deflate(9)};
+        for (Compression codec : codecs) {
+            long compressed = 0;
+            long saveTime = 0;
+            long loadTime = 0;
+            for (int i = 0; i <= COMPRESSION_ROUNDS; i++) {
+                long start = System.nanoTime();
+                compressed = 0;
+                try (DataOutputStream output =
+                             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                    for (Bank bank : banks) {
+                        byte[] compressedBytes = codec.compress(BankCodec.encode(bank));
+                        output.writeInt(compressedBytes.length);
+                        output.write(compressedBytes);
+                        compressed += compressedBytes.length;
+                    }
+                }
+                long middle = System.nanoTime();
+                List<Bank> restored = new ArrayList<>(banks.size());
+                try (DataInputStream input =
+                             new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    for (int b = 0; b < banks.size(); b++) {
+                        byte[] compressedBytes = new byte[input.readInt()];
+                        input.readFully(compressedBytes);
+                        restored.add(BankCodec.decode(codec.decompress(compressedBytes)));
+                    }
+                }
+                long end = System.nanoTime();
+                if (i == 0) {
+                    for (int b = 0; b < banks.size(); b++) {
+                        if (!Arrays.equals(BankCodec.encode(restored.get(b)), BankCodec.encode(banks.get(b)))) {
+                            throw new IOException(codec + " failed to restore a bank");
+                        }
+                    }
+                } else {
+                    saveTime += middle - start;
+                    loadTime += end - middle;
+                }
+            }
+            double megabytes = size * (double) COMPRESSION_ROUNDS / (1 << 20);
+            System.out.printf("%-12s %12d %8.2f %18.1f %18.1f%n", codec, compressed, (double) size / compressed,
+                    megabytes / (saveTime / 1e9), megabytes / (loadTime / 1e9));
+        }
+    }
+
+    /**
+     * Runs the stress benchmark on the given number of accounts.<br><br>
+     * Every thread deposits, withdraws, and transfers random amounts between random accounts, keeping
+     * count of what it deposited and withdrew. Once all threads are done, the total of every balance must
+     * equal the starting total plus those deposits and minus those withdrawals, and no balance may be
+     * negative.
+     *
+     * @param accounts the number of accounts
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void stress(int accounts) throws InterruptedException {
+        Account[] pool = accounts(accounts);
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("Stressing " + accounts + " accounts on " + processors + " processors");
+        System.out.printf("%-8s %16s %18s %12s%n", "Threads", "Operations/s", "Total (cents)", "Conserved");
+        for (int threads = 1; threads <= processors * 2; threads *= 2) {
+            reset(pool);
+            long[] net = new long[threads];
+            int operations = STRESS_OPERATIONS / threads;
+            long elapsed = race(threads, net, random -> {
+                long change = 0;
+                for (int i = 0; i < operations; i++) {
+                    Account account = pool[random.nextInt(accounts)];
+                    int cents = 1 + random.nextInt(10000);
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            if (account.deposit(cents / 100.0)) {
+                                change += cents;
+                            }
+                            break;
+                        case 1:
+                            if (account.withdraw(cents / 100.0)) {
+                                change -= cents;
+                            }
+                            break;
+                        default:
+                            account.transfer(pool[random.nextInt(accounts)], cents / 100.0);
+                    }
+                }
+                return change;
+            });
+            long expected = STRESS_BALANCE * accounts;
+            for (long change : net) {
+                expected += change;
+            }
+            long total = total(pool);
+            boolean negative = false;
+            for (Account account : pool) {
+                negative |= account.getCents() < 0;
+            }
+            System.out.printf("%-8d %16.0f %18d %12s%n", threads, operations * (double) threads / (elapsed / 1e9),
+                    total, total == expected && !negative ? "yes" : "NO (expected " + expected + ")");
+        }
+    }
+
+    /**
+     * Runs the transfer benchmark. Every run is made once between a small set of hot accounts, where most
+     * transfers contend for the same accounts, and once between the given number of accounts, where few do.
+     * <br><br>
+     * As only transfers are made, the total of every balance must be the same once all threads are done.
+     *
+     * @param accounts the number of accounts in the uniform runs
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void transfer(int accounts) throws InterruptedException {
+        Account[] uniform = accounts(accounts);
+        Account[] hot = Arrays.copyOf(uniform, Math.min(HOT_ACCOUNTS, accounts));
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("Transferring between " + hot.length + " hot and " + accounts + " uniform accounts on "
+                + processors + " processors");
+        System.out.printf("%-8s %22s %22s %12s%n", "Threads", "Hot (transfers/s)", "Uniform (transfers/s)",
+                "Conserved");
+        for (int threads = 1; threads <= processors * 2; threads *= 2) {
+            double hotRate = transfers(hot, threads);
+            double uniformRate = transfers(uniform, threads);
+            System.out.printf("%-8d %22.0f %22.0f %12s%n", threads, Math.abs(hotRate), Math.abs(uniformRate),
+                    hotRate > 0 && uniformRate > 0 ? "yes" : "NO");
+        }
+    }
+
+    /**
+     * A helper method to run one round of the transfer benchmark between the given accounts.
+     *
+     * @param pool    the accounts transferred between
+     * @param threads the number of threads
+     * @return the number of transfers per second, negated if the total funds were not conserved
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static double transfers(Account[] pool, int threads) throws InterruptedException {
+        reset(pool);
+        int operations = STRESS_OPERATIONS / threads;
+        long elapsed = race(threads, null, random -> {
+            for (int i = 0; i < operations; i++) {
+                pool[random.nextInt(pool.length)].transfer(pool[random.nextInt(pool.length)],
+                        (1 + random.nextInt(10000)) / 100.0);
+            }
+            return 0;
+        });
+        double rate = operations * (double) threads / (elapsed / 1e9);
+        return total(pool) == STRESS_BALANCE * pool.length ? rate : -rate;
+    }
+
+    /**
+     * Runs the batch benchmark on the given number of accounts, with one (1) partition up to twice the number
+     * of available processors, doubling every run.<br><br>
+     * The batch is first applied on a single thread to find the expected results and balances. Every run
+     * then applies the same batch, from the same starting balances, on a <code>TransactionEngine</code>, and
+     * must match them exactly. Every run, including the single thread, applies the batch once to warm up, and
+     * then <code>BATCH_ROUNDS</code> times, of which the fastest is reported.
+     *
+     * @param accounts the number of accounts
+     */
+    private static void batch(int accounts) {
+        Account[] pool = accounts(accounts);
+        Random random = new Random(accounts);
+        List<Transaction> transactions = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Account account = pool[random.nextInt(accounts)];
+            double amount = (1 + random.nextInt(10000)) / 100.0;
+            switch (random.nextInt(4)) {
+                case 0:
+                    transactions.add(Transaction.deposit(account, amount));
+                    break;
+                case 1:
+                    transactions.add(Transaction.withdrawal(account, amount));
+                    break;
+                default:
+                    transactions.add(Transaction.transfer(account, pool[random.nextInt(accounts)], amount));
+            }
+        }
+        boolean[] expected = new boolean[BATCH_SIZE];
+        long sequential = Long.MAX_VALUE;
+        for (int round = 0; round <= BATCH_ROUNDS; round++) {
+            reset(pool);
+            long begin = System.nanoTime();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                expected[i] = transactions.get(i).apply();
+            }
+            long elapsed = System.nanoTime() - begin;
+            sequential = round == 0 ? sequential : Math.min(sequential, elapsed);
+        }
+        long[] balances = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            balances[i] = pool[i].getCents();
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("Applying " + BATCH_SIZE + " transactions between " + accounts + " accounts on "
+                + processors + " processors, fastest of " + BATCH_ROUNDS + " runs");
+        System.out.printf("%-12s %22s %12s%n", "Partitions", "Transactions/s", "Matches");
+        System.out.printf("%-12s %22.0f %12s%n", "sequential", BATCH_SIZE / (sequential / 1e9), "-");
+        for (int partitions = 1; partitions <= processors * 2; partitions *= 2) {
+            long fastest = Long.MAX_VALUE;
+            boolean matches = true;
+            try (TransactionEngine engine = new TransactionEngine(partitions)) {
+                for (int round = 0; round <= BATCH_ROUNDS; round++) {
+                    reset(pool);
+                    long begin = System.nanoTime();
+                    boolean[] results = engine.submit(transactions);
+                    long elapsed = System.nanoTime() - begin;
+                    fastest = round == 0 ? fastest : Math.min(fastest, elapsed);
+                    matches &= Arrays.equals(results, expected);
+                    for (int i = 0; i < accounts && matches; i++) {
+                        matches = pool[i].getCents() == balances[i];
+                    }
+                }
+            }
+            System.out.printf("%-12d %22.0f %12s%n", partitions, BATCH_SIZE / (fastest / 1e9),
+                    matches ? "yes" : "NO");
+        }
+    }
+
+    /**
+     * Runs the sequencer benchmark, submitting transfers between random accounts to a <code>Sequencer</code>
+     * from the given number of threads at once. Every thread waits for its last transfer to be applied, after
+     * which the total of every balance must be the same as before.
+     *
+     * @param threads the number of threads
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void sequence(int threads) throws InterruptedException {
+        Account[] pool = accounts(SEQUENCE_ACCOUNTS);
+        int operations = STRESS_OPERATIONS / threads;
+        try (Sequencer<Account[]> sequencer = new Sequencer<>(pool)) {
+            long elapsed = race(threads, null, random -> {
+                CompletableFuture<Boolean> last = null;
+                for (int i = 0; i < operations; i++) {
+                    int from = random.nextInt(pool.length);
+                    int to = random.nextInt(pool.length);
+                    double amount = (1 + random.nextInt(10000)) / 100.0;
+                    last = sequencer.submit(accounts -> accounts[from].transfer(accounts[to], amount));
+                }
+                if (last != null) {
+                    last.join();
+                }
+                return 0;
+            });
+            System.out.printf("Sequenced %d transfers from %d threads through %d slots: %.0f transfers/s, "
+                            + "total funds %s%n", operations * threads, threads, sequencer.getCapacity(),
+                    operations * (double) threads / (elapsed / 1e9),
+                    total(pool) == STRESS_BALANCE * pool.length ? "conserved" : "NOT conserved");
+            for (Sequencer.Stage stage : Sequencer.Stage.values()) {
+                System.out.println(sequencer.getLatency(stage));
+            }
+        }
+    }
+
+    /**
+     * Runs the registry benchmark.<br><br>
+     * Every run starts with an empty branch. A fifth of the operations add a customer, two fifths remove a
+     * random customer ID, and the rest retrieve one, so that the branch settles at about half of the customer
+     * IDs in use. Once all threads are done, the number of customers of the branch must equal both the number
+     * of customers iterated over, and the number added less the number removed.
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void registry() throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        Address address = address(new Random(0));
+        System.out.println("Registering customers at a single branch on " + processors + " processors");
+        System.out.printf("%-8s %16s %12s %12s%n", "Threads", "Operations/s", "Customers", "Consistent");
+        for (int threads = 1; threads <= processors * 2; threads *= 2) {
+            Branch branch = new Branch(100, "Main", address);
+            long[] net = new long[threads];
+            int operations = REGISTRY_OPERATIONS / threads;
+            long elapsed = race(threads, net, random -> {
+                long change = 0;
+                for (int i = 0; i < operations; i++) {
+                    int operation = random.nextInt(5);
+                    if (operation == 0) {
+                        branch.addCustomer(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], address);
+                        change++;
+                    } else if (operation <= 2) {
+                        if (branch.removeCustomer(10000 + random.nextInt(90000))) {
+                            change--;
+                        }
+                    } else {
+                        branch.getCustomer(10000 + random.nextInt(90000));
+                    }
+                }
+                return change;
+            });
+            long expected = 0;
+            for (long change : net) {
+                expected += change;
+            }
+            int iterated = 0;
+            for (Customer ignored : branch) {
+                iterated++;
+            }
+            boolean consistent = branch.getNumberOfCustomers() == expected && iterated == expected;
+            System.out.printf("%-8d %16.0f %12d %12s%n", threads, operations * (double) threads / (elapsed / 1e9),
+                    branch.getNumberOfCustomers(), consistent ? "yes" : "NO (expected " + expected + ")");
+        }
+    }
+
+    /**
+     * Runs the versions benchmark on the given number of customers.<br><br>
+     * Each run is made twice: once relying on the optimistic reads of <code>Customer</code> and
+     * <code>Account</code>, and once with every operation made while holding the lock of the customer, as a
+     * single coarse lock would. Both modes are first run <code>VERSION_ROUNDS</code> times at every number of
+     * threads to warm up, and then another <code>VERSION_ROUNDS</code> times each, one after the other, of which
+     * the fastest run is reported.
+     *
+     * @param customers the number of customers
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void versions(int customers) throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        Random random = new Random(0);
+        Customer[] pool = new Customer[customers];
+        for (int i = 0; i < customers; i++) {
+            pool[i] = new Customer(10000 + i, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], address(random));
+            for (int a = 0; a < 3; a++) {
+                pool[i].openAccount().restoreCents(STRESS_BALANCE);
+            }
+        }
+        for (int round = 0; round < VERSION_ROUNDS; round++) {
+            for (int threads = 1; threads <= processors * 2; threads *= 2) {
+                versions(pool, threads, false);
+                versions(pool, threads, true);
+            }
+        }
+        System.out.println("Reading " + customers + " customers (95% reads) on " + processors + " processors"
+                + ", fastest of " + VERSION_ROUNDS + " runs");
+        System.out.printf("%-8s %22s %22s%n", "Threads", "Optimistic ops/s", "Coarse lock ops/s");
+        for (int threads = 1; threads <= processors * 2; threads *= 2) {
+            double optimistic = 0;
+            double coarse = 0;
+            for (int round = 0; round < VERSION_ROUNDS; round++) {
+                optimistic = Math.max(optimistic, versions(pool, threads, false));
+                coarse = Math.max(coarse, versions(pool, threads, true));
+            }
+            System.out.printf("%-8d %22.0f %22.0f%n", threads, optimistic, coarse);
+        }
+    }
+
+    /**
+     * A helper method to make one run of the versions benchmark.<br><br>
+     * Ninety-five (95) in every hundred operations read a random customer, by retrieving one of its accounts
+     * and adding up the balances of all of them. The rest change it, by either renaming it, or opening an
+     * account and closing it again.
+     *
+     * @param pool    the customers
+     * @param threads the number of threads
+     * @param coarse  whether every operation is made while holding the lock of the customer
+     * @return the number of operations per second
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static double versions(Customer[] pool, int threads, boolean coarse) throws InterruptedException {
+        int operations = VERSION_OPERATIONS / threads;
+        long elapsed = race(threads, new long[threads], random -> {
+            long sum = 0;
+            for (int i = 0; i < operations; i++) {
+                Customer customer = pool[random.nextInt(pool.length)];
+                int operation = random.nextInt(100);
+                if (coarse) {
+                    synchronized (customer) {
+                        sum += operate(customer, operation);
+                    }
+                } else {
+                    sum += operate(customer, operation);
+                }
+            }
+            return sum;
+        });
+        return operations * (double) threads / (elapsed / 1e9);
+    }
+
+    /**
+     * A helper method to make a single operation of the versions benchmark on a customer.<br><br>
+     * A read retrieves the accounts of the customer, reads their balances at a single point in time, and
+     * looks up the last of them by its account number.
+     *
+     * @param customer  the <code>Customer</code>
+     * @param operation a number from zero (0) to ninety-nine (99), reading the customer below ninety-five (95)
+     * @return the balances read, in cents, so that reads cannot be left out by the compiler
+     */
+    private static long operate(Customer customer, int operation) {
+        if (operation < 95) {
+            List<Account> accounts = customer.getAccounts();
+            long sum = 0;
+            for (long cents : Account.readCents(accounts.toArray(new Account[0]))) {
+                sum += cents;
+            }
+            Account account = accounts.isEmpty() ? null
+                    : customer.getAccount(accounts.get(accounts.size() - 1).getAccountNumber());
+            return account == null ? sum : sum + account.getVersion();
+        } else if (operation < 98) {
+            customer.setName(FIRST_NAMES[operation % FIRST_NAMES.length]);
+        } else {
+            Account account = customer.openAccount();
+            if (account != null) {
+                customer.closeAccount(account);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Generates a database with the given number of accounts, and adds up its totals on a
+     * <code>ForkJoinPool</code> with a growing number of threads. Each run is timed against adding up the total
+     * funds, accounts and customers of every state in nested loops over the banks, branches, customers and
+     * accounts on a single thread.<br><br>
+     * Every run is checked against the first, and the first against the nested loops.
+     *
+     * @param accounts the number of accounts
+     */
+    private static void aggregate(int accounts) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Bank> banks = generate(accounts);
+        Map<String, long[]> states = null;
+        for (int i = 0; i < 2; i++) {
+            states = nested(banks);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < AGGREGATE_ROUNDS; i++) {
+            states = nested(banks);
+        }
+        double loops = (System.nanoTime() - begin) / 1e6 / AGGREGATE_ROUNDS;
+        System.out.println("Aggregating " + accounts + " accounts on " + processors + " processors");
+        System.out.printf("%-8s %14s %14s %10s %10s%n", "Threads", "Nested (ms)", "Fork/join (ms)", "Speedup",
+                "Matches");
+        Aggregation first = null;
+        for (int threads = 1; threads <= processors * 2; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Aggregation aggregation = null;
+            for (int i = 0; i < 2; i++) {
+                aggregation = Aggregation.of(banks, pool);
+            }
+            begin = System.nanoTime();
+            for (int i = 0; i < AGGREGATE_ROUNDS; i++) {
+                aggregation = Aggregation.of(banks, pool);
+            }
+            double time = (System.nanoTime() - begin) / 1e6 / AGGREGATE_ROUNDS;
+            pool.shutdown();
+            boolean matches;
+            if (first == null) {
+                first = aggregation;
+                matches = first.getStates().size() == states.size();
+                for (Map.Entry<String, long[]> state : states.entrySet()) {
+                    Aggregation.Totals totals = first.getState(state.getKey());
+                    matches &= totals != null && totals.getCents() == state.getValue()[0]
+                            && totals.getNumberOfAccounts() == state.getValue()[1]
+                            && totals.getNumberOfCustomers() == state.getValue()[2];
+                }
+            } else {
+                matches = aggregation.equals(first);
+            }
+            System.out.printf("%-8d %14.1f %14.1f %9.2fx %10s%n", threads, loops, time, loops / time, matches);
+        }
+        System.out.println("Total: " + first);
+    }
+
+    /**
+     * A helper method to add up the total funds, accounts and customers of every state in nested loops over
+     * the banks, branches, customers and accounts, the way the totals were added up before
+     * <code>Aggregation</code>.
+     *
+     * @param banks the banks
+     * @return the total funds in cents, number of accounts, and number of customers of every state
+     */
+    private static Map<String, long[]> nested(List<Bank> banks) {
+        Map<String, long[]> states = new TreeMap<>();
+        for (Bank bank : banks) {
+            for (Branch branch : bank) {
+                for (Customer customer : branch) {
+                    long[] totals = states.computeIfAbsent(customer.getAddress().getState(), s -> new long[3]);
+                    for (Account account : customer) {
+                        totals[0] += account.getCents();
+                        totals[1]++;
+                    }
+                    totals[2]++;
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * This private interface loads the objects of a database file.
+     */
+    private interface Loader {
+
+        /**
+         * Loads the objects.
+         *
+         * @return the loaded objects
+         * @throws IOException            if an I/O error occurs
+         * @throws ClassNotFoundException if a class of a serialized object cannot be found
+         */
+        Object load() throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * This private interface is the work done by each thread of a multithreaded benchmark.
+     */
+    private interface Worker {
+
+        /**
+         * Does the work of a single thread.
+         *
+         * @param random the source of randomness of the thread
+         * @return a result kept for the thread, such as the net change it made to the total funds
+         */
+        long run(ThreadLocalRandom random);
+    }
+
+}
@@ -1,9 +1,14 @@
 package bank;
 
+import utility.CurrencyFormat;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.text.NumberFormat;
+import java.util.Comparator;
 import java.util.Objects;
-import java.util.Random;
 
 /**
  * This class represents a customer's account.<br><br>
@@ -11,6 +16,18 @@ import java.util.Random;
  * depositing and withdrawing money, to transferring funds from one account to another. <br><br>
  * <code>Account</code> objects are provided with a 9-Digit unique ID called <code>ACCOUNT_NUMBER</code> at
  * instantiation. This value is final and cannot be mutated. <br><br>
+ * The balance is kept as a whole number of cents, and is only ever changed while holding the lock of the
+ * account, so that a withdrawal can never take more funds than the account holds. The lock is only held to
+ * change the balance: every change takes a ticket from the <code>Turnstile</code> before releasing it, and
+ * tells the <code>MutationListener</code> of the bank of the change, along with the balance it left,
+ * once the lock has been released and every change made before it has been told. The changes to an account
+ * are therefore journaled in the order they were made, while no thread waiting for the lock is ever held up
+ * by the journal.<br><br>
+ * The balance itself is read without any lock. Every change to the balance bumps the version of the account
+ * to an odd number before it is made, and to the next even number after, so that a reader may read the
+ * balances of several accounts at a single point in time by checking that none of their versions were odd
+ * or have changed in between. Only should the accounts keep changing does the reader hold up the threads
+ * changing balances, by closing a gate which every change passes before it is begun.
  *
  * @author Samuel A. Kosasih
  *
@@ -18,35 +35,103 @@ import java.util.Random;
  */
 public class Account implements Serialized, Serializable {
 
+    private static final long serialVersionUID = 5624323763974448525L;
+
+    /**
+     * The fields saved by Java serialization, which keep the balance as a <code>Double</code> so that
+     * accounts saved before the balance was kept in cents can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("ACCOUNT_NUMBER", int.class),
+            new ObjectStreamField("balance", double.class)
+    };
+
+    /**
+     * The number of times <code>readCents()</code> tries to read the balances without any lock, before it
+     * closes the gate instead.
+     */
+    private static final int OPTIMISTIC_READS = 64;
+
+    /**
+     * The lock guarding <code>readers</code>, which threads wait on while the gate is closed.
+     */
+    private static final Object GATE = new Object();
+
+    /**
+     * This field stores the number of readers which have closed the gate, as an <code>Integer</code>.<br><br>
+     * While it is above zero (0), no change to any balance is begun, and changes already begun are left to
+     * end, so that <code>readCents()</code> can read any number of accounts at a single point in time once
+     * it could not do so without the gate. Only changed while holding <code>GATE</code>.
+     */
+    private static volatile int readers;
+
+    /**
+     * The order in which accounts are locked: by <code>ACCOUNT_NUMBER</code>, and then by identity for
+     * distinct accounts sharing a number.
+     */
+    private static final Comparator<Account> LOCK_ORDER = Comparator.comparingInt((Account a) -> a.ACCOUNT_NUMBER)
+            .thenComparingInt(System::identityHashCode);
+
+    /**
+     * The lock taken before locking two distinct accounts which cannot be told apart by
+     * <code>LOCK_ORDER</code>.
+     */
+    private static final Object TIE_LOCK = new Object();
+
     /**
      * This field stores a 9-Digit unique ID representing the Account Number as an <code>Integer</code>.
      */
     private final int ACCOUNT_NUMBER;
 
     /**
-     * This field stores the account balance as a <code>Double</code>.<br><br>
-     * Represents the amount of funds currently in this account.
+     * This field stores the account balance in cents as a <code>Long</code>.<br><br>
+     * Represents the amount of funds currently in this account. Only changed while holding the lock of the
+     * account, between two bumps of the <code>version</code>.
+     */
+    private volatile long cents;
+
+    /**
+     * This field stores the account balance as a <code>Double</code>, as it was read by Java
+     * serialization.<br><br>
+     * Only used to fill in <code>cents</code> when the account is read, and unused afterwards.
      */
     private double balance;
 
     /**
-     * This field is a <code>NumberFormat</code> object variable used to format <code>Number</code>
-     * variables to display as local currency.<br><br>
-     * The currency format is chosen from the system's local currency configurations.
+     * This field stores the version of the account as a <code>Long</code>, which is odd while the balance is
+     * being changed, and even otherwise.<br><br>
+     * Not saved with the account, as it only tells apart changes made while the account is in memory.
      */
-    private final NumberFormat currency = NumberFormat.getCurrencyInstance();
+    private transient volatile long version;
+
+    /**
+     * This field stores the <code>Customer</code> who owns the account.<br><br>
+     * Not saved with the account, as it is restored by the owner when read from a file.
+     */
+    private transient Customer owner;
 
     /**
      * Default Constructor. <br><br>
      * Generates a 9-Digit unique ID used to distinguish between other <code>Account</code>
-     * objects. This ID is generated using the <code>Random</code> class.
+     * objects. This ID is generated using the shared <code>IdGenerator</code>.
      *
-     * @see Random
+     * @see IdGenerator
      */
     public Account() {
-        Random rand = new Random();
-        this.ACCOUNT_NUMBER = rand.nextInt(900000000) + 100000000;
-        balance = 0;
+        this.ACCOUNT_NUMBER = IdGenerator.accountNumber();
+        cents = 0;
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * This constructor allows the 9-Digit <code>ACCOUNT_NUMBER</code> to be given, rather than
+     * generated. Mainly used to restore accounts which have been previously saved.
+     *
+     * @param accountNumber the 9-Digit account number as an <code>Integer</code>
+     */
+    public Account(int accountNumber) {
+        this.ACCOUNT_NUMBER = accountNumber;
+        cents = 0;
     }
 
     /**
@@ -59,12 +144,147 @@ public class Account implements Serialized, Serializable {
     }
 
     /**
-     * Retrieves the amount of funds stored in the account.
+     * Retrieves the amount of funds stored in the account.<br><br>
+     * Never waits for the account to be changed, so while a transfer is being made it may be read before or
+     * after the funds have moved. Use <code>readCents()</code> to read several accounts at a single point in
+     * time.
      *
      * @return a value for the account balance as a <code>Double</code>
      */
     public double getBalance() {
-        return balance;
+        return cents / 100.0;
+    }
+
+    /**
+     * Retrieves the amount of funds stored in the account, in cents.<br><br>
+     * Never waits for the account to be changed, so while a transfer is being made it may be read before or
+     * after the funds have moved. Use <code>readCents()</code> to read several accounts at a single point in
+     * time.
+     *
+     * @return a value for the account balance in cents as a <code>Long</code>
+     */
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * Retrieves the <code>Customer</code> who owns the account.
+     *
+     * @return the owning <code>Customer</code>, or <code>null</code> if the account has not been
+     * opened by a customer
+     */
+    public Customer getCustomer() {
+        return owner;
+    }
+
+    /**
+     * Sets the <code>Customer</code> who owns the account.
+     *
+     * @param owner the owning <code>Customer</code>
+     */
+    void setCustomer(Customer owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Retrieves the version of the account, which is odd while the balance is being changed, and bumped to
+     * the next even number once it has been.<br><br>
+     * If the version is even, and the same before and after reading the account, the balance has not changed
+     * in between.
+     *
+     * @return the version as a <code>Long</code>
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Reads the balances of the given accounts, in cents, as they all were at a single point in time.<br><br>
+     * The balances are first read without any lock, and kept only if the version of every account was even,
+     * and unchanged, before and after reading them, so that no transfer between the accounts can be seen
+     * half-made. Should the accounts keep changing, the gate is closed instead: no change to any balance is
+     * begun until the balances have been read, while changes already begun are waited for. No account is
+     * locked, so any number of accounts may be read, such as every account of the banks being saved.
+     *
+     * @param accounts the accounts to be read
+     * @return the balance of every account in cents, in the order given
+     */
+    public static long[] readCents(Account... accounts) {
+        long[] cents = new long[accounts.length];
+        long[] versions = new long[accounts.length];
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            if (readCents(accounts, cents, versions)) {
+                return cents;
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (GATE) {
+            readers++;
+        }
+        try {
+            while (!readCents(accounts, cents, versions)) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            synchronized (GATE) {
+                if (--readers == 0) {
+                    GATE.notifyAll();
+                }
+            }
+        }
+        return cents;
+    }
+
+    /**
+     * A helper method to read the balances of the given accounts once, without any lock.
+     *
+     * @param accounts the accounts to be read
+     * @param cents    filled in with the balance of every account in cents
+     * @param versions used to keep the version of every account
+     * @return <code>true</code> if no balance changed while being read. Otherwise, it will return
+     * <code>false</code>.
+     */
+    private static boolean readCents(Account[] accounts, long[] cents, long[] versions) {
+        for (int i = 0; i < accounts.length; i++) {
+            versions[i] = accounts[i].version;
+            if ((versions[i] & 1) != 0) {
+                return false;
+            }
+        }
+        for (int i = 0; i < accounts.length; i++) {
+            cents[i] = accounts[i].cents;
+        }
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i].version != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A helper method to wait for the gate to be opened, before a change to a balance is begun.<br><br>
+     * Called while holding the lock of every account being changed, before the version of any of them is
+     * bumped, as <code>readCents()</code> never waits for a lock. Should the thread be interrupted while
+     * waiting, the change is still made, and the interrupt is kept for the caller.
+     */
+    private static void pass() {
+        if (readers == 0) {
+            return;
+        }
+        boolean interrupted = false;
+        synchronized (GATE) {
+            while (readers != 0) {
+                try {
+                    GATE.wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -77,10 +297,23 @@ public class Account implements Serialized, Serializable {
      * Otherwise, it will return <code>false</code>.
      */
     public boolean deposit(double amount) {
-        if (amount <= 0) {
+        long change = toCents(amount);
+        if (change <= 0) {
             return false;
         }
-        this.balance += amount;
+        MutationListener listener;
+        long balance;
+        long ticket;
+        synchronized (this) {
+            credit(change);
+            listener = listener();
+            if (listener == null) {
+                return true;
+            }
+            balance = cents;
+            ticket = Turnstile.CHANGES.ticket();
+        }
+        Turnstile.CHANGES.pass(ticket, () -> listener.deposited(this, amount, balance));
         return true;
     }
 
@@ -94,10 +327,26 @@ public class Account implements Serialized, Serializable {
      * Otherwise, it will return <code>false</code>.
      */
     public boolean withdraw(double amount) {
-        if (amount > balance || amount <= 0) {
+        long change = toCents(amount);
+        if (change <= 0) {
             return false;
         }
-        this.balance -= amount;
+        MutationListener listener;
+        long balance;
+        long ticket;
+        synchronized (this) {
+            if (change > cents) {
+                return false;
+            }
+            credit(-change);
+            listener = listener();
+            if (listener == null) {
+                return true;
+            }
+            balance = cents;
+            ticket = Turnstile.CHANGES.ticket();
+        }
+        Turnstile.CHANGES.pass(ticket, () -> listener.withdrew(this, amount, balance));
         return true;
     }
 
@@ -111,6 +360,14 @@ public class Account implements Serialized, Serializable {
      *     <li>value must be greater than zero (0)</li>
      *     <li>value must be less than the account balance</li>
      * </ul>
+     * Both accounts are locked while the funds are moved, so that no other change to either account may come
+     * in between, and a ticket is taken from the <code>Turnstile</code> before they are released. The transfer
+     * is journaled once both locks have been released, in the order of its ticket. The accounts are always
+     * locked in the order of their <code>ACCOUNT_NUMBER</code>, and then by identity for distinct accounts
+     * sharing a number, so that two transfers in opposite directions between the same accounts cannot
+     * deadlock.<br><br>
+     * Reading the balance of either account on its own never waits for a transfer, and may see the funds
+     * in neither account. Use <code>readCents()</code> to read both balances at a single point in time.
      *
      * @param account the recipient <code>Account</code>. This account will be the destination
      *                of your funds.
@@ -118,15 +375,169 @@ public class Account implements Serialized, Serializable {
      * @return <code>true</code> if <code>account</code> differs from the origin account, and
      * the value for <code>amount</code> follows the criteria. Otherwise, it will return
      * <code>false</code>
+     *
+     * @see #readCents(Account...)
      */
     public boolean transfer(Account account, double amount) {
-        if (!this.equals(account)) {
-            if (withdraw(amount)) {
-                account.deposit(amount);
-                return true;
+        if (this == account || account == null) {
+            return false;
+        }
+        long change = toCents(amount);
+        if (change <= 0) {
+            return false;
+        }
+        int order = LOCK_ORDER.compare(this, account);
+        Runnable notification;
+        if (order == 0) {
+            synchronized (TIE_LOCK) {
+                notification = transfer(this, account, account, change, amount);
+            }
+        } else {
+            notification = order < 0 ? transfer(this, account, account, change, amount)
+                    : transfer(account, this, account, change, amount);
+        }
+        if (notification == null) {
+            return false;
+        }
+        notification.run();
+        return true;
+    }
+
+    /**
+     * A helper method to lock both accounts of a transfer in the given order, and move the funds while
+     * holding them.<br><br>
+     * The <code>MutationListener</code> is not told of the transfer here, as the caller may still hold the
+     * <code>TIE_LOCK</code>. A ticket is taken instead, and the returned notification passes it through the
+     * <code>Turnstile</code>, which must be done once every lock has been released.
+     *
+     * @param first     the account locked first
+     * @param second    the account locked second
+     * @param recipient the recipient <code>Account</code>
+     * @param change    the amount of funds in cents
+     * @param amount    the amount of funds as given, handed to the <code>MutationListener</code>
+     * @return the notification of the transfer if the funds were moved. Otherwise, it will return
+     * <code>null</code>.
+     */
+    private Runnable transfer(Account first, Account second, Account recipient, long change, double amount) {
+        synchronized (first) {
+            synchronized (second) {
+                if (change > cents) {
+                    return null;
+                }
+                pass();
+                begin();
+                recipient.begin();
+                cents -= change;
+                recipient.cents += change;
+                end();
+                recipient.end();
+                MutationListener listener = listener();
+                if (listener == null) {
+                    return () -> { };
+                }
+                long fromCents = cents;
+                long toCents = recipient.cents;
+                long ticket = Turnstile.CHANGES.ticket();
+                return () -> Turnstile.CHANGES.pass(ticket,
+                        () -> listener.transferred(this, recipient, amount, fromCents, toCents));
             }
         }
-        return false;
+    }
+
+    /**
+     * A helper method to change the balance by the given number of cents, without notifying any
+     * <code>MutationListener</code>.<br><br>
+     * Must only be called while holding the lock of the account.
+     *
+     * @param change the number of cents to be added, or taken if negative, as a <code>Long</code>
+     */
+    private void credit(long change) {
+        pass();
+        begin();
+        cents += change;
+        end();
+    }
+
+    /**
+     * A helper method to bump the version to an odd number, before the balance is changed.<br><br>
+     * Must only be called while holding the lock of the account. A transfer bumps the versions of both
+     * accounts before changing either balance, so that no reader can see one balance changed and the other
+     * not, with neither version odd. The gate must be passed first.
+     */
+    private void begin() {
+        version++;
+    }
+
+    /**
+     * A helper method to bump the version to the next even number, once the balance has been changed.<br><br>
+     * Must only be called while holding the lock of the account.
+     */
+    private void end() {
+        version++;
+    }
+
+    /**
+     * A helper method to convert an amount of funds to cents, rounded to the nearest cent.
+     *
+     * @param amount the amount of funds as a <code>Double</code>
+     * @return the amount in cents as a <code>Long</code>
+     */
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Sets the balance of the account, without notifying any <code>MutationListener</code>.<br><br>
+     * Only used to restore a balance which has been previously saved.
+     *
+     * @param balance the account balance as a <code>Double</code>
+     */
+    public void restoreBalance(double balance) {
+        restoreCents(toCents(balance));
+    }
+
+    /**
+     * Sets the balance of the account in cents, without notifying any <code>MutationListener</code>.<br><br>
+     * Only used to restore a balance which has been previously saved.
+     *
+     * @param cents the account balance in cents as a <code>Long</code>
+     */
+    public synchronized void restoreCents(long cents) {
+        credit(cents - this.cents);
+    }
+
+    /**
+     * Retrieves the <code>MutationListener</code> of the bank this account belongs to.
+     *
+     * @return the listener, or <code>null</code> if there is none
+     */
+    MutationListener listener() {
+        return owner == null ? null : owner.listener();
+    }
+
+    /**
+     * Saves the account to a stream, with the balance as a <code>Double</code>.
+     *
+     * @param output the stream the account is written to
+     * @throws IOException if the account cannot be written
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("ACCOUNT_NUMBER", ACCOUNT_NUMBER);
+        fields.put("balance", getBalance());
+        output.writeFields();
+    }
+
+    /**
+     * Restores the account from a stream, converting the balance to cents.
+     *
+     * @param input the stream the account is read from
+     * @throws IOException            if the account cannot be read
+     * @throws ClassNotFoundException if a class of the account cannot be found
+     */
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        cents = toCents(balance);
     }
 
     /**
@@ -166,7 +577,7 @@ public class Account implements Serialized, Serializable {
     @Override
     public String toString() {
         return "Account Number: " + ACCOUNT_NUMBER + "\n" +
-                "\tBalance: " + currency.format(balance);
+                "\tBalance: " + CurrencyFormat.format(getBalance());
     }
 
     /**
@@ -0,0 +1,37 @@
+package bank;
+
+/**
+ * This interface classifies classes which give out the account numbers of every bank they manage, so that
+ * no two accounts across those banks are ever given the same number.<br><br>
+ * An allocator is registered on a <code>Bank</code> using <code>setAccountNumbers()</code>, and is used by
+ * every customer at the bank to open a new account. Customers which do not belong to a bank with an
+ * allocator draw their account numbers from the shared <code>IdGenerator</code> instead, which only keeps
+ * them unique within the customer.<br><br>
+ * An allocator may give out the numbers of a single bank, from a range of numbers kept for that bank, so
+ * that opening an account never needs the accounts of any other bank.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Bank#setAccountNumbers(AccountNumbers)
+ * @see IdAllocator
+ */
+public interface AccountNumbers {
+
+    /**
+     * Allocates a 9-Digit account number which no account holds, to open a new account with.<br><br>
+     * The number is held until the account is closed, or released should it never be opened.
+     *
+     * @return the account number as an <code>Integer</code>
+     * @throws IllegalStateException if every account number the allocator gives out is already in use
+     */
+    int allocate();
+
+    /**
+     * Releases an account number which was allocated but never used to open an account, so that it may be
+     * allocated again. Numbers held by an open account are kept.
+     *
+     * @param accountNumber the 9-Digit account number as an <code>Integer</code>
+     */
+    void release(int accountNumber);
+
+}
@@ -1,9 +1,15 @@
 package bank;
 
 import utility.Address;
+import utility.SnapshotMap;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents a bank.<br><br>
@@ -12,7 +18,12 @@ import java.util.*;
  * controlled by the bank. Using <code>Bank</code> objects, new branches can be opened up, or be closed and
  * removed from the database.<br><br>
  * <code>Bank</code> objects are provided with a 4-Digit unique ID called <code>BANK_ID</code>
- * at instantiation. This value is final and cannot be mutated.
+ * at instantiation. This value is final and cannot be mutated.<br><br>
+ * Branches are kept in a <code>SnapshotMap</code>, so a bank may be used from many threads at once.
+ * Branches are iterated over in the order they were created. Every change to the branches builds a new,
+ * immutable version of the map sharing most of the old one, so <code>getBranches()</code> hands out the
+ * branches as they are in constant time, and a report or save may walk them for as long as it takes while
+ * branches continue to be created and removed.
  *
  * @author Samuel A. Kosasih
  *
@@ -22,10 +33,23 @@ import java.util.*;
  */
 public class Bank implements Serialized, Serializable, Iterable<Branch> {
 
+    private static final long serialVersionUID = 2735697375572898348L;
+
+    /**
+     * The fields saved by Java serialization. The number of branches is saved along with the branches,
+     * so that banks saved before it was counted from the map can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("bankName", String.class),
+            new ObjectStreamField("BANK_ID", int.class),
+            new ObjectStreamField("BRANCHES", Map.class),
+            new ObjectStreamField("numberOfBranches", int.class)
+    };
+
     /**
      * This field stores the name of the bank as a <code>String</code>.
      */
-    private String bankName;
+    private volatile String bankName;
 
     /**
      * This field stores the 4-Digit unique bank ID as an <code>Integer</code>.
@@ -34,35 +58,55 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
 
     /**
      * This field stores a <code>Map</code> used to store <code>Branch</code> objects.<br><br>
-     * Uses the branch codes as the key, and the <code>Branch</code> objects as the value.
+     * Uses the branch codes as the key, and the <code>Branch</code> objects as the value. Also used as the
+     * lock held while a branch name is checked and taken.<br><br>
+     * Always a <code>SnapshotMap</code>, though declared as a <code>Map</code> so that it can be read by
+     * Java serialization.
      */
     private final Map<Integer, Branch> BRANCHES;
 
     /**
-     * This field stores the number of still in operation branches as an <code>Integer</code>.
+     * This field stores the <code>IdAllocator</code> giving out the branch codes of the bank, holding every
+     * branch code in use.<br><br>
+     * Not saved with the bank, as it is filled again from the branches when the bank is read.
      */
-    private int numberOfBranches;
+    private final transient IdAllocator codes = new IdAllocator(100, 999);
 
     /**
-     * This field stores a <code>Random</code> object.<br><br>
-     * Mainly used to generate the 4-Digit unique bank IDs.
+     * This field stores the <code>MutationListener</code> notified of every change made within the bank.<br><br>
+     * Not saved with the bank, as it belongs to the session rather than the data.
      */
-    private final Random rand = new Random();
+    private transient volatile MutationListener listener;
+
+    /**
+     * This field stores the <code>AccountNumbers</code> giving out the account numbers of new accounts
+     * opened within the bank.<br><br>
+     * Not saved with the bank, as it belongs to the session rather than the data.
+     */
+    private transient volatile AccountNumbers accountNumbers;
+
+    /**
+     * This field stores a <code>Boolean</code> to indicate that the bank has changed since it was last saved.<br><br>
+     * Not saved with the bank, so a bank read from a file starts out unchanged.
+     */
+    private transient volatile boolean dirty = true;
 
     /**
      * Default Constructor.<br><br>
      * Generates a 5-Digit unique ID used to distinguish between other <code>Bank</code>
-     * objects. This ID is generated using the <code>Random</code> class.
+     * objects. This ID is generated using the shared <code>IdGenerator</code>.<br><br>
+     * As the ID is drawn at random rather than allocated, it may already be in use by a bank of the
+     * <code>BankManager</code> the bank is later added to, in which case it is refused. Banks created through
+     * <code>BankManager.createBank()</code> never collide.
      *
      * @param bankName the bank's name as a <code>String</code>
      *
-     * @see Random
+     * @see IdGenerator
      */
     public Bank(String bankName) {
         this.bankName = bankName;
-        this.BANK_ID = rand.nextInt(9000) + 1000;
-        this.BRANCHES = new LinkedHashMap<>();
-        numberOfBranches = 0;
+        this.BANK_ID = IdGenerator.bankId();
+        this.BRANCHES = new SnapshotMap<>();
     }
 
     /**
@@ -76,9 +120,43 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
      */
     public Bank(String bankName, Map<Integer, Branch> branches) {
         this.bankName = bankName;
-        this.BANK_ID = rand.nextInt(9000) + 1000;
-        this.BRANCHES = branches;
-        numberOfBranches = 0;
+        this.BANK_ID = IdGenerator.bankId();
+        this.BRANCHES = new SnapshotMap<>(branches);
+        for (Branch branch : this) {
+            codes.reserve(branch.getKey());
+            branch.setBank(this);
+        }
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * This constructor allows the 4-Digit <code>BANK_ID</code> to be given, rather than
+     * generated. Mainly used to restore banks which have been previously saved.
+     *
+     * @param bankId   the 4-Digit bank ID as an <code>Integer</code>
+     * @param bankName the bank's name
+     */
+    public Bank(int bankId, String bankName) {
+        this.bankName = bankName;
+        this.BANK_ID = bankId;
+        this.BRANCHES = new SnapshotMap<>();
+    }
+
+    /**
+     * Private Constructor. Used to restore a bank read by Java serialization, copying its branches to a
+     * <code>SnapshotMap</code>.
+     *
+     * @param bank the bank as it was read
+     */
+    private Bank(Bank bank) {
+        this.bankName = bank.bankName;
+        this.BANK_ID = bank.BANK_ID;
+        this.BRANCHES = new SnapshotMap<>(bank.BRANCHES);
+        this.dirty = false;
+        for (Branch branch : this) {
+            codes.reserve(branch.getKey());
+            branch.setBank(this);
+        }
     }
 
     /**
@@ -97,6 +175,11 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
      */
     public void setBankName(String bankName) {
         this.bankName = bankName;
+        markDirty();
+        MutationListener listener = this.listener;
+        if (listener != null) {
+            listener.bankUpdated(this);
+        }
     }
 
     /**
@@ -114,7 +197,89 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
      * @return a value for the number of branches as an <code>Integer</code>
      */
     public int getNumberOfBranches() {
-        return numberOfBranches;
+        return BRANCHES.size();
+    }
+
+    /**
+     * Retrieves every branch in operation, in the order they were created, as they are right now.<br><br>
+     * Takes constant time, however many branches there are. The map is immutable, and is unaffected by
+     * branches created or removed afterwards.
+     *
+     * @return an immutable <code>Map</code> of the branches, using the branch codes as the key
+     */
+    public Map<Integer, Branch> getBranches() {
+        return ((SnapshotMap<Integer, Branch>) BRANCHES).snapshot();
+    }
+
+    /**
+     * Determines whether the bank, its branches, their customers, or the customers' accounts have
+     * changed since the bank was last saved.<br><br>
+     * Changes to account balances are not counted, as balances are saved separately by the
+     * <code>MutationListener</code> notified of them.
+     *
+     * @return <code>true</code> if the bank has changed. Otherwise, it will return <code>false</code>.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the bank as unchanged, once it has been saved.
+     */
+    public void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Marks the bank as changed since it was last saved.
+     */
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Retrieves the <code>MutationListener</code> notified of changes made within the bank.
+     *
+     * @return the listener, or <code>null</code> if there is none
+     */
+    public MutationListener getMutationListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the <code>MutationListener</code> to be notified of every change made to the bank, its
+     * branches, their customers, and the customers' accounts.
+     *
+     * @param listener the listener, or <code>null</code> to stop notifying
+     *
+     * @see MutationListener
+     */
+    public void setMutationListener(MutationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Retrieves the <code>AccountNumbers</code> giving out the account numbers of new accounts opened within
+     * the bank.
+     *
+     * @return the allocator, or <code>null</code> if there is none
+     */
+    public AccountNumbers getAccountNumbers() {
+        return accountNumbers;
+    }
+
+    /**
+     * Sets the <code>AccountNumbers</code> giving out the account numbers of new accounts opened by every
+     * customer at the bank.<br><br>
+     * Without one, account numbers are drawn from the shared <code>IdGenerator</code>, and are then only
+     * unique within their customer.
+     *
+     * @param accountNumbers the allocator, or <code>null</code> to draw account numbers at random
+     *
+     * @see AccountNumbers
+     */
+    public void setAccountNumbers(AccountNumbers accountNumbers) {
+        this.accountNumbers = accountNumbers;
     }
 
     /**
@@ -143,31 +308,93 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
      * This method accepts an <code>Address</code> object to set the branch's address
      * instead of a <code>String</code>.
      * <br><br>
-     * Will not accept a name that belongs to an existing branch in the database.
+     * Will not accept a name that belongs to an existing branch in the database. The branch code is given
+     * out by the <code>IdAllocator</code> of the bank, so it is never already in use.
      *
      * @param branchName    the branch's name as a <code>String</code>
      * @param branchAddress the branch' address as a <code>String</code>
      * @return <code>true</code> if the new branch has been added to the database.
      * Otherwise, it will return <code>false</code>.
+     * @throws IllegalStateException if every 3-Digit branch code is already in use
      *
      * @see Branch
      */
     public boolean createBranch(String branchName, Address branchAddress) {
-        for (Branch branch : this) {
-            if (branch.getBranchName().equalsIgnoreCase(branchName)) {
-                return false;
+        Branch branch;
+        long ticket;
+        synchronized (BRANCHES) {
+            for (Branch existing : this) {
+                if (existing.getBranchName().equalsIgnoreCase(branchName)) {
+                    return false;
+                }
             }
+            branch = new Branch(codes.allocate(), branchName, branchAddress);
+            branch.setBank(this);
+            ticket = listener == null ? -1 : Turnstile.CHANGES.ticket();
+            BRANCHES.put(branch.getKey(), branch);
         }
-        Branch branch = new Branch(branchName, branchAddress);
-        while (true) {
-            if (BRANCHES.containsKey(branch.getKey())) {
-                branch = new Branch(branchName, branchAddress);
-            } else {
-                break;
+        notifyCreated(branch, ticket);
+        return true;
+    }
+
+    /**
+     * Overloaded Method. Adds a new branch with the given 3-Digit branch code.<br><br>
+     * Mainly used to restore branches which have been previously saved.
+     *
+     * @param branchCode    the 3-Digit branch code as an <code>Integer</code>
+     * @param branchName    the branch's name as a <code>String</code>
+     * @param branchAddress the branch' address as an <code>Address</code>
+     * @return <code>true</code> if the new branch has been added to the database. Otherwise, if the
+     * branch code is already in use, it will return <code>false</code>.
+     */
+    public boolean createBranch(int branchCode, String branchName, Address branchAddress) {
+        Branch branch = new Branch(branchCode, branchName, branchAddress);
+        long ticket = listener == null ? -1 : Turnstile.CHANGES.ticket();
+        if (!register(branch)) {
+            if (ticket >= 0) {
+                Turnstile.CHANGES.pass(ticket, () -> { });
             }
+            return false;
+        }
+        notifyCreated(branch, ticket);
+        return true;
+    }
+
+    /**
+     * A helper method to store a new <code>Branch</code> in the <code>BRANCHES</code> map, unless its
+     * branch code is already in use.
+     *
+     * @param branch the <code>Branch</code> to be stored
+     * @return <code>true</code> if the branch has been stored. Otherwise, it will return <code>false</code>.
+     */
+    private boolean register(Branch branch) {
+        if (!codes.reserve(branch.getKey())) {
+            return false;
+        }
+        branch.setBank(this);
+        return BRANCHES.putIfAbsent(branch.getKey(), branch) == null;
+    }
+
+    /**
+     * A helper method to mark the bank as changed, and notify the <code>MutationListener</code> of a
+     * newly-created branch, in the order of its ticket.<br><br>
+     * The ticket is taken from the <code>Turnstile</code> before the branch is stored, so that any change
+     * made at the branch once it can be found is told after it has been created.
+     *
+     * @param branch the newly-created <code>Branch</code>
+     * @param ticket the ticket taken before storing the branch, or negative one (-1) if there was no listener
+     */
+    private void notifyCreated(Branch branch, long ticket) {
+        markDirty();
+        if (ticket < 0) {
+            return;
         }
-        numberOfBranches++;
-        return BRANCHES.put(branch.getKey(), branch) == null;
+        MutationListener listener = this.listener;
+        Turnstile.CHANGES.pass(ticket, () -> {
+            if (listener != null) {
+                listener.branchCreated(this, branch);
+            }
+        });
     }
 
     /**
@@ -183,8 +410,14 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
      * @see Branch
      */
     public boolean removeBranch(int branchCode) {
-        if (BRANCHES.remove(branchCode) != null) {
-            numberOfBranches--;
+        Branch branch = BRANCHES.remove(branchCode);
+        if (branch != null) {
+            codes.release(branchCode);
+            markDirty();
+            MutationListener listener = this.listener;
+            if (listener != null) {
+                listener.branchRemoved(this, branch);
+            }
             return true;
         }
         return false;
@@ -201,6 +434,32 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
         return BRANCHES.get(branchCode);
     }
 
+    /**
+     * Saves the bank to an object stream, along with the number of branches.
+     *
+     * @param output the stream the bank is written to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        Map<Integer, Branch> branches = getBranches();
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("bankName", bankName);
+        fields.put("BANK_ID", BANK_ID);
+        fields.put("BRANCHES", branches);
+        fields.put("numberOfBranches", branches.size());
+        output.writeFields();
+    }
+
+    /**
+     * Replaces the bank read from an object stream with one whose branches are kept in a
+     * <code>SnapshotMap</code>, re-linking the branches to their bank.
+     *
+     * @return the restored <code>Bank</code>
+     */
+    private Object readResolve() {
+        return new Bank(this);
+    }
+
     /**
      * Compares two <code>Bank</code> objects.<br><br>
      * Uses the <code>BANK_ID</code> field to compare if the other bank <code>o</code>
@@ -239,10 +498,11 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
     public String toString() {
         StringBuilder s = new StringBuilder(bankName + " [" + BANK_ID + "]");
         s.append("\n\t").append("Available Branches:");
-        if (numberOfBranches == 0) {
+        Map<Integer, Branch> branches = getBranches();
+        if (branches.isEmpty()) {
             s.append("\n\t\t").append("- No branches available -");
         } else {
-            for (Branch branch : this) {
+            for (Branch branch : branches.values()) {
                 s.append("\n\t\t").append(branch.simplifiedString());
             }
         }
@@ -272,12 +532,46 @@ public class Bank implements Serialized, Serializable, Iterable<Branch> {
 
     /**
      * Returns an <code>Iterator</code> of type <code>Branch</code> to iterate
-     * through the map of <code>Branch</code>s under the bank's operation.
+     * through the map of <code>Branch</code>s under the bank's operation, as they were when the iterator
+     * was created.
      *
      * @return an <code>Iterator</code> of type <code>Branch</code>
      */
     @Override
     public Iterator<Branch> iterator() {
-        return BRANCHES.values().iterator();
+        return getBranches().values().iterator();
+    }
+
+    /**
+     * Returns a <code>Spliterator</code> of type <code>Branch</code> over the branches under the bank's
+     * operation, as they were when the spliterator was created.<br><br>
+     * The branches are split in half by the order they were created in. Unless a branch has been removed
+     * since, every part knows its exact size.
+     *
+     * @return a <code>Spliterator</code> of type <code>Branch</code>
+     */
+    @Override
+    public Spliterator<Branch> spliterator() {
+        return getBranches().values().spliterator();
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> of the branches under the bank's operation, as they were when
+     * the stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Branch</code>
+     */
+    public Stream<Branch> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel <code>Stream</code> of the branches under the bank's operation, as they were when
+     * the stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Branch</code>
+     */
+    public Stream<Branch> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
     }
 }
@@ -1,9 +1,15 @@
 package bank;
 
 import utility.Address;
+import utility.StripedSnapshotMap;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents a branch.<br><br>
@@ -12,7 +18,16 @@ import java.util.*;
  * <code>Customer</code> objects is available, to store a handful of customers who registered as a
  * client of the branch.<br><br>
  * <code>Branch</code> objects are provided with a 3-Digit unique ID called <code>BRANCH_CODE</code>
- * at instantiation. This value is final and cannot be mutated.
+ * at instantiation. This value is final and cannot be mutated.<br><br>
+ * Customers are kept in a <code>StripedSnapshotMap</code>, so a branch may be used from many threads at
+ * once. Customers are iterated over in the order they were registered. Every change to the customers builds a
+ * new, immutable version of a stripe of the map sharing most of the old one, and swaps it in without taking a
+ * lock, so <code>getCustomers()</code> hands out the customers as they are without copying them, and a report
+ * or save may walk them while tellers continue to register and remove customers.<br><br>
+ * As many tellers may register customers at the same branch at once, both the map and the
+ * <code>StripedIdAllocator</code> giving out the customer IDs are split into one stripe for every available
+ * processor, and a customer ID is kept in the same stripe of both. Tellers registering customers at once
+ * therefore neither wait for the same allocator nor swap in the same version of the map.
  *
  * @author Samuel A. Kosasih
  *
@@ -21,15 +36,35 @@ import java.util.*;
  */
 public class Branch implements Serialized, Iterable<Customer>, Serializable {
 
+    private static final long serialVersionUID = -5368622525713637027L;
+
+    /**
+     * The fields saved by Java serialization. The number of customers is saved along with the customers,
+     * so that branches saved before it was counted from the map can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("branchName", String.class),
+            new ObjectStreamField("branchAddress", Address.class),
+            new ObjectStreamField("BRANCH_CODE", int.class),
+            new ObjectStreamField("CUSTOMERS", Map.class),
+            new ObjectStreamField("numberOfCustomers", int.class)
+    };
+
+    /**
+     * The number of stripes the <code>CUSTOMERS</code> map and the customer IDs are split into, as a power of
+     * two.
+     */
+    private static final int STRIPES = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()));
+
     /**
      * This field stores the name of the branch as a <code>String</code>.
      */
-    private String branchName;
+    private volatile String branchName;
 
     /**
      * This field stores the address of the branch as an <code>Address</code> object.
      */
-    private Address branchAddress;
+    private volatile Address branchAddress;
 
     /**
      * This field stores the 3-Digit unique branch code as an <code>Integer</code>.
@@ -38,25 +73,32 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
 
     /**
      * This field stores a <code>Map</code> used to store <code>Customer</code> objects.<br><br>
-     * Uses the customer IDs as the key, and the <code>Customer</code> objects as the value.
+     * Uses the customer IDs as the key, and the <code>Customer</code> objects as the value.<br><br>
+     * Always a <code>StripedSnapshotMap</code>, though declared as a <code>Map</code> so that it can be read by
+     * Java serialization.
      */
     private final Map<Integer, Customer> CUSTOMERS;
 
     /**
-     * This field stores the number of customers as an <code>Integer</code>.
+     * This field stores the <code>StripedIdAllocator</code> giving out the customer IDs of the branch, holding
+     * every customer ID in use.<br><br>
+     * Not saved with the branch, as it is filled again from the customers when the branch is read.
      */
-    private int numberOfCustomers;
+    private final transient StripedIdAllocator ids = new StripedIdAllocator(10000, 99999, STRIPES);
 
     /**
-     * This field stores a <code>Random</code> object.<br><br>
-     * Mainly used to generate the 3-Digit unique branch codes.
+     * This field stores the <code>Bank</code> operating the branch.<br><br>
+     * Not saved with the branch, as it is restored by the bank when read from a file.
      */
-    private final Random rand = new Random();
+    private transient volatile Bank bank;
 
     /**
      * Default Constructor.<br><br>
      * Generates a 3-Digit unique ID used to distinguish between other <code>Branch</code>
-     * objects. This ID is generated using the <code>Random</code> class.<br><br>
+     * objects. This ID is generated using the shared <code>IdGenerator</code>.<br><br>
+     * As the code is drawn at random rather than allocated by a bank, it may collide with the code of another
+     * branch created on its own. Only branches created through <code>Bank.createBranch(String, Address)</code>
+     * are given a code which no other branch of their bank holds.<br><br>
      * The recommended input for the address is as follows:
      * <br>
      * <blockquote>Street,City,State,Zip</blockquote>
@@ -66,14 +108,13 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
      * @param branchName    the branch's name as a <code>String</code>
      * @param branchAddress the branch's address as a <code>String</code>
      *
-     * @see Random
+     * @see IdGenerator
      */
     public Branch(String branchName, String branchAddress) {
         this.branchName = branchName;
         this.branchAddress = new Address(branchAddress);
-        this.CUSTOMERS = new LinkedHashMap<>();
-        this.BRANCH_CODE = rand.nextInt(900) + 100;
-        this.numberOfCustomers = 0;
+        this.CUSTOMERS = new StripedSnapshotMap<>(STRIPES);
+        this.BRANCH_CODE = IdGenerator.branchCode();
     }
 
     /**
@@ -86,9 +127,41 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
     public Branch(String branchName, Address branchAddress) {
         this.branchName = branchName;
         this.branchAddress = branchAddress;
-        this.CUSTOMERS = new LinkedHashMap<>();
-        this.BRANCH_CODE = rand.nextInt(900) + 100;
-        this.numberOfCustomers = 0;
+        this.CUSTOMERS = new StripedSnapshotMap<>(STRIPES);
+        this.BRANCH_CODE = IdGenerator.branchCode();
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * This constructor allows the 3-Digit <code>BRANCH_CODE</code> to be given, rather than
+     * generated. Mainly used to restore branches which have been previously saved.
+     *
+     * @param branchCode    the 3-Digit branch code as an <code>Integer</code>
+     * @param branchName    the branch's name
+     * @param branchAddress the branch's address
+     */
+    public Branch(int branchCode, String branchName, Address branchAddress) {
+        this.branchName = branchName;
+        this.branchAddress = branchAddress;
+        this.CUSTOMERS = new StripedSnapshotMap<>(STRIPES);
+        this.BRANCH_CODE = branchCode;
+    }
+
+    /**
+     * Private Constructor. Used to restore a branch read by Java serialization, copying its customers to a
+     * <code>StripedSnapshotMap</code>.
+     *
+     * @param branch the branch as it was read
+     */
+    private Branch(Branch branch) {
+        this.branchName = branch.branchName;
+        this.branchAddress = branch.branchAddress;
+        this.CUSTOMERS = new StripedSnapshotMap<>(branch.CUSTOMERS, STRIPES);
+        this.BRANCH_CODE = branch.BRANCH_CODE;
+        for (Customer customer : this) {
+            ids.reserve(customer.getKey());
+            customer.setBranch(this);
+        }
     }
 
     /**
@@ -107,6 +180,11 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
      */
     public void setBranchName(String branchName) {
         this.branchName = branchName;
+        markDirty();
+        MutationListener listener = listener();
+        if (listener != null) {
+            listener.branchUpdated(this);
+        }
     }
 
     /**
@@ -136,6 +214,11 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
      */
     public void setAddress(Address branchAddress) {
         this.branchAddress = branchAddress;
+        markDirty();
+        MutationListener listener = listener();
+        if (listener != null) {
+            listener.branchUpdated(this);
+        }
     }
 
     /**
@@ -153,7 +236,37 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
      * @return a value for the number of customers as an <code>Integer</code>
      */
     public int getNumberOfCustomers() {
-        return numberOfCustomers;
+        return CUSTOMERS.size();
+    }
+
+    /**
+     * Retrieves every customer registered at the branch, in the order they were registered, as they are
+     * right now.<br><br>
+     * Takes time proportional to the number of stripes, however many customers there are. The map is
+     * immutable, and is unaffected by customers added or removed afterwards.
+     *
+     * @return an immutable <code>Map</code> of the customers, using the customer IDs as the key
+     */
+    public Map<Integer, Customer> getCustomers() {
+        return ((StripedSnapshotMap<Integer, Customer>) CUSTOMERS).snapshot();
+    }
+
+    /**
+     * Retrieves the <code>Bank</code> operating the branch.
+     *
+     * @return the <code>Bank</code>, or <code>null</code> if the branch has not been created by a bank
+     */
+    public Bank getBank() {
+        return bank;
+    }
+
+    /**
+     * Sets the <code>Bank</code> operating the branch.
+     *
+     * @param bank the <code>Bank</code>
+     */
+    void setBank(Bank bank) {
+        this.bank = bank;
     }
 
     /**
@@ -178,26 +291,97 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
     /**
      * Overloaded Method. Adds a new customer to be registered at the branch.<br><br>
      * This method accepts an <code>Address</code> object to set the customer's address
-     * instead of a <code>String</code>.
+     * instead of a <code>String</code>.<br><br>
+     * The customer ID is given out by the <code>StripedIdAllocator</code> of the branch, so it is never
+     * already in use, and the account opened for the customer is numbered by the <code>AccountNumbers</code>
+     * of the bank, if any.
      *
      * @param customerName    the customer's name as a <code>String</code>
      * @param customerAddress the customer' address as a <code>String</code>
      * @return <code>true</code> if the new customer has been added to the database.
      * Otherwise, it will return <code>false</code>.
+     * @throws IllegalStateException if every 5-Digit customer ID is already in use
      *
      * @see Customer
      */
     public boolean addCustomer(String customerName, Address customerAddress) {
-        Customer customer = new Customer(customerName, customerAddress);
-        while (true) {
-            if (CUSTOMERS.containsKey(customer.getKey())) {
-                customer = new Customer(customerName, customerAddress);
-            } else {
-                break;
+        Customer customer = new Customer(ids.allocate(), customerName, customerAddress);
+        customer.openAccount(accountNumbers());
+        customer.setBranch(this);
+        long ticket = ticket();
+        CUSTOMERS.put(customer.getKey(), customer);
+        notifyAdded(customer, ticket);
+        return true;
+    }
+
+    /**
+     * Overloaded Method. Registers an existing <code>Customer</code> object at the branch.<br><br>
+     * Mainly used to restore customers which have been previously saved.
+     *
+     * @param customer the <code>Customer</code> to be registered
+     * @return <code>true</code> if the customer has been added to the database. Otherwise, if a customer
+     * with the same customer ID is already registered, it will return <code>false</code>.
+     */
+    public boolean addCustomer(Customer customer) {
+        return register(customer);
+    }
+
+    /**
+     * A helper method to store a new <code>Customer</code> in the <code>CUSTOMERS</code> map, unless its
+     * customer ID is already in use.
+     *
+     * @param customer the <code>Customer</code> to be stored
+     * @return <code>true</code> if the customer has been stored. Otherwise, it will return <code>false</code>.
+     */
+    private boolean register(Customer customer) {
+        if (!ids.reserve(customer.getKey())) {
+            return false;
+        }
+        Branch previous = customer.getBranch();
+        customer.setBranch(this);
+        long ticket = ticket();
+        if (CUSTOMERS.putIfAbsent(customer.getKey(), customer) != null) {
+            customer.setBranch(previous);
+            if (ticket >= 0) {
+                Turnstile.CHANGES.pass(ticket, () -> { });
             }
+            return false;
         }
-        numberOfCustomers++;
-        return CUSTOMERS.put(customer.getKey(), customer) == null;
+        notifyAdded(customer, ticket);
+        return true;
+    }
+
+    /**
+     * A helper method to take a ticket from the <code>Turnstile</code> for a newly-added customer, should
+     * there be a <code>MutationListener</code> to be told of it.<br><br>
+     * Must be called before the customer is stored, so that any change made to the customer once it can be
+     * found at the branch is told after it has been added.
+     *
+     * @return the ticket as a <code>Long</code>, or negative one (-1) if there is no listener
+     */
+    private long ticket() {
+        return listener() == null ? -1 : Turnstile.CHANGES.ticket();
+    }
+
+    /**
+     * A helper method to mark the branch as changed, and notify the <code>MutationListener</code> of a
+     * newly-added customer, in the order of its ticket.
+     *
+     * @param customer the newly-added <code>Customer</code>
+     * @param ticket   the ticket taken before storing the customer, or negative one (-1) if there was no
+     *                 listener
+     */
+    private void notifyAdded(Customer customer, long ticket) {
+        markDirty();
+        if (ticket < 0) {
+            return;
+        }
+        MutationListener listener = listener();
+        Turnstile.CHANGES.pass(ticket, () -> {
+            if (listener != null) {
+                listener.customerAdded(this, customer);
+            }
+        });
     }
 
     /**
@@ -213,8 +397,14 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
      * @see Customer
      */
     public boolean removeCustomer(int customerId) {
-        if (CUSTOMERS.remove(customerId) != null) {
-            numberOfCustomers--;
+        Customer customer = CUSTOMERS.remove(customerId);
+        if (customer != null) {
+            ids.release(customerId);
+            markDirty();
+            MutationListener listener = listener();
+            if (listener != null) {
+                listener.customerRemoved(this, customer);
+            }
             return true;
         }
         return false;
@@ -231,6 +421,60 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
         return CUSTOMERS.get(customerId);
     }
 
+    /**
+     * Marks the bank operating this branch as changed since it was last saved.
+     */
+    void markDirty() {
+        if (bank != null) {
+            bank.markDirty();
+        }
+    }
+
+    /**
+     * Retrieves the <code>MutationListener</code> of the bank operating this branch.
+     *
+     * @return the listener, or <code>null</code> if there is none
+     */
+    MutationListener listener() {
+        return bank == null ? null : bank.getMutationListener();
+    }
+
+    /**
+     * Retrieves the <code>AccountNumbers</code> of the bank operating this branch.
+     *
+     * @return the allocator, or <code>null</code> if there is none
+     */
+    AccountNumbers accountNumbers() {
+        return bank == null ? null : bank.getAccountNumbers();
+    }
+
+    /**
+     * Saves the branch to an object stream, along with the number of customers.
+     *
+     * @param output the stream the branch is written to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        Map<Integer, Customer> customers = getCustomers();
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("branchName", branchName);
+        fields.put("branchAddress", branchAddress);
+        fields.put("BRANCH_CODE", BRANCH_CODE);
+        fields.put("CUSTOMERS", customers);
+        fields.put("numberOfCustomers", customers.size());
+        output.writeFields();
+    }
+
+    /**
+     * Replaces the branch read from an object stream with one whose customers are kept in a
+     * <code>StripedSnapshotMap</code>, re-linking the customers to their branch.
+     *
+     * @return the restored <code>Branch</code>
+     */
+    private Object readResolve() {
+        return new Branch(this);
+    }
+
     /**
      * Compares two <code>Branch</code> objects.<br><br>
      * Uses the <code>BRANCH_CODE</code> field to compare if the other branch <code>o</code>
@@ -270,11 +514,12 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
         StringBuilder s = new StringBuilder(branchName + " [" + BRANCH_CODE + "]");
         s.append("\n\t").append(branchAddress.toString());
         s.append("\n\t").append("Customers:");
-        if (numberOfCustomers == 0) {
+        Map<Integer, Customer> customers = getCustomers();
+        if (customers.isEmpty()) {
             s.append("\n\t\t").append("- No customers found -");
         } else {
-            for (Customer customers : this) {
-                s.append("\n\t\t").append(customers.simplifiedString());
+            for (Customer customer : customers.values()) {
+                s.append("\n\t\t").append(customer.simplifiedString());
             }
         }
         return s.toString();
@@ -303,13 +548,47 @@ public class Branch implements Serialized, Iterable<Customer>, Serializable {
 
     /**
      * Returns an <code>Iterator</code> of type <code>Customer</code> to iterate
-     * through the map of <code>Customer</code>s registered at the branch.
+     * through the map of <code>Customer</code>s registered at the branch, as they were when the iterator
+     * was created.
      *
      * @return an <code>Iterator</code> of type <code>Customer</code>
      */
     @Override
     public Iterator<Customer> iterator() {
-        return CUSTOMERS.values().iterator();
+        return getCustomers().values().iterator();
+    }
+
+    /**
+     * Returns a <code>Spliterator</code> of type <code>Customer</code> over the customers registered at the
+     * branch, as they were when the spliterator was created.<br><br>
+     * The customers are split in half by the order they were registered in. Unless a customer has been
+     * removed since, every part knows its exact size.
+     *
+     * @return a <code>Spliterator</code> of type <code>Customer</code>
+     */
+    @Override
+    public Spliterator<Customer> spliterator() {
+        return getCustomers().values().spliterator();
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> of the customers registered at the branch, as they were when
+     * the stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Customer</code>
+     */
+    public Stream<Customer> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel <code>Stream</code> of the customers registered at the branch, as they were when
+     * the stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Customer</code>
+     */
+    public Stream<Customer> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
     }
 
 }
@@ -0,0 +1,248 @@
+package bank;
+
+/**
+ * This class packs the keys of a bank, branch, customer and account into a single <code>Long</code>, so that
+ * a composite key alone tells where an entity lives, and routes straight to it through the map of every
+ * level.<br><br>
+ * From the highest bit down, a composite key holds:
+ * <ul>
+ *     <li>one (1) unused bit, so that every key is non-negative</li>
+ *     <li>14 bits for the 4-digit bank ID</li>
+ *     <li>10 bits for the 3-digit branch code</li>
+ *     <li>17 bits for the 5-digit customer ID</li>
+ *     <li>22 bits for the tag of the 9-digit account number</li>
+ * </ul>
+ * Every ID is stored as its distance from the lowest ID plus one (1), so that a level left at zero (0) marks
+ * the key of an entity above it: the key of a branch has no customer or account, and so on.<br><br>
+ * A 9-digit account number takes 30 bits, which do not fit next to the other levels, so only a 22-bit tag of
+ * it is kept. The tag is only a routing hint: hundreds of account numbers share every tag, so a key does not
+ * tell which account it was made for. A customer never opens an account whose tag is already held by one of
+ * its accounts, but accounts restored with clashing tags route to none of them, and a key kept after its
+ * account has been closed routes to any later account of the customer with the same tag. Callers holding the
+ * full account number should resolve it along with the key, which checks the number itself.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Serialized
+ * @see data.BankManager#resolveAccount(long, int)
+ */
+public final class CompositeKey {
+
+    /**
+     * The composite key of an entity which does not belong to a bank, or whose IDs are out of range.
+     */
+    public static final long NONE = -1;
+
+    /**
+     * The number of bits of the tag of an account number.
+     */
+    private static final int ACCOUNT_BITS = 22;
+
+    /**
+     * The number of bits of a customer ID.
+     */
+    private static final int CUSTOMER_BITS = 17;
+
+    /**
+     * The number of bits of a branch code.
+     */
+    private static final int BRANCH_BITS = 10;
+
+    /**
+     * The number of bits of a bank ID.
+     */
+    private static final int BANK_BITS = 14;
+
+    /**
+     * The position of the lowest bit of a customer ID.
+     */
+    private static final int CUSTOMER_SHIFT = ACCOUNT_BITS;
+
+    /**
+     * The position of the lowest bit of a branch code.
+     */
+    private static final int BRANCH_SHIFT = CUSTOMER_SHIFT + CUSTOMER_BITS;
+
+    /**
+     * The position of the lowest bit of a bank ID.
+     */
+    private static final int BANK_SHIFT = BRANCH_SHIFT + BRANCH_BITS;
+
+    /**
+     * Private Constructor. This class only holds static methods.
+     */
+    private CompositeKey() {
+    }
+
+    /**
+     * Retrieves the composite key of a bank.
+     *
+     * @param bank the <code>Bank</code>
+     * @return the composite key as a <code>Long</code>, or <code>NONE</code> if the bank ID is out of range
+     */
+    public static long of(Bank bank) {
+        return pack(bank.getBankId(), 1000, 9999, BANK_SHIFT, 0);
+    }
+
+    /**
+     * Retrieves the composite key of a branch.
+     *
+     * @param branch the <code>Branch</code>
+     * @return the composite key as a <code>Long</code>, or <code>NONE</code> if the branch does not belong to
+     * a bank, or either ID is out of range
+     */
+    public static long of(Branch branch) {
+        Bank bank = branch.getBank();
+        return bank == null ? NONE : pack(branch.getBranchCode(), 100, 999, BRANCH_SHIFT, of(bank));
+    }
+
+    /**
+     * Retrieves the composite key of a customer.
+     *
+     * @param customer the <code>Customer</code>
+     * @return the composite key as a <code>Long</code>, or <code>NONE</code> if the customer is not registered
+     * at a branch of a bank, or any ID is out of range
+     */
+    public static long of(Customer customer) {
+        Branch branch = customer.getBranch();
+        return branch == null ? NONE : pack(customer.getCustomerId(), 10000, 99999, CUSTOMER_SHIFT, of(branch));
+    }
+
+    /**
+     * Retrieves the composite key of an account.
+     *
+     * @param account the <code>Account</code>
+     * @return the composite key as a <code>Long</code>, or <code>NONE</code> if the account is not owned by a
+     * customer registered at a branch of a bank, or any ID is out of range
+     */
+    public static long of(Account account) {
+        Customer customer = account.getCustomer();
+        long key = customer == null ? NONE : of(customer);
+        return key == NONE ? NONE : key | tag(account.getAccountNumber());
+    }
+
+    /**
+     * Retrieves the bank ID of a composite key.
+     *
+     * @param key the composite key
+     * @return the 4-digit bank ID as an <code>Integer</code>, or <code>-1</code> if the key holds none
+     */
+    public static int bankId(long key) {
+        return unpack(key, 1000, BANK_SHIFT, BANK_BITS);
+    }
+
+    /**
+     * Retrieves the branch code of a composite key.
+     *
+     * @param key the composite key
+     * @return the 3-digit branch code as an <code>Integer</code>, or <code>-1</code> if the key holds none
+     */
+    public static int branchCode(long key) {
+        return unpack(key, 100, BRANCH_SHIFT, BRANCH_BITS);
+    }
+
+    /**
+     * Retrieves the customer ID of a composite key.
+     *
+     * @param key the composite key
+     * @return the 5-digit customer ID as an <code>Integer</code>, or <code>-1</code> if the key holds none
+     */
+    public static int customerId(long key) {
+        return unpack(key, 10000, CUSTOMER_SHIFT, CUSTOMER_BITS);
+    }
+
+    /**
+     * Retrieves the tag of the account number of a composite key.
+     *
+     * @param key the composite key
+     * @return the tag as an <code>Integer</code>, or zero (0) if the key holds none
+     */
+    public static int accountTag(long key) {
+        return key < 0 ? 0 : (int) (key & ((1L << ACCOUNT_BITS) - 1));
+    }
+
+    /**
+     * Retrieves the tag of an account number, as kept in the composite key of the account.
+     *
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the tag as an <code>Integer</code>, from one (1) up to the largest 22-bit value
+     */
+    public static int tag(int accountNumber) {
+        return Math.floorMod(accountNumber, (1 << ACCOUNT_BITS) - 1) + 1;
+    }
+
+    /**
+     * Retrieves the account of a customer which a composite key routes to.<br><br>
+     * As the key only holds a tag of the account number, the account found is only the open account of the
+     * customer which currently holds the tag, and not necessarily the account the key was made for. Use
+     * <code>account(Customer, long, int)</code> where the account number is known.
+     *
+     * @param customer the <code>Customer</code> the key routes to
+     * @param key      the composite key of the account
+     * @return the only open <code>Account</code> of the customer with the tag of the key, or <code>null</code>
+     * if there is none, or more than one
+     */
+    public static Account account(Customer customer, long key) {
+        int tag = accountTag(key);
+        Account found = null;
+        if (tag != 0) {
+            for (Account account : customer) {
+                if (tag(account.getAccountNumber()) == tag) {
+                    if (found != null) {
+                        return null;
+                    }
+                    found = account;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Overloaded Method. Retrieves the account of a customer which a composite key routes to, checking that it
+     * has the given account number.
+     *
+     * @param customer      the <code>Customer</code> the key routes to
+     * @param key           the composite key of the account
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the open <code>Account</code> of the customer with the given number, or <code>null</code> if not
+     * found, or if the key was not made for an account with that number
+     */
+    public static Account account(Customer customer, long key, int accountNumber) {
+        int tag = accountTag(key);
+        return tag == 0 || tag != tag(accountNumber) ? null : customer.getAccount(accountNumber);
+    }
+
+    /**
+     * A helper method to add a level to the composite key of the entity above it.
+     *
+     * @param id      the ID of the level
+     * @param lowest  the lowest ID of the level
+     * @param highest the highest ID of the level
+     * @param shift   the position of the lowest bit of the level
+     * @param parent  the composite key of the entity above, zero (0) for a bank
+     * @return the composite key as a <code>Long</code>, or <code>NONE</code> if the ID is out of range or the
+     * parent has no key
+     */
+    private static long pack(int id, int lowest, int highest, int shift, long parent) {
+        if (parent == NONE || id < lowest || id > highest) {
+            return NONE;
+        }
+        return parent | (long) (id - lowest + 1) << shift;
+    }
+
+    /**
+     * A helper method to retrieve a level of a composite key.
+     *
+     * @param key    the composite key
+     * @param lowest the lowest ID of the level
+     * @param shift  the position of the lowest bit of the level
+     * @param bits   the number of bits of the level
+     * @return the ID, or <code>-1</code> if the key holds none
+     */
+    private static int unpack(long key, int lowest, int shift, int bits) {
+        int value = key < 0 ? 0 : (int) (key >>> shift & ((1L << bits) - 1));
+        return value == 0 ? -1 : value + lowest - 1;
+    }
+
+}
@@ -2,10 +2,21 @@ package bank;
 
 import utility.Address;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents a customer.<br><br>
@@ -14,7 +25,15 @@ import java.util.Random;
  * the power to open new accounts or close existing ones. A customer is limited to a maximum
  * of only <b>five (5)</b> accounts open simultaneously.<br><br>
  * <code>Customer</code> objects are provided with a 5-Digit unique ID called <code>CUSTOMER_ID</code>
- * at instantiation. This value is final and cannot be mutated.
+ * at instantiation. This value is final and cannot be mutated.<br><br>
+ * Changes to the customer's details and accounts are made while holding the write lock of a
+ * <code>StampedLock</code>. Reads never take the lock at first: they read optimistically, and only read
+ * again under the read lock should a change have been made meanwhile. As most calls only read a customer,
+ * readers and writers rarely wait on each other.<br><br>
+ * Every change takes a ticket from the <code>Turnstile</code> as the last thing it does under the write lock,
+ * and tells the <code>MutationListener</code> of the bank once the lock has been released, in the order of
+ * its ticket. An account is therefore always journaled as opened before any change made to it, even though
+ * the listener is told after the lock has been released.
  *
  * @author Samuel A. Kosasih
  *
@@ -23,15 +42,17 @@ import java.util.Random;
  */
 public class Customer implements Serialized, Iterable<Account>, Serializable {
 
+    private static final long serialVersionUID = -5428931303792068666L;
+
     /**
      * This field stores the name of the customer as a <code>String</code>.
      */
-    private String name;
+    private volatile String name;
 
     /**
      * This field stores the address of the customer as an <code>Address</code> object.
      */
-    private Address address;
+    private volatile Address address;
 
     /**
      * This field stores the 5-Digit unique customer ID as an <code>Integer</code>.
@@ -47,12 +68,29 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
     /**
      * This field stores the number of accounts, which are still open, as an <code>Integer</code>.
      */
-    private int numberOfAccounts;
+    private volatile int numberOfAccounts;
+
+    /**
+     * This field stores the <code>Branch</code> the customer is registered at.<br><br>
+     * Not saved with the customer, as it is restored by the branch when read from a file.
+     */
+    private transient volatile Branch branch;
+
+    /**
+     * This field stores the <code>StampedLock</code> guarding the details and accounts of the customer.<br><br>
+     * Not saved with the customer, as a new lock is created when read from a file.
+     */
+    private transient StampedLock lock = new StampedLock();
 
     /**
      * Default Constructor.<br><br>
      * Generates a 5-Digit unique ID used to distinguish between other <code>Customer</code>
-     * objects. This ID is generated using the <code>Random</code> class.<br><br>
+     * objects. This ID is generated using the shared <code>IdGenerator</code>.<br><br>
+     * As the customer belongs to no branch yet, its ID and the number of the account opened for it are drawn
+     * at random rather than allocated. The ID may already be in use at the branch the customer is later
+     * registered at, in which case <code>Branch.addCustomer(Customer)</code> refuses it, and the account
+     * number may already be held by another customer's account. Customers added through
+     * <code>Branch.addCustomer(String, Address)</code> never collide.<br><br>
      * The recommended input for the address is as follows:
      * <br>
      * <blockquote>Street,City,State,Zip</blockquote>
@@ -62,15 +100,14 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      * @param name    the customer's name as a <code>String</code>
      * @param address the customer's address as a <code>String</code>
      *
-     * @see Random
+     * @see IdGenerator
      */
     public Customer(String name, String address) {
         this.name = name;
         this.address = new Address(address);
         ACCOUNTS = new Account[5];
         numberOfAccounts = 0;
-        Random rand = new Random();
-        this.CUSTOMER_ID = rand.nextInt(90000) + 10000;
+        this.CUSTOMER_ID = IdGenerator.customerId();
         openAccount();
     }
 
@@ -86,11 +123,28 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
         this.address = address;
         ACCOUNTS = new Account[5];
         numberOfAccounts = 0;
-        Random rand = new Random();
-        this.CUSTOMER_ID = rand.nextInt(90000) + 10000;
+        this.CUSTOMER_ID = IdGenerator.customerId();
         openAccount();
     }
 
+    /**
+     * Overloaded Constructor. <br><br>
+     * This constructor allows the 5-Digit <code>CUSTOMER_ID</code> to be given, rather than
+     * generated. Mainly used to restore customers which have been previously saved.<br><br>
+     * Unlike the other constructors, no account is opened for the customer.
+     *
+     * @param customerId the 5-Digit customer ID as an <code>Integer</code>
+     * @param name       the customer's name
+     * @param address    the customer's address
+     */
+    public Customer(int customerId, String name, Address address) {
+        this.name = name;
+        this.address = address;
+        ACCOUNTS = new Account[5];
+        numberOfAccounts = 0;
+        this.CUSTOMER_ID = customerId;
+    }
+
     /**
      * Retrieves the customer's name.
      *
@@ -106,7 +160,15 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      * @param customerName the new given name as a <code>String</code>
      */
     public void setName(String customerName) {
-        this.name = customerName;
+        long ticket;
+        long stamp = lock.writeLock();
+        try {
+            this.name = customerName;
+            ticket = ticket();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changed(ticket, listener -> listener.customerUpdated(this));
     }
 
     /**
@@ -135,7 +197,15 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      * @param customerAddress the new address as an <code>Address</code>.
      */
     public void setAddress(Address customerAddress) {
-        this.address = customerAddress;
+        long ticket;
+        long stamp = lock.writeLock();
+        try {
+            this.address = customerAddress;
+            ticket = ticket();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changed(ticket, listener -> listener.customerUpdated(this));
     }
 
     /**
@@ -147,6 +217,18 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
         return numberOfAccounts;
     }
 
+    /**
+     * Retrieves every account which is currently open, in the order they were opened.<br><br>
+     * Unlike <code>getNumberOfAccounts()</code> followed by iterating over the customer, the accounts are
+     * read at once, so their number always matches the accounts themselves.
+     *
+     * @return an unmodifiable <code>List</code> of the open accounts, unaffected by accounts opened or
+     * closed afterwards
+     */
+    public List<Account> getAccounts() {
+        return Collections.unmodifiableList(Arrays.asList(accounts()));
+    }
+
     /**
      * Retrieves the 5-Digit <code>CUSTOMER_ID</code>.
      *
@@ -156,27 +238,130 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
         return this.CUSTOMER_ID;
     }
 
+    /**
+     * Retrieves the <code>Branch</code> the customer is registered at.
+     *
+     * @return the <code>Branch</code>, or <code>null</code> if the customer has not been
+     * registered at a branch
+     */
+    public Branch getBranch() {
+        return branch;
+    }
+
+    /**
+     * Sets the <code>Branch</code> the customer is registered at.
+     *
+     * @param branch the <code>Branch</code>
+     */
+    void setBranch(Branch branch) {
+        this.branch = branch;
+    }
+
     /**
      * Creates a new account with a unique 9-Digit account number. <br><br>
      * The new <code>Account</code> object will then be stored in the accounts database, incrementing
      * the number of accounts owned by the customer.<br><br>
-     * Customers are limited to a possession of only five (5) different accounts.
+     * Customers are limited to a possession of only five (5) different accounts.<br><br>
+     * The account number is given out by the <code>AccountNumbers</code> of the bank the customer belongs
+     * to, so no other account at any of the banks it numbers holds it. A customer which does not belong to
+     * such a bank draws its account numbers from the shared <code>IdGenerator</code>, which only keeps them
+     * unique within the customer.
      *
      * @return the newly-generated <code>Account</code> object
+     *
+     * @see AccountNumbers
      */
     public Account openAccount() {
-        if (numberOfAccounts < 5) {
-            Account a;
-            do {
-                a = new Account();
-            } while (contains(a.getKey()));
-            ACCOUNTS[numberOfAccounts] = a;
-            numberOfAccounts++;
-            return a;
+        return openAccount(accountNumbers());
+    }
+
+    /**
+     * Overloaded Method. Creates a new account numbered by the given <code>AccountNumbers</code>.<br><br>
+     * The number is allocated before the write lock is taken, as the allocator may have to read other
+     * customers first, and is released again should the customer have no room left for the account.
+     *
+     * @param numbers the <code>AccountNumbers</code>, or <code>null</code> to draw the account number from
+     *                the shared <code>IdGenerator</code>
+     * @return the newly-generated <code>Account</code> object, or <code>null</code> if the customer already
+     * has the maximum number of accounts
+     */
+    Account openAccount(AccountNumbers numbers) {
+        while (numberOfAccounts < 5) {
+            Account account = new Account(numbers == null ? IdGenerator.accountNumber() : numbers.allocate());
+            boolean stored = false;
+            long ticket = -1;
+            long stamp = lock.writeLock();
+            try {
+                if (numberOfAccounts >= 5) {
+                    break;
+                }
+                if (!clashes(account.getKey())) {
+                    store(account);
+                    stored = true;
+                    ticket = ticket();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+                if (!stored && numbers != null) {
+                    numbers.release(account.getKey());
+                }
+            }
+            if (stored) {
+                return opened(account, ticket);
+            }
         }
         return null;
     }
 
+    /**
+     * Overloaded Method. Opens an account with the given 9-Digit account number.<br><br>
+     * Mainly used to restore accounts which have been previously saved.
+     *
+     * @param accountNumber the 9-Digit account number as an <code>Integer</code>
+     * @return the newly-opened <code>Account</code> object, or <code>null</code> if the customer already
+     * has the maximum number of accounts, or an account with the same number
+     */
+    public Account openAccount(int accountNumber) {
+        Account account = new Account(accountNumber);
+        long ticket;
+        long stamp = lock.writeLock();
+        try {
+            if (numberOfAccounts >= 5 || find(accountNumber) != null) {
+                return null;
+            }
+            store(account);
+            ticket = ticket();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return opened(account, ticket);
+    }
+
+    /**
+     * A helper method to store a newly-opened <code>Account</code> in the <code>ACCOUNTS</code> array.<br><br>
+     * Must only be called while holding the write lock.
+     *
+     * @param account the <code>Account</code> to be stored
+     */
+    private void store(Account account) {
+        account.setCustomer(this);
+        ACCOUNTS[numberOfAccounts] = account;
+        numberOfAccounts++;
+    }
+
+    /**
+     * A helper method to mark the customer as changed, and notify the <code>MutationListener</code> of a
+     * newly-opened account, once the write lock has been released.
+     *
+     * @param account the newly-opened <code>Account</code>
+     * @param ticket  the ticket taken while storing the account, or negative one (-1) if there was no listener
+     * @return the newly-opened <code>Account</code>
+     */
+    private Account opened(Account account, long ticket) {
+        changed(ticket, listener -> listener.accountOpened(this, account));
+        return account;
+    }
+
     /**
      * Closes the account and removes it from the database.<br><br>
      * Closing an account is only allowed when <b>the account balance is zero (0)</b>.
@@ -187,28 +372,29 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      */
     public boolean closeAccount(Account account) {
         Account a = null;
-        int index = -1;
-        for (int i = 0; i < numberOfAccounts; i++) {
-            if (ACCOUNTS[i].equals(account)) {
-                a = ACCOUNTS[i];
-                index = i;
-                break;
+        long ticket;
+        long stamp = lock.writeLock();
+        try {
+            int index = -1;
+            for (int i = 0; i < numberOfAccounts; i++) {
+                if (ACCOUNTS[i].equals(account)) {
+                    a = ACCOUNTS[i];
+                    index = i;
+                    break;
+                }
             }
-        }
-        if (a == null) {
-            return false;
-        }
-        if (a.getBalance() != 0) {
-            return false;
-        }
-        if (index == 4) {
-            ACCOUNTS[4] = null;
-        } else {
-            if (numberOfAccounts - index >= 0) {
-                System.arraycopy(ACCOUNTS, index + 1, ACCOUNTS, index, numberOfAccounts - index);
+            if (a == null || a.getCents() != 0) {
+                return false;
             }
+            System.arraycopy(ACCOUNTS, index + 1, ACCOUNTS, index, numberOfAccounts - index - 1);
+            ACCOUNTS[numberOfAccounts - 1] = null;
+            numberOfAccounts--;
+            ticket = ticket();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        numberOfAccounts--;
+        Account closed = a;
+        changed(ticket, listener -> listener.accountClosed(this, closed));
         return true;
     }
 
@@ -220,39 +406,153 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      * if not found
      */
     public Account getAccount(int accountNumber) {
-        if (Integer.toString(accountNumber).length() == 9) {
-            for (Account a : ACCOUNTS) {
-                if (a.getAccountNumber() == accountNumber) {
-                    return a;
-                }
+        if (accountNumber < 100000000 || accountNumber > 999999999) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Account account = find(accountNumber);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                account = find(accountNumber);
+            } finally {
+                lock.unlockRead(stamp);
             }
         }
-        return null;
+        return account;
     }
 
     /**
-     * A helper method to check if an <code>Account</code> with a matching
-     * <code>ACCOUNT_NUMBER</code> exists in the <code>ACCOUNTS</code> array.
+     * A helper method to find the open <code>Account</code> with the given account number.<br><br>
+     * Safe to call during an optimistic read, as it never fails on a changing array. Its result must then
+     * be validated before it is used.
      *
-     * @param key the <code>ACCOUNT_NUMBER</code> to be compared for its existence
-     * @return <code>true</code> if an <code>Account</code> is already using the
-     * the <code>ACCOUNT_NUMBER</code> specified in <code>key</code>. Otherwise,
-     * it will return <code>false</code>.
+     * @param accountNumber the account number as an <code>Integer</code>
+     * @return the <code>Account</code>, or <code>null</code> if not found
      */
-    private boolean contains(int key) {
-        if (numberOfAccounts == 0) {
-            return false;
+    private Account find(int accountNumber) {
+        for (int i = 0, n = Math.min(numberOfAccounts, ACCOUNTS.length); i < n; i++) {
+            Account account = ACCOUNTS[i];
+            if (account != null && account.getAccountNumber() == accountNumber) {
+                return account;
+            }
         }
-        for (Account acc : ACCOUNTS) {
-            if (acc != null) {
-                if (acc.getKey() == key) {
-                    return true;
-                }
+        return null;
+    }
+
+    /**
+     * A helper method to determine whether an open account has the same <code>CompositeKey</code> tag as the
+     * given account number, which it always has if it has the same number.<br><br>
+     * Must only be called while holding the write lock.
+     *
+     * @param accountNumber the account number as an <code>Integer</code>
+     * @return <code>true</code> if an open account has the same tag. Otherwise, it will return
+     * <code>false</code>.
+     */
+    private boolean clashes(int accountNumber) {
+        int tag = CompositeKey.tag(accountNumber);
+        for (int i = 0; i < numberOfAccounts; i++) {
+            if (CompositeKey.tag(ACCOUNTS[i].getAccountNumber()) == tag) {
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * A helper method to copy the open accounts of the customer, reading optimistically first.
+     *
+     * @return the open accounts, in the order they were opened
+     */
+    private Account[] accounts() {
+        long stamp = lock.tryOptimisticRead();
+        Account[] accounts = Arrays.copyOf(ACCOUNTS, Math.min(numberOfAccounts, ACCOUNTS.length));
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                accounts = Arrays.copyOf(ACCOUNTS, numberOfAccounts);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Marks the bank this customer belongs to as changed since it was last saved.
+     */
+    void markDirty() {
+        if (branch != null) {
+            branch.markDirty();
+        }
+    }
+
+    /**
+     * Retrieves the <code>MutationListener</code> of the bank this customer belongs to.
+     *
+     * @return the listener, or <code>null</code> if there is none
+     */
+    MutationListener listener() {
+        return branch == null ? null : branch.listener();
+    }
+
+    /**
+     * A helper method to take a ticket from the <code>Turnstile</code> for a change, should there be a
+     * <code>MutationListener</code> to be told of it.<br><br>
+     * Must only be called while holding the write lock, as the last thing done under it.
+     *
+     * @return the ticket as a <code>Long</code>, or negative one (-1) if there is no listener
+     */
+    private long ticket() {
+        return listener() == null ? -1 : Turnstile.CHANGES.ticket();
+    }
+
+    /**
+     * A helper method to mark the customer as changed, and tell the <code>MutationListener</code> of the
+     * change in the order of its ticket.<br><br>
+     * Must only be called once the write lock has been released.
+     *
+     * @param ticket       the ticket taken for the change, or negative one (-1) if there was no listener
+     * @param notification tells the listener of the change
+     */
+    private void changed(long ticket, Consumer<MutationListener> notification) {
+        markDirty();
+        if (ticket < 0) {
+            return;
+        }
+        MutationListener listener = listener();
+        Turnstile.CHANGES.pass(ticket, () -> {
+            if (listener != null) {
+                notification.accept(listener);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the <code>AccountNumbers</code> of the bank the customer belongs to.
+     *
+     * @return the allocator, or <code>null</code> if there is none
+     */
+    private AccountNumbers accountNumbers() {
+        Branch branch = this.branch;
+        return branch == null ? null : branch.accountNumbers();
+    }
+
+    /**
+     * Restores the customer from an object stream, re-linking the accounts to their owner.
+     *
+     * @param input the stream the customer is read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        lock = new StampedLock();
+        for (Account account : this) {
+            account.setCustomer(this);
+        }
+    }
+
     /**
      * Compares two <code>Customer</code> objects.<br><br>
      * Uses the <code>CUSTOMER_ID</code> field to compare if the other customer <code>o</code>
@@ -291,13 +591,12 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
     public String toString() {
         StringBuilder s = new StringBuilder(name + " (" + CUSTOMER_ID + ")");
         s.append("\n").append(address.toString());
-        if (numberOfAccounts == 0) {
+        Account[] accounts = accounts();
+        if (accounts.length == 0) {
             s.append("\n\t").append("No accounts open");
         } else {
-            for (Account account : ACCOUNTS) {
-                if (account != null) {
-                    s.append("\n\t").append(account.toString());
-                }
+            for (Account account : accounts) {
+                s.append("\n\t").append(account.toString());
             }
         }
         return s.toString();
@@ -332,15 +631,53 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
      */
     @Override
     public Iterator<Account> iterator() {
-        return new AccountIterator();
+        return new AccountIterator(accounts());
+    }
+
+    /**
+     * Returns a <code>Spliterator</code> of type <code>Account</code> over a copy of the
+     * <code>ACCOUNTS</code> array taken when the spliterator was created, which splits evenly and knows the
+     * exact size of every part.
+     *
+     * @return a <code>Spliterator</code> of type <code>Account</code>
+     */
+    @Override
+    public Spliterator<Account> spliterator() {
+        return Spliterators.spliterator(accounts(), Spliterator.ORDERED | Spliterator.DISTINCT
+                | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> of the accounts owned by the customer, as they were when the
+     * stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Account</code>
+     */
+    public Stream<Account> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel <code>Stream</code> of the accounts owned by the customer, as they were when the
+     * stream was created.
+     *
+     * @return a <code>Stream</code> of type <code>Account</code>
+     */
+    public Stream<Account> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
     }
 
     /**
      * This private inner class outlines the methods for an <code>Iterator</code> of type
      * <code>Account</code> to iterate through the array of <code>Account</code>s, specifically
-     * the <code>ACCOUNTS</code> array.
+     * a copy of the <code>ACCOUNTS</code> array taken when the iterator was created.
      */
-    private class AccountIterator implements Iterator<Account> {
+    private static class AccountIterator implements Iterator<Account> {
+
+        /**
+         * This field stores the copy of the open accounts being iterated through.
+         */
+        private final Account[] accounts;
 
         /**
          * This field stores the location of the cursor as an <code>Integer</code>.<br><br>
@@ -350,9 +687,12 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
         private int currentIndex;
 
         /**
-         * Default Constructor.
+         * Constructor.
+         *
+         * @param accounts the copy of the open accounts
          */
-        public AccountIterator() {
+        public AccountIterator(Account[] accounts) {
+            this.accounts = accounts;
             currentIndex = 0;
         }
 
@@ -364,7 +704,7 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
          */
         @Override
         public boolean hasNext() {
-            return currentIndex < numberOfAccounts;
+            return currentIndex < accounts.length;
         }
 
         /**
@@ -375,8 +715,11 @@ public class Customer implements Serialized, Iterable<Account>, Serializable {
          */
         @Override
         public Account next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
             currentIndex++;
-            return ACCOUNTS[currentIndex - 1];
+            return accounts[currentIndex - 1];
         }
     }
 
@@ -0,0 +1,67 @@
+package bank;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class generates the random unique IDs used by <code>Bank</code>, <code>Branch</code>,
+ * <code>Customer</code>, and <code>Account</code> objects.<br><br>
+ * A single generator is shared by every object, rather than each object holding a <code>Random</code>
+ * object of its own. Uniqueness is still checked by the object storing the new ID.<br><br>
+ * Only used for objects created on their own. Banks, branches and customers created through the
+ * <code>BankManager</code>, bank or branch holding them are given an ID by the <code>IdAllocator</code> of
+ * their container instead, and accounts opened within a bank managed by a <code>BankManager</code> are
+ * given an account number by its <code>AccountNumbers</code>, which keeps them unique across every bank.
+ * IDs drawn here are only checked against the container the object is added to, and account numbers only
+ * against the other accounts of their customer, so they may collide with those of other objects.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Serialized
+ * @see IdAllocator
+ * @see AccountNumbers
+ */
+final class IdGenerator {
+
+    /**
+     * Private Constructor. This class only provides static methods.
+     */
+    private IdGenerator() {
+    }
+
+    /**
+     * Generates a random 4-Digit bank ID.
+     *
+     * @return the bank ID as an <code>Integer</code>
+     */
+    static int bankId() {
+        return ThreadLocalRandom.current().nextInt(1000, 10000);
+    }
+
+    /**
+     * Generates a random 3-Digit branch code.
+     *
+     * @return the branch code as an <code>Integer</code>
+     */
+    static int branchCode() {
+        return ThreadLocalRandom.current().nextInt(100, 1000);
+    }
+
+    /**
+     * Generates a random 5-Digit customer ID.
+     *
+     * @return the customer ID as an <code>Integer</code>
+     */
+    static int customerId() {
+        return ThreadLocalRandom.current().nextInt(10000, 100000);
+    }
+
+    /**
+     * Generates a random 9-Digit account number.
+     *
+     * @return the account number as an <code>Integer</code>
+     */
+    static int accountNumber() {
+        return ThreadLocalRandom.current().nextInt(100000000, 1000000000);
+    }
+
+}
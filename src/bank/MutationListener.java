@@ -0,0 +1,197 @@
+package bank;
+
+/**
+ * This interface classifies classes which wish to be notified of changes made to the bank hierarchy.<br><br>
+ * A listener is registered on a <code>Bank</code> using <code>setMutationListener()</code>, and will
+ * be notified of every change made to the bank, its branches, their customers, and the customers'
+ * accounts. Each method is called <b>after</b> the change has been applied, and only if the change
+ * was successful.<br><br>
+ * Changes to accounts are notified once the lock of the account has been released, one at a time, in the
+ * order they were made. A listener must therefore never change the banks itself, and should take the
+ * balance left by a change from the notification, as the account may have been changed again since.<br><br>
+ * Every method has an empty default implementation, so implementing classes only need to define the
+ * notifications they are interested in.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Bank#setMutationListener(MutationListener)
+ */
+public interface MutationListener {
+
+    /**
+     * Called when a new bank has been created.
+     *
+     * @param bank the newly-created <code>Bank</code>
+     */
+    default void bankCreated(Bank bank) {
+    }
+
+    /**
+     * Called when a bank has been removed.
+     *
+     * @param bank the removed <code>Bank</code>
+     */
+    default void bankRemoved(Bank bank) {
+    }
+
+    /**
+     * Called when a bank which had not been read yet has been removed.<br><br>
+     * The bank is removed without reading it, so only its bank ID is known. None of its branches, customers
+     * or accounts have been read either.
+     *
+     * @param bankId the 4-Digit bank ID of the removed bank
+     */
+    default void bankRemoved(int bankId) {
+    }
+
+    /**
+     * Called when the details (name) of a bank have been edited.
+     *
+     * @param bank the edited <code>Bank</code>
+     */
+    default void bankUpdated(Bank bank) {
+    }
+
+    /**
+     * Called when a new branch has been created under a bank.
+     *
+     * @param bank   the <code>Bank</code> operating the branch
+     * @param branch the newly-created <code>Branch</code>
+     */
+    default void branchCreated(Bank bank, Branch branch) {
+    }
+
+    /**
+     * Called when the details (name or address) of a branch have been edited.
+     *
+     * @param branch the edited <code>Branch</code>
+     */
+    default void branchUpdated(Branch branch) {
+    }
+
+    /**
+     * Called when a branch has been removed from a bank.
+     *
+     * @param bank   the <code>Bank</code> which used to operate the branch
+     * @param branch the removed <code>Branch</code>
+     */
+    default void branchRemoved(Bank bank, Branch branch) {
+    }
+
+    /**
+     * Called when a new customer has been registered at a branch, along with the accounts
+     * opened with the customer.
+     *
+     * @param branch   the <code>Branch</code> the customer is registered at
+     * @param customer the newly-added <code>Customer</code>
+     */
+    default void customerAdded(Branch branch, Customer customer) {
+    }
+
+    /**
+     * Called when the details (name or address) of a customer have been edited.
+     *
+     * @param customer the edited <code>Customer</code>
+     */
+    default void customerUpdated(Customer customer) {
+    }
+
+    /**
+     * Called when a customer has been removed from a branch.
+     *
+     * @param branch   the <code>Branch</code> the customer used to be registered at
+     * @param customer the removed <code>Customer</code>
+     */
+    default void customerRemoved(Branch branch, Customer customer) {
+    }
+
+    /**
+     * Called when a customer has opened a new account.
+     *
+     * @param customer the <code>Customer</code> owning the account
+     * @param account  the newly-opened <code>Account</code>
+     */
+    default void accountOpened(Customer customer, Account account) {
+    }
+
+    /**
+     * Called when a customer has closed one of their accounts.
+     *
+     * @param customer the <code>Customer</code> who used to own the account
+     * @param account  the closed <code>Account</code>
+     */
+    default void accountClosed(Customer customer, Account account) {
+    }
+
+    /**
+     * Called when funds have been deposited into an account.
+     *
+     * @param account the <code>Account</code> receiving the funds
+     * @param amount  the amount deposited as a <code>Double</code>
+     */
+    default void deposited(Account account, double amount) {
+    }
+
+    /**
+     * Called when funds have been deposited into an account, along with the balance the deposit left it
+     * with.<br><br>
+     * The account may have been changed again by the time this is called, so the balance should be taken
+     * from <code>cents</code> rather than from the account. Calls <code>deposited(account, amount)</code> by
+     * default.
+     *
+     * @param account the <code>Account</code> receiving the funds
+     * @param amount  the amount deposited as a <code>Double</code>
+     * @param cents   the balance the deposit left the account with, in cents
+     */
+    default void deposited(Account account, double amount, long cents) {
+        deposited(account, amount);
+    }
+
+    /**
+     * Called when funds have been withdrawn from an account.
+     *
+     * @param account the <code>Account</code> the funds were taken from
+     * @param amount  the amount withdrawn as a <code>Double</code>
+     */
+    default void withdrew(Account account, double amount) {
+    }
+
+    /**
+     * Called when funds have been withdrawn from an account, along with the balance the withdrawal left it
+     * with.<br><br>
+     * Calls <code>withdrew(account, amount)</code> by default.
+     *
+     * @param account the <code>Account</code> the funds were taken from
+     * @param amount  the amount withdrawn as a <code>Double</code>
+     * @param cents   the balance the withdrawal left the account with, in cents
+     */
+    default void withdrew(Account account, double amount, long cents) {
+        withdrew(account, amount);
+    }
+
+    /**
+     * Called when funds have been transferred from one account to another.
+     *
+     * @param from   the origin <code>Account</code>
+     * @param to     the recipient <code>Account</code>
+     * @param amount the amount transferred as a <code>Double</code>
+     */
+    default void transferred(Account from, Account to, double amount) {
+    }
+
+    /**
+     * Called when funds have been transferred from one account to another, along with the balances the
+     * transfer left both accounts with.<br><br>
+     * Calls <code>transferred(from, to, amount)</code> by default.
+     *
+     * @param from      the origin <code>Account</code>
+     * @param to        the recipient <code>Account</code>
+     * @param amount    the amount transferred as a <code>Double</code>
+     * @param fromCents the balance the transfer left the origin account with, in cents
+     * @param toCents   the balance the transfer left the recipient account with, in cents
+     */
+    default void transferred(Account from, Account to, double amount, long fromCents, long toCents) {
+        transferred(from, to, amount);
+    }
+
+}
@@ -3,9 +3,12 @@ package bank;
 /**
  * This interface classifies classes which requires a unique identification key.<br><br>
  * This interface only specifies one method, <code>getKey()</code>, in which implementing classes
- * must define using their own respective unique identification <code>Integer</code> key.
+ * must define using their own respective unique identification <code>Integer</code> key.<br><br>
+ * Keys are only unique within the entity above, so a <code>CompositeKey</code> packs the keys of every
+ * level into one, to find an entity from its key alone.
  *
  * @author Samuel Kosasih
+ * @see CompositeKey
  */
 public interface Serialized {
 
@@ -0,0 +1,136 @@
+package bank;
+
+/**
+ * This class allocates the unique IDs of a single namespace which many threads allocate from at once, such as
+ * the customer IDs of a branch which many tellers register customers at.<br><br>
+ * An <code>IdAllocator</code> is locked for every ID allocated, reserved or released, so threads allocating
+ * from it at once all wait for one another. This class instead splits the namespace into stripes, each of
+ * them allocated by its own <code>IdAllocator</code>. An ID falls in the stripe of its lowest bits, the same
+ * stripe a <code>StripedSnapshotMap</code> with as many stripes keeps it in as an <code>Integer</code> key,
+ * so that a thread allocating an ID and storing something under it contends with the same few threads
+ * throughout. Every thread allocates from a stripe of its own first, and only moves on to the next stripe
+ * should it be full, so allocating only fails once every ID of the namespace is in use.<br><br>
+ * IDs outside of the namespace cannot be allocated, though they may still be reserved, so that data saved
+ * with such IDs can be read. They are simply not tracked.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see IdAllocator
+ * @see Branch
+ * @see utility.StripedSnapshotMap
+ */
+public final class StripedIdAllocator {
+
+    /**
+     * This field stores the lowest ID of the namespace.
+     */
+    private final int lowest;
+
+    /**
+     * This field stores the highest ID of the namespace.
+     */
+    private final int highest;
+
+    /**
+     * This field stores the <code>IdAllocator</code> of every stripe, allocating the position of an ID among
+     * the IDs of the stripe. The number of stripes is a power of two.
+     */
+    private final IdAllocator[] stripes;
+
+    /**
+     * This field stores the lowest ID of every stripe.
+     */
+    private final int[] first;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates an allocator of every ID from the lowest to the highest, both included, split into the given
+     * number of stripes, or into fewer should the namespace hold fewer IDs than stripes.
+     *
+     * @param lowest  the lowest ID of the namespace
+     * @param highest the highest ID of the namespace
+     * @param stripes the number of stripes, as a power of two
+     * @throws IllegalArgumentException if the namespace is empty, or the number of stripes is not a power of
+     *                                  two
+     */
+    public StripedIdAllocator(int lowest, int highest, int stripes) {
+        if (highest < lowest) {
+            throw new IllegalArgumentException("Empty namespace from " + lowest + " to " + highest);
+        }
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("The number of stripes is not a power of two: " + stripes);
+        }
+        long size = (long) highest - lowest + 1;
+        while (stripes > size) {
+            stripes >>>= 1;
+        }
+        this.lowest = lowest;
+        this.highest = highest;
+        this.stripes = new IdAllocator[stripes];
+        this.first = new int[stripes];
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            first[stripe] = lowest + ((stripe - lowest) & (stripes - 1));
+            this.stripes[stripe] = new IdAllocator(0, (highest - first[stripe]) / stripes);
+        }
+    }
+
+    /**
+     * Allocates an ID which is not in use, starting from the stripe of the calling thread.
+     *
+     * @return the ID as an <code>Integer</code>
+     * @throws IllegalStateException if every ID of the namespace is already in use
+     */
+    public int allocate() {
+        int mask = stripes.length - 1;
+        int start = Thread.currentThread().hashCode() & mask;
+        for (int i = 0; i <= mask; i++) {
+            int stripe = (start + i) & mask;
+            try {
+                return first[stripe] + stripes[stripe].allocate() * stripes.length;
+            } catch (IllegalStateException full) {
+                // try the next stripe
+            }
+        }
+        throw new IllegalStateException("Every ID from " + lowest + " to " + highest + " is in use");
+    }
+
+    /**
+     * Reserves an ID, such as one read from a file, so that it is never allocated.
+     *
+     * @param id the ID to reserve
+     * @return <code>true</code> if the ID has been reserved, or is outside of the namespace. Otherwise, it will
+     * return <code>false</code>, as the ID is already in use.
+     */
+    public boolean reserve(int id) {
+        if (id < lowest || id > highest) {
+            return true;
+        }
+        int stripe = stripeOf(id);
+        return stripes[stripe].reserve((id - first[stripe]) / stripes.length);
+    }
+
+    /**
+     * Releases an ID, so that it may be allocated again.
+     *
+     * @param id the ID to release
+     * @return <code>true</code> if the ID was in use. Otherwise, it will return <code>false</code>.
+     */
+    public boolean release(int id) {
+        if (id < lowest || id > highest) {
+            return false;
+        }
+        int stripe = stripeOf(id);
+        return stripes[stripe].release((id - first[stripe]) / stripes.length);
+    }
+
+    /**
+     * A helper method to find the stripe an ID of the namespace falls in.
+     *
+     * @param id the ID
+     * @return the stripe as an <code>Integer</code>
+     */
+    private int stripeOf(int id) {
+        return id & (stripes.length - 1);
+    }
+
+}
@@ -0,0 +1,168 @@
+package bank;
+
+import java.util.Objects;
+
+/**
+ * This class represents a single deposit, withdrawal, or transfer of funds, to be applied as part of a
+ * batch by a <code>TransactionEngine</code>.<br><br>
+ * <code>Transaction</code> objects are immutable, and are created through the static methods
+ * <code>deposit()</code>, <code>withdrawal()</code> and <code>transfer()</code>. Applying a transaction
+ * follows the same criteria as the matching <code>Account</code> method.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see TransactionEngine
+ * @see Account
+ */
+public final class Transaction {
+
+    /**
+     * This enum lists the kinds of transactions.
+     */
+    public enum Type {
+        DEPOSIT, WITHDRAWAL, TRANSFER
+    }
+
+    /**
+     * This field stores the kind of transaction as a <code>Type</code>.
+     */
+    private final Type type;
+
+    /**
+     * This field stores the <code>Account</code> funds are deposited to, withdrawn from, or transferred from.
+     */
+    private final Account account;
+
+    /**
+     * This field stores the <code>Account</code> funds are transferred to, or <code>null</code> for a
+     * deposit or withdrawal.
+     */
+    private final Account recipient;
+
+    /**
+     * This field stores the amount of funds as a <code>Double</code>.
+     */
+    private final double amount;
+
+    /**
+     * Private Constructor. Transactions are created through the static methods.
+     *
+     * @param type      the kind of transaction
+     * @param account   the account funds are deposited to, withdrawn from, or transferred from
+     * @param recipient the account funds are transferred to
+     * @param amount    the amount of funds
+     */
+    private Transaction(Type type, Account account, Account recipient, double amount) {
+        this.type = type;
+        this.account = Objects.requireNonNull(account, "account");
+        this.recipient = recipient;
+        this.amount = amount;
+    }
+
+    /**
+     * Creates a deposit of the given amount of funds to an account.
+     *
+     * @param account the <code>Account</code> funds are deposited to
+     * @param amount  the given amount of funds as a <code>Double</code>
+     * @return the <code>Transaction</code>
+     */
+    public static Transaction deposit(Account account, double amount) {
+        return new Transaction(Type.DEPOSIT, account, null, amount);
+    }
+
+    /**
+     * Creates a withdrawal of the desired amount of funds from an account.
+     *
+     * @param account the <code>Account</code> funds are withdrawn from
+     * @param amount  the desired amount of funds as a <code>Double</code>
+     * @return the <code>Transaction</code>
+     */
+    public static Transaction withdrawal(Account account, double amount) {
+        return new Transaction(Type.WITHDRAWAL, account, null, amount);
+    }
+
+    /**
+     * Creates a transfer of the desired amount of funds from one account to another.
+     *
+     * @param from   the origin <code>Account</code>
+     * @param to     the recipient <code>Account</code>
+     * @param amount the desired amount of funds as a <code>Double</code>
+     * @return the <code>Transaction</code>
+     */
+    public static Transaction transfer(Account from, Account to, double amount) {
+        return new Transaction(Type.TRANSFER, from, Objects.requireNonNull(to, "to"), amount);
+    }
+
+    /**
+     * Retrieves the kind of transaction.
+     *
+     * @return the <code>Type</code>
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the account funds are deposited to, withdrawn from, or transferred from.
+     *
+     * @return the <code>Account</code>
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Retrieves the account funds are transferred to.
+     *
+     * @return the recipient <code>Account</code>, or <code>null</code> for a deposit or withdrawal
+     */
+    public Account getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * Retrieves the amount of funds.
+     *
+     * @return the amount as a <code>Double</code>
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Applies the transaction on the calling thread, using the matching <code>Account</code> method.
+     *
+     * @return <code>true</code> if the transaction has been applied. Otherwise, it will return
+     * <code>false</code>.
+     */
+    public boolean apply() {
+        switch (type) {
+            case DEPOSIT:
+                return account.deposit(amount);
+            case WITHDRAWAL:
+                return account.withdraw(amount);
+            default:
+                return account.transfer(recipient, amount);
+        }
+    }
+
+    /**
+     * Provides a <code>String</code> representation of the transaction in the form:
+     * <br>
+     * <blockquote>TRANSFER 123.45 from ######### to #########</blockquote>
+     *
+     * @return the representation of the transaction as a <code>String</code>
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case DEPOSIT:
+                return "DEPOSIT " + amount + " to " + account.getAccountNumber();
+            case WITHDRAWAL:
+                return "WITHDRAWAL " + amount + " from " + account.getAccountNumber();
+            default:
+                return "TRANSFER " + amount + " from " + account.getAccountNumber() + " to "
+                        + recipient.getAccountNumber();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package bank;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class applies batches of deposits, withdrawals, and transfers in parallel.<br><br>
+ * Every account belongs to one of a fixed number of partitions, chosen by its <code>ACCOUNT_NUMBER</code>,
+ * and each partition applies the transactions touching its accounts on a thread of its own, in the order
+ * they were given in the batch. The thread submitting the batch applies one of the partitions itself. With a
+ * single partition, or a single processor for the partitions to take turns on, the batch is applied on the
+ * submitting thread alone, one transaction after another.<br><br>
+ * A transfer between accounts of two different partitions is applied once both partitions have reached it:
+ * the first partition to reach the transfer records its arrival and waits, and the second applies the whole
+ * transfer through <code>Account.transfer()</code>, with both accounts locked, before letting the first go
+ * on. The funds are therefore never withdrawn from one account without being deposited to the other, and
+ * the transfer is journaled as a single record.<br><br>
+ * A partition only ever waits on a transfer which comes earlier in the batch than anything it has yet to
+ * apply, so partitions can never wait on each other in a cycle. As every account sees its transactions in
+ * batch order, the outcome of a batch is always the same as applying its transactions one after another
+ * on a single thread.<br><br>
+ * Transactions follow the same criteria as the matching <code>Account</code> methods, and notify the same
+ * <code>MutationListener</code>.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Transaction
+ * @see Account
+ */
+public class TransactionEngine implements Closeable {
+
+    /**
+     * The states of a transfer between two partitions: reached by neither partition, reached by one of them,
+     * applied (or rejected) by the other, or abandoned by a partition which failed.
+     */
+    private static final int PENDING = 0, ARRIVED = 1, DONE = 2, ABANDONED = 3;
+
+    /**
+     * The number of times a partition checks for a transfer to be applied before giving up its processor,
+     * when there is more than one processor to apply it on.
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+    /**
+     * This field stores the number of partitions as an <code>Integer</code>.
+     */
+    private final int partitions;
+
+    /**
+     * This field stores the <code>ThreadPoolExecutor</code> running one task for every partition but the
+     * first for every batch, or <code>null</code> if batches are applied on the submitting thread alone.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * This field stores whether the engine has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates an engine with one partition for every available processor.
+     */
+    public TransactionEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * Creates an engine with the given number of partitions. No thread is started if there is a single
+     * partition or a single available processor.
+     *
+     * @param partitions the number of partitions, at least one (1)
+     * @throws IllegalArgumentException if <code>partitions</code> is less than one (1)
+     */
+    public TransactionEngine(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is required: " + partitions);
+        }
+        this.partitions = partitions;
+        if (partitions == 1 || Runtime.getRuntime().availableProcessors() == 1) {
+            this.executor = null;
+            return;
+        }
+        this.executor = new ThreadPoolExecutor(partitions - 1, partitions - 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "transactions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Retrieves the number of partitions.
+     *
+     * @return the number of partitions as an <code>Integer</code>
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Applies a batch of transactions, and waits until every one of them has been applied or rejected.<br><br>
+     * Batches submitted from several threads at once are applied one after another.
+     *
+     * @param transactions the batch of <code>Transaction</code>s
+     * @return an array holding, for every transaction in the batch, <code>true</code> if it has been applied,
+     * or <code>false</code> if it has been rejected
+     * @throws IllegalStateException if the engine has been closed, or the thread is interrupted
+     * @throws RuntimeException      if applying a transaction failed, once every partition is done
+     */
+    public synchronized boolean[] submit(List<Transaction> transactions) {
+        if (closed) {
+            throw new IllegalStateException("The engine has been closed");
+        }
+        Transaction[] batch = transactions.toArray(new Transaction[0]);
+        if (executor == null) {
+            boolean[] results = new boolean[batch.length];
+            for (int i = 0; i < batch.length; i++) {
+                results[i] = batch[i].apply();
+            }
+            return results;
+        }
+        Batch work = new Batch(batch);
+        List<Future<?>> futures = new ArrayList<>(partitions - 1);
+        Throwable failure = null;
+        try {
+            for (int p = 1; p < partitions; p++) {
+                int partition = p;
+                futures.add(executor.submit(() -> apply(partition, work)));
+            }
+        } catch (RejectedExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw new IllegalStateException("The engine has been closed", e);
+        }
+        try {
+            apply(0, work);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        return work.results;
+    }
+
+    /**
+     * Stops the threads of the engine once the batch being applied, if any, is done.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A helper method to apply the transactions of one partition, in batch order.<br><br>
+     * Should anything fail, every transfer the partition has yet to apply is recorded as abandoned, whether
+     * the other partition has yet to reach it or is already waiting on it, so that no other partition is left
+     * waiting on a transfer which will never be applied.
+     *
+     * @param partition the partition
+     * @param work      the batch being applied
+     */
+    private static void apply(int partition, Batch work) {
+        int[] queue = work.queues[partition];
+        AtomicIntegerArray transfers = work.transfers;
+        int i = 0;
+        try {
+            for (; i < queue.length; i++) {
+                int position = queue[i];
+                Transaction transaction = work.transactions[position];
+                if (work.recipients[position] < 0 || work.recipients[position] == work.origins[position]) {
+                    work.results[position] = transaction.apply();
+                } else if (transfers.compareAndSet(position, PENDING, ARRIVED)) {
+                    await(transfers, position);
+                } else {
+                    try {
+                        work.results[position] = transfers.get(position) == ARRIVED && transaction.apply();
+                    } finally {
+                        transfers.set(position, DONE);
+                    }
+                }
+            }
+        } finally {
+            for (; i < queue.length; i++) {
+                if (!transfers.compareAndSet(queue[i], PENDING, ABANDONED)) {
+                    transfers.compareAndSet(queue[i], ARRIVED, ABANDONED);
+                }
+            }
+        }
+    }
+
+    /**
+     * A helper method to wait until the other partition has reached a transfer, and applied or abandoned it.
+     * <br><br>
+     * A transfer abandoned by the other partition is skipped, and is left rejected in the results of the
+     * batch. Only a partition whose batch could not be fully submitted is ever interrupted, in which case the
+     * transfer is given up.
+     *
+     * @param transfers the recorded states of transfers between two partitions
+     * @param position  the position of the transfer in the batch
+     */
+    private static void await(AtomicIntegerArray transfers, int position) {
+        int spins = 0;
+        while (true) {
+            int state = transfers.get(position);
+            if (state == DONE || state == ABANDONED) {
+                return;
+            }
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (Thread.interrupted()) {
+                throw new IllegalStateException("Interrupted while waiting for a transfer");
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * A helper method to find the partition an account belongs to.
+     *
+     * @param account    the <code>Account</code>
+     * @param partitions the number of partitions
+     * @return the partition as an <code>Integer</code>
+     */
+    static int partitionOf(Account account, int partitions) {
+        return Math.floorMod(account.getAccountNumber() * 0x9E3779B9, partitions);
+    }
+
+    /**
+     * This private class holds a batch being applied, along with the partitions of its transactions, which
+     * are found once, when the batch is submitted.
+     */
+    private final class Batch {
+
+        /**
+         * This field stores the transactions, in batch order.
+         */
+        private final Transaction[] transactions;
+
+        /**
+         * This field stores the partition of the account of every transaction.
+         */
+        private final int[] origins;
+
+        /**
+         * This field stores the partition of the recipient of every transfer, or negative one (-1) for
+         * deposits and withdrawals.
+         */
+        private final int[] recipients;
+
+        /**
+         * This field stores the positions of the transactions touching each partition, in batch order. A
+         * transfer between two partitions is listed in both.
+         */
+        private final int[][] queues;
+
+        /**
+         * This field stores the results of the batch.
+         */
+        private final boolean[] results;
+
+        /**
+         * This field stores the states of transfers between two partitions.
+         */
+        private final AtomicIntegerArray transfers;
+
+        /**
+         * Default Constructor.<br><br>
+         * Finds the partitions of every transaction of the batch, and splits it into the positions of the
+         * transactions touching each partition.
+         *
+         * @param transactions the batch of <code>Transaction</code>s
+         */
+        private Batch(Transaction[] transactions) {
+            this.transactions = transactions;
+            this.origins = new int[transactions.length];
+            this.recipients = new int[transactions.length];
+            this.results = new boolean[transactions.length];
+            this.transfers = new AtomicIntegerArray(transactions.length);
+            int[] sizes = new int[partitions];
+            for (int i = 0; i < transactions.length; i++) {
+                Account recipient = transactions[i].getRecipient();
+                origins[i] = partitionOf(transactions[i].getAccount(), partitions);
+                recipients[i] = recipient == null ? -1 : partitionOf(recipient, partitions);
+                sizes[origins[i]]++;
+                if (recipients[i] >= 0 && recipients[i] != origins[i]) {
+                    sizes[recipients[i]]++;
+                }
+            }
+            this.queues = new int[partitions][];
+            for (int p = 0; p < partitions; p++) {
+                queues[p] = new int[sizes[p]];
+                sizes[p] = 0;
+            }
+            for (int i = 0; i < transactions.length; i++) {
+                queues[origins[i]][sizes[origins[i]]++] = i;
+                if (recipients[i] >= 0 && recipients[i] != origins[i]) {
+                    queues[recipients[i]][sizes[recipients[i]]++] = i;
+                }
+            }
+        }
+    }
+}
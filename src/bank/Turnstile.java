@@ -0,0 +1,93 @@
+package bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class lets the threads changing the bank hierarchy notify the <code>MutationListener</code> one at a
+ * time, in the order the changes were made, without holding the lock under which a change was made.<br><br>
+ * A thread takes a ticket as the last thing it does while still holding the lock of the account or customer
+ * it changed, so that the tickets of the changes to any one account or customer are in the order the changes
+ * were made. It then releases the lock, and waits until every change with an earlier ticket has been notified
+ * before notifying the listener of its own. A slow listener, such as a <code>Journal</code> writing a record,
+ * therefore never holds up a thread waiting for the lock, while the listener still sees every change in the
+ * order it was made.<br><br>
+ * Every ticket taken must be passed through <code>pass()</code>, even should the notification fail, as no
+ * later ticket is ever served before it. A listener must never change the banks from within a notification,
+ * as the change would wait for its own notification to end.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see MutationListener
+ */
+final class Turnstile {
+
+    /**
+     * The turnstile shared by every account and customer.
+     */
+    static final Turnstile CHANGES = new Turnstile();
+
+    /**
+     * The number of times a waiting thread checks for its turn before giving up its processor, when there is
+     * more than one processor, and before parking.
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0, YIELDS = 100;
+
+    /**
+     * The longest time a waiting thread parks for before checking again, in nanoseconds.
+     */
+    private static final long PARK_NANOS = 50000;
+
+    /**
+     * This field stores the next ticket to be handed out.
+     */
+    private final AtomicLong tickets = new AtomicLong();
+
+    /**
+     * This field stores the ticket whose change is being, or is next to be, notified.
+     */
+    private volatile long serving;
+
+    /**
+     * Private Constructor. The only turnstile is <code>CHANGES</code>.
+     */
+    private Turnstile() {
+    }
+
+    /**
+     * Takes the next ticket.<br><br>
+     * Must be called while holding the lock under which the change was made, as the last thing done under it.
+     *
+     * @return the ticket as a <code>Long</code>
+     */
+    long ticket() {
+        return tickets.getAndIncrement();
+    }
+
+    /**
+     * Waits until every change with an earlier ticket has been notified, and then runs the notification of
+     * the change with the given ticket.<br><br>
+     * Must be called once the lock under which the ticket was taken has been released.
+     *
+     * @param ticket       the ticket taken for the change
+     * @param notification notifies the <code>MutationListener</code> of the change
+     */
+    void pass(long ticket, Runnable notification) {
+        int idle = 0;
+        while (serving != ticket) {
+            if (idle < SPINS) {
+                Thread.onSpinWait();
+            } else if (idle < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            idle++;
+        }
+        try {
+            notification.run();
+        } finally {
+            serving = ticket + 1;
+        }
+    }
+}
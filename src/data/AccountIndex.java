@@ -0,0 +1,435 @@
+package data;
+
+import bank.*;
+import utility.ConcurrentIntMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * This class indexes every account across every bank of a <code>BankManager</code> by its account number,
+ * so that an account, along with its customer, branch and bank, is found in constant time.<br><br>
+ * The index is kept up to date as a <code>MutationListener</code>: accounts are added as they are opened,
+ * or along with the customer, branch or bank they belong to, and taken out as they are closed, or along with
+ * the customer, branch or bank they belong to.<br><br>
+ * Banks are only read from a <code>Snapshot</code> once they are needed, so a bank is only indexed once it
+ * has been read, through <code>attach()</code>, before any other thread can change it. Every account found is
+ * still checked to be open, and to still belong to a customer, branch and bank of the
+ * <code>BankManager</code>, each of which is a single lookup. Accounts which fail the check are taken out of
+ * the index.<br><br>
+ * The 9-Digit account numbers are split into a block of 100,000 numbers for every 4-Digit bank ID, and the
+ * accounts of a bank are given out numbers from the block of their own bank, by an <code>IdAllocator</code>
+ * holding every number of the block which an indexed account holds. A bank therefore allocates numbers
+ * without reading any other bank, and a number tells which bank gave it out, so looking up a number which is
+ * not indexed yet only reads that bank. Only a number which is still not found, such as one given out before
+ * the numbers were split between banks, or given to an account on its own, reads every other bank which has
+ * not been read yet. A number held by an account of a bank which has not been read yet may therefore be given
+ * out again, should it fall in the block of another bank.<br><br>
+ * Two customers may hold an account with the same number, such as in data saved before account numbers were
+ * kept unique across every bank, so every account number maps to every account holding it, in the order they
+ * were indexed. A lookup finds the first of them which is still open, and closing one never hides another.
+ * A number is held from the first account holding it being indexed, until the last one is taken out.
+ * <br><br>
+ * The accounts of a number are kept in a small array which is replaced, never changed, so that lookups read
+ * it without a lock. Changes to it are made while holding the lock of the map, so that two changes to the
+ * same number never lose one another.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager#findAccount(int)
+ * @see ConcurrentIntMap
+ * @see IdAllocator
+ */
+final class AccountIndex implements MutationListener {
+
+    /**
+     * The lowest and highest 9-Digit account numbers.
+     */
+    private static final int LOWEST = 100000000, HIGHEST = 999999999;
+
+    /**
+     * The number of account numbers in the block of every bank.
+     */
+    private static final int BLOCK = 100000;
+
+    /**
+     * The lowest and highest 4-Digit bank IDs, each of which is given a block of account numbers.
+     */
+    private static final int LOWEST_BANK = 1000, HIGHEST_BANK = 9999;
+
+    /**
+     * This field stores the <code>BankManager</code> whose accounts are indexed.
+     */
+    private final BankManager manager;
+
+    /**
+     * This field stores every account, using the account numbers as the key, and every account holding the
+     * number as the value.
+     */
+    private final ConcurrentIntMap<Account[]> accounts = new ConcurrentIntMap<>();
+
+    /**
+     * This field stores the <code>IdAllocator</code> of the block of every bank, using the bank IDs as the
+     * key, holding every account number of the block an indexed account holds, or which has been allocated to
+     * open an account with. Created when first needed.
+     */
+    private final ConcurrentIntMap<IdAllocator> blocks = new ConcurrentIntMap<>();
+
+    /**
+     * This field stores whether every bank has been read, so that a number which is not indexed is held by
+     * none of the accounts.
+     */
+    private volatile boolean complete;
+
+    /**
+     * Default Constructor.
+     *
+     * @param manager the <code>BankManager</code> whose accounts are indexed
+     */
+    AccountIndex(BankManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Indexes every account of a bank which has just been read or created, and registers the
+     * <code>AccountNumbers</code> giving out the numbers of its block on it.<br><br>
+     * Must be called before the bank is handed out to other threads, or while they are already telling the
+     * index of their changes.
+     *
+     * @param bank the <code>Bank</code>
+     */
+    void attach(Bank bank) {
+        int bankId = bank.getBankId();
+        bank.setAccountNumbers(bankId < LOWEST_BANK || bankId > HIGHEST_BANK ? null : new Numbers(bankId));
+        add(bank);
+    }
+
+    /**
+     * Retrieves the open account with the given account number, at any bank of the <code>BankManager</code>.
+     * <br><br>
+     * A number which is not indexed reads the bank whose block it falls in, should it not have been read yet,
+     * and only then every other bank which has not been read yet, until the number is found.
+     *
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the <code>Account</code>, or <code>null</code> if not found
+     */
+    Account find(int accountNumber) {
+        Account account = lookup(accountNumber);
+        if (account != null || complete) {
+            return account;
+        }
+        int bankId = bankOf(accountNumber);
+        if (bankId >= 0 && manager.getBank(bankId) != null) {
+            account = lookup(accountNumber);
+            if (account != null) {
+                return account;
+            }
+        }
+        for (Map.Entry<Integer, Bank> entry : manager.view().entrySet()) {
+            if (entry.getValue() == null && manager.getBank(entry.getKey()) != null) {
+                account = lookup(accountNumber);
+                if (account != null) {
+                    return account;
+                }
+            }
+        }
+        complete = true;
+        return null;
+    }
+
+    /**
+     * A helper method to find the open account with the given account number among the indexed accounts.
+     *
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the <code>Account</code>, or <code>null</code> if not indexed
+     */
+    private Account lookup(int accountNumber) {
+        Account[] held = accounts.get(accountNumber);
+        if (held != null) {
+            for (Account account : held) {
+                if (belongs(account)) {
+                    return account;
+                }
+                remove(account);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A helper method to find the bank whose block an account number falls in.
+     *
+     * @param accountNumber the account number as an <code>Integer</code>
+     * @return the 4-Digit bank ID, or <code>-1</code> if the number is not a 9-Digit account number
+     */
+    private static int bankOf(int accountNumber) {
+        return accountNumber < LOWEST || accountNumber > HIGHEST ? -1 : LOWEST_BANK + (accountNumber - LOWEST) / BLOCK;
+    }
+
+    /**
+     * A helper method to retrieve the <code>IdAllocator</code> of the block of a bank, creating it should it
+     * not exist yet.
+     *
+     * @param bankId the 4-Digit bank ID
+     * @return the <code>IdAllocator</code>
+     */
+    private IdAllocator block(int bankId) {
+        IdAllocator block = blocks.get(bankId);
+        if (block == null) {
+            synchronized (blocks) {
+                block = blocks.get(bankId);
+                if (block == null) {
+                    int lowest = LOWEST + (bankId - LOWEST_BANK) * BLOCK;
+                    block = new IdAllocator(lowest, lowest + BLOCK - 1);
+                    blocks.put(bankId, block);
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * A helper method to release an account number which was allocated but never used, unless an indexed
+     * account holds it.
+     *
+     * @param accountNumber the 9-Digit account number as an <code>Integer</code>
+     */
+    private void release(int accountNumber) {
+        synchronized (accounts) {
+            if (accounts.get(accountNumber) == null && bankOf(accountNumber) >= 0) {
+                block(bankOf(accountNumber)).release(accountNumber);
+            }
+        }
+    }
+
+    /**
+     * A helper method to check that an account is still open, and still belongs to a customer, branch and
+     * bank of the <code>BankManager</code>.
+     *
+     * @param account the <code>Account</code>
+     * @return <code>true</code> if the account belongs to the <code>BankManager</code>. Otherwise, it will
+     * return <code>false</code>.
+     */
+    private boolean belongs(Account account) {
+        Customer customer = account.getCustomer();
+        Branch branch = customer == null ? null : customer.getBranch();
+        Bank bank = branch == null ? null : branch.getBank();
+        return bank != null && customer.getAccount(account.getAccountNumber()) == account
+                && branch.getCustomer(customer.getCustomerId()) == customer
+                && bank.getBranch(branch.getBranchCode()) == branch
+                && manager.getBank(bank.getBankId()) == bank;
+    }
+
+    /**
+     * A helper method to add every account at every branch of a bank.
+     *
+     * @param bank the <code>Bank</code>
+     */
+    private void add(Bank bank) {
+        for (Branch branch : bank) {
+            add(branch);
+        }
+    }
+
+    /**
+     * A helper method to add every account of every customer of a branch.
+     *
+     * @param branch the <code>Branch</code>
+     */
+    private void add(Branch branch) {
+        for (Customer customer : branch) {
+            add(customer);
+        }
+    }
+
+    /**
+     * A helper method to add every account of a customer.
+     *
+     * @param customer the <code>Customer</code>
+     */
+    private void add(Customer customer) {
+        for (Account account : customer) {
+            add(account);
+        }
+    }
+
+    /**
+     * A helper method to add an account after every other account holding the same number, unless it is
+     * already indexed, holding its number.
+     *
+     * @param account the <code>Account</code>
+     */
+    private void add(Account account) {
+        int accountNumber = account.getAccountNumber();
+        synchronized (accounts) {
+            Account[] held = accounts.get(accountNumber);
+            if (held == null) {
+                accounts.put(accountNumber, new Account[]{account});
+                if (bankOf(accountNumber) >= 0) {
+                    block(bankOf(accountNumber)).reserve(accountNumber);
+                }
+            } else if (indexOf(held, account) < 0) {
+                Account[] grown = Arrays.copyOf(held, held.length + 1);
+                grown[held.length] = account;
+                accounts.put(accountNumber, grown);
+            }
+        }
+    }
+
+    /**
+     * A helper method to take out every account at every branch of a bank.
+     *
+     * @param bank the <code>Bank</code>
+     */
+    private void remove(Bank bank) {
+        for (Branch branch : bank) {
+            remove(branch);
+        }
+    }
+
+    /**
+     * A helper method to take out every account of every customer of a branch.
+     *
+     * @param branch the <code>Branch</code>
+     */
+    private void remove(Branch branch) {
+        for (Customer customer : branch) {
+            remove(customer);
+        }
+    }
+
+    /**
+     * A helper method to take out every account of a customer, unless another account with the same number
+     * has taken its place.
+     *
+     * @param customer the <code>Customer</code>
+     */
+    private void remove(Customer customer) {
+        for (Account account : customer) {
+            remove(account);
+        }
+    }
+
+    /**
+     * A helper method to take out an account, keeping every other account holding the same number. The
+     * number is released once no account holds it.
+     *
+     * @param account the <code>Account</code>
+     */
+    private void remove(Account account) {
+        int accountNumber = account.getAccountNumber();
+        synchronized (accounts) {
+            Account[] held = accounts.get(accountNumber);
+            int index = held == null ? -1 : indexOf(held, account);
+            if (index < 0) {
+                return;
+            }
+            if (held.length == 1) {
+                accounts.remove(accountNumber, held);
+                if (bankOf(accountNumber) >= 0) {
+                    block(bankOf(accountNumber)).release(accountNumber);
+                }
+            } else {
+                Account[] shrunk = new Account[held.length - 1];
+                System.arraycopy(held, 0, shrunk, 0, index);
+                System.arraycopy(held, index + 1, shrunk, index, shrunk.length - index);
+                accounts.put(accountNumber, shrunk);
+            }
+        }
+    }
+
+    /**
+     * A helper method to find an account among the accounts holding its number, by identity, as accounts
+     * with the same number are equal.
+     *
+     * @param held    the accounts holding the number
+     * @param account the <code>Account</code>
+     * @return the position of the account, or <code>-1</code> if it is not among them
+     */
+    private static int indexOf(Account[] held, Account account) {
+        for (int i = 0; i < held.length; i++) {
+            if (held[i] == account) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void bankCreated(Bank bank) {
+        add(bank);
+    }
+
+    @Override
+    public void bankRemoved(Bank bank) {
+        remove(bank);
+    }
+
+    @Override
+    public void branchCreated(Bank bank, Branch branch) {
+        add(branch);
+    }
+
+    @Override
+    public void branchRemoved(Bank bank, Branch branch) {
+        remove(branch);
+    }
+
+    @Override
+    public void customerAdded(Branch branch, Customer customer) {
+        add(customer);
+    }
+
+    @Override
+    public void customerRemoved(Branch branch, Customer customer) {
+        remove(customer);
+    }
+
+    @Override
+    public void accountOpened(Customer customer, Account account) {
+        add(account);
+    }
+
+    @Override
+    public void accountClosed(Customer customer, Account account) {
+        remove(account);
+    }
+
+    /**
+     * This private class gives out the account numbers of the block of a single bank, so that the bank never
+     * needs any other bank to be read to open an account.
+     */
+    private final class Numbers implements AccountNumbers {
+
+        /**
+         * This field stores the 4-Digit bank ID whose block the numbers are given out from.
+         */
+        private final int bankId;
+
+        /**
+         * Constructor.
+         *
+         * @param bankId the 4-Digit bank ID
+         */
+        private Numbers(int bankId) {
+            this.bankId = bankId;
+        }
+
+        /**
+         * Allocates an account number of the block of the bank which no indexed account holds.
+         *
+         * @return the 9-Digit account number as an <code>Integer</code>
+         * @throws IllegalStateException if every account number of the block is already in use
+         */
+        @Override
+        public int allocate() {
+            return block(bankId).allocate();
+        }
+
+        @Override
+        public void release(int accountNumber) {
+            AccountIndex.this.release(accountNumber);
+        }
+    }
+
+}
@@ -0,0 +1,541 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Branch;
+import bank.Customer;
+import utility.Address;
+import utility.CurrencyFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class holds the total funds and number of accounts across a number of banks, along with the totals of
+ * every bank, every branch, and every state the customers live in.<br><br>
+ * An aggregation is computed on a <code>ForkJoinPool</code>, splitting the work by bank, then by branch, and
+ * then by ranges of customers within a branch, so that the banks are added up on every thread of the pool at
+ * once. Each task adds up its own part on its own, and the parts are only merged as the tasks are joined, so
+ * no lock is held and nothing is shared between threads while adding up.<br><br>
+ * Every branch is added up from a snapshot of its customers, and every customer from a snapshot of its
+ * accounts. Changes made while aggregating may or may not be counted, though every customer and account is
+ * counted at most once.<br><br>
+ * The totals are therefore not a snapshot of the banks. Every balance is read on its own, without waiting for
+ * any transfer, so funds transferred between two accounts while they are being added up may be counted in
+ * both accounts, or in neither. <code>Account.readCents()</code> reads a number of balances at a single point
+ * in time, where that matters.<br><br>
+ * Branch codes are only unique within a bank, so the totals of a branch are retrieved along with the bank ID.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager#aggregate()
+ * @see Totals
+ */
+public final class Aggregation {
+
+    /**
+     * The number of customers of a branch a single task adds up, before it is split into two (2).
+     */
+    private static final int CUSTOMERS_PER_TASK = 512;
+
+    /**
+     * This field stores the totals across every bank.
+     */
+    private final Totals total = new Totals();
+
+    /**
+     * This field stores the totals of every bank, using the bank IDs as the key, in the order the banks were
+     * given.
+     */
+    private final Map<Integer, Totals> banks = new LinkedHashMap<>();
+
+    /**
+     * This field stores the totals of every branch, using the bank IDs and then the branch codes as the key.
+     */
+    private final Map<Integer, Map<Integer, Totals>> branches = new LinkedHashMap<>();
+
+    /**
+     * This field stores the totals of the customers living in every state, using the state name as the key,
+     * in alphabetical order.
+     */
+    private final Map<String, Totals> states = new TreeMap<>();
+
+    /**
+     * This field stores the number of branches across every bank.
+     */
+    private int numberOfBranches;
+
+    /**
+     * Default Constructor.<br><br>
+     * Creates an empty aggregation, to be filled by a task.
+     */
+    private Aggregation() {
+    }
+
+    /**
+     * Adds up the given banks on the common <code>ForkJoinPool</code>.
+     *
+     * @param banks the banks to be added up
+     * @return the <code>Aggregation</code>
+     */
+    public static Aggregation of(Iterable<Bank> banks) {
+        return of(banks, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Adds up the given banks on the given <code>ForkJoinPool</code>.<br><br>
+     * The banks are first collected on the calling thread, so a <code>BankManager</code> reads any bank which
+     * has not been read yet before the work is split.
+     *
+     * @param banks the banks to be added up
+     * @param pool  the pool to add them up on
+     * @return the <code>Aggregation</code>
+     */
+    public static Aggregation of(Iterable<Bank> banks, ForkJoinPool pool) {
+        List<Bank> list = new ArrayList<>();
+        for (Bank bank : banks) {
+            list.add(bank);
+        }
+        return pool.invoke(new BankTask(list.toArray(new Bank[0]), 0, list.size()));
+    }
+
+    /**
+     * Retrieves the totals across every bank.
+     *
+     * @return the <code>Totals</code>
+     */
+    public Totals getTotal() {
+        return total;
+    }
+
+    /**
+     * Retrieves the number of banks added up.
+     *
+     * @return the number of banks as an <code>Integer</code>
+     */
+    public int getNumberOfBanks() {
+        return banks.size();
+    }
+
+    /**
+     * Retrieves the number of branches added up, across every bank.
+     *
+     * @return the number of branches as an <code>Integer</code>
+     */
+    public int getNumberOfBranches() {
+        return numberOfBranches;
+    }
+
+    /**
+     * Retrieves the totals of the bank with the given bank ID.
+     *
+     * @param bankId the 4-digit bank ID as an <code>Integer</code>
+     * @return the <code>Totals</code>, or <code>null</code> if the bank was not added up
+     */
+    public Totals getBank(int bankId) {
+        return banks.get(bankId);
+    }
+
+    /**
+     * Retrieves the totals of the branch with the given branch code, at the bank with the given bank ID.
+     *
+     * @param bankId     the 4-digit bank ID as an <code>Integer</code>
+     * @param branchCode the 3-digit branch code as an <code>Integer</code>
+     * @return the <code>Totals</code>, or <code>null</code> if the branch was not added up
+     */
+    public Totals getBranch(int bankId, int branchCode) {
+        Map<Integer, Totals> bank = branches.get(bankId);
+        return bank == null ? null : bank.get(branchCode);
+    }
+
+    /**
+     * Retrieves the totals of the customers living in the given state.
+     *
+     * @param state the name of the state
+     * @return the <code>Totals</code>, or <code>null</code> if no customer lives in the state
+     */
+    public Totals getState(String state) {
+        return states.get(state);
+    }
+
+    /**
+     * Retrieves the totals of every bank, in the order the banks were given.
+     *
+     * @return an unmodifiable <code>Map</code>, using the bank IDs as the key
+     */
+    public Map<Integer, Totals> getBanks() {
+        return Collections.unmodifiableMap(banks);
+    }
+
+    /**
+     * Retrieves the totals of every branch of the bank with the given bank ID.
+     *
+     * @param bankId the 4-digit bank ID as an <code>Integer</code>
+     * @return an unmodifiable <code>Map</code>, using the branch codes as the key, which is empty if the bank
+     * was not added up
+     */
+    public Map<Integer, Totals> getBranches(int bankId) {
+        return Collections.unmodifiableMap(branches.getOrDefault(bankId, Collections.emptyMap()));
+    }
+
+    /**
+     * Retrieves the totals of the customers living in every state, in alphabetical order. Customers without a
+     * valid address are counted under an empty state name.
+     *
+     * @return an unmodifiable <code>Map</code>, using the state names as the key
+     */
+    public Map<String, Totals> getStates() {
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Compares two aggregations.
+     *
+     * @param o the other object to compare
+     * @return <code>true</code> if both hold the same totals. Otherwise, it will return <code>false</code>.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Aggregation that = (Aggregation) o;
+        return numberOfBranches == that.numberOfBranches && total.equals(that.total) && banks.equals(that.banks)
+                && branches.equals(that.branches) && states.equals(that.states);
+    }
+
+    /**
+     * Generates a hash code for the <code>Aggregation</code> object.<br><br>
+     *
+     * @return an <code>Integer</code> value for the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(total, banks, branches, states);
+    }
+
+    /**
+     * Returns a <code>String</code> representation of the totals across every bank.
+     *
+     * @return a <code>String</code> of the aggregation
+     */
+    @Override
+    public String toString() {
+        return banks.size() + " banks, " + numberOfBranches + " branches, " + total;
+    }
+
+    /**
+     * A helper method to add another part of the aggregation to this one.
+     *
+     * @param other the other part, which is no longer used afterwards
+     * @return this <code>Aggregation</code>
+     */
+    private Aggregation merge(Aggregation other) {
+        total.merge(other.total);
+        numberOfBranches += other.numberOfBranches;
+        other.banks.forEach((bankId, totals) -> bank(bankId).merge(totals));
+        other.branches.forEach((bankId, codes) ->
+                codes.forEach((branchCode, totals) -> branch(bankId, branchCode).merge(totals)));
+        other.states.forEach((state, totals) -> states.computeIfAbsent(state, s -> new Totals()).merge(totals));
+        return this;
+    }
+
+    /**
+     * A helper method to retrieve the totals of a bank, adding them first if not found.
+     *
+     * @param bankId the 4-digit bank ID as an <code>Integer</code>
+     * @return the <code>Totals</code>
+     */
+    private Totals bank(int bankId) {
+        return banks.computeIfAbsent(bankId, id -> new Totals());
+    }
+
+    /**
+     * A helper method to retrieve the totals of a branch, adding them first if not found.
+     *
+     * @param bankId     the 4-digit bank ID as an <code>Integer</code>
+     * @param branchCode the 3-digit branch code as an <code>Integer</code>
+     * @return the <code>Totals</code>
+     */
+    private Totals branch(int bankId, int branchCode) {
+        return branches.computeIfAbsent(bankId, id -> new LinkedHashMap<>())
+                .computeIfAbsent(branchCode, code -> new Totals());
+    }
+
+    /**
+     * This class holds the total funds, number of customers, and number of accounts of a part of an
+     * aggregation.<br><br>
+     * Totals are only changed while the aggregation is being computed, and never once it has been returned.
+     *
+     * @author Samuel A. Kosasih
+     */
+    public static final class Totals {
+
+        /**
+         * This field stores the total funds in cents.
+         */
+        private long cents;
+
+        /**
+         * This field stores the number of customers.
+         */
+        private int numberOfCustomers;
+
+        /**
+         * This field stores the number of accounts.
+         */
+        private int numberOfAccounts;
+
+        /**
+         * Default Constructor.<br><br>
+         * Creates empty totals.
+         */
+        private Totals() {
+        }
+
+        /**
+         * Retrieves the total funds in cents.
+         *
+         * @return the total funds in cents as a <code>Long</code>
+         */
+        public long getCents() {
+            return cents;
+        }
+
+        /**
+         * Retrieves the total funds.
+         *
+         * @return the total funds as a <code>Double</code>
+         */
+        public double getBalance() {
+            return cents / 100.0;
+        }
+
+        /**
+         * Retrieves the number of customers.
+         *
+         * @return the number of customers as an <code>Integer</code>
+         */
+        public int getNumberOfCustomers() {
+            return numberOfCustomers;
+        }
+
+        /**
+         * Retrieves the number of accounts.
+         *
+         * @return the number of accounts as an <code>Integer</code>
+         */
+        public int getNumberOfAccounts() {
+            return numberOfAccounts;
+        }
+
+        /**
+         * A helper method to add a customer to the totals.
+         *
+         * @param cents    the funds of the customer in cents
+         * @param accounts the number of accounts of the customer
+         */
+        private void add(long cents, int accounts) {
+            this.cents += cents;
+            numberOfCustomers++;
+            numberOfAccounts += accounts;
+        }
+
+        /**
+         * A helper method to add other totals to these.
+         *
+         * @param other the other <code>Totals</code>
+         */
+        private void merge(Totals other) {
+            cents += other.cents;
+            numberOfCustomers += other.numberOfCustomers;
+            numberOfAccounts += other.numberOfAccounts;
+        }
+
+        /**
+         * Compares two totals.
+         *
+         * @param o the other object to compare
+         * @return <code>true</code> if both hold the same funds and numbers. Otherwise, it will return
+         * <code>false</code>.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Totals totals = (Totals) o;
+            return cents == totals.cents && numberOfCustomers == totals.numberOfCustomers
+                    && numberOfAccounts == totals.numberOfAccounts;
+        }
+
+        /**
+         * Generates a hash code for the <code>Totals</code> object.<br><br>
+         *
+         * @return an <code>Integer</code> value for the hash code
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(cents, numberOfCustomers, numberOfAccounts);
+        }
+
+        /**
+         * Returns a <code>String</code> representation of the totals.
+         *
+         * @return a <code>String</code> of the totals
+         */
+        @Override
+        public String toString() {
+            return CurrencyFormat.format(getBalance()) + " in " + numberOfAccounts + " accounts of "
+                    + numberOfCustomers + " customers";
+        }
+    }
+
+    /**
+     * This private class adds up a range of banks, splitting it in half until a single bank is left, which is
+     * then split by branch.
+     */
+    private static final class BankTask extends RecursiveTask<Aggregation> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Bank[] banks;
+
+        private final int from;
+
+        private final int to;
+
+        private BankTask(Bank[] banks, int from, int to) {
+            this.banks = banks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregation compute() {
+            if (to - from == 0) {
+                return new Aggregation();
+            } else if (to - from == 1) {
+                Bank bank = banks[from];
+                Branch[] branches = bank.getBranches().values().toArray(new Branch[0]);
+                Aggregation aggregation = new BranchTask(bank.getBankId(), branches, 0, branches.length).compute();
+                Totals totals = aggregation.bank(bank.getBankId());
+                aggregation.total.merge(totals);
+                return aggregation;
+            }
+            int middle = (from + to) >>> 1;
+            BankTask left = new BankTask(banks, from, middle);
+            left.fork();
+            Aggregation right = new BankTask(banks, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * This private class adds up a range of branches of a bank, splitting it in half until a single branch is
+     * left, which is then split into ranges of customers.
+     */
+    private static final class BranchTask extends RecursiveTask<Aggregation> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int bankId;
+
+        private final Branch[] branches;
+
+        private final int from;
+
+        private final int to;
+
+        private BranchTask(int bankId, Branch[] branches, int from, int to) {
+            this.bankId = bankId;
+            this.branches = branches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregation compute() {
+            if (to - from == 0) {
+                return new Aggregation();
+            } else if (to - from == 1) {
+                Branch branch = branches[from];
+                Customer[] customers = branch.getCustomers().values().toArray(new Customer[0]);
+                Aggregation aggregation = new CustomerTask(bankId, branch.getBranchCode(), customers, 0,
+                        customers.length).compute();
+                aggregation.branch(bankId, branch.getBranchCode());
+                aggregation.numberOfBranches++;
+                return aggregation;
+            }
+            int middle = (from + to) >>> 1;
+            BranchTask left = new BranchTask(bankId, branches, from, middle);
+            left.fork();
+            Aggregation right = new BranchTask(bankId, branches, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * This private class adds up a range of customers of a branch, splitting it in half until no more than
+     * <code>CUSTOMERS_PER_TASK</code> are left.<br><br>
+     * Customers are only added to the totals of their branch and their state, which are then added to those of
+     * the bank. The totals across every bank are added up from those of each bank once it has been added up.
+     */
+    private static final class CustomerTask extends RecursiveTask<Aggregation> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int bankId;
+
+        private final int branchCode;
+
+        private final Customer[] customers;
+
+        private final int from;
+
+        private final int to;
+
+        private CustomerTask(int bankId, int branchCode, Customer[] customers, int from, int to) {
+            this.bankId = bankId;
+            this.branchCode = branchCode;
+            this.customers = customers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregation compute() {
+            if (to - from <= CUSTOMERS_PER_TASK) {
+                Aggregation aggregation = new Aggregation();
+                Totals branch = aggregation.branch(bankId, branchCode);
+                Totals bank = aggregation.bank(bankId);
+                for (int i = from; i < to; i++) {
+                    Customer customer = customers[i];
+                    long cents = 0;
+                    int accounts = 0;
+                    for (Account account : customer) {
+                        cents += account.getCents();
+                        accounts++;
+                    }
+                    Address address = customer.getAddress();
+                    branch.add(cents, accounts);
+                    aggregation.states.computeIfAbsent(address == null ? "" : address.getState(),
+                            s -> new Totals()).add(cents, accounts);
+                }
+                bank.merge(branch);
+                return aggregation;
+            }
+            int middle = (from + to) >>> 1;
+            CustomerTask left = new CustomerTask(bankId, branchCode, customers, from, middle);
+            left.fork();
+            Aggregation right = new CustomerTask(bankId, branchCode, customers, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+}
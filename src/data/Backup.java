@@ -0,0 +1,508 @@
+package data;
+
+import bank.*;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * This class backs up the database of a <code>BankManager</code> to a directory, so that it can be restored as
+ * it was at any point in time.<br><br>
+ * Backups form a chain of files. A base holds every bank, while each delta following it only holds the banks
+ * which have changed since the previous file, along with the ID and name of every bank in order, so that
+ * banks which have been removed are left out when restoring. Every file is written as follows:
+ * <blockquote>Magic (int) | Version (int) | Kind (byte) | Time (long) | Compression (byte) | Count (int) |
+ * Count x [Bank ID (int) | Bank Name (UTF) | Length (int) | Bank]</blockquote>
+ * where the bank is in the compact binary form of <code>BankCodec</code>, compressed with the given
+ * <code>Compression</code>, and a length of <code>-1</code> means the bank has not changed since the previous
+ * file. Files are named after the time they were captured in milliseconds, e.g.
+ * <code>1760659200000.base</code>.<br><br>
+ * Like the <code>Checkpointer</code>, the changed banks are captured on the thread making the changes, once a
+ * backup is due, and written on a separate thread. The first backup of every session is a base, so that any
+ * change recovered from the journal is contained in the chain. The settings are read from the system
+ * properties <code>bank.backup.interval</code> (60000 milliseconds by default, or zero (0) to disable),
+ * <code>bank.backup.deltas</code> (60 deltas for every base by default), and <code>bank.backup.retain</code>
+ * (24 bases, along with their deltas, are kept by default).
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see BankCodec
+ * @see DatabaseTool
+ */
+public class Backup implements MutationListener, Closeable {
+
+    /**
+     * The first four bytes of every file, spelling out <code>BKUP</code>.
+     */
+    private static final int MAGIC = 0x424B5550;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The kinds of file in the chain.
+     */
+    private static final byte BASE = 0, DELTA = 1;
+
+    /**
+     * This field stores a <code>File</code> object referring to the backup directory.
+     */
+    private final File directory;
+
+    /**
+     * This field stores a <code>Supplier</code> of every bank to be backed up in order, using the bank IDs as
+     * the key, and <code>null</code> as the value for banks which have not been read yet.
+     */
+    private final Supplier<Map<Integer, Bank>> banks;
+
+    /**
+     * This field stores the <code>StorageEngine</code> banks which have not been read yet are read from.
+     */
+    private final StorageEngine engine;
+
+    /**
+     * This field stores the <code>Compression</code> used for every bank backed up.
+     */
+    private final Compression compression;
+
+    /**
+     * This field stores the time in milliseconds after which a backup is due, if anything has changed.
+     */
+    private final long interval;
+
+    /**
+     * This field stores the number of deltas written after a base, before the next base.
+     */
+    private final int deltas;
+
+    /**
+     * This field stores the number of bases kept, along with their deltas.
+     */
+    private final int retain;
+
+    /**
+     * This field stores an <code>ExecutorService</code> with a single thread writing backups to the directory.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "backup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * This field stores the IDs of the banks which have changed since the last backup was captured.
+     */
+    private final Set<Integer> changed = new HashSet<>();
+
+    /**
+     * This field stores whether anything has changed since the last backup was captured.
+     */
+    private boolean dirty;
+
+    /**
+     * This field stores whether the next backup must be a base, such as at the start of a session, or after
+     * a backup has failed.
+     */
+    private volatile boolean needsBase = true;
+
+    /**
+     * This field stores the number of deltas captured since the last base.
+     */
+    private int deltasSinceBase;
+
+    /**
+     * This field stores the time the last backup was captured, in milliseconds.
+     */
+    private long lastTime;
+
+    /**
+     * This field stores the <code>Future</code> of the backup being written, if any.
+     */
+    private Future<?> pending;
+
+    /**
+     * Default Constructor.<br><br>
+     * The settings are read from the system properties <code>bank.backup.interval</code>,
+     * <code>bank.backup.deltas</code>, and <code>bank.backup.retain</code>, and banks are compressed with the
+     * codec chosen by the system property <code>bank.compression</code>.
+     *
+     * @param directory the backup directory
+     * @param banks     supplies every bank to be backed up in order, using the bank IDs as the key
+     * @param engine    the <code>StorageEngine</code> banks which have not been read yet are read from
+     */
+    Backup(File directory, Supplier<Map<Integer, Bank>> banks, StorageEngine engine) {
+        this(directory, banks, engine, Long.getLong("bank.backup.interval", 60000),
+                Integer.getInteger("bank.backup.deltas", 60), Integer.getInteger("bank.backup.retain", 24),
+                Compression.fromProperties());
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param directory   the backup directory
+     * @param banks       supplies every bank to be backed up in order, using the bank IDs as the key
+     * @param engine      the <code>StorageEngine</code> banks which have not been read yet are read from
+     * @param interval    the time in milliseconds after which a backup is due, or zero (0) to disable
+     * @param deltas      the number of deltas written after a base, before the next base
+     * @param retain      the number of bases kept, along with their deltas
+     * @param compression the <code>Compression</code> used for every bank backed up
+     */
+    Backup(File directory, Supplier<Map<Integer, Bank>> banks, StorageEngine engine, long interval, int deltas,
+           int retain, Compression compression) {
+        this.directory = directory;
+        this.banks = banks;
+        this.engine = engine;
+        this.interval = interval;
+        this.deltas = deltas;
+        this.retain = Math.max(1, retain);
+        this.compression = compression;
+    }
+
+    /**
+     * Called on the thread making a change, once every listener has been notified of it.<br><br>
+     * Captures the banks which have changed, and starts writing them in the background if a backup is due,
+     * unless the previous one is still being written.
+     */
+    void changed() {
+        if (interval <= 0 || !dirty || System.currentTimeMillis() - lastTime < interval
+                || (pending != null && !pending.isDone())) {
+            return;
+        }
+        capture();
+    }
+
+    /**
+     * Captures any changes which have not been backed up yet, and waits for every backup to be written,
+     * before stopping the background thread.
+     */
+    @Override
+    public void close() {
+        if (interval > 0 && dirty) {
+            await();
+            capture();
+        }
+        await();
+        writer.shutdown();
+    }
+
+    /**
+     * A helper method to wait for the backup being written in the background, if any.
+     */
+    private void await() {
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                System.out.println(ee.getCause().getMessage());
+            }
+            pending = null;
+        }
+    }
+
+    /**
+     * A helper method to capture a backup, and start writing it in the background.<br><br>
+     * Banks which have not been read yet are read from the <code>StorageEngine</code> when a base is
+     * captured, without keeping them in memory. The banks captured from memory are all encoded together, with the
+     * balances of every account read at a single point in time.
+     */
+    private void capture() {
+        boolean base = needsBase || deltasSinceBase >= deltas;
+        long time = Math.max(System.currentTimeMillis(), lastTime + 1);
+        Map<Integer, String> names = new LinkedHashMap<>();
+        Map<Integer, byte[]> encoded = new HashMap<>();
+        try {
+            List<Integer> ids = new ArrayList<>();
+            List<Bank> captured = new ArrayList<>();
+            for (Map.Entry<Integer, Bank> entry : banks.get().entrySet()) {
+                int id = entry.getKey();
+                Bank bank = entry.getValue();
+                if (base && bank == null) {
+                    bank = engine.load(id);
+                    if (bank != null) {
+                        encoded.put(id, BankCodec.encode(bank));
+                    }
+                } else if (bank != null && (base || changed.contains(id))) {
+                    ids.add(id);
+                    captured.add(bank);
+                }
+                String name = bank != null ? bank.getBankName() : engine.getName(id);
+                names.put(id, name != null ? name : "");
+            }
+            List<byte[]> bytes = BankCodec.encode(captured);
+            for (int i = 0; i < ids.size(); i++) {
+                encoded.put(ids.get(i), bytes.get(i));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(e.getMessage());
+            needsBase = true;
+            return;
+        }
+        changed.clear();
+        dirty = false;
+        lastTime = time;
+        needsBase = false;
+        deltasSinceBase = base ? 0 : deltasSinceBase + 1;
+        pending = writer.submit(() -> write(base ? BASE : DELTA, time, names, encoded));
+    }
+
+    /**
+     * A helper method to write a backup to a temporary file, force it to the storage device, and then move it
+     * into the directory. Chains older than the number of bases kept are deleted once a base is written.<br><br>
+     * Should the backup fail, the next one will be a base.
+     *
+     * @param kind    <code>BASE</code> or <code>DELTA</code>
+     * @param time    the time the backup was captured, in milliseconds
+     * @param names   the name of every bank in order, using the bank IDs as the key
+     * @param encoded the binary form of every bank backed up, using the bank IDs as the key
+     */
+    private void write(byte kind, long time, Map<Integer, String> names, Map<Integer, byte[]> encoded) {
+        File file = new File(directory, String.format("%013d.%s", time, kind == BASE ? "base" : "delta"));
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            Files.createDirectories(directory.toPath());
+            try (FileOutputStream stream = new FileOutputStream(temp);
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeByte(kind);
+                output.writeLong(time);
+                output.writeByte(compression.getId());
+                output.writeInt(names.size());
+                for (Map.Entry<Integer, String> entry : names.entrySet()) {
+                    byte[] bytes = encoded.get(entry.getKey());
+                    output.writeInt(entry.getKey());
+                    output.writeUTF(entry.getValue());
+                    if (bytes == null) {
+                        output.writeInt(-1);
+                    } else {
+                        bytes = compression.compress(bytes);
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                    }
+                }
+                output.flush();
+                stream.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (kind == BASE) {
+                prune();
+            }
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            needsBase = true;
+            if (!temp.delete() && temp.exists()) {
+                System.out.println("Could not delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * A helper method to delete every file older than the oldest base kept.
+     */
+    private void prune() {
+        List<File> files = list(directory);
+        int bases = 0;
+        for (int i = files.size() - 1; i >= 0; i--) {
+            File file = files.get(i);
+            if (bases >= retain && !file.delete()) {
+                System.out.println("Could not delete " + file);
+            }
+            if (file.getName().endsWith(".base")) {
+                bases++;
+            }
+        }
+    }
+
+    /**
+     * Lists every backup in a directory, from the oldest to the most recent.
+     *
+     * @param directory the backup directory
+     * @return the files, which is empty if the directory does not exist
+     */
+    public static List<File> list(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.matches("\\d{13}\\.(base|delta)"));
+        List<File> list = new ArrayList<>(files == null ? Collections.emptyList() : Arrays.asList(files));
+        list.sort(Comparator.comparing(File::getName));
+        return list;
+    }
+
+    /**
+     * Restores every bank as it was at the given time, by reading the most recent base captured at or before
+     * that time, followed by every delta captured after it, up to that time.
+     *
+     * @param directory the backup directory
+     * @param time      the time to be restored, in milliseconds
+     * @return a <code>Map</code> of every bank in order, using the bank IDs as the key
+     * @throws IOException if an I/O error occurs, no base was captured at or before that time, or a file is
+     *                     not in this format
+     */
+    public static Map<Integer, Bank> restore(File directory, long time) throws IOException {
+        List<File> chain = new ArrayList<>();
+        for (File file : list(directory)) {
+            if (Long.parseLong(file.getName().substring(0, 13)) > time) {
+                break;
+            }
+            if (file.getName().endsWith(".base")) {
+                chain.clear();
+            }
+            chain.add(file);
+        }
+        if (chain.isEmpty() || !chain.get(0).getName().endsWith(".base")) {
+            throw new IOException("No backup in " + directory + " was captured at or before " + new Date(time));
+        }
+        Map<Integer, Bank> banks = new LinkedHashMap<>();
+        for (File file : chain) {
+            Map<Integer, Bank> next = new LinkedHashMap<>();
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    throw new IOException("Unrecognized backup format: " + file);
+                }
+                input.readByte();
+                input.readLong();
+                Compression codec = Compression.of(input.readUnsignedByte());
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    int id = input.readInt();
+                    input.readUTF();
+                    int length = input.readInt();
+                    if (length >= 0) {
+                        byte[] bytes = new byte[length];
+                        input.readFully(bytes);
+                        next.put(id, BankCodec.decode(codec.decompress(bytes)));
+                    } else if (banks.containsKey(id)) {
+                        next.put(id, banks.get(id));
+                    } else {
+                        throw new IOException("Bank " + id + " is missing from the backups before " + file);
+                    }
+                }
+            }
+            banks = next;
+        }
+        return banks;
+    }
+
+    /**
+     * A helper method to note that a bank has changed.
+     *
+     * @param bank the changed <code>Bank</code>, or <code>null</code> if unknown
+     */
+    private void mark(Bank bank) {
+        dirty = true;
+        if (bank != null) {
+            changed.add(bank.getBankId());
+        }
+    }
+
+    /**
+     * A helper method to find the bank an account belongs to.
+     *
+     * @param account the <code>Account</code>
+     * @return the <code>Bank</code>, or <code>null</code> if the account does not belong to one
+     */
+    private static Bank bankOf(Account account) {
+        Customer customer = account.getCustomer();
+        return customer == null ? null : bankOf(customer);
+    }
+
+    /**
+     * A helper method to find the bank a customer belongs to.
+     *
+     * @param customer the <code>Customer</code>
+     * @return the <code>Bank</code>, or <code>null</code> if the customer does not belong to one
+     */
+    private static Bank bankOf(Customer customer) {
+        Branch branch = customer.getBranch();
+        return branch == null ? null : branch.getBank();
+    }
+
+    @Override
+    public void bankCreated(Bank bank) {
+        mark(bank);
+    }
+
+    @Override
+    public void bankRemoved(Bank bank) {
+        mark(null);
+    }
+
+    @Override
+    public void bankRemoved(int bankId) {
+        mark(null);
+    }
+
+    @Override
+    public void bankUpdated(Bank bank) {
+        mark(bank);
+    }
+
+    @Override
+    public void branchCreated(Bank bank, Branch branch) {
+        mark(bank);
+    }
+
+    @Override
+    public void branchUpdated(Branch branch) {
+        mark(branch.getBank());
+    }
+
+    @Override
+    public void branchRemoved(Bank bank, Branch branch) {
+        mark(bank);
+    }
+
+    @Override
+    public void customerAdded(Branch branch, Customer customer) {
+        mark(branch.getBank());
+    }
+
+    @Override
+    public void customerUpdated(Customer customer) {
+        mark(bankOf(customer));
+    }
+
+    @Override
+    public void customerRemoved(Branch branch, Customer customer) {
+        mark(branch.getBank());
+    }
+
+    @Override
+    public void accountOpened(Customer customer, Account account) {
+        mark(bankOf(customer));
+    }
+
+    @Override
+    public void accountClosed(Customer customer, Account account) {
+        mark(bankOf(customer));
+    }
+
+    @Override
+    public void deposited(Account account, double amount) {
+        mark(bankOf(account));
+    }
+
+    @Override
+    public void withdrew(Account account, double amount) {
+        mark(bankOf(account));
+    }
+
+    @Override
+    public void transferred(Account from, Account to, double amount) {
+        mark(bankOf(from));
+        mark(bankOf(to));
+    }
+
+}
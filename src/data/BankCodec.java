@@ -0,0 +1,262 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Branch;
+import bank.Customer;
+import utility.Address;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class converts a <code>Bank</code>, along with its branches, customers, and accounts, to and from a
+ * compact binary form.<br><br>
+ * Unlike Java serialization, no class descriptors or field names are written, only the data itself:
+ * <ul>
+ *     <li>IDs, codes, numbers, and counts are written as unsigned variable-length integers (varints),
+ *     taking one (1) byte for every seven (7) bits of the value</li>
+ *     <li>Strings are written as a varint byte length, followed by the UTF-8 bytes</li>
+ *     <li>Balances are written as a whole number of cents, using a zigzag-encoded varint</li>
+ *     <li>Addresses are written as four (4) strings: street, city, state, and zip code</li>
+ * </ul>
+ * A bank is written as its ID, name, and number of branches, followed by each of the branches in the same
+ * manner, down to the accounts.<br><br>
+ * Branches, customers, and accounts are written from the snapshots handed out by <code>getBranches()</code>,
+ * <code>getCustomers()</code>, and <code>getAccounts()</code>, so a bank may be encoded while it continues to
+ * change, and every count written always matches what follows it. The balances of the accounts written are all
+ * read together, at a single point in time.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Snapshot
+ */
+final class BankCodec {
+
+    /**
+     * Private Constructor. This class only provides static methods.
+     */
+    private BankCodec() {
+    }
+
+    /**
+     * Converts a <code>Bank</code> to its binary form.
+     *
+     * @param bank the <code>Bank</code> to be converted
+     * @return the binary form as an array of bytes
+     */
+    static byte[] encode(Bank bank) {
+        return encode(List.of(bank)).get(0);
+    }
+
+    /**
+     * Converts a number of banks to their binary forms, with the balances of every account across all of them
+     * read at a single point in time.<br><br>
+     * Every bank is first walked without its balances, noting where each balance goes, and the balances are
+     * then read all at once using <code>Account.readCents()</code>, so that no transfer between two of the
+     * accounts is ever saved half-made, even between two banks.
+     *
+     * @param banks the banks to be converted
+     * @return the binary form of every bank as an array of bytes, in the order given
+     */
+    static List<byte[]> encode(List<Bank> banks) {
+        byte[][] layouts = new byte[banks.size()][];
+        int[] ends = new int[banks.size()];
+        List<Account> accounts = new ArrayList<>();
+        int[] positions = new int[16];
+        for (int i = 0; i < layouts.length; i++) {
+            Bank bank = banks.get(i);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            writeVarLong(output, bank.getBankId());
+            writeString(output, bank.getBankName());
+            Map<Integer, Branch> branches = bank.getBranches();
+            writeVarLong(output, branches.size());
+            for (Branch branch : branches.values()) {
+                writeVarLong(output, branch.getBranchCode());
+                writeString(output, branch.getBranchName());
+                writeAddress(output, branch.getAddress());
+                Map<Integer, Customer> customers = branch.getCustomers();
+                writeVarLong(output, customers.size());
+                for (Customer customer : customers.values()) {
+                    writeVarLong(output, customer.getCustomerId());
+                    writeString(output, customer.getName());
+                    writeAddress(output, customer.getAddress());
+                    List<Account> owned = customer.getAccounts();
+                    writeVarLong(output, owned.size());
+                    for (Account account : owned) {
+                        writeVarLong(output, account.getAccountNumber());
+                        if (accounts.size() == positions.length) {
+                            positions = Arrays.copyOf(positions, positions.length * 2);
+                        }
+                        positions[accounts.size()] = output.size();
+                        accounts.add(account);
+                    }
+                }
+            }
+            layouts[i] = output.toByteArray();
+            ends[i] = accounts.size();
+        }
+        long[] cents = Account.readCents(accounts.toArray(new Account[0]));
+        List<byte[]> encoded = new ArrayList<>(layouts.length);
+        int next = 0;
+        for (int i = 0; i < layouts.length; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(layouts[i].length + 4 * (ends[i] - next));
+            int from = 0;
+            for (; next < ends[i]; next++) {
+                output.write(layouts[i], from, positions[next] - from);
+                from = positions[next];
+                writeVarLong(output, (cents[next] << 1) ^ (cents[next] >> 63));
+            }
+            output.write(layouts[i], from, layouts[i].length - from);
+            encoded.add(output.toByteArray());
+        }
+        return encoded;
+    }
+
+    /**
+     * Restores a <code>Bank</code> from its binary form.<br><br>
+     * The restored bank is marked as unchanged.
+     *
+     * @param bytes the binary form as an array of bytes
+     * @return the restored <code>Bank</code>
+     * @throws IOException if the bytes are not a valid binary form of a bank
+     */
+    static Bank decode(byte[] bytes) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        try {
+            Bank bank = new Bank(readVarInt(input), readString(input));
+            int branches = readVarInt(input);
+            for (int i = 0; i < branches; i++) {
+                int branchCode = readVarInt(input);
+                bank.createBranch(branchCode, readString(input), readAddress(input));
+                Branch branch = bank.getBranch(branchCode);
+                int customers = readVarInt(input);
+                for (int j = 0; j < customers; j++) {
+                    Customer customer = new Customer(readVarInt(input), readString(input), readAddress(input));
+                    int accounts = readVarInt(input);
+                    for (int k = 0; k < accounts; k++) {
+                        Account account = customer.openAccount(readVarInt(input));
+                        long zigzag = readVarLong(input);
+                        long cents = (zigzag >>> 1) ^ -(zigzag & 1);
+                        if (account != null) {
+                            account.restoreCents(cents);
+                        }
+                    }
+                    branch.addCustomer(customer);
+                }
+            }
+            bank.markClean();
+            return bank;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new EOFException("Truncated or corrupted bank segment");
+        }
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, seven (7) bits at a time, lowest bits first.
+     *
+     * @param output the stream to write to
+     * @param value  the non-negative value to be written
+     */
+    static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by <code>writeVarLong()</code>.
+     *
+     * @param input the buffer to read from
+     * @return the value as a <code>Long</code>
+     */
+    static long readVarLong(ByteBuffer input) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads an unsigned variable-length integer which must fit in an <code>Integer</code>.
+     *
+     * @param input the buffer to read from
+     * @return the value as an <code>Integer</code>
+     */
+    static int readVarInt(ByteBuffer input) {
+        long value = readVarLong(input);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Varint out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes a <code>String</code> as its UTF-8 byte length followed by the bytes.
+     *
+     * @param output the stream to write to
+     * @param s      the <code>String</code> to be written
+     */
+    static void writeString(ByteArrayOutputStream output, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads a <code>String</code> written by <code>writeString()</code>.
+     *
+     * @param input the buffer to read from
+     * @return the <code>String</code>
+     */
+    static String readString(ByteBuffer input) {
+        int length = readVarInt(input);
+        if (length > input.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(input.array(), input.arrayOffset() + input.position(), length, StandardCharsets.UTF_8);
+        input.position(input.position() + length);
+        return s;
+    }
+
+    /**
+     * Writes every part of an <code>Address</code>.<br><br>
+     * The zip code of an invalid address is written as an empty <code>String</code>, so that the address
+     * remains invalid when restored.
+     *
+     * @param output  the stream to write to
+     * @param address the <code>Address</code> to be written
+     */
+    static void writeAddress(ByteArrayOutputStream output, Address address) {
+        writeString(output, address.getStreet());
+        writeString(output, address.getCity());
+        writeString(output, address.getState());
+        writeString(output, address.isValid() ? address.getZipCode() : "");
+    }
+
+    /**
+     * Reads an <code>Address</code> written by <code>writeAddress()</code>.
+     *
+     * @param input the buffer to read from
+     * @return the <code>Address</code>
+     */
+    static Address readAddress(ByteBuffer input) {
+        return new Address(readString(input), readString(input), readString(input), readString(input));
+    }
+
+}
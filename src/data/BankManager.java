@@ -1,24 +1,41 @@
 package data;
 
+import bank.Account;
 import bank.Bank;
+import bank.Branch;
+import bank.CompositeKey;
+import bank.Customer;
+import bank.IdAllocator;
+import bank.MutationListener;
 import org.jetbrains.annotations.NotNull;
+import utility.ConcurrentLinkedMap;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class serves as a manager to handle a number of banks.<br><br>
  * Here, a data structure of <code>Bank</code> objects is available, to store a number of bank corporations
  * controlled by the user. Banks can be created, edited, removed, all from this class alone.<br><br>
- * This class also provides File I/0 methods to read an existing bank database from a file, or save a user's
- * session to one.
+ * This class also provides methods to read an existing bank database, or save a user's session, through a
+ * <code>StorageEngine</code>. By default, the <code>SnapshotEngine</code> only writes the banks which have
+ * changed since the last save, and only reads banks from the file once they are needed. Every change made in
+ * between saves is recorded as it is made, so that changes are not lost if the session ends without saving.
+ * A <code>Backup</code> of the database is also kept as changes are made, to restore it as it was at any
+ * point in time.
  *
  * @author Samuel A. Kosasih
  *
  * @see Bank
  * @see BankList
+ * @see StorageEngine
+ * @see SnapshotEngine
+ * @see LogEngine
+ * @see Backup
  */
 public class BankManager implements Iterable<Bank>, Serializable {
 
@@ -28,22 +45,58 @@ public class BankManager implements Iterable<Bank>, Serializable {
     private BankList banks;
 
     /**
-     * This field stores a <code>File</code> object used for file handling purposes.<br><br>
-     * Refers to the file name <code>bankDatabase.ser</code> stored within the project files.
+     * This field stores the <code>StorageEngine</code> the database is read from and saved to.
      */
-    private final File file = new File("bankDatabase.ser");
+    private final transient StorageEngine engine;
+
+    /**
+     * This field stores the <code>MutationListener</code> notified when banks are created or removed.<br><br>
+     * Remains <code>null</code> while the journal is being replayed.
+     */
+    private transient MutationListener listener;
+
+    /**
+     * This field stores the <code>Backup</code> backing up the database to the <code>backup</code> directory
+     * as changes are made, so that it can be restored as it was at any point in time.
+     */
+    private final transient Backup backup;
+
+    /**
+     * This field stores the <code>AccountIndex</code> finding any account by its account number.
+     */
+    private final transient AccountIndex index;
 
     /**
      * Default Constructor.<br><br>
-     * Reads from an object file referred by the file name <code>bankDatabase.ser</code> stored
-     * within the project files. If not found, it will proceed with a new <code>BankList</code>.
+     * Reads the database using the <code>StorageEngine</code> named by the system property
+     * <code>bank.storage</code>, which defaults to <code>snapshot</code>. If nothing has been saved yet,
+     * it will proceed with a new <code>BankList</code>.
      *
-     * @see BankList
+     * @see StorageEngine#create(String)
      */
     public BankManager() {
-        if (!read()) {
-            this.banks = new BankList();
-        }
+        this(StorageEngine.create(System.getProperty("bank.storage", "snapshot")));
+    }
+
+    /**
+     * Overloaded Constructor.<br><br>
+     * Reads the database using the given <code>StorageEngine</code>, after which any changes made since it
+     * was last saved are recovered.
+     *
+     * @param engine the <code>StorageEngine</code> the database is read from and saved to
+     *
+     * @see BankList
+     * @see StorageEngine
+     */
+    public BankManager(StorageEngine engine) {
+        this.engine = engine;
+        backup = new Backup(new File("backup"), this::view, engine);
+        index = new AccountIndex(this);
+        this.banks = new BankList(engine.load(this), engine);
+        engine.recover();
+        banks.setIndex(index);
+        listener = new Listeners(backup::changed, engine.getMutationListener(), backup, index);
+        banks.setMutationListener(listener);
     }
 
     /**
@@ -58,28 +111,52 @@ public class BankManager implements Iterable<Bank>, Serializable {
     /**
      * Creates a new bank to be under the user's management.<br><br>
      * This method will first check whether <code>bankName</code> is unique, as it cannot store
-     * duplicate banks with the same name.
+     * duplicate banks with the same name. The name is checked and taken while holding the lock of the
+     * list of banks, so two threads can never create banks with the same name. The bank ID is given out by
+     * the <code>IdAllocator</code> of the list, so it is never already in use.
      *
      * @param bankName the bank's name as a <code>String</code>
      * @return <code>true</code> if the new bank has been added to the database.
      * Otherwise, it will return <code>false</code>.
+     * @throws IllegalStateException if every 4-Digit bank ID is already in use
      *
      * @see Bank
      */
     public boolean createBank(String bankName) {
-        for (Bank banks : this) {
-            if (banks.getBankName().equalsIgnoreCase(bankName)) {
+        Bank bank;
+        synchronized (banks) {
+            if (banks.containsName(bankName)) {
                 return false;
             }
+            bank = new Bank(banks.allocate(), bankName);
+            addBank(bank);
+        }
+        MutationListener listener = this.listener;
+        if (listener != null) {
+            listener.bankCreated(bank);
         }
-        banks.add(new Bank(bankName));
         return true;
     }
 
+    /**
+     * Adds an existing <code>Bank</code> object to the database, unless its bank ID is already in use.
+     *
+     * @param bank the <code>Bank</code> object to be added
+     * @return <code>true</code> if the bank has been added. Otherwise, it will return <code>false</code>.
+     */
+    boolean addBank(Bank bank) {
+        bank.setMutationListener(listener);
+        index.attach(bank);
+        return banks.add(bank);
+    }
+
     /**
      * Removes a bank from the database.<br><br>
      * To choose the bank to be removed, the <code>bankId</code> parameter will identify
-     * which <code>Bank</code> object to be removed based on its <code>BANK_ID</code>.
+     * which <code>Bank</code> object to be removed based on its <code>BANK_ID</code>.<br><br>
+     * A bank which has not been read yet is removed without reading it, and the listeners are only told its
+     * bank ID. The <code>AccountIndex</code> holds nothing for such a bank, as it only indexes a bank once it
+     * has been read.
      *
      * @param bankId a 4-Digit bank ID as an <code>Integer</code> to identify the bank
      *               to be removed
@@ -89,7 +166,27 @@ public class BankManager implements Iterable<Bank>, Serializable {
      * @see Bank
      */
     public boolean removeBank(int bankId) {
-        return banks.remove(bankId);
+        Bank bank;
+        synchronized (banks) {
+            if (!banks.contains(bankId)) {
+                return false;
+            }
+            bank = banks.view().get(bankId);
+            banks.remove(bankId);
+        }
+        if (bank != null) {
+            bank.setMutationListener(null);
+            bank.setAccountNumbers(null);
+        }
+        MutationListener listener = this.listener;
+        if (listener != null) {
+            if (bank != null) {
+                listener.bankRemoved(bank);
+            } else {
+                listener.bankRemoved(bankId);
+            }
+        }
+        return true;
     }
 
     /**
@@ -100,12 +197,124 @@ public class BankManager implements Iterable<Bank>, Serializable {
      * not found
      */
     public Bank getBank(int bankId) {
-        for (Bank banks : this) {
-            if (banks.getBankId() == bankId) {
-                return banks;
-            }
-        }
-        return null;
+        return banks.get(bankId);
+    }
+
+    /**
+     * Retrieves the open account with the given account number, at any bank, in constant time.<br><br>
+     * The customer, branch and bank the account belongs to are retrieved through
+     * <code>Account.getCustomer()</code>, <code>Customer.getBranch()</code> and <code>Branch.getBank()</code>.
+     * A number which is not indexed yet reads the bank which gave it out, should it not have been read yet,
+     * and only should it still not be found every other bank which has not been read yet. Should several open
+     * accounts hold the number, the one indexed first is found.
+     *
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the <code>Account</code>, or <code>null</code> if not found
+     *
+     * @see AccountIndex
+     */
+    public Account findAccount(int accountNumber) {
+        return index.find(accountNumber);
+    }
+
+    /**
+     * Retrieves the bank a <code>CompositeKey</code> routes to.
+     *
+     * @param key the composite key of the bank, or of anything it holds
+     * @return the <code>Bank</code>, or <code>null</code> if not found
+     */
+    public Bank resolveBank(long key) {
+        int bankId = CompositeKey.bankId(key);
+        return bankId < 0 ? null : getBank(bankId);
+    }
+
+    /**
+     * Retrieves the branch a <code>CompositeKey</code> routes to, through the bank holding it.
+     *
+     * @param key the composite key of the branch, or of anything it holds
+     * @return the <code>Branch</code>, or <code>null</code> if not found
+     */
+    public Branch resolveBranch(long key) {
+        Bank bank = resolveBank(key);
+        int branchCode = CompositeKey.branchCode(key);
+        return bank == null || branchCode < 0 ? null : bank.getBranch(branchCode);
+    }
+
+    /**
+     * Retrieves the customer a <code>CompositeKey</code> routes to, through the bank and branch holding it.
+     *
+     * @param key the composite key of the customer, or of any of its accounts
+     * @return the <code>Customer</code>, or <code>null</code> if not found
+     */
+    public Customer resolveCustomer(long key) {
+        Branch branch = resolveBranch(key);
+        int customerId = CompositeKey.customerId(key);
+        return branch == null || customerId < 0 ? null : branch.getCustomer(customerId);
+    }
+
+    /**
+     * Retrieves the account a <code>CompositeKey</code> routes to, through the bank, branch and customer
+     * holding it. Every level is a single lookup, so no bank, branch or customer is searched.<br><br>
+     * The key only holds a tag of the account number, so the account found is not necessarily the account the
+     * key was made for. Use <code>resolveAccount(long, int)</code> where the account number is known.
+     *
+     * @param key the composite key of the account
+     * @return the only open <code>Account</code> of the customer with the tag of the key, or <code>null</code>
+     * if there is none, or more than one
+     *
+     * @see CompositeKey#account(Customer, long)
+     */
+    public Account resolveAccount(long key) {
+        Customer customer = resolveCustomer(key);
+        return customer == null ? null : CompositeKey.account(customer, key);
+    }
+
+    /**
+     * Overloaded Method. Retrieves the account a <code>CompositeKey</code> routes to, checking that it has the
+     * given account number. Every level is a single lookup, so no bank, branch or customer is searched.
+     *
+     * @param key           the composite key of the account
+     * @param accountNumber the 9-digit account number as an <code>Integer</code>
+     * @return the <code>Account</code>, or <code>null</code> if not found
+     *
+     * @see CompositeKey#account(Customer, long, int)
+     */
+    public Account resolveAccount(long key, int accountNumber) {
+        Customer customer = resolveCustomer(key);
+        return customer == null ? null : CompositeKey.account(customer, key, accountNumber);
+    }
+
+    /**
+     * Transfers funds between two accounts, routed to by their <code>CompositeKey</code>s and checked against
+     * their account numbers.
+     *
+     * @param from        the composite key of the origin account
+     * @param fromAccount the 9-digit account number of the origin account
+     * @param to          the composite key of the recipient account
+     * @param toAccount   the 9-digit account number of the recipient account
+     * @param amount      the given amount of funds as a <code>Double</code>
+     * @return <code>true</code> if both accounts are found and the funds have been transferred. Otherwise,
+     * it will return <code>false</code>.
+     *
+     * @see Account#transfer(Account, double)
+     */
+    public boolean transfer(long from, int fromAccount, long to, int toAccount, double amount) {
+        Account origin = resolveAccount(from, fromAccount);
+        Account recipient = resolveAccount(to, toAccount);
+        return origin != null && recipient != null && origin.transfer(recipient, amount);
+    }
+
+    /**
+     * Adds up the total funds and number of accounts across every bank, along with the totals of every bank,
+     * every branch, and every state the customers live in, on the common <code>ForkJoinPool</code>.<br><br>
+     * Any bank which has not been read yet is read first.
+     *
+     * @return the <code>Aggregation</code>
+     *
+     * @see Aggregation
+     */
+    public Aggregation aggregate() {
+        return Aggregation.of(this);
     }
 
     /**
@@ -131,75 +340,281 @@ public class BankManager implements Iterable<Bank>, Serializable {
         return banks.iterator();
     }
 
+    /**
+     * Returns a <code>Spliterator</code> of type <code>Bank</code> over every bank, which splits evenly and
+     * knows the exact size of every part.<br><br>
+     * Any bank which has not been read yet is read first, when the spliterator is created.
+     *
+     * @return a <code>Spliterator</code> of type <code>Bank</code>
+     */
+    @Override
+    public Spliterator<Bank> spliterator() {
+        List<Bank> list = new ArrayList<>();
+        for (Bank bank : this) {
+            list.add(bank);
+        }
+        return Spliterators.spliterator(list.toArray(new Bank[0]), Spliterator.ORDERED | Spliterator.DISTINCT
+                | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> of every bank.<br><br>
+     * Any bank which has not been read yet is read first, when the stream is created.
+     *
+     * @return a <code>Stream</code> of type <code>Bank</code>
+     */
+    public Stream<Bank> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel <code>Stream</code> of every bank.<br><br>
+     * Any bank which has not been read yet is read first, when the stream is created.
+     *
+     * @return a <code>Stream</code> of type <code>Bank</code>
+     */
+    public Stream<Bank> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Returns a <code>Stream</code> of every account of every customer at every branch of every bank, in
+     * order.<br><br>
+     * Unlike flattening the streams of the banks, branches and customers, which would only split the work
+     * by bank, the accounts are split by the number of customers at each branch, and then by the customers
+     * of a single branch, so that a parallel stream spreads them evenly across every thread however the
+     * customers are spread across the banks. Any bank which has not been read yet is read first, when the
+     * stream is created.
+     *
+     * @param parallel whether the stream is parallel
+     * @return a <code>Stream</code> of type <code>Account</code>
+     *
+     * @see AccountSpliterator
+     */
+    public Stream<Account> accounts(boolean parallel) {
+        List<Branch> branches = new ArrayList<>();
+        for (Bank bank : this) {
+            for (Branch branch : bank) {
+                branches.add(branch);
+            }
+        }
+        return StreamSupport.stream(new AccountSpliterator(branches.toArray(new Branch[0])), parallel);
+    }
+
+    /**
+     * Returns a sequential <code>Stream</code> of every account of every customer at every branch of every
+     * bank, in order.
+     *
+     * @return a <code>Stream</code> of type <code>Account</code>
+     *
+     * @see #accounts(boolean)
+     */
+    public Stream<Account> accounts() {
+        return accounts(false);
+    }
+
     /**
      * Saves any changes made to the database within the session.<br><br>
-     * This method will write the <code>BankList</code> object to a file referred by
-     * the field <code>file</code>.
+     * How the database is saved depends on the <code>StorageEngine</code>. By default, only the banks which
+     * have changed since the last save are written again, to a temporary file which only replaces the previous
+     * file once it has been completely written.<br><br>
+     * Changes are also recorded as they are made, so calling this method is only required before the session
+     * ends.
      *
      * @return <code>true</code> if the session is successfully saved. Otherwise it will return <code>false</code>
      *
-     * @see BankList
-     * @see ObjectOutputStream
-     * @see FileOutputStream
+     * @see StorageEngine#checkpoint()
      */
     public boolean save() {
-        try (ObjectOutputStream output =
-                     new ObjectOutputStream(new FileOutputStream(file))) {
-            output.writeObject(banks);
-            return true;
-        } catch (IOException ioe) {
-            System.out.println(ioe.getMessage());
-            return false;
-        }
+        return engine.checkpoint();
     }
 
     /**
-     * Reads existing data to the <code>BankList</code> from a file referred by the field <code>file</code> for the current session.
+     * Starts saving any changes made to the database within the session, without waiting for them to be
+     * written.<br><br>
+     * Used by interfaces which cannot wait for the database to be written, such as the GUI. Should a save
+     * still be in progress, no other is started, since changes are recorded as they are made.<br><br>
+     * May be called on any thread, while other threads continue to change the banks.
      *
-     * @return <code>true</code> if file is found and data is successfully read. Otherwise, it will return
-     * <code>false</code>.
+     * @return a <code>CompletableFuture</code> completing once the session has been written, with
+     * <code>true</code> if it is successfully saved. Otherwise it will complete with <code>false</code>.
      *
-     * @see BankList
-     * @see ObjectInputStream
-     * @see FileInputStream
-     */
-    private boolean read() {
-        if (file.exists()) {
-            try (ObjectInputStream input =
-                         new ObjectInputStream(new FileInputStream(file))) {
-                this.banks = (BankList) input.readObject();
-                return true;
-            } catch (IOException | ClassNotFoundException e) {
-                return false;
-            }
-        }
-        return false;
+     * @see StorageEngine#checkpointAsync()
+     */
+    public CompletableFuture<Boolean> saveAsync() {
+        return engine.checkpointAsync();
+    }
+
+    /**
+     * Retrieves the <code>StorageEngine</code> the database is read from and saved to, to inspect its metrics.
+     *
+     * @return the <code>StorageEngine</code>
+     */
+    public StorageEngine getStorageEngine() {
+        return engine;
+    }
+
+    /**
+     * Retrieves every bank in order, using the bank IDs as the key, without reading any of them.
+     *
+     * @return an unmodifiable <code>Map</code>, with <code>null</code> as the value for banks which
+     * have not been read yet
+     */
+    Map<Integer, Bank> view() {
+        return banks.view();
+    }
+
+    /**
+     * Ends the session, waiting for any save or backup still in progress and forcing any changes still
+     * pending to the storage device.<br><br>
+     * Should be called once the <code>BankManager</code> is no longer used, after any final
+     * <code>save()</code>.
+     *
+     * @see StorageEngine#close()
+     */
+    public void close() {
+        backup.close();
+        engine.close();
     }
 
     /**
      * This private inner class serves as a data structure used to store <code>Bank</code> objects.<br><br>
      * Since this program's file handling was designed to save the database of <code>Bank</code> objects,
-     * this class serves that exact purpose. Using this class to be saved into an object file (.ser) is
-     * much safer rather than saving a raw data structure.<br><br>
-     * <b>Must only be used in the <code>BankManager</code> class</b>
+     * this class serves that exact purpose. Files saved before the <code>Snapshot</code> format was introduced
+     * consist of a single serialized <code>BankList</code>, which is why it must remain serializable.<br><br>
+     * Banks read from a <code>Snapshot</code> are only materialized the first time they are retrieved or
+     * iterated over. Until then, the bank ID maps to <code>null</code>, and its name is taken from the index
+     * of the file.<br><br>
+     * Banks are kept in a <code>ConcurrentLinkedMap</code>, so the list may be read and iterated over from many
+     * threads at once, in the order the banks were added. Adding, removing, and reading a bank for the first
+     * time lock the list.<br><br>
+     * <b>Must only be used in the <code>BankManager</code> class, and by a <code>StorageEngine</code> reading
+     * a file saved as a single serialized <code>BankList</code></b>
      *
      * @author Samuel A. Kosasih
      *
      * @see Bank
      * @see data.BankManager
      */
-    private static class BankList implements Serializable, Iterable<Bank> {
+    static class BankList implements Serializable, Iterable<Bank> {
+
+        private static final long serialVersionUID = 5706628725990052647L;
+
+        /**
+         * The serialized fields of a <code>BankList</code>, kept as they were in files saved before the
+         * <code>Snapshot</code> format was introduced.
+         */
+        private static final ObjectStreamField[] serialPersistentFields = {
+                new ObjectStreamField("banks", ArrayList.class),
+                new ObjectStreamField("sequence", long.class)
+        };
+
+        /**
+         * This field stores a <code>LinkedHashMap</code> used to store <code>Bank</code> objects in the order
+         * they were added.<br><br>
+         * Uses the bank IDs as the key, and the <code>Bank</code> as the value, or <code>null</code> if the bank
+         * has not been read from the <code>source</code> yet.
+         */
+        private transient ConcurrentLinkedMap<Integer, Bank> banks;
+
+        /**
+         * This field stores the <code>StorageEngine</code> the banks which have not been read yet are read from.
+         */
+        private transient StorageEngine source;
 
         /**
-         * This field stores a <code>ArrayList</code> used to store <code>Bank</code> objects.<br><br>
+         * This field stores the <code>MutationListener</code> registered on every bank once it is read.
          */
-        private final ArrayList<Bank> banks;
+        private transient MutationListener listener;
+
+        /**
+         * This field stores the <code>AccountIndex</code> every bank is attached to once it is read, or
+         * <code>null</code> while the database is being recovered.
+         */
+        private transient AccountIndex index;
+
+        /**
+         * This field stores the <code>IdAllocator</code> giving out the bank IDs, holding every bank ID in
+         * use, including those of the banks which have not been read yet.
+         */
+        private transient IdAllocator ids = new IdAllocator(1000, 9999);
+
+        /**
+         * This field stores the sequence number of the last journal record contained in the database.<br><br>
+         * Files saved before the journal was introduced will read this as zero (0).
+         */
+        private long sequence;
 
         /**
          * Default Constructor.
          */
         public BankList() {
-            this.banks = new ArrayList<>();
+            this.banks = new ConcurrentLinkedMap<>();
+        }
+
+        /**
+         * Constructor for a database read by a <code>StorageEngine</code>.
+         *
+         * @param banks  a <code>Map</code> of every bank in order, using the bank IDs as the key, and
+         *               <code>null</code> as the value for banks which are yet to be read
+         * @param source the <code>StorageEngine</code> the banks are read from
+         */
+        public BankList(Map<Integer, Bank> banks, StorageEngine source) {
+            this.banks = new ConcurrentLinkedMap<>(banks);
+            this.source = source;
+            for (int bankId : banks.keySet()) {
+                ids.reserve(bankId);
+            }
+        }
+
+        /**
+         * Allocates a bank ID which is not in use, to create a new bank with.<br><br>
+         * The ID is held until the bank is added, or removed again.
+         *
+         * @return the 4-Digit bank ID as an <code>Integer</code>
+         * @throws IllegalStateException if every 4-Digit bank ID is already in use
+         */
+        public int allocate() {
+            return ids.allocate();
+        }
+
+        /**
+         * Retrieves the sequence number of the last journal record contained in the database.
+         *
+         * @return the sequence number as a <code>Long</code>
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Registers a <code>MutationListener</code> on every bank which has been read, and on every bank read
+         * from now on.
+         *
+         * @param listener the <code>MutationListener</code>, or <code>null</code> to unregister it
+         */
+        public void setMutationListener(MutationListener listener) {
+            this.listener = listener;
+            for (Bank bank : banks.values()) {
+                if (bank != null) {
+                    bank.setMutationListener(listener);
+                }
+            }
+        }
+
+        /**
+         * Attaches every bank which has been read to the <code>AccountIndex</code>, and every bank read from
+         * now on, as it is read and before it is handed out.
+         *
+         * @param index the <code>AccountIndex</code>
+         */
+        public void setIndex(AccountIndex index) {
+            this.index = index;
+            for (Bank bank : banks.values()) {
+                if (bank != null) {
+                    index.attach(bank);
+                }
+            }
         }
 
         /**
@@ -211,6 +626,74 @@ public class BankManager implements Iterable<Bank>, Serializable {
             return banks.size();
         }
 
+        /**
+         * Determines whether a bank with the <code>bankId</code> is in the database, without reading it.
+         *
+         * @param bankId a 4-Digit bank ID as an <code>Integer</code>
+         * @return <code>true</code> if the bank is in the database
+         */
+        public boolean contains(int bankId) {
+            return banks.containsKey(bankId);
+        }
+
+        /**
+         * Determines whether a bank with the given name is in the database, ignoring case, without reading
+         * any of the banks.
+         *
+         * @param bankName the bank's name as a <code>String</code>
+         * @return <code>true</code> if a bank with the name is in the database
+         */
+        public boolean containsName(String bankName) {
+            for (Map.Entry<Integer, Bank> entry : banks.entrySet()) {
+                Bank bank = entry.getValue();
+                String name = bank != null ? bank.getBankName() : source.getName(entry.getKey());
+                if (bankName.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Retrieves the bank with the <code>bankId</code>, reading it from the <code>source</code> if it has
+         * not been read yet.
+         *
+         * @param bankId a 4-Digit bank ID as an <code>Integer</code>
+         * @return the <code>Bank</code>, or <code>null</code> if not found
+         * @throws UncheckedIOException if the bank cannot be read
+         */
+        public Bank get(int bankId) {
+            Bank bank = banks.get(bankId);
+            if (bank == null && banks.containsKey(bankId)) {
+                synchronized (this) {
+                    bank = banks.get(bankId);
+                    if (bank == null && banks.containsKey(bankId)) {
+                        try {
+                            bank = source.load(bankId);
+                        } catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                        bank.setMutationListener(listener);
+                        if (index != null) {
+                            index.attach(bank);
+                        }
+                        banks.replace(bankId, bank);
+                    }
+                }
+            }
+            return bank;
+        }
+
+        /**
+         * Retrieves every bank in order, using the bank IDs as the key, without reading any of them.
+         *
+         * @return an unmodifiable <code>Map</code>, with <code>null</code> as the value for banks which
+         * have not been read yet
+         */
+        public Map<Integer, Bank> view() {
+            return Collections.unmodifiableMap(banks);
+        }
+
         /**
          * Adds a new <code>Bank</code> object to the database.<br><br>
          *
@@ -218,8 +701,13 @@ public class BankManager implements Iterable<Bank>, Serializable {
          * @return <code>true</code> if the new bank has been added to the database.
          * Otherwise, it will return <code>false</code>.
          */
-        public boolean add(Bank bank) {
-            return banks.add(bank);
+        public synchronized boolean add(Bank bank) {
+            if (banks.containsKey(bank.getBankId())) {
+                return false;
+            }
+            ids.reserve(bank.getBankId());
+            banks.put(bank.getBankId(), bank);
+            return true;
         }
 
         /**
@@ -232,21 +720,284 @@ public class BankManager implements Iterable<Bank>, Serializable {
          *
          * @see Bank
          */
-        public boolean remove(int bankId) {
-            return banks.removeIf(b -> b.getBankId() == bankId);
+        public synchronized boolean remove(int bankId) {
+            if (!banks.containsKey(bankId)) {
+                return false;
+            }
+            banks.remove(bankId);
+            ids.release(bankId);
+            return true;
         }
 
         /**
          * Returns an <code>Iterator</code> of type <code>Bank</code> to iterate
-         * through the database of <code>Bank</code>s.
+         * through the database of <code>Bank</code>s.<br><br>
+         * Each bank is read from the <code>source</code> as the iteration reaches it. Banks removed while
+         * iterating are skipped.
          *
          * @return an <code>Iterator</code> of type <code>Bank</code>
          */
         @Override
         public @NotNull Iterator<Bank> iterator() {
-            return banks.iterator();
+            Iterator<Integer> ids = banks.keySet().iterator();
+            return new Iterator<>() {
+
+                private Bank next = advance();
+
+                private Bank last;
+
+                private Bank advance() {
+                    while (ids.hasNext()) {
+                        Bank bank = get(ids.next());
+                        if (bank != null) {
+                            return bank;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Bank next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    BankList.this.remove(last.getBankId());
+                    last = null;
+                }
+            };
         }
 
+        /**
+         * Restores a <code>BankList</code> saved as a single serialized object.
+         *
+         * @param input the stream to read from
+         * @throws IOException            if an I/O error occurs
+         * @throws ClassNotFoundException if a class of a serialized object cannot be found
+         */
+        private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField fields = input.readFields();
+            this.banks = new ConcurrentLinkedMap<>();
+            this.ids = new IdAllocator(1000, 9999);
+            for (Object bank : (ArrayList<?>) fields.get("banks", new ArrayList<>())) {
+                add((Bank) bank);
+            }
+            this.sequence = fields.get("sequence", 0L);
+        }
+
+        /**
+         * Saves the <code>BankList</code> as a single serialized object, reading every bank first.
+         *
+         * @param output the stream to write to
+         * @throws IOException if an I/O error occurs
+         */
+        private void writeObject(ObjectOutputStream output) throws IOException {
+            ArrayList<Bank> list = new ArrayList<>(banks.size());
+            for (Bank bank : this) {
+                list.add(bank);
+            }
+            ObjectOutputStream.PutField fields = output.putFields();
+            fields.put("banks", list);
+            fields.put("sequence", sequence);
+            output.writeFields();
+        }
+
+    }
+
+    /**
+     * This private class splits every account of every customer at a number of branches, for
+     * <code>accounts()</code>.<br><br>
+     * A range of branches is split where half of their customers lie on either side, going by the number of
+     * customers each branch had when the spliterator was created. A single branch is split by its customers,
+     * through the spliterator of the branch. The size of a range is estimated by its number of customers, as
+     * the number of accounts of every customer is only known by going through them.
+     *
+     * @see Branch#spliterator()
+     * @see Customer#spliterator()
+     */
+    private static final class AccountSpliterator implements Spliterator<Account> {
+
+        /**
+         * This field stores every branch, shared by every part split off.
+         */
+        private final Branch[] branches;
+
+        /**
+         * This field stores the number of customers at every branch up to and including each branch.
+         */
+        private final long[] ends;
+
+        /**
+         * This field stores the index of the branch being gone through.
+         */
+        private int from;
+
+        /**
+         * This field stores the index past the last branch of the range.
+         */
+        private final int to;
+
+        /**
+         * This field stores the customers left at the branch being gone through, or <code>null</code> if
+         * it has not been started yet.
+         */
+        private Spliterator<Customer> customers;
+
+        /**
+         * This field stores the accounts left of the customer being gone through, or <code>null</code> if
+         * there is none.
+         */
+        private Spliterator<Account> accounts;
+
+        /**
+         * Constructor. <br><br>
+         * Creates a spliterator over every account at the given branches.
+         *
+         * @param branches the branches
+         */
+        private AccountSpliterator(Branch[] branches) {
+            this(branches, new long[branches.length], 0, branches.length, null, null);
+            long customers = 0;
+            for (int i = 0; i < branches.length; i++) {
+                customers += branches[i].getNumberOfCustomers();
+                ends[i] = customers;
+            }
+        }
+
+        /**
+         * Constructor. <br><br>
+         * Creates a spliterator over a part split off another.
+         *
+         * @param branches  every branch
+         * @param ends      the number of customers at every branch up to and including each branch
+         * @param from      the index of the first branch of the part
+         * @param to        the index past the last branch of the part
+         * @param customers the customers left at the first branch, or <code>null</code> if it has not been
+         *                  started yet
+         * @param accounts  the accounts left of the customer being gone through, or <code>null</code>
+         */
+        private AccountSpliterator(Branch[] branches, long[] ends, int from, int to, Spliterator<Customer> customers,
+                                   Spliterator<Account> accounts) {
+            this.branches = branches;
+            this.ends = ends;
+            this.from = from;
+            this.to = to;
+            this.customers = customers;
+            this.accounts = accounts;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Account> action) {
+            while (true) {
+                if (accounts != null && accounts.tryAdvance(action)) {
+                    return true;
+                }
+                accounts = null;
+                if (customers == null) {
+                    if (from >= to) {
+                        return false;
+                    }
+                    customers = branches[from].spliterator();
+                }
+                if (!customers.tryAdvance(customer -> accounts = customer.spliterator())) {
+                    customers = null;
+                    from++;
+                }
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Account> action) {
+            if (accounts != null) {
+                accounts.forEachRemaining(action);
+                accounts = null;
+            }
+            for (; from < to; from++) {
+                if (customers == null) {
+                    customers = branches[from].spliterator();
+                }
+                customers.forEachRemaining(customer -> customer.spliterator().forEachRemaining(action));
+                customers = null;
+            }
+        }
+
+        @Override
+        public Spliterator<Account> trySplit() {
+            if (to - from > 1) {
+                if (customers != null) {
+                    AccountSpliterator prefix = new AccountSpliterator(branches, ends, from, from + 1, customers,
+                            accounts);
+                    customers = null;
+                    accounts = null;
+                    from++;
+                    return prefix;
+                }
+                long half = (start(from) + ends[to - 1]) / 2;
+                int low = from + 1;
+                int high = to - 1;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (ends[middle - 1] < half) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                AccountSpliterator prefix = new AccountSpliterator(branches, ends, from, low, null, null);
+                from = low;
+                return prefix;
+            } else if (to - from == 1) {
+                if (customers == null) {
+                    customers = branches[from].spliterator();
+                }
+                Spliterator<Customer> split = customers.trySplit();
+                if (split == null) {
+                    return null;
+                }
+                AccountSpliterator prefix = new AccountSpliterator(branches, ends, from, to, split, accounts);
+                accounts = null;
+                return prefix;
+            }
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (from >= to) {
+                return accounts == null ? 0 : accounts.estimateSize();
+            }
+            long size = ends[to - 1] - ends[from] + (accounts == null ? 0 : accounts.estimateSize());
+            return size + (customers == null ? ends[from] - start(from) : customers.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        /**
+         * A helper method to retrieve the number of customers at every branch before the given one.
+         *
+         * @param index the index of the branch
+         * @return the number of customers as a <code>Long</code>
+         */
+        private long start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
     }
 
 }
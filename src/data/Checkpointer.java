@@ -0,0 +1,339 @@
+package data;
+
+import bank.Bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * This class saves the database of a <code>BankManager</code> to its <code>ImageStore</code> in the background,
+ * once enough changes have been recorded in the <code>Journal</code>, or enough time has passed since the
+ * last save.<br><br>
+ * Saving a database consists of two (2) phases. The banks which have changed are first captured on the thread
+ * making the changes, as soon as the change which makes a save due has been recorded. This is the only part
+ * done in the foreground, and only takes note of the changed banks, unless the ledger is not open. The
+ * captured <code>Image</code> is then encoded and written to the file on a separate thread, from the
+ * immutable snapshots of the branches and customers, after which the journal records it contains are
+ * discarded.<br><br>
+ * The settings are read from the system properties <code>bank.checkpoint.mutations</code> (1000 changes by
+ * default) and <code>bank.checkpoint.interval</code> (30000 milliseconds by default). Setting either one
+ * to zero (0) disables it.<br><br>
+ * The duration of the last checkpoint and the number of bytes written are kept, to be inspected as metrics.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see ImageStore#capture(Map, long)
+ * @see Journal#truncate(long)
+ */
+public class Checkpointer implements Closeable {
+
+    /**
+     * This field stores the <code>ImageStore</code> the database is saved to.
+     */
+    private final ImageStore snapshot;
+
+    /**
+     * This field stores the <code>Journal</code> recording every change made since the last save.
+     */
+    private final Journal journal;
+
+    /**
+     * This field stores the <code>Ledger</code> keeping the balance of every account.
+     */
+    private final Ledger ledger;
+
+    /**
+     * This field stores a <code>Supplier</code> of every bank to be saved in order, using the bank IDs as the
+     * key, and <code>null</code> as the value for banks which have not been read yet.
+     */
+    private final Supplier<Map<Integer, Bank>> banks;
+
+    /**
+     * This field stores the number of changes after which a checkpoint is due.
+     */
+    private final int mutations;
+
+    /**
+     * This field stores the time in milliseconds after which a checkpoint is due, if anything has changed.
+     */
+    private final long interval;
+
+    /**
+     * This field stores an <code>ExecutorService</code> with a single thread writing checkpoints to the file.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpointer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * This field stores the <code>CompletableFuture</code> of the checkpoint being written, if any, which
+     * completes with whether it was successfully written.
+     */
+    private CompletableFuture<Boolean> pending;
+
+    /**
+     * This field stores the sequence number of the last journal record contained in the last checkpoint.
+     */
+    private long lastSequence;
+
+    /**
+     * This field stores the time the last checkpoint was captured, in milliseconds.
+     */
+    private long lastTime = System.currentTimeMillis();
+
+    /**
+     * This field stores the time taken by the last checkpoint, in nanoseconds.
+     */
+    private volatile long lastDuration;
+
+    /**
+     * This field stores the number of bytes written by the last checkpoint.
+     */
+    private volatile long lastBytesWritten;
+
+    /**
+     * This field stores the number of bytes written by every checkpoint so far.
+     */
+    private volatile long totalBytesWritten;
+
+    /**
+     * This field stores the number of checkpoints written so far.
+     */
+    private volatile int checkpoints;
+
+    /**
+     * This field stores the number of checkpoints which have failed so far.
+     */
+    private volatile int failures;
+
+    /**
+     * Default Constructor.<br><br>
+     * The settings are read from the system properties <code>bank.checkpoint.mutations</code> and
+     * <code>bank.checkpoint.interval</code>.
+     *
+     * @param snapshot the <code>ImageStore</code> the database is saved to
+     * @param journal  the <code>Journal</code> recording every change made since the last save
+     * @param ledger   the <code>Ledger</code> keeping the balance of every account
+     * @param banks    supplies every bank to be saved in order, using the bank IDs as the key
+     */
+    Checkpointer(ImageStore snapshot, Journal journal, Ledger ledger, Supplier<Map<Integer, Bank>> banks) {
+        this(snapshot, journal, ledger, banks, Integer.getInteger("bank.checkpoint.mutations", 1000),
+                Long.getLong("bank.checkpoint.interval", 30000));
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param snapshot  the <code>ImageStore</code> the database is saved to
+     * @param journal   the <code>Journal</code> recording every change made since the last save
+     * @param ledger    the <code>Ledger</code> keeping the balance of every account
+     * @param banks     supplies every bank to be saved in order, using the bank IDs as the key
+     * @param mutations the number of changes after which a checkpoint is due, or zero (0) to disable
+     * @param interval  the time in milliseconds after which a checkpoint is due, or zero (0) to disable
+     */
+    Checkpointer(ImageStore snapshot, Journal journal, Ledger ledger, Supplier<Map<Integer, Bank>> banks,
+                 int mutations, long interval) {
+        this.snapshot = snapshot;
+        this.journal = journal;
+        this.ledger = ledger;
+        this.banks = banks;
+        this.mutations = mutations;
+        this.interval = interval;
+        this.lastSequence = snapshot.getSequence();
+    }
+
+    /**
+     * Retrieves the time taken by the last checkpoint, from capturing the banks until the file was replaced.
+     *
+     * @return the time in milliseconds as a <code>Double</code>
+     */
+    public double getLastDuration() {
+        return lastDuration / 1e6;
+    }
+
+    /**
+     * Retrieves the number of bytes written by the last checkpoint.
+     *
+     * @return the number of bytes as a <code>Long</code>
+     */
+    public long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    /**
+     * Retrieves the number of bytes written by every checkpoint so far.
+     *
+     * @return the number of bytes as a <code>Long</code>
+     */
+    public long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    /**
+     * Retrieves the number of checkpoints written so far.
+     *
+     * @return the number of checkpoints as an <code>Integer</code>
+     */
+    public int getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Retrieves the number of checkpoints which have failed so far.
+     *
+     * @return the number of failures as an <code>Integer</code>
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Called on the thread making a change, once its record has been appended to the journal.<br><br>
+     * Captures the banks and starts writing them in the background if a checkpoint is due, unless the
+     * previous one is still being written.
+     */
+    synchronized void changed() {
+        if (pending != null && !pending.isDone()) {
+            return;
+        }
+        long sequence = journal.getSequence();
+        boolean due = (mutations > 0 && sequence - lastSequence >= mutations)
+                || (interval > 0 && sequence > lastSequence && System.currentTimeMillis() - lastTime >= interval);
+        if (!due) {
+            return;
+        }
+        long start = System.nanoTime();
+        ImageStore.Image image = capture();
+        if (image != null) {
+            pending = CompletableFuture.supplyAsync(() -> write(image, start), writer);
+        }
+    }
+
+    /**
+     * Captures the banks right away, and writes them in the background without waiting for them to be
+     * written.<br><br>
+     * Should a checkpoint still be written in the background, no other is started, as every change it does
+     * not contain is already recorded in the journal and will be contained in the next one.<br><br>
+     * May be called on any thread, while other threads continue to change the banks.
+     *
+     * @return a <code>CompletableFuture</code> completing once the checkpoint has been written, with
+     * <code>true</code> if it is successfully written. Otherwise it will complete with <code>false</code>.
+     */
+    public synchronized CompletableFuture<Boolean> checkpointAsync() {
+        if (pending != null && !pending.isDone()) {
+            return pending;
+        }
+        long start = System.nanoTime();
+        ImageStore.Image image = capture();
+        if (image == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        pending = CompletableFuture.supplyAsync(() -> write(image, start), writer);
+        return pending;
+    }
+
+    /**
+     * Saves the database right away, waiting for any checkpoint still being written in the background
+     * to finish first.
+     *
+     * @return <code>true</code> if the database is successfully saved. Otherwise it will return
+     * <code>false</code>.
+     */
+    public synchronized boolean checkpoint() {
+        if (!await()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ImageStore.Image image = capture();
+        return image != null && write(image, start);
+    }
+
+    /**
+     * Waits for any checkpoint still being written in the background, and stops the background thread.
+     */
+    @Override
+    public synchronized void close() {
+        await();
+        writer.shutdown();
+    }
+
+    /**
+     * A helper method to wait for the checkpoint being written in the background, if any.
+     *
+     * @return <code>false</code> if the thread was interrupted while waiting
+     */
+    private boolean await() {
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException ee) {
+                System.out.println(ee.getCause().getMessage());
+            }
+            pending = null;
+        }
+        return true;
+    }
+
+    /**
+     * A helper method to capture the banks to be written.<br><br>
+     * If the ledger is not open, every bank which has been read is captured, since their balances are not
+     * kept anywhere else.
+     *
+     * @return the captured <code>Image</code>, or <code>null</code> if it could not be captured
+     */
+    private ImageStore.Image capture() {
+        if (!ledger.isOpen()) {
+            snapshot.invalidate();
+        }
+        try {
+            ImageStore.Image image = snapshot.capture(banks.get(), journal.getSequence());
+            lastSequence = image.getSequence();
+            lastTime = System.currentTimeMillis();
+            return image;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            failures++;
+            return null;
+        }
+    }
+
+    /**
+     * A helper method to write a captured <code>Image</code> to the file, force the journal and then the
+     * ledger to the storage device, discard the journal records the image contains, and record the metrics.
+     * <br><br>
+     * The journal is forced first, as the ledger only writes the balances changed by the records once they
+     * are on the storage device, and the records the image contains are about to be discarded.
+     *
+     * @param image the captured <code>Image</code>
+     * @param start the time the image was captured, from <code>System.nanoTime()</code>
+     * @return <code>true</code> if the image is successfully written. Otherwise it will return
+     * <code>false</code>.
+     */
+    private boolean write(ImageStore.Image image, long start) {
+        try {
+            long bytes = snapshot.write(image);
+            journal.sync();
+            ledger.force();
+            journal.truncate(image.getSequence());
+            lastDuration = System.nanoTime() - start;
+            lastBytesWritten = bytes;
+            totalBytesWritten += bytes;
+            checkpoints++;
+            return true;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            failures++;
+            return false;
+        }
+    }
+
+}
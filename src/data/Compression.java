@@ -0,0 +1,209 @@
+package data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class compresses the binary form of every bank saved by a <code>Snapshot</code> or a
+ * <code>ShardedSnapshot</code>.<br><br>
+ * The following codecs are available, each identified by a single byte saved alongside every bank:
+ * <ul>
+ *     <li><code>none</code> - the binary form is saved as it is</li>
+ *     <li><code>deflate</code> - the binary form is streamed through a <code>Deflater</code>, with a level
+ *     from one (1) for the fastest to nine (9) for the smallest</li>
+ *     <li><code>lz</code> - the binary form is compressed by an <code>LzCodec</code>, which is much faster
+ *     than Deflate though the result is larger</li>
+ * </ul>
+ * The codec used when saving is chosen with the system properties <code>bank.compression</code> and
+ * <code>bank.compression.level</code>, with no compression by default. Banks are always read using the codec
+ * they were saved with, so the codec may be changed between sessions.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Snapshot
+ * @see ShardedSnapshot
+ * @see LzCodec
+ */
+final class Compression {
+
+    /**
+     * The identifiers of the codecs, saved alongside every bank.
+     */
+    private static final int ID_NONE = 0, ID_DEFLATE = 1, ID_LZ = 2;
+
+    /**
+     * The codec saving the binary form as it is.
+     */
+    static final Compression NONE = new Compression(ID_NONE, 0);
+
+    /**
+     * The codec compressing the binary form using an <code>LzCodec</code>.
+     */
+    static final Compression LZ = new Compression(ID_LZ, 0);
+
+    /**
+     * This field stores the identifier of the codec as an <code>Integer</code>.
+     */
+    private final int id;
+
+    /**
+     * This field stores the Deflate level as an <code>Integer</code>, unused by other codecs.
+     */
+    private final int level;
+
+    /**
+     * Private Constructor. Codecs are retrieved through the static methods.
+     *
+     * @param id    the identifier of the codec
+     * @param level the Deflate level
+     */
+    private Compression(int id, int level) {
+        this.id = id;
+        this.level = level;
+    }
+
+    /**
+     * Retrieves the Deflate codec with the given level.
+     *
+     * @param level the level, from one (1) for the fastest to nine (9) for the smallest
+     * @return the <code>Compression</code>
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    static Compression deflate(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be between 1 and 9: " + level);
+        }
+        return new Compression(ID_DEFLATE, level);
+    }
+
+    /**
+     * Retrieves a codec by its name.
+     *
+     * @param name  <code>none</code>, <code>deflate</code>, or <code>lz</code>
+     * @param level the Deflate level, unused by other codecs
+     * @return the <code>Compression</code>
+     * @throws IllegalArgumentException if the name is not recognized
+     */
+    static Compression forName(String name, int level) {
+        switch (name) {
+            case "none":
+                return NONE;
+            case "deflate":
+                return deflate(level);
+            case "lz":
+                return LZ;
+            default:
+                throw new IllegalArgumentException("Unknown compression: " + name);
+        }
+    }
+
+    /**
+     * Retrieves the codec chosen with the system properties <code>bank.compression</code> and
+     * <code>bank.compression.level</code>, which default to <code>none</code> and six (6).
+     *
+     * @return the <code>Compression</code>
+     * @throws IllegalArgumentException if either property is not recognized
+     */
+    static Compression fromProperties() {
+        return forName(System.getProperty("bank.compression", "none"),
+                Integer.getInteger("bank.compression.level", 6));
+    }
+
+    /**
+     * Retrieves the codec which a bank was saved with, to read it.
+     *
+     * @param id the identifier saved alongside the bank
+     * @return the <code>Compression</code>
+     * @throws IOException if the identifier is not recognized
+     */
+    static Compression of(int id) throws IOException {
+        switch (id) {
+            case ID_NONE:
+                return NONE;
+            case ID_DEFLATE:
+                return new Compression(ID_DEFLATE, 6);
+            case ID_LZ:
+                return LZ;
+            default:
+                throw new IOException("Unknown compression: " + id);
+        }
+    }
+
+    /**
+     * Retrieves the identifier of the codec, to be saved alongside every bank compressed with it.
+     *
+     * @return the identifier as an <code>Integer</code>
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Compresses the binary form of a bank.
+     *
+     * @param bytes the binary form
+     * @return the compressed bytes
+     */
+    byte[] compress(byte[] bytes) {
+        switch (id) {
+            case ID_DEFLATE:
+                Deflater deflater = new Deflater(level);
+                ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 3 + 16);
+                try (DeflaterOutputStream stream = new DeflaterOutputStream(output, deflater, 8192)) {
+                    stream.write(bytes);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                } finally {
+                    deflater.end();
+                }
+                return output.toByteArray();
+            case ID_LZ:
+                return LzCodec.compress(bytes);
+            default:
+                return bytes;
+        }
+    }
+
+    /**
+     * Restores the binary form of a bank compressed by <code>compress()</code>.
+     *
+     * @param bytes the compressed bytes
+     * @return the binary form
+     * @throws IOException if the bytes are not validly compressed
+     */
+    byte[] decompress(byte[] bytes) throws IOException {
+        switch (id) {
+            case ID_DEFLATE:
+                try (InflaterInputStream stream = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+                    return stream.readAllBytes();
+                }
+            case ID_LZ:
+                return LzCodec.decompress(bytes);
+            default:
+                return bytes;
+        }
+    }
+
+    /**
+     * Returns the name of the codec, along with its level for Deflate.
+     *
+     * @return the name as a <code>String</code>
+     */
+    @Override
+    public String toString() {
+        switch (id) {
+            case ID_DEFLATE:
+                return "deflate-" + level;
+            case ID_LZ:
+                return "lz";
+            default:
+                return "none";
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package data;
+
+import bank.Bank;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class provides command-line tools to inspect and maintain a database file saved by a
+ * <code>BankManager</code>.<br><br>
+ * Run the <code>main()</code> method with one of the following commands:
+ * <ul>
+ *     <li><code>convert [file]</code> - converts the database to the current <code>Snapshot</code> format
+ *     in place, compressed with the codec chosen by <code>bank.compression</code>, keeping a copy of the
+ *     original file with the <code>.bak</code> extension</li>
+ *     <li><code>backups</code> - lists every <code>Backup</code> in the <code>backup</code> directory</li>
+ *     <li><code>restore time [file]</code> - restores the database as it was at the given time from the
+ *     <code>backup</code> directory, keeping a copy of the original files with the <code>.bak</code>
+ *     extension. The time is given either in milliseconds, or as a local date and time such as
+ *     <code>2021-10-17T12:30:00</code></li>
+ * </ul>
+ * The file defaults to <code>bankDatabase.ser</code> when not given. Files in either format are accepted.
+ * <br><br>
+ * The benchmarks of the storage formats and concurrent data structures are kept apart, in
+ * <code>Benchmarks</code> under the <code>bench</code> source folder.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Snapshot
+ * @see Backup
+ */
+public class DatabaseTool {
+
+    /**
+     * Runs the command given in the command-line arguments.
+     *
+     * @param args the command, followed by the database file
+     * @throws Exception if the database cannot be read or written
+     */
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "backups";
+        File file = new File(args.length > 1 ? args[1] : "bankDatabase.ser");
+        if (command.equals("convert")) {
+            convert(file);
+        } else if (command.equals("backups")) {
+            for (File backup : Backup.list(new File("backup"))) {
+                long time = Long.parseLong(backup.getName().substring(0, 13));
+                System.out.printf("%-24s %-28s %10d bytes%n", backup.getName(), new Date(time), backup.length());
+            }
+        } else if (command.equals("restore") && args.length > 1) {
+            restore(parseTime(args[1]), new File(args.length > 2 ? args[2] : "bankDatabase.ser"));
+        } else {
+            System.out.println("Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Reads every bank from a database file, in either the <code>Snapshot</code> format or as a
+     * single serialized object.
+     *
+     * @param file the database file
+     * @return the banks stored in the file
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    static List<Bank> load(File file) throws IOException, ClassNotFoundException {
+        Snapshot snapshot = new Snapshot(file);
+        if (!snapshot.isLegacy()) {
+            return snapshot.read();
+        }
+        List<Bank> banks = new ArrayList<>();
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            for (Object bank : (Iterable<?>) input.readObject()) {
+                banks.add((Bank) bank);
+            }
+        }
+        return banks;
+    }
+
+    /**
+     * A helper method to key a list of banks by their bank IDs, keeping their order.
+     *
+     * @param banks the banks
+     * @return a <code>Map</code> using the bank IDs as the key, and the <code>Bank</code> as the value
+     */
+    static Map<Integer, Bank> index(List<Bank> banks) {
+        Map<Integer, Bank> index = new LinkedHashMap<>();
+        for (Bank bank : banks) {
+            index.put(bank.getBankId(), bank);
+        }
+        return index;
+    }
+
+    /**
+     * Converts the database file to the current <code>Snapshot</code> format, and prints the file size
+     * before and after.<br><br>
+     * The original file is kept with the <code>.bak</code> extension. Every bank is encoded again, so files
+     * already in the current format are compressed with the codec chosen by <code>bank.compression</code>.
+     *
+     * @param file the database file
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    private static void convert(File file) throws IOException, ClassNotFoundException {
+        Snapshot snapshot = new Snapshot(file);
+        boolean legacy = snapshot.isLegacy();
+        List<Bank> banks = legacy ? load(file) : snapshot.read();
+        long before = file.length();
+        File backup = new File(file.getPath() + ".bak");
+        Files.copy(file.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        snapshot.invalidate();
+        snapshot.write(index(banks), legacy ? 0 : snapshot.getSequence());
+        System.out.println("Converted " + banks.size() + " banks from " + file);
+        System.out.printf("%-10s %12d bytes (kept as %s)%n", "Before", before, backup);
+        System.out.printf("%-10s %12d bytes%n", "After", file.length());
+    }
+
+    /**
+     * A helper method to read a time given either in milliseconds, or as a local date and time.
+     *
+     * @param time the time as a <code>String</code>
+     * @return the time in milliseconds
+     */
+    private static long parseTime(String time) {
+        if (time.matches("\\d+")) {
+            return Long.parseLong(time);
+        }
+        return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Restores the database file as it was at the given time from the <code>backup</code> directory, and
+     * prints the banks restored.<br><br>
+     * The journal and ledger kept alongside the database file are moved aside, since their changes are newer
+     * than the restored banks. Every original file is kept with the <code>.bak</code> extension.
+     *
+     * @param time the time to be restored, in milliseconds
+     * @param file the database file
+     * @throws IOException if an I/O error occurs, or no backup was captured at or before that time
+     */
+    private static void restore(long time, File file) throws IOException {
+        Map<Integer, Bank> banks = Backup.restore(new File("backup"), time);
+        String name = file.getName().replaceFirst("\\.[^.]*$", "");
+        File[] files = {file, new File(file.getAbsoluteFile().getParentFile(), name + ".journal"),
+                new File(file.getAbsoluteFile().getParentFile(), name + ".ledger")};
+        for (File original : files) {
+            if (original.exists()) {
+                Files.move(original.toPath(), new File(original.getPath() + ".bak").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        new Snapshot(file).write(banks, 0);
+        System.out.println("Restored " + banks.size() + " banks as of " + new Date(time) + " to " + file);
+        for (Bank bank : banks.values()) {
+            System.out.println("\t" + bank.simplifiedString());
+        }
+    }
+
+}
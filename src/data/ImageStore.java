@@ -0,0 +1,185 @@
+package data;
+
+import bank.Bank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This interface classifies the on-disk layouts a <code>SnapshotEngine</code> saves its banks to.<br><br>
+ * Banks are saved in two (2) phases. An <code>Image</code> of the banks which have changed is first captured on
+ * any thread, which may then be written on another thread while the banks continue to change. Banks which
+ * have not changed are not captured, and are instead kept as they were by the layout.<br><br>
+ * Capturing a bank normally takes constant time: the bank is only encoded once the image is written, walking
+ * the immutable snapshots its branches and customers hand out at that moment. Changes made in between may
+ * therefore be saved along with the image, which is harmless, as replaying their journal records again
+ * finds them already made, and balances are read from the <code>Ledger</code> rather than the image. Only
+ * once the layout has been invalidated, such as when the ledger is not open, are the banks encoded as they
+ * are captured, all at once, so that no transfer between two of their accounts is saved half-made.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Snapshot
+ * @see ShardedSnapshot
+ * @see Checkpointer
+ */
+interface ImageStore {
+
+    /**
+     * Retrieves the sequence number of the last journal record contained in the saved banks.
+     *
+     * @return the sequence number as a <code>Long</code>
+     */
+    long getSequence();
+
+    /**
+     * Retrieves the name of a saved bank, without reading the bank.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the bank's name, or <code>null</code> if the bank has not been saved
+     */
+    String getName(int bankId);
+
+    /**
+     * Reads the saved banks.
+     *
+     * @return a <code>Map</code> of every bank in the order they were saved, using the bank IDs as the key.
+     * The value is the <code>Bank</code> if it has already been read, or <code>null</code> if it is yet to be
+     * read using <code>load()</code>. The map is empty if nothing has been saved yet.
+     * @throws IOException            if an I/O error occurs, or the banks are not in this layout
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    Map<Integer, Bank> open() throws IOException, ClassNotFoundException;
+
+    /**
+     * Reads a single saved bank.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the <code>Bank</code>, marked as unchanged
+     * @throws IOException if an I/O error occurs, or the bank has not been saved
+     */
+    Bank load(int bankId) throws IOException;
+
+    /**
+     * Captures the state of every bank to be saved, without writing anything yet.<br><br>
+     * Only banks which have changed since they were read or saved are captured, and then marked as unchanged.
+     * They are encoded when the image is written, unless the layout has been invalidated, in which case they
+     * are all encoded at once, with the balances of every account read at a single point in time.<br><br>
+     * May be called on any thread while other threads change the banks. A change marks its bank as changed
+     * before its journal record is appended, so every change up to <code>sequence</code> is contained in the
+     * image, and any later change saved along with it is found already made, or given the balance it left,
+     * when its record is replayed.<br><br>
+     * <b>Must not be called while another <code>Image</code> is being written.</b>
+     *
+     * @param banks    a <code>Map</code> of every bank to be saved in order, using the bank IDs as the key.
+     *                 Banks which have not been read map to <code>null</code>.
+     * @param sequence the sequence number of the last journal record contained in the banks
+     * @return the captured <code>Image</code>
+     * @throws IOException if a bank which has not been read has not been saved either
+     */
+    Image capture(Map<Integer, Bank> banks, long sequence) throws IOException;
+
+    /**
+     * Writes a captured <code>Image</code>, replacing the saved banks only once it has been completely written.
+     *
+     * @param image the <code>Image</code> returned by <code>capture()</code>
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    long write(Image image) throws IOException;
+
+    /**
+     * Causes every bank which has been read to be encoded again the next time an <code>Image</code> is
+     * captured, whether it has changed or not.
+     */
+    void invalidate();
+
+    /**
+     * This class holds the state of every bank captured by <code>capture()</code>, waiting to be written.
+     */
+    final class Image {
+
+        /**
+         * This field stores the sequence number of the last journal record contained in the image.
+         */
+        final long sequence;
+
+        /**
+         * This field stores the name of every bank in the order they are saved, using the bank IDs as the key.
+         */
+        final Map<Integer, String> names = new LinkedHashMap<>();
+
+        /**
+         * This field stores every bank which has changed, using the bank IDs as the key. Banks which are not
+         * found here are kept as they were saved.
+         */
+        final Map<Integer, Bank> changed = new HashMap<>();
+
+        /**
+         * This field stores the binary form of every bank which was encoded as it was captured, using the bank
+         * IDs as the key.
+         */
+        private final Map<Integer, byte[]> encoded = new HashMap<>();
+
+        /**
+         * Default Constructor.
+         *
+         * @param sequence the sequence number of the last journal record contained in the image
+         */
+        Image(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Retrieves the sequence number of the last journal record contained in the image.
+         *
+         * @return the sequence number as a <code>Long</code>
+         */
+        long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Adds a bank which has changed to the image.
+         *
+         * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+         * @param bank   the <code>Bank</code>
+         */
+        void add(int bankId, Bank bank) {
+            changed.put(bankId, bank);
+        }
+
+        /**
+         * Encodes every bank added to the image right away, rather than once the image is written. The balances
+         * of every account across the banks are read at a single point in time.
+         */
+        void encodeAll() {
+            List<Integer> bankIds = new ArrayList<>(changed.keySet());
+            List<Bank> banks = new ArrayList<>(bankIds.size());
+            for (int bankId : bankIds) {
+                banks.add(changed.get(bankId));
+            }
+            List<byte[]> bytes = BankCodec.encode(banks);
+            for (int i = 0; i < bankIds.size(); i++) {
+                encoded.put(bankIds.get(i), bytes.get(i));
+            }
+        }
+
+        /**
+         * Retrieves the binary form of a bank which has changed, encoding it now unless it was encoded as it
+         * was captured. Banks may be encoded from several threads at once.
+         *
+         * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+         * @return the binary form as an array of bytes
+         */
+        byte[] encode(int bankId) {
+            byte[] bytes = encoded.get(bankId);
+            return bytes != null ? bytes : BankCodec.encode(changed.get(bankId));
+        }
+    }
+
+}
@@ -0,0 +1,1111 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Branch;
+import bank.Customer;
+import bank.MutationListener;
+import utility.Address;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * This class serves as an append-only journal of every change made to the banks handled by a
+ * <code>BankManager</code>.<br><br>
+ * Each change is written to the end of the journal file as a small binary record, as soon as it has been
+ * made. Every record is framed as follows:
+ * <blockquote>Length (int) | CRC-32 (int) | Sequence (long) | Type (byte) | Fields</blockquote>
+ * where the sequence number increases by one with every record. Every change to a balance also records the
+ * balance the account was left with, which is checked when the record is replayed. A snapshot saved by the
+ * <code>BankManager</code> remembers the sequence number of the last record it covers, so that only the
+ * records written after it are replayed when the snapshot is read again.<br><br>
+ * Records are written to the file immediately, but are only forced to the storage device once every
+ * <code>groupSize</code> records, or once every <code>groupWindow</code> milliseconds, whichever comes
+ * first. This allows a number of changes to share a single (slow) <code>fsync</code>. The records are forced
+ * by a flusher thread of the journal, without holding its lock, so that appending a record only ever writes
+ * it to the file and, once <code>groupSize</code> records are waiting, wakes the flusher up. Records may
+ * therefore keep being appended while the previous ones are being forced.<br><br>
+ * Should the journal keep a <code>Ledger</code>, every change to a balance is handed to it along with the
+ * sequence number of its record, while still holding the lock of the journal, so that the ledger sees the
+ * changes in the order they were written. The ledger only writes them to its file once the journal has been
+ * forced, so that no balance ever reaches the storage device ahead of the record it comes from.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see MutationListener
+ */
+public class Journal implements MutationListener, Closeable {
+
+    /**
+     * Record types, one for every kind of change which can be made to the database.
+     */
+    private static final byte BANK_CREATED = 1, BANK_REMOVED = 2, BANK_UPDATED = 3,
+            BRANCH_CREATED = 4, BRANCH_REMOVED = 5, BRANCH_UPDATED = 6,
+            CUSTOMER_ADDED = 7, CUSTOMER_REMOVED = 8, CUSTOMER_UPDATED = 9,
+            ACCOUNT_OPENED = 10, ACCOUNT_CLOSED = 11,
+            DEPOSIT = 12, WITHDRAW = 13, TRANSFER = 14;
+
+    /**
+     * The balance read from a record written before balances were journaled.
+     */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * The largest record accepted when reading the journal. Anything larger is treated as a torn write.
+     */
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    /**
+     * This field stores a <code>File</code> object referring to the journal file.
+     */
+    private final File file;
+
+    /**
+     * This field stores the number of records which may share a single <code>fsync</code>.
+     */
+    private final int groupSize;
+
+    /**
+     * This field stores the longest time, in milliseconds, a record may wait for its <code>fsync</code>.
+     */
+    private final long groupWindow;
+
+    /**
+     * This field stores the <code>Ledger</code> handed every change to a balance, or <code>null</code> if
+     * there is none.
+     */
+    private final Ledger ledger;
+
+    /**
+     * This field stores the <code>FileChannel</code> records are appended to.<br><br>
+     * Remains <code>null</code> until the journal has been replayed, or if the file could not be opened.
+     */
+    private FileChannel channel;
+
+    /**
+     * This field stores a <code>ScheduledExecutorService</code> which forces pending records to the
+     * storage device once <code>groupSize</code> records are waiting, or the <code>groupWindow</code> has
+     * elapsed.<br><br>
+     * Remains <code>null</code> if every record is forced as it is appended.
+     */
+    private ScheduledExecutorService flusher;
+
+    /**
+     * This field stores the sequence number of the last record written (or replayed).
+     */
+    private long sequence;
+
+    /**
+     * This field stores the sequence number of the last record known to be on the storage device.
+     */
+    private long forced;
+
+    /**
+     * This field stores whether the flusher has been woken up to force the records waiting, and has yet to
+     * start.
+     */
+    private boolean flushing;
+
+    /**
+     * Default Constructor.<br><br>
+     * The group commit settings are read from the system properties <code>bank.journal.groupSize</code>
+     * (16 records by default) and <code>bank.journal.groupWindow</code> (100 milliseconds by default).
+     *
+     * @param file the journal file
+     */
+    public Journal(File file) {
+        this(file, null);
+    }
+
+    /**
+     * Overloaded Constructor, handing every change to a balance to a <code>Ledger</code>.<br><br>
+     * The group commit settings are read from the same system properties as the default constructor.
+     *
+     * @param file   the journal file
+     * @param ledger the <code>Ledger</code> keeping the balance of every account, or <code>null</code> if
+     *               there is none
+     */
+    public Journal(File file, Ledger ledger) {
+        this(file, Integer.getInteger("bank.journal.groupSize", 16),
+                Long.getLong("bank.journal.groupWindow", 100), ledger);
+    }
+
+    /**
+     * Overloaded Constructor.<br><br>
+     * A <code>groupSize</code> of one (1) forces every record to the storage device before the change
+     * returns, while a <code>groupWindow</code> of zero (0) disables the timed <code>fsync</code>.
+     *
+     * @param file        the journal file
+     * @param groupSize   the number of records which may share a single <code>fsync</code>
+     * @param groupWindow the longest time in milliseconds a record may wait for its <code>fsync</code>
+     */
+    public Journal(File file, int groupSize, long groupWindow) {
+        this(file, groupSize, groupWindow, null);
+    }
+
+    /**
+     * Overloaded Constructor, handing every change to a balance to a <code>Ledger</code>.
+     *
+     * @param file        the journal file
+     * @param groupSize   the number of records which may share a single <code>fsync</code>
+     * @param groupWindow the longest time in milliseconds a record may wait for its <code>fsync</code>
+     * @param ledger      the <code>Ledger</code> keeping the balance of every account, or <code>null</code>
+     *                    if there is none
+     */
+    public Journal(File file, int groupSize, long groupWindow, Ledger ledger) {
+        this.file = file;
+        this.groupSize = Math.max(1, groupSize);
+        this.groupWindow = groupWindow;
+        this.ledger = ledger;
+    }
+
+    /**
+     * Retrieves the sequence number of the last record written to, or replayed from, the journal.
+     *
+     * @return the sequence number as a <code>Long</code>
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Replays every record written after the given sequence number onto the <code>manager</code>, and
+     * opens the journal to accept new records.<br><br>
+     * Reading stops at the first incomplete or corrupted record, which can only be the result of a crash
+     * in the middle of a write. That record, and anything after it, is cut from the file. The records which
+     * remain are then forced to the storage device, before the balances they changed are written to the
+     * <code>Ledger</code>.
+     *
+     * @param manager the <code>BankManager</code> the changes are applied to
+     * @param after   the sequence number of the last record already contained in the snapshot
+     * @return <code>true</code> if the journal has been replayed and opened. Otherwise it will return
+     * <code>false</code>.
+     */
+    synchronized boolean replay(BankManager manager, long after) {
+        sequence = after;
+        long valid = 0;
+        if (file.exists()) {
+            try (DataInputStream input =
+                         new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int length = input.readInt();
+                    int checksum = input.readInt();
+                    if (length < 9 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    input.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    sequence = Math.max(sequence, apply(manager, ledger, payload, after));
+                    valid += 8 + length;
+                }
+            } catch (EOFException eof) {
+                // the end of the journal, or a record torn by a crash
+            } catch (IOException ioe) {
+                System.out.println(ioe.getMessage());
+                return false;
+            }
+        }
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(valid);
+            channel.position(valid);
+            channel.force(false);
+            synced();
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            return false;
+        }
+        if (groupSize > 1) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (groupWindow > 0) {
+                flusher.scheduleWithFixedDelay(this::sync, groupWindow, groupWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empties the journal, once a snapshot covering every record in it has been saved.<br><br>
+     * The sequence numbers continue from where they left off.
+     *
+     * @return <code>true</code> if the journal has been emptied. Otherwise it will return <code>false</code>.
+     */
+    public synchronized boolean reset() {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            channel.truncate(0);
+            channel.force(true);
+            synced();
+            return true;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Discards every record up to and including the given sequence number, once a snapshot covering them has
+     * been saved, keeping any record written after it.<br><br>
+     * The remaining records are written to a new file, which is then moved over the journal file, so that no
+     * record is lost should a crash occur in the middle.
+     *
+     * @param upTo the sequence number of the last record contained in the snapshot
+     * @return <code>true</code> if the records have been discarded. Otherwise it will return <code>false</code>.
+     */
+    public synchronized boolean truncate(long upTo) {
+        if (channel == null) {
+            return false;
+        }
+        if (upTo >= sequence) {
+            return reset();
+        }
+        try {
+            long size = channel.position();
+            long offset = 0;
+            try (DataInputStream input =
+                         new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (offset < size) {
+                    int length = input.readInt();
+                    input.readInt();
+                    if (input.readLong() > upTo) {
+                        break;
+                    }
+                    input.readFully(new byte[length - 8]);
+                    offset += 8 + length;
+                }
+            }
+            if (offset == 0) {
+                return true;
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long copied = 0;
+                while (copied < size - offset) {
+                    copied += input.transferTo(offset + copied, size - offset - copied, output);
+                }
+                output.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            synced();
+            return true;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Replaces every record in the journal with the fewest records needed to create the given banks as they
+     * currently are, numbered from one (1).<br><br>
+     * The records are written to a new file, which is then moved over the journal file, so that the journal
+     * is left as it was should anything fail in the middle.
+     *
+     * @param banks the banks to be created by the new records
+     * @return <code>true</code> if the journal has been rewritten. Otherwise it will return <code>false</code>.
+     */
+    public synchronized boolean rewrite(Iterable<Bank> banks) {
+        if (channel == null) {
+            return false;
+        }
+        FileChannel previous = channel;
+        long previousSequence = sequence;
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileChannel output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel = output;
+                sequence = 0;
+                long records = 0;
+                for (Bank bank : banks) {
+                    bankCreated(bank);
+                    records++;
+                    for (Branch branch : bank) {
+                        branchCreated(bank, branch);
+                        records++;
+                        for (Customer customer : branch) {
+                            customerAdded(branch, customer);
+                            records++;
+                        }
+                    }
+                }
+                if (sequence != records) {
+                    throw new IOException("Could not rewrite " + file);
+                }
+                output.force(true);
+            } finally {
+                channel = previous;
+            }
+            previous.close();
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            synced();
+            return true;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            sequence = previousSequence;
+            return false;
+        } finally {
+            try {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            } catch (IOException ioe) {
+                System.out.println(ioe.getMessage());
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Forces every record written so far to the storage device, after which the balances they changed are
+     * written to the <code>Ledger</code>.<br><br>
+     * The lock of the journal is not held while the records are forced, so that records may keep being
+     * appended in the meantime. Those are left for the next call. Should the file be replaced or closed in
+     * the meantime, nothing more is done, as the records are then forced by whatever replaced or closed it.
+     */
+    public void sync() {
+        FileChannel target;
+        long upTo;
+        synchronized (this) {
+            flushing = false;
+            if (channel == null || sequence == forced) {
+                return;
+            }
+            target = channel;
+            upTo = sequence;
+        }
+        try {
+            target.force(false);
+        } catch (ClosedChannelException cce) {
+            return;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (channel == target && upTo > forced) {
+                forced = upTo;
+                if (ledger != null) {
+                    ledger.flush(upTo);
+                }
+            }
+        }
+    }
+
+    /**
+     * A helper method to note that every record written so far is on the storage device, writing the
+     * balances they changed to the <code>Ledger</code>.<br><br>
+     * Must only be called while holding the lock of the journal.
+     */
+    private void synced() {
+        forced = sequence;
+        if (ledger != null) {
+            ledger.flush();
+        }
+    }
+
+    /**
+     * Forces the remaining records to the storage device and closes the journal file.
+     */
+    @Override
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        if (channel != null) {
+            sync();
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                System.out.println(ioe.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void bankCreated(Bank bank) {
+        append(BANK_CREATED, output -> {
+            output.writeInt(bank.getBankId());
+            output.writeUTF(bank.getBankName());
+        });
+    }
+
+    @Override
+    public void bankRemoved(Bank bank) {
+        append(BANK_REMOVED, output -> output.writeInt(bank.getBankId()), sequence -> {
+            for (Branch branch : bank) {
+                released(branch, sequence);
+            }
+        });
+    }
+
+    @Override
+    public void bankRemoved(int bankId) {
+        append(BANK_REMOVED, output -> output.writeInt(bankId), sequence -> {
+            if (ledger != null) {
+                ledger.release(bankId, sequence);
+            }
+        });
+    }
+
+    @Override
+    public void bankUpdated(Bank bank) {
+        append(BANK_UPDATED, output -> {
+            output.writeInt(bank.getBankId());
+            output.writeUTF(bank.getBankName());
+        });
+    }
+
+    @Override
+    public void branchCreated(Bank bank, Branch branch) {
+        append(BRANCH_CREATED, output -> {
+            writePath(output, branch);
+            output.writeUTF(branch.getBranchName());
+            writeAddress(output, branch.getAddress());
+        });
+    }
+
+    @Override
+    public void branchUpdated(Branch branch) {
+        append(BRANCH_UPDATED, output -> {
+            writePath(output, branch);
+            output.writeUTF(branch.getBranchName());
+            writeAddress(output, branch.getAddress());
+        });
+    }
+
+    @Override
+    public void branchRemoved(Bank bank, Branch branch) {
+        append(BRANCH_REMOVED, output -> {
+            output.writeInt(bank.getBankId());
+            output.writeInt(branch.getBranchCode());
+        }, sequence -> released(branch, sequence));
+    }
+
+    @Override
+    public void customerAdded(Branch branch, Customer customer) {
+        append(CUSTOMER_ADDED, output -> {
+            writePath(output, customer);
+            output.writeUTF(customer.getName());
+            writeAddress(output, customer.getAddress());
+            output.writeByte(customer.getNumberOfAccounts());
+            for (Account account : customer) {
+                output.writeInt(account.getAccountNumber());
+                output.writeDouble(account.getBalance());
+            }
+        }, sequence -> {
+            for (Account account : customer) {
+                updated(account, sequence);
+            }
+        });
+    }
+
+    @Override
+    public void customerUpdated(Customer customer) {
+        append(CUSTOMER_UPDATED, output -> {
+            writePath(output, customer);
+            output.writeUTF(customer.getName());
+            writeAddress(output, customer.getAddress());
+        });
+    }
+
+    @Override
+    public void customerRemoved(Branch branch, Customer customer) {
+        append(CUSTOMER_REMOVED, output -> {
+            writePath(output, branch);
+            output.writeInt(customer.getCustomerId());
+        }, sequence -> released(customer, sequence));
+    }
+
+    @Override
+    public void accountOpened(Customer customer, Account account) {
+        append(ACCOUNT_OPENED, output -> writePath(output, account), sequence -> updated(account, sequence));
+    }
+
+    @Override
+    public void accountClosed(Customer customer, Account account) {
+        append(ACCOUNT_CLOSED, output -> {
+            writePath(output, customer);
+            output.writeInt(account.getAccountNumber());
+        }, sequence -> {
+            if (ledger != null) {
+                ledger.release(account, sequence);
+            }
+        });
+    }
+
+    @Override
+    public void deposited(Account account, double amount) {
+        deposited(account, amount, account.getCents());
+    }
+
+    @Override
+    public void deposited(Account account, double amount, long cents) {
+        append(DEPOSIT, output -> {
+            writePath(output, account);
+            output.writeDouble(amount);
+            output.writeLong(cents);
+        }, sequence -> updated(account, cents, sequence));
+    }
+
+    @Override
+    public void withdrew(Account account, double amount) {
+        withdrew(account, amount, account.getCents());
+    }
+
+    @Override
+    public void withdrew(Account account, double amount, long cents) {
+        append(WITHDRAW, output -> {
+            writePath(output, account);
+            output.writeDouble(amount);
+            output.writeLong(cents);
+        }, sequence -> updated(account, cents, sequence));
+    }
+
+    @Override
+    public void transferred(Account from, Account to, double amount) {
+        transferred(from, to, amount, from.getCents(), to.getCents());
+    }
+
+    @Override
+    public void transferred(Account from, Account to, double amount, long fromCents, long toCents) {
+        append(TRANSFER, output -> {
+            writePath(output, from);
+            writePath(output, to);
+            output.writeDouble(amount);
+            output.writeLong(fromCents);
+            output.writeLong(toCents);
+        }, sequence -> {
+            updated(from, fromCents, sequence);
+            updated(to, toCents, sequence);
+        });
+    }
+
+    /**
+     * A helper method to hand the balance of an account, as changed by a record, to the <code>Ledger</code>.
+     * <br><br>
+     * Must only be called while holding the lock of the journal.
+     *
+     * @param account  the <code>Account</code>
+     * @param sequence the sequence number of the record
+     */
+    private void updated(Account account, long sequence) {
+        updated(account, account.getCents(), sequence);
+    }
+
+    /**
+     * Overloaded helper method, handing the balance the record left the account with to the
+     * <code>Ledger</code>, as the account may have been changed again since.<br><br>
+     * Must only be called while holding the lock of the journal.
+     *
+     * @param account  the <code>Account</code>
+     * @param cents    the balance the record left the account with, in cents
+     * @param sequence the sequence number of the record
+     */
+    private void updated(Account account, long cents, long sequence) {
+        if (ledger != null) {
+            ledger.update(account, cents, sequence);
+        }
+    }
+
+    /**
+     * A helper method to tell the <code>Ledger</code> that every account at a branch has been removed by a
+     * record.<br><br>
+     * Must only be called while holding the lock of the journal.
+     *
+     * @param branch   the removed <code>Branch</code>
+     * @param sequence the sequence number of the record
+     */
+    private void released(Branch branch, long sequence) {
+        for (Customer customer : branch) {
+            released(customer, sequence);
+        }
+    }
+
+    /**
+     * A helper method to tell the <code>Ledger</code> that every account of a customer has been removed by a
+     * record.<br><br>
+     * Must only be called while holding the lock of the journal.
+     *
+     * @param customer the removed <code>Customer</code>
+     * @param sequence the sequence number of the record
+     */
+    private void released(Customer customer, long sequence) {
+        if (ledger != null) {
+            for (Account account : customer) {
+                ledger.release(account, sequence);
+            }
+        }
+    }
+
+    /**
+     * A helper method to frame a record and append it to the journal file.
+     *
+     * @param type   the record type
+     * @param fields writes the fields of the record
+     */
+    private void append(byte type, Fields fields) {
+        append(type, fields, null);
+    }
+
+    /**
+     * Overloaded helper method, handing the sequence number of the record to <code>written</code> once it has
+     * been written, before the record may be forced to the storage device along with others.
+     *
+     * @param type    the record type
+     * @param fields  writes the fields of the record
+     * @param written called with the sequence number of the record once written, or <code>null</code>
+     */
+    private synchronized void append(byte type, Fields fields, LongConsumer written) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeLong(sequence + 1);
+            output.writeByte(type);
+            fields.write(output);
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            sequence++;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            return;
+        }
+        if (written != null) {
+            written.accept(sequence);
+        }
+        if (sequence - forced >= groupSize) {
+            if (flusher == null) {
+                sync();
+            } else if (!flushing) {
+                flushing = true;
+                flusher.execute(this::sync);
+            }
+        }
+    }
+
+    /**
+     * A helper method to bring the balance of an account opened by a record in line with the <code>Ledger</code>.
+     * <br><br>
+     * If the ledger has a later balance for the account, the balance is taken from it. Otherwise, the ledger is
+     * given the balance the account was opened with.
+     *
+     * @param ledger   the <code>Ledger</code>, or <code>null</code> if there is none
+     * @param account  the opened <code>Account</code>
+     * @param sequence the sequence number of the record
+     */
+    private static void restore(Ledger ledger, Account account, long sequence) {
+        if (version(ledger, account) >= sequence) {
+            ledger.restore(account);
+        } else {
+            update(ledger, account, sequence);
+        }
+    }
+
+    /**
+     * A helper method to retrieve the version of the slot of an account in the <code>Ledger</code>.
+     *
+     * @param ledger  the <code>Ledger</code>, or <code>null</code> if there is none
+     * @param account the <code>Account</code>
+     * @return the version as a <code>Long</code>, or negative one (-1) if the account has no slot
+     */
+    private static long version(Ledger ledger, Account account) {
+        return ledger == null ? -1 : ledger.getVersion(account);
+    }
+
+    /**
+     * A helper method to write the balance of an account to the <code>Ledger</code>, if there is one.
+     *
+     * @param ledger   the <code>Ledger</code>, or <code>null</code> if there is none
+     * @param account  the <code>Account</code>
+     * @param sequence the sequence number of the record which changed the balance
+     */
+    private static void update(Ledger ledger, Account account, long sequence) {
+        if (ledger != null) {
+            ledger.update(account, account.getCents(), sequence);
+        }
+    }
+
+    /**
+     * A helper method to apply a single record onto the <code>manager</code>.<br><br>
+     * Records referring to an entity which no longer exists are skipped, as are changes to balances which the
+     * <code>Ledger</code> already contains.
+     *
+     * @param manager the <code>BankManager</code> the change is applied to
+     * @param ledger  the <code>Ledger</code> keeping the balance of every account, or <code>null</code>
+     * @param payload the record, without its length and checksum
+     * @param after   the sequence number of the last record already contained in the snapshot
+     * @return the sequence number of the record
+     * @throws IOException if the record is malformed
+     */
+    private static long apply(BankManager manager, Ledger ledger, byte[] payload, long after) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        long sequence = input.readLong();
+        if (sequence <= after) {
+            return sequence;
+        }
+        byte type = input.readByte();
+        switch (type) {
+            case BANK_CREATED: {
+                int bankId = input.readInt();
+                if (manager.getBank(bankId) == null) {
+                    manager.addBank(new Bank(bankId, input.readUTF()));
+                }
+                break;
+            }
+            case BANK_REMOVED:
+                manager.removeBank(input.readInt());
+                break;
+            case BANK_UPDATED: {
+                Bank bank = manager.getBank(input.readInt());
+                if (bank != null) {
+                    bank.setBankName(input.readUTF());
+                }
+                break;
+            }
+            case BRANCH_CREATED: {
+                Bank bank = manager.getBank(input.readInt());
+                int branchCode = input.readInt();
+                String name = input.readUTF();
+                Address address = readAddress(input);
+                if (bank != null) {
+                    bank.createBranch(branchCode, name, address);
+                }
+                break;
+            }
+            case BRANCH_REMOVED: {
+                Bank bank = manager.getBank(input.readInt());
+                int branchCode = input.readInt();
+                if (bank != null) {
+                    bank.removeBranch(branchCode);
+                }
+                break;
+            }
+            case BRANCH_UPDATED: {
+                Branch branch = readBranch(manager, input);
+                String name = input.readUTF();
+                Address address = readAddress(input);
+                if (branch != null) {
+                    branch.setBranchName(name);
+                    branch.setAddress(address);
+                }
+                break;
+            }
+            case CUSTOMER_ADDED: {
+                Branch branch = readBranch(manager, input);
+                Customer customer = new Customer(input.readInt(), input.readUTF(), readAddress(input));
+                int accounts = input.readByte();
+                for (int i = 0; i < accounts; i++) {
+                    Account account = customer.openAccount(input.readInt());
+                    double balance = input.readDouble();
+                    if (account != null && balance > 0) {
+                        account.deposit(balance);
+                    }
+                }
+                if (branch != null && branch.addCustomer(customer)) {
+                    for (Account account : customer) {
+                        restore(ledger, account, sequence);
+                    }
+                }
+                break;
+            }
+            case CUSTOMER_REMOVED: {
+                Branch branch = readBranch(manager, input);
+                int customerId = input.readInt();
+                if (branch != null) {
+                    branch.removeCustomer(customerId);
+                }
+                break;
+            }
+            case CUSTOMER_UPDATED: {
+                Customer customer = readCustomer(manager, input);
+                String name = input.readUTF();
+                Address address = readAddress(input);
+                if (customer != null) {
+                    customer.setName(name);
+                    customer.setAddress(address);
+                }
+                break;
+            }
+            case ACCOUNT_OPENED: {
+                Customer customer = readCustomer(manager, input);
+                int accountNumber = input.readInt();
+                Account account = customer == null ? null : customer.openAccount(accountNumber);
+                if (account != null) {
+                    restore(ledger, account, sequence);
+                }
+                break;
+            }
+            case ACCOUNT_CLOSED: {
+                Customer customer = readCustomer(manager, input);
+                int accountNumber = input.readInt();
+                if (customer != null) {
+                    customer.closeAccount(new Account(accountNumber));
+                }
+                break;
+            }
+            case DEPOSIT: {
+                Account account = readAccount(manager, input);
+                double amount = input.readDouble();
+                long cents = readCents(input);
+                if (account != null && version(ledger, account) < sequence) {
+                    settle(account, account.deposit(amount), cents, sequence);
+                    update(ledger, account, sequence);
+                }
+                break;
+            }
+            case WITHDRAW: {
+                Account account = readAccount(manager, input);
+                double amount = input.readDouble();
+                long cents = readCents(input);
+                if (account != null && version(ledger, account) < sequence) {
+                    settle(account, account.withdraw(amount), cents, sequence);
+                    update(ledger, account, sequence);
+                }
+                break;
+            }
+            case TRANSFER: {
+                Account from = readAccount(manager, input);
+                Account to = readAccount(manager, input);
+                double amount = input.readDouble();
+                long fromCents = readCents(input);
+                long toCents = readCents(input);
+                boolean debit = from != null && version(ledger, from) < sequence;
+                boolean credit = to != null && version(ledger, to) < sequence;
+                if (debit && credit) {
+                    boolean applied = from.transfer(to, amount);
+                    settle(from, applied, fromCents, sequence);
+                    settle(to, applied, toCents, sequence);
+                } else if (debit) {
+                    settle(from, from.withdraw(amount), fromCents, sequence);
+                } else if (credit) {
+                    settle(to, to.deposit(amount), toCents, sequence);
+                }
+                if (debit) {
+                    update(ledger, from, sequence);
+                }
+                if (credit) {
+                    update(ledger, to, sequence);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+        return sequence;
+    }
+
+    /**
+     * A helper method to read the balance an account was left with by a record, in cents.<br><br>
+     * Records written before balances were journaled end without it.
+     *
+     * @param input the stream to read from
+     * @return the balance in cents, or <code>UNKNOWN</code> if the record does not contain it
+     * @throws IOException if an I/O error occurs
+     */
+    private static long readCents(DataInputStream input) throws IOException {
+        return input.available() >= Long.BYTES ? input.readLong() : UNKNOWN;
+    }
+
+    /**
+     * A helper method to check the balance of an account against the balance it was left with by a replayed
+     * record.<br><br>
+     * A record is never written for a change which was not made, so a change which cannot be made again, or
+     * which leaves a different balance, means that the snapshot and the journal disagree. Should the record
+     * contain the balance, the account is given it, as the journal is the later of the two. Either way, the
+     * disagreement is reported rather than passed over.
+     *
+     * @param account  the <code>Account</code> changed by the record
+     * @param applied  whether the change could be made again
+     * @param cents    the balance the record left the account with, or <code>UNKNOWN</code>
+     * @param sequence the sequence number of the record
+     */
+    private static void settle(Account account, boolean applied, long cents, long sequence) {
+        if (applied && (cents == UNKNOWN || account.getCents() == cents)) {
+            return;
+        }
+        if (cents == UNKNOWN) {
+            System.out.println("Could not replay journal record " + sequence + " on account "
+                    + account.getAccountNumber());
+            return;
+        }
+        System.out.println("Journal record " + sequence + " left account " + account.getAccountNumber()
+                + " with " + cents + " cents, not " + account.getCents() + ". Restoring the journaled balance.");
+        account.restoreCents(cents);
+    }
+
+    /**
+     * A helper method to write the bank ID and branch code locating a branch.
+     *
+     * @param output the stream to write to
+     * @param branch the <code>Branch</code> to be located
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writePath(DataOutput output, Branch branch) throws IOException {
+        Bank bank = branch == null ? null : branch.getBank();
+        output.writeInt(bank == null ? -1 : bank.getBankId());
+        output.writeInt(branch == null ? -1 : branch.getBranchCode());
+    }
+
+    /**
+     * A helper method to write the bank ID, branch code, and customer ID locating a customer.
+     *
+     * @param output   the stream to write to
+     * @param customer the <code>Customer</code> to be located
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writePath(DataOutput output, Customer customer) throws IOException {
+        writePath(output, customer == null ? null : customer.getBranch());
+        output.writeInt(customer == null ? -1 : customer.getCustomerId());
+    }
+
+    /**
+     * A helper method to write the bank ID, branch code, customer ID, and account number locating an account.
+     *
+     * @param output  the stream to write to
+     * @param account the <code>Account</code> to be located
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writePath(DataOutput output, Account account) throws IOException {
+        writePath(output, account.getCustomer());
+        output.writeInt(account.getAccountNumber());
+    }
+
+    /**
+     * A helper method to read the bank ID and branch code of a branch, and locate it.
+     *
+     * @param manager the <code>BankManager</code> to search
+     * @param input   the stream to read from
+     * @return the <code>Branch</code>, or <code>null</code> if not found
+     * @throws IOException if an I/O error occurs
+     */
+    private static Branch readBranch(BankManager manager, DataInput input) throws IOException {
+        Bank bank = manager.getBank(input.readInt());
+        int branchCode = input.readInt();
+        return bank == null ? null : bank.getBranch(branchCode);
+    }
+
+    /**
+     * A helper method to read the location of a customer, and locate it.
+     *
+     * @param manager the <code>BankManager</code> to search
+     * @param input   the stream to read from
+     * @return the <code>Customer</code>, or <code>null</code> if not found
+     * @throws IOException if an I/O error occurs
+     */
+    private static Customer readCustomer(BankManager manager, DataInput input) throws IOException {
+        Branch branch = readBranch(manager, input);
+        int customerId = input.readInt();
+        return branch == null ? null : branch.getCustomer(customerId);
+    }
+
+    /**
+     * A helper method to read the location of an account, and locate it.
+     *
+     * @param manager the <code>BankManager</code> to search
+     * @param input   the stream to read from
+     * @return the <code>Account</code>, or <code>null</code> if not found
+     * @throws IOException if an I/O error occurs
+     */
+    private static Account readAccount(BankManager manager, DataInput input) throws IOException {
+        Customer customer = readCustomer(manager, input);
+        int accountNumber = input.readInt();
+        if (customer != null) {
+            for (Account account : customer) {
+                if (account.getAccountNumber() == accountNumber) {
+                    return account;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A helper method to write every part of an <code>Address</code>.<br><br>
+     * The zip code of an invalid address is written as an empty <code>String</code>, so that the address
+     * remains invalid when replayed.
+     *
+     * @param output  the stream to write to
+     * @param address the <code>Address</code> to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeAddress(DataOutput output, Address address) throws IOException {
+        output.writeUTF(address.getStreet());
+        output.writeUTF(address.getCity());
+        output.writeUTF(address.getState());
+        output.writeUTF(address.isValid() ? address.getZipCode() : "");
+    }
+
+    /**
+     * A helper method to read every part of an <code>Address</code>.
+     *
+     * @param input the stream to read from
+     * @return the <code>Address</code>
+     * @throws IOException if an I/O error occurs
+     */
+    private static Address readAddress(DataInput input) throws IOException {
+        return new Address(input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF());
+    }
+
+    /**
+     * This private interface writes the fields of a single record.
+     */
+    private interface Fields {
+
+        /**
+         * Writes the fields of the record.
+         *
+         * @param output the stream to write to
+         * @throws IOException if an I/O error occurs
+         */
+        void write(DataOutputStream output) throws IOException;
+    }
+
+}
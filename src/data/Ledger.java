@@ -0,0 +1,566 @@
+package data;
+
+import bank.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class serves as a memory-mapped ledger of the balance of every account handled by a
+ * <code>BankManager</code>.<br><br>
+ * The ledger file consists of a small header followed by fixed-width slots, one for every account:
+ * <blockquote>Magic (int) | Version (int) | Capacity (int) | Reserved (int) |
+ * Capacity x [Owner (long) | Account Number (int) | Reserved (int) | Version (long) | Balance in Cents (long)]
+ * </blockquote>
+ * where the owner is the <code>CompositeKey</code> of the customer holding the account, a slot with an account
+ * number of zero (0) is free, and the version of a slot is the sequence number of the <code>Journal</code>
+ * record which last changed the balance. As account numbers saved before they were kept unique across every
+ * bank may be held by more than one customer, a slot belongs to an account number <em>and</em> its owner.
+ * Files of version 1 held no owner. They are rewritten in the current format when opened, their slots being
+ * given to the first account with the same number which is restored from them.<br><br>
+ * The file is mapped into memory, so a deposit, withdrawal, or transfer only overwrites the slots of the
+ * accounts involved, and the operating system writes the changed pages out on its own. Since balances are
+ * kept here, changing a balance no longer requires the bank to be encoded again in the <code>Snapshot</code>,
+ * which only needs to be rewritten when the hierarchy itself changes. Balances in the ledger take precedence
+ * over the ones in the snapshot whenever a bank is read.<br><br>
+ * As the operating system may write a changed page out at any time, a change must never reach the file
+ * before the journal record it comes from is on the storage device. Changes are therefore given to the
+ * ledger by the <code>Journal</code>, along with the sequence number of their record, and held back until the
+ * journal has been forced past it, at which point <code>flush()</code> writes them to their slots. Until
+ * then, the ledger answers for the held-back changes itself.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see Journal
+ * @see Snapshot
+ */
+public class Ledger implements Closeable {
+
+    /**
+     * The first four bytes of the file, spelling out <code>LDGR</code>.
+     */
+    private static final int MAGIC = 0x4C444752;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The size of the header, and of every slot, in bytes.
+     */
+    private static final int HEADER = 16, SLOT = 32;
+
+    /**
+     * The size of a slot of a file of version 1, in bytes.
+     */
+    private static final int LEGACY_SLOT = 24;
+
+    /**
+     * The owner of a slot read from a file of version 1, which is not yet known.
+     */
+    private static final long LEGACY = 0;
+
+    /**
+     * The number of slots of a new ledger file.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * This field stores a <code>File</code> object referring to the ledger file.
+     */
+    private final File file;
+
+    /**
+     * This field stores a <code>Map</code> locating the slot of every account.<br><br>
+     * Uses the owner and account number as the key, and the index of the slot as the value.
+     */
+    private final Map<Key, Integer> slots = new HashMap<>();
+
+    /**
+     * This field stores a <code>Map</code> of the changes held back until the journal is forced, in the order
+     * they were made.<br><br>
+     * Uses the owner and account number as the key, and the latest change to the account as the value.
+     */
+    private final Map<Key, Change> pending = new LinkedHashMap<>();
+
+    /**
+     * This field stores the indexes of the free slots below <code>used</code>.
+     */
+    private final Deque<Integer> free = new ArrayDeque<>();
+
+    /**
+     * This field stores the number of slots which have ever been taken.
+     */
+    private int used;
+
+    /**
+     * This field stores the number of slots in the file.
+     */
+    private int capacity;
+
+    /**
+     * This field stores the <code>FileChannel</code> of the ledger file.<br><br>
+     * Remains <code>null</code> until the ledger has been opened, or if the file could not be opened.
+     */
+    private FileChannel channel;
+
+    /**
+     * This field stores the <code>MappedByteBuffer</code> the slots are read from and written to.
+     */
+    private MappedByteBuffer map;
+
+    /**
+     * Default Constructor.
+     *
+     * @param file the ledger file
+     */
+    public Ledger(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the ledger file, creating it if not found, and locates the slot of every account.<br><br>
+     * A file of version 1 is first rewritten in the current format.
+     *
+     * @return <code>true</code> if the ledger has been opened. Otherwise it will return <code>false</code>.
+     */
+    public synchronized boolean open() {
+        try {
+            if (file.length() >= HEADER) {
+                migrate();
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < HEADER) {
+                map(INITIAL_CAPACITY);
+                map.putInt(0, MAGIC).putInt(4, VERSION);
+            } else {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                    throw new IOException("Unrecognized ledger format");
+                }
+                map(map.getInt(8));
+            }
+            for (int i = 0; i < capacity; i++) {
+                int position = HEADER + i * SLOT;
+                int accountNumber = map.getInt(position + 8);
+                if (accountNumber != 0) {
+                    slots.put(new Key(map.getLong(position), accountNumber), i);
+                    used = i + 1;
+                }
+            }
+            for (int i = 0; i < used; i++) {
+                if (map.getInt(HEADER + i * SLOT + 8) == 0) {
+                    free.add(i);
+                }
+            }
+            return true;
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Determines whether the ledger is open, and keeping track of balances.
+     *
+     * @return <code>true</code> if the ledger is open. Otherwise it will return <code>false</code>.
+     */
+    public synchronized boolean isOpen() {
+        return map != null;
+    }
+
+    /**
+     * Retrieves the version of the balance of an account, being the sequence number of the journal record
+     * which last changed it, whether or not it has been written to its slot yet.
+     *
+     * @param account the <code>Account</code>
+     * @return the version as a <code>Long</code>, or negative one (-1) if the account has no balance in the
+     * ledger
+     */
+    public synchronized long getVersion(Account account) {
+        Key key = Key.of(account);
+        Change change = pending.get(key);
+        if (change != null) {
+            return change.released ? -1 : change.version;
+        }
+        Integer slot = find(key);
+        return slot == null ? -1 : map.getLong(HEADER + slot * SLOT + 16);
+    }
+
+    /**
+     * Sets the balance of an account to the one in the ledger, if it has one.
+     *
+     * @param account the <code>Account</code> to be restored
+     */
+    public synchronized void restore(Account account) {
+        if (map == null) {
+            return;
+        }
+        Key key = Key.of(account);
+        Change change = pending.get(key);
+        if (change != null) {
+            if (!change.released) {
+                account.restoreCents(change.cents);
+            }
+            return;
+        }
+        Integer slot = find(key);
+        if (slot != null) {
+            account.restoreCents(map.getLong(HEADER + slot * SLOT + 24));
+        }
+    }
+
+    /**
+     * Sets the balance of every account of a bank to the one in the ledger, if it has one.
+     *
+     * @param bank the <code>Bank</code> to be restored
+     */
+    public synchronized void restore(Bank bank) {
+        if (map == null) {
+            return;
+        }
+        for (Branch branch : bank) {
+            for (Customer customer : branch) {
+                for (Account account : customer) {
+                    restore(account);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the balance of an account, as changed by the journal record with the given sequence number.
+     * <br><br>
+     * The balance is only written to the slot of the account by <code>flush()</code>, once the record is on
+     * the storage device.
+     *
+     * @param account the <code>Account</code>
+     * @param cents   the balance in cents after the change
+     * @param version the sequence number of the journal record which changed the balance
+     */
+    public synchronized void update(Account account, long cents, long version) {
+        if (map != null) {
+            Key key = Key.of(account);
+            pending.remove(key);
+            pending.put(key, new Change(cents, version, false));
+        }
+    }
+
+    /**
+     * Records that an account no longer exists, as of the journal record with the given sequence number.
+     * <br><br>
+     * The slot of the account is only freed by <code>flush()</code>, once the record is on the storage device.
+     *
+     * @param account the <code>Account</code>
+     * @param version the sequence number of the journal record which removed the account
+     */
+    public synchronized void release(Account account, long version) {
+        if (map != null) {
+            Key key = Key.of(account);
+            pending.remove(key);
+            pending.put(key, new Change(0, version, true));
+        }
+    }
+
+    /**
+     * Records that every account of a bank no longer exists, as of the journal record with the given sequence
+     * number.<br><br>
+     * Used when a bank is removed without being read, so the accounts are found by the bank ID held in the
+     * owner of their slots and of their changes held back. Their slots are only freed by <code>flush()</code>,
+     * once the record is on the storage device.
+     *
+     * @param bankId  the 4-Digit bank ID of the removed bank
+     * @param version the sequence number of the journal record which removed the bank
+     */
+    public synchronized void release(int bankId, long version) {
+        if (map != null) {
+            Set<Key> keys = new LinkedHashSet<>();
+            for (Key key : slots.keySet()) {
+                if (CompositeKey.bankId(key.owner) == bankId) {
+                    keys.add(key);
+                }
+            }
+            for (Key key : pending.keySet()) {
+                if (CompositeKey.bankId(key.owner) == bankId) {
+                    keys.add(key);
+                }
+            }
+            for (Key key : keys) {
+                pending.remove(key);
+                pending.put(key, new Change(0, version, true));
+            }
+        }
+    }
+
+    /**
+     * Writes every change held back so far to the slots of their accounts, taking a free slot for an account
+     * which does not have one yet, and freeing the slots of the accounts which no longer exist.<br><br>
+     * Must only be called once every journal record the changes come from is on the storage device.
+     */
+    public synchronized void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    /**
+     * Overloaded Method. Writes the changes held back so far which come from journal records up to and
+     * including the given sequence number, and keeps holding back the others.<br><br>
+     * Must only be called once every journal record up to that sequence number is on the storage device.
+     *
+     * @param upTo the sequence number of the last journal record on the storage device
+     */
+    public synchronized void flush(long upTo) {
+        if (map == null) {
+            pending.clear();
+            return;
+        }
+        try {
+            Iterator<Map.Entry<Key, Change>> entries = pending.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, Change> entry = entries.next();
+                Key key = entry.getKey();
+                Change change = entry.getValue();
+                if (change.version > upTo) {
+                    continue;
+                }
+                entries.remove();
+                if (change.released) {
+                    Integer slot = slots.remove(key);
+                    if (slot != null) {
+                        map.putInt(HEADER + slot * SLOT + 8, 0);
+                        free.add(slot);
+                    }
+                    continue;
+                }
+                Integer slot = slots.get(key);
+                if (slot == null) {
+                    if (free.isEmpty() && used == capacity) {
+                        map(capacity * 2);
+                    }
+                    slot = free.isEmpty() ? used++ : free.poll();
+                    slots.put(key, slot);
+                }
+                int position = HEADER + slot * SLOT;
+                map.putLong(position + 24, change.cents);
+                map.putLong(position + 16, change.version);
+                map.putLong(position, key.owner);
+                map.putInt(position + 8, key.accountNumber);
+            }
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+            pending.values().removeIf(change -> change.version <= upTo);
+        }
+    }
+
+    /**
+     * Forces every slot written so far to the storage device.<br><br>
+     * Changes still held back are not written.
+     */
+    public synchronized void force() {
+        if (map != null) {
+            map.force();
+        }
+    }
+
+    /**
+     * Forces every slot to the storage device and closes the ledger file.<br><br>
+     * Changes still held back are discarded, so the journal must be closed first.
+     */
+    @Override
+    public synchronized void close() {
+        force();
+        map = null;
+        slots.clear();
+        pending.clear();
+        free.clear();
+        used = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                System.out.println(ioe.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * A helper method to locate the slot of an account. Should it have none, the slot of its account number
+     * read from a file of version 1 is given to it, if there is one.
+     *
+     * @param key the owner and account number of the account
+     * @return the index of the slot, or <code>null</code> if it has none
+     */
+    private Integer find(Key key) {
+        Integer slot = slots.get(key);
+        if (slot == null && key.owner != LEGACY) {
+            slot = slots.remove(new Key(LEGACY, key.accountNumber));
+            if (slot != null) {
+                slots.put(key, slot);
+                map.putLong(HEADER + slot * SLOT, key.owner);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * A helper method to rewrite a file of version 1 in the current format, giving every slot an unknown owner.
+     * <br><br>
+     * The slots are written to a new file, which is then moved over the ledger file, so that the ledger is
+     * left as it was should anything fail in the middle.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void migrate() throws IOException {
+        try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer legacy = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size());
+            if (legacy.getInt(0) != MAGIC || legacy.getInt(4) != 1) {
+                return;
+            }
+            int capacity = legacy.getInt(8);
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileChannel output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer slots = output.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER + (long) capacity * SLOT);
+                slots.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, capacity);
+                for (int i = 0; i < capacity; i++) {
+                    int from = HEADER + i * LEGACY_SLOT, to = HEADER + i * SLOT;
+                    slots.putLong(to, LEGACY);
+                    slots.putInt(to + 8, legacy.getInt(from));
+                    slots.putLong(to + 16, legacy.getLong(from + 8));
+                    slots.putLong(to + 24, legacy.getLong(from + 16));
+                }
+                slots.force();
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * A helper method to map the given number of slots into memory, growing the file if needed.
+     *
+     * @param capacity the number of slots
+     * @throws IOException if an I/O error occurs
+     */
+    private void map(int capacity) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+        map.putInt(8, capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * This private class identifies the slot of an account by its owner and account number.
+     */
+    private static final class Key {
+
+        /**
+         * This field stores the <code>CompositeKey</code> of the customer holding the account.
+         */
+        private final long owner;
+
+        /**
+         * This field stores the 9-Digit account number.
+         */
+        private final int accountNumber;
+
+        /**
+         * Default Constructor.
+         *
+         * @param owner         the <code>CompositeKey</code> of the customer holding the account
+         * @param accountNumber the 9-Digit account number
+         */
+        private Key(long owner, int accountNumber) {
+            this.owner = owner;
+            this.accountNumber = accountNumber;
+        }
+
+        /**
+         * Retrieves the key of the slot of an account, owned by the customer it currently belongs to.
+         *
+         * @param account the <code>Account</code>
+         * @return the <code>Key</code>
+         */
+        private static Key of(Account account) {
+            Customer customer = account.getCustomer();
+            return new Key(customer == null ? CompositeKey.NONE : CompositeKey.of(customer),
+                    account.getAccountNumber());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return owner == key.owner && accountNumber == key.accountNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owner, accountNumber);
+        }
+    }
+
+    /**
+     * This private class holds a change to the balance of an account, held back until the journal record it
+     * comes from is on the storage device.
+     */
+    private static final class Change {
+
+        /**
+         * This field stores the balance in cents after the change.
+         */
+        private final long cents;
+
+        /**
+         * This field stores the sequence number of the journal record the change comes from.
+         */
+        private final long version;
+
+        /**
+         * This field stores whether the account no longer exists.
+         */
+        private final boolean released;
+
+        /**
+         * Default Constructor.
+         *
+         * @param cents    the balance in cents after the change
+         * @param version  the sequence number of the journal record the change comes from
+         * @param released whether the account no longer exists
+         */
+        private Change(long cents, long version, boolean released) {
+            this.cents = cents;
+            this.version = version;
+            this.released = released;
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package data;
+
+import bank.*;
+
+/**
+ * This class forwards every change made to the bank hierarchy to a number of <code>MutationListener</code>s,
+ * in the order they were given.<br><br>
+ * A <code>Bank</code> only accepts a single listener, so this class allows the <code>BankManager</code> to
+ * notify its <code>Journal</code> first, followed by anything which relies on the journal having recorded
+ * the change. Once every listener has been notified, a hook is run, which allows the database to be saved
+ * in the background once enough changes have been made.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see MutationListener
+ * @see BankManager
+ */
+final class Listeners implements MutationListener {
+
+    /**
+     * This field stores the listeners notified of every change, in order.
+     */
+    private final MutationListener[] listeners;
+
+    /**
+     * This field stores a <code>Runnable</code> run once every listener has been notified of a change.
+     */
+    private final Runnable hook;
+
+    /**
+     * Default Constructor.
+     *
+     * @param hook      run on the thread making a change, once every listener has been notified of it
+     * @param listeners the listeners to be notified of every change, in order
+     */
+    Listeners(Runnable hook, MutationListener... listeners) {
+        this.hook = hook;
+        this.listeners = listeners.clone();
+    }
+
+    @Override
+    public void bankCreated(Bank bank) {
+        for (MutationListener listener : listeners) {
+            listener.bankCreated(bank);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void bankRemoved(Bank bank) {
+        for (MutationListener listener : listeners) {
+            listener.bankRemoved(bank);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void bankRemoved(int bankId) {
+        for (MutationListener listener : listeners) {
+            listener.bankRemoved(bankId);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void bankUpdated(Bank bank) {
+        for (MutationListener listener : listeners) {
+            listener.bankUpdated(bank);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void branchCreated(Bank bank, Branch branch) {
+        for (MutationListener listener : listeners) {
+            listener.branchCreated(bank, branch);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void branchUpdated(Branch branch) {
+        for (MutationListener listener : listeners) {
+            listener.branchUpdated(branch);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void branchRemoved(Bank bank, Branch branch) {
+        for (MutationListener listener : listeners) {
+            listener.branchRemoved(bank, branch);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void customerAdded(Branch branch, Customer customer) {
+        for (MutationListener listener : listeners) {
+            listener.customerAdded(branch, customer);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void customerUpdated(Customer customer) {
+        for (MutationListener listener : listeners) {
+            listener.customerUpdated(customer);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void customerRemoved(Branch branch, Customer customer) {
+        for (MutationListener listener : listeners) {
+            listener.customerRemoved(branch, customer);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void accountOpened(Customer customer, Account account) {
+        for (MutationListener listener : listeners) {
+            listener.accountOpened(customer, account);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void accountClosed(Customer customer, Account account) {
+        for (MutationListener listener : listeners) {
+            listener.accountClosed(customer, account);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void deposited(Account account, double amount) {
+        for (MutationListener listener : listeners) {
+            listener.deposited(account, amount);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void deposited(Account account, double amount, long cents) {
+        for (MutationListener listener : listeners) {
+            listener.deposited(account, amount, cents);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void withdrew(Account account, double amount) {
+        for (MutationListener listener : listeners) {
+            listener.withdrew(account, amount);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void withdrew(Account account, double amount, long cents) {
+        for (MutationListener listener : listeners) {
+            listener.withdrew(account, amount, cents);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void transferred(Account from, Account to, double amount) {
+        for (MutationListener listener : listeners) {
+            listener.transferred(from, to, amount);
+        }
+        hook.run();
+    }
+
+    @Override
+    public void transferred(Account from, Account to, double amount, long fromCents, long toCents) {
+        for (MutationListener listener : listeners) {
+            listener.transferred(from, to, amount, fromCents, toCents);
+        }
+        hook.run();
+    }
+
+}
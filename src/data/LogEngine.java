@@ -0,0 +1,113 @@
+package data;
+
+import bank.Bank;
+import bank.MutationListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class stores the database as a log of every change made to it, with nothing else saved alongside.<br><br>
+ * The log is a <code>Journal</code>, replayed from the very beginning whenever the database is read. Every
+ * change is appended to the end of the log as soon as it is made, so saving the database only compacts the
+ * log, replacing it with the fewest records needed to create the banks as they currently are. The file used by
+ * default is <code>bankDatabase.log</code>, stored within the project files.<br><br>
+ * Compared to the <code>SnapshotEngine</code>, every bank is read when the database is read, and no balances are
+ * kept apart from the log.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see StorageEngine
+ * @see Journal#rewrite(Iterable)
+ */
+public class LogEngine implements StorageEngine {
+
+    /**
+     * This field stores the <code>Journal</code> logging every change made to the database.
+     */
+    private final Journal log;
+
+    /**
+     * This field stores the <code>BankManager</code> the database is read for.
+     */
+    private BankManager manager;
+
+    /**
+     * Default Constructor.<br><br>
+     * Uses the file <code>bankDatabase.log</code> stored within the project files.
+     */
+    public LogEngine() {
+        this(new File("bankDatabase.log"));
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param file the log file
+     */
+    public LogEngine(File file) {
+        this.log = new Journal(file);
+    }
+
+    /**
+     * Prepares to read the database, which is only done once the log is replayed by <code>recover()</code>.
+     *
+     * @param manager the <code>BankManager</code> the banks are read for
+     * @return an empty <code>Map</code>
+     */
+    @Override
+    public Map<Integer, Bank> load(BankManager manager) {
+        this.manager = manager;
+        return new LinkedHashMap<>();
+    }
+
+    @Override
+    public Bank load(int bankId) throws IOException {
+        throw new IOException("Bank " + bankId + " is not in the log");
+    }
+
+    @Override
+    public String getName(int bankId) {
+        return null;
+    }
+
+    /**
+     * Replays the whole log onto the <code>BankManager</code>.
+     */
+    @Override
+    public void recover() {
+        log.replay(manager, 0);
+    }
+
+    /**
+     * Retrieves the <code>Journal</code> appending every change to the log.
+     *
+     * @return the <code>MutationListener</code>
+     */
+    @Override
+    public MutationListener getMutationListener() {
+        return log;
+    }
+
+    /**
+     * Compacts the log, replacing it with the records needed to create the banks as they currently are.
+     *
+     * @return <code>true</code> if the log is successfully compacted. Otherwise it will return
+     * <code>false</code>.
+     */
+    @Override
+    public boolean checkpoint() {
+        return log.rewrite(manager);
+    }
+
+    /**
+     * Forces any changes still pending to the storage device and closes the log.
+     */
+    @Override
+    public void close() {
+        log.close();
+    }
+
+}
@@ -0,0 +1,196 @@
+package data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class compresses bytes with a fast LZ77-style scheme, trading some of the compression achieved by
+ * Deflate for much higher speed.<br><br>
+ * No dictionary or entropy coding is used. Repeated runs of at least four (4) bytes found within the previous
+ * 64 KiB are replaced by a reference to their earlier occurrence, located through a small hash table of the
+ * last position every four-byte sequence was seen at. Runs of bytes without any repetition are scanned with
+ * growing steps, so that they are skipped over quickly. The compressed form begins with the uncompressed length
+ * as a varint, followed by a number of sequences:
+ * <blockquote>Token (byte) | Literal Length (extra bytes) | Literals | Offset (2 bytes) |
+ * Match Length (extra bytes)</blockquote>
+ * where the high four (4) bits of the token hold the number of literals, and the low four (4) bits hold the
+ * match length minus four (4). A value of fifteen (15) in either is continued by extra bytes which are added
+ * to it, each byte of 255 followed by another. The last sequence holds only literals.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Compression
+ */
+final class LzCodec {
+
+    /**
+     * The shortest run of bytes replaced by a reference.
+     */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * The furthest a reference may point back.
+     */
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    /**
+     * The number of bits used to index the hash table.
+     */
+    private static final int HASH_BITS = 14;
+
+    /**
+     * Private Constructor. This class only provides static methods.
+     */
+    private LzCodec() {
+    }
+
+    /**
+     * Compresses an array of bytes.
+     *
+     * @param bytes the bytes to be compressed
+     * @return the compressed bytes
+     */
+    static byte[] compress(byte[] bytes) {
+        int length = bytes.length;
+        byte[] output = new byte[length + length / 255 + 16];
+        int position = 0;
+        for (long value = length; ; value >>>= 7) {
+            if ((value & ~0x7FL) == 0) {
+                output[position++] = (byte) value;
+                break;
+            }
+            output[position++] = (byte) ((value & 0x7F) | 0x80);
+        }
+        int[] table = new int[1 << HASH_BITS];
+        int anchor = 0;
+        int misses = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= length) {
+            int sequence = readInt(bytes, i);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int reference = table[hash] - 1;
+            table[hash] = i + 1;
+            if (reference < 0 || i - reference > MAX_OFFSET || readInt(bytes, reference) != sequence) {
+                i += 1 + (misses++ >> 5);
+                continue;
+            }
+            int match = MIN_MATCH;
+            while (i + match < length && bytes[reference + match] == bytes[i + match]) {
+                match++;
+            }
+            int literals = i - anchor;
+            output[position++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match - MIN_MATCH, 15));
+            position = writeLength(output, position, literals);
+            System.arraycopy(bytes, anchor, output, position, literals);
+            position += literals;
+            output[position++] = (byte) (i - reference);
+            output[position++] = (byte) ((i - reference) >>> 8);
+            position = writeLength(output, position, match - MIN_MATCH);
+            i += match;
+            anchor = i;
+            misses = 0;
+        }
+        int literals = length - anchor;
+        output[position++] = (byte) (Math.min(literals, 15) << 4);
+        position = writeLength(output, position, literals);
+        System.arraycopy(bytes, anchor, output, position, literals);
+        return Arrays.copyOf(output, position + literals);
+    }
+
+    /**
+     * Restores the bytes compressed by <code>compress()</code>.
+     *
+     * @param bytes the compressed bytes
+     * @return the original bytes
+     * @throws IOException if the bytes are not validly compressed
+     */
+    static byte[] decompress(byte[] bytes) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        try {
+            byte[] output = new byte[BankCodec.readVarInt(input)];
+            int position = 0;
+            while (true) {
+                int token = input.get() & 0xFF;
+                int literals = readLength(input, token >>> 4);
+                if (literals < 0 || literals > output.length - position) {
+                    throw new EOFException("Corrupted compressed data");
+                }
+                input.get(output, position, literals);
+                position += literals;
+                if (!input.hasRemaining()) {
+                    break;
+                }
+                int offset = (input.get() & 0xFF) | (input.get() & 0xFF) << 8;
+                int match = readLength(input, token & 0x0F) + MIN_MATCH;
+                if (offset == 0 || offset > position || match < MIN_MATCH
+                        || match > output.length - position) {
+                    throw new EOFException("Corrupted compressed data");
+                }
+                for (int end = position + match; position < end; position++) {
+                    output[position] = output[position - offset];
+                }
+            }
+            if (position != output.length) {
+                throw new EOFException("Truncated compressed data");
+            }
+            return output;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new EOFException("Truncated or corrupted compressed data");
+        }
+    }
+
+    /**
+     * A helper method to read four (4) bytes as an <code>Integer</code>.
+     *
+     * @param bytes    the bytes to read from
+     * @param position the position of the first byte
+     * @return the bytes as an <code>Integer</code>
+     */
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8
+                | (bytes[position + 2] & 0xFF) << 16 | bytes[position + 3] << 24;
+    }
+
+    /**
+     * A helper method to write the extra bytes of a length which does not fit in its four (4) bits.
+     *
+     * @param output   the array to write to
+     * @param position the position to write at
+     * @param length   the whole length
+     * @return the position following the extra bytes
+     */
+    private static int writeLength(byte[] output, int position, int length) {
+        if (length < 15) {
+            return position;
+        }
+        length -= 15;
+        while (length >= 255) {
+            output[position++] = (byte) 255;
+            length -= 255;
+        }
+        output[position++] = (byte) length;
+        return position;
+    }
+
+    /**
+     * A helper method to read a length, along with its extra bytes if it does not fit in its four (4) bits.
+     *
+     * @param input  the buffer to read from
+     * @param length the four (4) bits of the length held in the token
+     * @return the whole length
+     */
+    private static int readLength(ByteBuffer input, int length) {
+        if (length == 15) {
+            int b;
+            do {
+                b = input.get() & 0xFF;
+                length += b;
+            } while (b == 255);
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,330 @@
+package data;
+
+import utility.LatencyHistogram;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * This class applies every operation on some shared state, such as a <code>BankManager</code>, on a single
+ * writer thread, in the order the operations were submitted.<br><br>
+ * Operations are published to a ring buffer of pre-allocated slots. Any number of threads may submit
+ * operations at once: each claims the next sequence number, waits until the slot of that number is free,
+ * fills it in, and publishes it. The writer thread takes the slots in sequence order and applies each
+ * operation in turn, so operations never need to lock the state, and every change is made in a single total
+ * order which a <code>Journal</code> records as it is. When the ring is full, submitting threads wait for the
+ * writer to catch up.<br><br>
+ * Queries are submitted the same way as changes. As nothing else changes the state while an operation is
+ * applied, every query sees the state as a consistent snapshot between two changes.<br><br>
+ * The latency of every operation is recorded at each stage in a <code>LatencyHistogram</code>:
+ * <ul>
+ *     <li><code>CLAIM</code> - from submitting until the slot is free</li>
+ *     <li><code>QUEUE</code> - from publishing the slot until the writer takes it</li>
+ *     <li><code>APPLY</code> - applying the operation</li>
+ *     <li><code>TOTAL</code> - from submitting until the operation has been applied</li>
+ * </ul>
+ * The future returned for every operation is completed on the writer thread, so work depending on it should
+ * be done asynchronously, or on the submitting thread once it has been completed.
+ *
+ * @param <S> the type of the state operations are applied on
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see LatencyHistogram
+ * @see Journal
+ */
+public class Sequencer<S> implements Closeable {
+
+    /**
+     * The number of slots of the ring buffer by default.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The number of times a thread checks for a slot before giving up its processor, and then parking.
+     */
+    private static final int SPINS = 100, YIELDS = 100;
+
+    /**
+     * The longest time a waiting thread parks for before checking again, in nanoseconds.
+     */
+    private static final long PARK_NANOS = 100000;
+
+    /**
+     * This enum lists the stages whose latency is recorded.
+     */
+    public enum Stage {
+        CLAIM, QUEUE, APPLY, TOTAL
+    }
+
+    /**
+     * This field stores the state every operation is applied on.
+     */
+    private final S state;
+
+    /**
+     * This field stores the slots of the ring buffer. The number of slots is a power of two.
+     */
+    private final Slot[] ring;
+
+    /**
+     * This field stores the mask mapping a sequence number to its slot.
+     */
+    private final int mask;
+
+    /**
+     * This field stores the last sequence number claimed by a submitting thread.
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /**
+     * This field stores the last sequence number applied by the writer thread. Every slot up to the
+     * capacity beyond it is free.
+     */
+    private volatile long applied = -1;
+
+    /**
+     * This field stores a <code>Boolean</code> to indicate that no more operations are accepted.
+     */
+    private volatile boolean closed;
+
+    /**
+     * This field stores the <code>LatencyHistogram</code> of every <code>Stage</code>.
+     */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+
+    /**
+     * This field stores the writer thread.
+     */
+    private final Thread writer;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates a sequencer with a ring of 1024 slots, and starts its writer thread.
+     *
+     * @param state the state every operation is applied on
+     */
+    public Sequencer(S state) {
+        this(state, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * Creates a sequencer with a ring of at least the given number of slots, rounded up to a power of two,
+     * and starts its writer thread.
+     *
+     * @param state    the state every operation is applied on
+     * @param capacity the number of slots
+     * @throws IllegalArgumentException if <code>capacity</code> is less than one (1) or too large
+     */
+    public Sequencer(S state, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.state = state;
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        for (Stage stage : Stage.values()) {
+            latencies[stage.ordinal()] = new LatencyHistogram(stage.name().toLowerCase());
+        }
+        this.writer = new Thread(this::run, "sequencer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Retrieves the number of slots of the ring buffer.
+     *
+     * @return the number of slots as an <code>Integer</code>
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Retrieves the sequence number of the last operation applied, starting at zero (0).
+     *
+     * @return the sequence number as a <code>Long</code>, or negative one (-1) if none has been applied
+     */
+    public long getSequence() {
+        return applied;
+    }
+
+    /**
+     * Retrieves the <code>LatencyHistogram</code> of a stage.
+     *
+     * @param stage the <code>Stage</code>
+     * @return the <code>LatencyHistogram</code>
+     */
+    public LatencyHistogram getLatency(Stage stage) {
+        return latencies[stage.ordinal()];
+    }
+
+    /**
+     * Submits an operation to be applied on the writer thread, after every operation submitted before it.<br><br>
+     * A thread waiting for its slot when the sequencer is closed is either given its slot, once the writer has
+     * applied every operation before it, or fails once the writer has stopped, should it have claimed its
+     * sequence number after the writer applied the last operation.
+     *
+     * @param operation the operation, given the state and returning its result
+     * @param <R>       the type of the result
+     * @return a <code>CompletableFuture</code> completed with the result once the operation has been
+     * applied, or completed exceptionally with whatever the operation threw
+     * @throws IllegalStateException if the sequencer has been closed
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> submit(Function<? super S, ? extends R> operation) {
+        if (closed) {
+            throw new IllegalStateException("The sequencer has been closed");
+        }
+        long submitted = System.nanoTime();
+        long sequence = claimed.incrementAndGet();
+        int idle = 0;
+        while (sequence - ring.length > applied) {
+            if (closed && !writer.isAlive()) {
+                throw new IllegalStateException("The sequencer has been closed");
+            }
+            idle = idle(idle);
+        }
+        long published = System.nanoTime();
+        latencies[Stage.CLAIM.ordinal()].record(published - submitted);
+        Slot slot = ring[(int) sequence & mask];
+        CompletableFuture<R> result = new CompletableFuture<>();
+        boolean accepted = !closed;
+        slot.operation = accepted ? (Function<Object, Object>) operation : null;
+        slot.result = (CompletableFuture<Object>) result;
+        slot.submitted = submitted;
+        slot.published = published;
+        slot.sequence = sequence;
+        LockSupport.unpark(writer);
+        if (!accepted) {
+            throw new IllegalStateException("The sequencer has been closed");
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting operations, and waits until every operation already submitted has been applied.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies the operation of every slot in sequence order, until the sequencer is closed and every
+     * operation claimed has been applied.<br><br>
+     * A thread claiming a sequence number after the writer has stopped either finds its slot free, and
+     * publishes it without an operation, or finds the writer stopped while waiting for its slot, so that no
+     * thread is ever left waiting on the writer once it has stopped.
+     */
+    private void run() {
+        long next = 0;
+        while (true) {
+            Slot slot = ring[(int) next & mask];
+            int idle = 0;
+            while (slot.sequence != next) {
+                if (closed && claimed.get() < next) {
+                    return;
+                }
+                idle = idle(idle);
+            }
+            long begin = System.nanoTime();
+            latencies[Stage.QUEUE.ordinal()].record(begin - slot.published);
+            Function<Object, Object> operation = slot.operation;
+            CompletableFuture<Object> result = slot.result;
+            long submitted = slot.submitted;
+            slot.operation = null;
+            slot.result = null;
+            Object value = null;
+            Throwable failure = null;
+            if (operation != null) {
+                try {
+                    value = operation.apply(state);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+            }
+            long end = System.nanoTime();
+            applied = next++;
+            if (operation != null) {
+                latencies[Stage.APPLY.ordinal()].record(end - begin);
+                latencies[Stage.TOTAL.ordinal()].record(end - submitted);
+                if (failure == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * A helper method to wait a little longer each time a thread finds nothing to do.
+     *
+     * @param idle the number of times the thread has found nothing to do so far
+     * @return the number of times, counting this one
+     */
+    private static int idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    /**
+     * This private class represents a slot of the ring buffer.<br><br>
+     * Every field is written before <code>sequence</code> is published, and read after it has been seen.
+     */
+    private static final class Slot {
+
+        /**
+         * This field stores the sequence number of the operation in the slot, once it has been published.
+         */
+        private volatile long sequence = -1;
+
+        /**
+         * This field stores the operation, or <code>null</code> if it was submitted after closing.
+         */
+        private Function<Object, Object> operation;
+
+        /**
+         * This field stores the future completed with the result of the operation.
+         */
+        private CompletableFuture<Object> result;
+
+        /**
+         * This field stores the time the operation was submitted, in nanoseconds.
+         */
+        private long submitted;
+
+        /**
+         * This field stores the time the slot was published, in nanoseconds.
+         */
+        private long published;
+    }
+
+}
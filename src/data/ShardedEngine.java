@@ -0,0 +1,51 @@
+package data;
+
+import java.io.File;
+
+/**
+ * This class stores the database like a <code>SnapshotEngine</code>, except that the banks are saved to a
+ * directory with a file for every bank, read and written in parallel by a <code>ShardedSnapshot</code>.<br><br>
+ * Every bank is read when the database is read, across as many threads as there are processors, so reading
+ * and saving a database of many banks takes about as long as its largest bank rather than all of them. The
+ * directory used by default is <code>bankDatabase</code>, stored within the project files, which also holds
+ * the <code>Journal</code> and the <code>Ledger</code>.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see StorageEngine
+ * @see ShardedSnapshot
+ */
+public class ShardedEngine extends SnapshotEngine {
+
+    /**
+     * Default Constructor.<br><br>
+     * Uses the directory <code>bankDatabase</code> stored within the project files.
+     */
+    public ShardedEngine() {
+        this(new File("bankDatabase"));
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param directory the directory the database is stored in, which is created if it does not exist
+     */
+    public ShardedEngine(File directory) {
+        super(new ShardedSnapshot(directory), new File(mkdirs(directory), "journal"),
+                new File(directory, "ledger"));
+    }
+
+    /**
+     * A helper method to create the directory before the journal and the ledger are placed in it.
+     *
+     * @param directory the directory
+     * @return the same directory
+     */
+    private static File mkdirs(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("Could not create " + directory);
+        }
+        return directory;
+    }
+
+}
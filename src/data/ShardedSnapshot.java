@@ -0,0 +1,398 @@
+package data;
+
+import bank.Bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class saves the banks of a <code>SnapshotEngine</code> to a directory, with every bank in a file of its
+ * own, and a manifest listing the files which make up the database:
+ * <blockquote>Magic (int) | Version (int) | Sequence (long) | Generation (long) | Count (int) |
+ * Count x [Bank ID (int) | Bank Name (UTF) | Compression (byte) | Generation (long)]</blockquote>
+ * where the sequence number is that of the last <code>Journal</code> record contained in the database, and the
+ * file of a bank is named after its bank ID and the generation it was written in, e.g.
+ * <code>1234.7.bank</code>. Each file holds a single bank in the compact binary form of
+ * <code>BankCodec</code>, compressed with the <code>Compression</code> noted in the manifest.<br><br>
+ * Banks are read and written in parallel, on a pool of at most <code>bank.shards.threads</code> threads (the
+ * number of available processors by default). Only banks which have changed are written, each to a new file,
+ * after which the manifest is replaced. Files which are no longer listed in the manifest are then deleted, so
+ * a crash at any point leaves the previous manifest, and every file it lists, untouched. Banks are compressed
+ * on the same threads they are written on.<br><br>
+ * Manifests of version 1 held no compression, and their files are read as uncompressed.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see SnapshotEngine
+ * @see ImageStore
+ * @see BankCodec
+ * @see Compression
+ */
+class ShardedSnapshot implements ImageStore {
+
+    /**
+     * The first four bytes of the manifest, spelling out <code>SHRD</code>.
+     */
+    private static final int MAGIC = 0x53485244;
+
+    /**
+     * The version of the manifest format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The name of the manifest file within the directory.
+     */
+    private static final String MANIFEST = "manifest";
+
+    /**
+     * This field stores a <code>File</code> object referring to the directory.
+     */
+    private final File directory;
+
+    /**
+     * This field stores the <code>Compression</code> used for the files of banks which are encoded.
+     */
+    private final Compression compression;
+
+    /**
+     * This field stores a bounded <code>ExecutorService</code> reading and writing the files in parallel.<br><br>
+     * Its threads are only kept alive while there is work to be done.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * This field stores a <code>Map</code> of every bank listed in the manifest.<br><br>
+     * Uses the bank IDs as the key, and the <code>Shard</code> as the value.
+     */
+    private final Map<Integer, Shard> shards = new HashMap<>();
+
+    /**
+     * This field stores the sequence number of the last journal record contained in the database.
+     */
+    private long sequence;
+
+    /**
+     * This field stores the generation of the last manifest written.
+     */
+    private long generation;
+
+    /**
+     * This field stores whether every bank which has been read must be encoded again the next time an
+     * <code>Image</code> is captured, such as after a write has failed.
+     */
+    private volatile boolean stale;
+
+    /**
+     * Default Constructor.<br><br>
+     * The number of threads is read from the system property <code>bank.shards.threads</code>, and banks are
+     * compressed with the codec chosen by the system property <code>bank.compression</code>.
+     *
+     * @param directory the directory
+     */
+    ShardedSnapshot(File directory) {
+        this(directory, Integer.getInteger("bank.shards.threads", Runtime.getRuntime().availableProcessors()),
+                Compression.fromProperties());
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param directory   the directory
+     * @param threads     the largest number of files read or written at the same time
+     * @param compression the <code>Compression</code> used for the files of banks which are encoded
+     */
+    ShardedSnapshot(File directory, int threads, Compression compression) {
+        this.directory = directory;
+        this.compression = compression;
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public synchronized String getName(int bankId) {
+        Shard shard = shards.get(bankId);
+        return shard == null ? null : shard.name;
+    }
+
+    /**
+     * Reads the manifest, followed by every bank it lists in parallel.<br><br>
+     * Any file left behind by a write which did not complete is deleted.
+     *
+     * @return a <code>Map</code> of every bank in the order they were saved, using the bank IDs as the key
+     * @throws IOException if an I/O error occurs, or the manifest is not in this format
+     */
+    @Override
+    public Map<Integer, Bank> open() throws IOException {
+        shards.clear();
+        Map<Integer, Bank> banks = new LinkedHashMap<>();
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return banks;
+        }
+        List<Integer> ids = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+            int version = input.readInt() == MAGIC ? input.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unrecognized manifest format");
+            }
+            sequence = input.readLong();
+            generation = input.readLong();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = input.readInt();
+                String name = input.readUTF();
+                Compression codec = version >= 2 ? Compression.of(input.readUnsignedByte()) : Compression.NONE;
+                shards.put(id, new Shard(name, codec, input.readLong()));
+                ids.add(id);
+            }
+        }
+        List<Callable<Bank>> tasks = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            tasks.add(() -> load(id));
+        }
+        List<Bank> loaded = invokeAll(tasks);
+        for (int i = 0; i < ids.size(); i++) {
+            banks.put(ids.get(i), loaded.get(i));
+        }
+        deleteUnlisted();
+        return banks;
+    }
+
+    @Override
+    public Bank load(int bankId) throws IOException {
+        Shard shard;
+        synchronized (this) {
+            shard = shards.get(bankId);
+        }
+        if (shard == null) {
+            throw new IOException("Bank " + bankId + " is not in " + directory);
+        }
+        return BankCodec.decode(shard.compression.decompress(
+                Files.readAllBytes(file(bankId, shard.generation).toPath())));
+    }
+
+    @Override
+    public void invalidate() {
+        stale = true;
+    }
+
+    @Override
+    public Image capture(Map<Integer, Bank> banks, long sequence) throws IOException {
+        Image image = new Image(sequence);
+        for (Map.Entry<Integer, Bank> entry : banks.entrySet()) {
+            int id = entry.getKey();
+            Bank bank = entry.getValue();
+            Shard shard = shards.get(id);
+            if (bank != null && (stale || shard == null || bank.isDirty())) {
+                bank.markClean();
+                image.add(id, bank);
+            } else if (shard == null) {
+                throw new IOException("Bank " + id + " is not in " + directory);
+            }
+            image.names.put(id, bank != null ? bank.getBankName() : shard.name);
+        }
+        if (stale) {
+            image.encodeAll();
+        }
+        stale = false;
+        return image;
+    }
+
+    /**
+     * Encodes and writes every bank which has changed to a new file in parallel, and then replaces the
+     * manifest.<br><br>
+     * Banks which have not changed keep the file they were previously written to. Should anything fail before
+     * the manifest is replaced, every bank is encoded again the next time an <code>Image</code> is captured.
+     *
+     * @param image the <code>Image</code> returned by <code>capture()</code>
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public long write(Image image) throws IOException {
+        long next = generation + 1;
+        try {
+            Files.createDirectories(directory.toPath());
+            List<Callable<Integer>> tasks = new ArrayList<>(image.changed.size());
+            for (int id : image.changed.keySet()) {
+                File file = file(id, next);
+                tasks.add(() -> {
+                    byte[] bytes = compression.compress(image.encode(id));
+                    writeFully(file, bytes);
+                    return bytes.length;
+                });
+            }
+            long bytes = 0;
+            for (int length : invokeAll(tasks)) {
+                bytes += length;
+            }
+
+            Map<Integer, Shard> written = new HashMap<>();
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream(32 + 25 * image.names.size());
+            DataOutputStream output = new DataOutputStream(manifest);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(image.sequence);
+            output.writeLong(next);
+            output.writeInt(image.names.size());
+            for (Map.Entry<Integer, String> entry : image.names.entrySet()) {
+                Shard previous = shards.get(entry.getKey());
+                Shard shard = image.changed.containsKey(entry.getKey())
+                        ? new Shard(entry.getValue(), compression, next)
+                        : new Shard(entry.getValue(), previous.compression, previous.generation);
+                output.writeInt(entry.getKey());
+                output.writeUTF(shard.name);
+                output.writeByte(shard.compression.getId());
+                output.writeLong(shard.generation);
+                written.put(entry.getKey(), shard);
+            }
+            File temp = new File(directory, MANIFEST + ".tmp");
+            writeFully(temp, manifest.toByteArray());
+            synchronized (this) {
+                try {
+                    Files.move(temp.toPath(), new File(directory, MANIFEST).toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Files.move(temp.toPath(), new File(directory, MANIFEST).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                shards.clear();
+                shards.putAll(written);
+                sequence = image.sequence;
+                generation = next;
+            }
+            deleteUnlisted();
+            return bytes + manifest.size();
+        } catch (IOException ioe) {
+            stale = true;
+            throw ioe;
+        }
+    }
+
+    /**
+     * A helper method to run a number of tasks on the <code>executor</code>, and wait for all of them.
+     *
+     * @param tasks the tasks to be run
+     * @param <T>   the type of result of the tasks
+     * @return the results of the tasks, in the same order
+     * @throws IOException if any of the tasks has failed, or the thread was interrupted while waiting
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + directory);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * A helper method to delete every file in the directory which is not listed in the manifest.
+     */
+    private synchronized void deleteUnlisted() {
+        Set<String> listed = new HashSet<>();
+        listed.add(MANIFEST);
+        for (Map.Entry<Integer, Shard> entry : shards.entrySet()) {
+            listed.add(file(entry.getKey(), entry.getValue().generation).getName());
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".bank") || name.endsWith(".tmp"));
+        if (files != null) {
+            for (File file : files) {
+                if (!listed.contains(file.getName()) && !file.delete()) {
+                    System.out.println("Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * A helper method to refer to the file of a bank.
+     *
+     * @param bankId     the 4-Digit bank ID as an <code>Integer</code>
+     * @param generation the generation the bank was written in
+     * @return the <code>File</code>
+     */
+    private File file(int bankId, long generation) {
+        return new File(directory, bankId + "." + generation + ".bank");
+    }
+
+    /**
+     * A helper method to write the bytes to a new file, and force them to the storage device.
+     *
+     * @param file  the file to be written
+     * @param bytes the bytes to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeFully(File file, byte[] bytes) throws IOException {
+        try (FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+            output.force(true);
+        }
+    }
+
+    /**
+     * This private inner class locates the file of a single bank within the directory.
+     */
+    private static class Shard {
+
+        /**
+         * This field stores the name of the bank as a <code>String</code>.
+         */
+        private final String name;
+
+        /**
+         * This field stores the <code>Compression</code> the bank was written with.
+         */
+        private final Compression compression;
+
+        /**
+         * This field stores the generation the bank was written in as a <code>Long</code>.
+         */
+        private final long generation;
+
+        /**
+         * Default Constructor.
+         *
+         * @param name        the name of the bank
+         * @param compression the <code>Compression</code> the bank was written with
+         * @param generation  the generation the bank was written in
+         */
+        Shard(String name, Compression compression, long generation) {
+            this.name = name;
+            this.compression = compression;
+            this.generation = generation;
+        }
+    }
+
+}
@@ -0,0 +1,455 @@
+package data;
+
+import bank.Bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class handles the file format used to save the database of a <code>BankManager</code>.<br><br>
+ * The file begins with a small header and an index, followed by one segment for every bank:
+ * <blockquote>Magic (int) | Version (int) | Sequence (long) | Count (int) |
+ * Count x [Bank ID (int) | Bank Name (UTF) | Compression (byte) | Offset (long) | Length (int)] |
+ * Segments</blockquote>
+ * where the sequence number is that of the last <code>Journal</code> record contained in the file.<br><br>
+ * Each segment holds a single <code>Bank</code> in the compact binary form of <code>BankCodec</code>, compressed
+ * with the <code>Compression</code> noted in the index. Opening the file only reads the header and the index,
+ * while each bank is read from its segment the first time it is needed. When the database is saved again, the segments of banks which have not been read, or have not
+ * changed since, are copied over from the previous file byte for byte, and only the changed banks are
+ * encoded again. The new file is written next to the previous one and only moved over it once it has been
+ * forced to the storage device, so a crash in the middle of a write never leaves a partial file
+ * behind.<br><br>
+ * Files of version 3 held no compression in the index, and are read as uncompressed. Files of version 1 held
+ * Java-serialized segments, and files of version 2 held no bank names in the index. They are still read,
+ * though in full when opened, as are files saved as a single serialized <code>BankList</code> before this
+ * format was introduced. Every bank is encoded again the next time the
+ * database is saved.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see BankCodec
+ * @see Compression
+ * @see Bank#isDirty()
+ */
+class Snapshot implements ImageStore {
+
+    /**
+     * The first four bytes of the file, spelling out <code>BANK</code>.
+     */
+    private static final int MAGIC = 0x42414E4B;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 4;
+
+    /**
+     * This field stores a <code>File</code> object referring to the database file.
+     */
+    private final File file;
+
+    /**
+     * This field stores the <code>Compression</code> used for the segments of banks which are encoded.
+     */
+    private final Compression compression;
+
+    /**
+     * This field stores a <code>Map</code> locating the segment of every bank within the current file.<br><br>
+     * Uses the bank IDs as the key, and the <code>Segment</code> as the value.
+     */
+    private final Map<Integer, Segment> segments = new HashMap<>();
+
+    /**
+     * This field stores the sequence number of the last journal record contained in the file.
+     */
+    private long sequence;
+
+    /**
+     * This field stores whether every bank which has been read must be encoded again the next time an
+     * <code>Image</code> is captured, such as after a write has failed.
+     */
+    private volatile boolean stale;
+
+    /**
+     * Default Constructor.<br><br>
+     * Segments are compressed with the codec chosen by the system property <code>bank.compression</code>.
+     *
+     * @param file the database file
+     */
+    Snapshot(File file) {
+        this(file, Compression.fromProperties());
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param file        the database file
+     * @param compression the <code>Compression</code> used for the segments of banks which are encoded
+     */
+    Snapshot(File file, Compression compression) {
+        this.file = file;
+        this.compression = compression;
+    }
+
+    /**
+     * Retrieves the sequence number of the last journal record contained in the file.
+     *
+     * @return the sequence number as a <code>Long</code>
+     */
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the name of a bank, as it was saved in the index of the current file.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the bank's name, or <code>null</code> if the bank is not in the index
+     */
+    @Override
+    public synchronized String getName(int bankId) {
+        Segment segment = segments.get(bankId);
+        return segment == null ? null : segment.name;
+    }
+
+    /**
+     * Determines whether the file was saved before this format was introduced, as a single
+     * serialized object.
+     *
+     * @return <code>true</code> if the file begins with the Java serialization stream header
+     * @throws IOException if an I/O error occurs
+     */
+    boolean isLegacy() throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return input.readShort() == (short) 0xACED;
+        } catch (EOFException eof) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens the file, reading only its header and index.<br><br>
+     * Files of an earlier version, and files saved as a single serialized <code>BankList</code>, are read
+     * in full instead.
+     *
+     * @return a <code>Map</code> of every bank in the order they were saved, using the bank IDs as the key.
+     * The value is the <code>Bank</code> if it has already been read, or <code>null</code> if it is yet to be
+     * read using <code>load()</code>.
+     * @throws IOException            if an I/O error occurs, or the file is not in this format
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    @Override
+    public Map<Integer, Bank> open() throws IOException, ClassNotFoundException {
+        segments.clear();
+        Map<Integer, Bank> banks = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return banks;
+        }
+        if (isLegacy()) {
+            try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                BankManager.BankList list = (BankManager.BankList) input.readObject();
+                banks.putAll(list.view());
+                sequence = list.getSequence();
+            }
+            return banks;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = input.readInt() == MAGIC ? input.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unrecognized database format");
+            }
+            sequence = input.readLong();
+            int count = input.readInt();
+            List<Integer> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = input.readInt();
+                String name = version >= 3 ? input.readUTF() : null;
+                Compression codec = version >= 4 ? Compression.of(input.readUnsignedByte()) : Compression.NONE;
+                segments.put(id, new Segment(name, codec, input.readLong(), input.readInt()));
+                ids.add(id);
+                banks.put(id, null);
+            }
+            if (version < 3) {
+                for (int id : ids) {
+                    byte[] segment = new byte[segments.get(id).length];
+                    input.readFully(segment);
+                    if (version == 2) {
+                        banks.put(id, BankCodec.decode(segment));
+                    } else {
+                        try (ObjectInputStream objects =
+                                     new ObjectInputStream(new ByteArrayInputStream(segment))) {
+                            banks.put(id, (Bank) objects.readObject());
+                        }
+                    }
+                }
+                segments.clear();
+            }
+        }
+        return banks;
+    }
+
+    /**
+     * Reads a single bank from its segment in the current file.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the <code>Bank</code>, marked as unchanged
+     * @throws IOException if an I/O error occurs, or the bank is not in the index
+     */
+    @Override
+    public synchronized Bank load(int bankId) throws IOException {
+        Segment segment = segments.get(bankId);
+        if (segment == null) {
+            throw new IOException("Bank " + bankId + " is not in " + file);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(segment.length);
+        try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (input.read(bytes, segment.offset + bytes.position()) < 0) {
+                    throw new EOFException("Truncated segment for bank " + bankId);
+                }
+            }
+        }
+        return BankCodec.decode(segment.compression.decompress(bytes.array()));
+    }
+
+    /**
+     * Reads every bank from the file.
+     *
+     * @return the banks in the order they were saved
+     * @throws IOException            if an I/O error occurs, or the file is not in this format
+     * @throws ClassNotFoundException if a class of a serialized object cannot be found
+     */
+    List<Bank> read() throws IOException, ClassNotFoundException {
+        List<Bank> banks = new ArrayList<>();
+        for (Map.Entry<Integer, Bank> entry : open().entrySet()) {
+            banks.add(entry.getValue() != null ? entry.getValue() : load(entry.getKey()));
+        }
+        return banks;
+    }
+
+    /**
+     * Writes every bank to the file, replacing the previous file once it has been completely written.<br><br>
+     * This is the same as writing the <code>Image</code> returned by <code>capture()</code>.
+     *
+     * @param banks    a <code>Map</code> of every bank to be saved in order, using the bank IDs as the key.
+     *                 Banks which have not been read from the previous file map to <code>null</code>.
+     * @param sequence the sequence number of the last journal record contained in the banks
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    long write(Map<Integer, Bank> banks, long sequence) throws IOException {
+        return write(capture(banks, sequence));
+    }
+
+    /**
+     * Causes every bank which has been read to be encoded again the next time an <code>Image</code> is
+     * captured, whether it has changed or not.<br><br>
+     * Used when balances cannot be kept in the <code>Ledger</code>, as changes to balances do not mark
+     * a bank as changed.
+     */
+    @Override
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Captures the state of every bank to be written to the file, without writing anything yet.<br><br>
+     * Only banks which have changed since the previous file was read or written are captured, and then
+     * marked as unchanged. They are encoded once the <code>Image</code> is written, unless the file has been
+     * invalidated, in which case they are all encoded together right away, and the rest are copied from the
+     * previous file. The <code>Image</code> may therefore be captured on any thread, and written on another,
+     * while the banks continue to change.<br><br>
+     * <b>Must not be called while another <code>Image</code> is being written.</b>
+     *
+     * @param banks    a <code>Map</code> of every bank to be saved in order, using the bank IDs as the key.
+     *                 Banks which have not been read from the previous file map to <code>null</code>.
+     * @param sequence the sequence number of the last journal record contained in the banks
+     * @return the captured <code>Image</code>
+     * @throws IOException if a bank which has not been read is not in the previous file
+     */
+    @Override
+    public Image capture(Map<Integer, Bank> banks, long sequence) throws IOException {
+        Image image = new Image(sequence);
+        for (Map.Entry<Integer, Bank> entry : banks.entrySet()) {
+            int id = entry.getKey();
+            Bank bank = entry.getValue();
+            Segment segment = segments.get(id);
+            if (bank != null && (stale || segment == null || bank.isDirty())) {
+                bank.markClean();
+                image.add(id, bank);
+            } else if (segment == null) {
+                throw new IOException("Bank " + id + " is not in " + file);
+            }
+            image.names.put(id, bank != null ? bank.getBankName() : segment.name);
+        }
+        if (stale) {
+            image.encodeAll();
+        }
+        stale = false;
+        return image;
+    }
+
+    /**
+     * Writes a captured <code>Image</code> to a temporary file, forces it to the storage device, and then
+     * atomically moves it over the previous file.<br><br>
+     * The previous file is left untouched should anything fail before the move, in which case every bank
+     * is encoded again the next time an <code>Image</code> is captured.
+     *
+     * @param image the <code>Image</code> returned by <code>capture()</code>
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public long write(Image image) throws IOException {
+        Map<Integer, Segment> written = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : image.names.entrySet()) {
+            written.put(entry.getKey(), new Segment(entry.getValue(), compression, 0, 0));
+        }
+        byte[] placeholder = index(image.names.keySet(), written, image.sequence);
+        long position = placeholder.length;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileChannel output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 FileChannel previous = image.changed.size() == image.names.size() ? null :
+                         FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                writeFully(output, ByteBuffer.wrap(placeholder), 0);
+                for (Map.Entry<Integer, String> entry : image.names.entrySet()) {
+                    byte[] bytes = image.changed.containsKey(entry.getKey()) ? image.encode(entry.getKey()) : null;
+                    Compression codec = compression;
+                    int length;
+                    if (bytes == null) {
+                        Segment segment = segments.get(entry.getKey());
+                        codec = segment.compression;
+                        length = segment.length;
+                        long copied = 0;
+                        while (copied < length) {
+                            long count = output.transferFrom(previous.position(segment.offset + copied),
+                                    position + copied, length - copied);
+                            if (count == 0) {
+                                throw new EOFException("Truncated segment for bank " + entry.getKey());
+                            }
+                            copied += count;
+                        }
+                    } else {
+                        bytes = compression.compress(bytes);
+                        length = bytes.length;
+                        writeFully(output, ByteBuffer.wrap(bytes), position);
+                    }
+                    written.put(entry.getKey(), new Segment(entry.getValue(), codec, position, length));
+                    position += length;
+                }
+                writeFully(output, ByteBuffer.wrap(index(image.names.keySet(), written, image.sequence)), 0);
+                output.force(true);
+            }
+            synchronized (this) {
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                segments.clear();
+                segments.putAll(written);
+                this.sequence = image.sequence;
+            }
+        } catch (IOException ioe) {
+            stale = true;
+            Files.deleteIfExists(temp.toPath());
+            throw ioe;
+        }
+        return position;
+    }
+
+    /**
+     * A helper method to build the header and index of the file.
+     *
+     * @param ids      the bank IDs in the order they are saved
+     * @param segments the <code>Segment</code> of every bank
+     * @param sequence the sequence number of the last journal record contained in the file
+     * @return the header and index as an array of bytes
+     * @throws IOException if an I/O error occurs
+     */
+    private static byte[] index(Collection<Integer> ids, Map<Integer, Segment> segments, long sequence)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(20 + 33 * ids.size());
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(sequence);
+        output.writeInt(ids.size());
+        for (int id : ids) {
+            Segment segment = segments.get(id);
+            output.writeInt(id);
+            output.writeUTF(segment.name);
+            output.writeByte(segment.compression.getId());
+            output.writeLong(segment.offset);
+            output.writeInt(segment.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A helper method to write the whole buffer to the channel at the given position.
+     *
+     * @param channel  the channel to write to
+     * @param buffer   the bytes to be written
+     * @param position the position in the file to write at
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * This private inner class locates the segment of a single bank within the file.
+     */
+    private static class Segment {
+
+        /**
+         * This field stores the name of the bank as a <code>String</code>.
+         */
+        private final String name;
+
+        /**
+         * This field stores the <code>Compression</code> the segment was written with.
+         */
+        private final Compression compression;
+
+        /**
+         * This field stores the position of the segment within the file as a <code>Long</code>.
+         */
+        private final long offset;
+
+        /**
+         * This field stores the length of the segment in bytes as an <code>Integer</code>.
+         */
+        private final int length;
+
+        /**
+         * Default Constructor.
+         *
+         * @param name        the name of the bank
+         * @param compression the <code>Compression</code> the segment was written with
+         * @param offset      the position of the segment within the file
+         * @param length      the length of the segment in bytes
+         */
+        Segment(String name, Compression compression, long offset, int length) {
+            this.name = name;
+            this.compression = compression;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package data;
+
+import bank.Bank;
+import bank.MutationListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class stores the database in a segmented <code>Snapshot</code> file, with every change made since the
+ * last save recorded in a <code>Journal</code>, and every account balance kept in a <code>Ledger</code>.<br><br>
+ * The database is saved in the background by a <code>Checkpointer</code> as changes accumulate, and banks are
+ * only read from the snapshot once they are needed. The files used by default are
+ * <code>bankDatabase.ser</code>, <code>bankDatabase.journal</code>, and <code>bankDatabase.ledger</code>,
+ * stored within the project files.<br><br>
+ * Files saved as a single serialized <code>BankList</code>, before the <code>Snapshot</code> format was
+ * introduced, are still accepted. They will be converted the next time the database is saved.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see StorageEngine
+ * @see Snapshot
+ * @see Journal
+ * @see Ledger
+ * @see Checkpointer
+ */
+public class SnapshotEngine implements StorageEngine {
+
+    /**
+     * This field stores the <code>ImageStore</code> the banks are saved to, a <code>Snapshot</code> by default.
+     */
+    private final ImageStore snapshot;
+
+    /**
+     * This field stores a <code>Journal</code> recording every change made since the last save.
+     */
+    private final Journal journal;
+
+    /**
+     * This field stores a <code>Ledger</code> keeping the balance of every account in a memory-mapped file.
+     */
+    private final Ledger ledger;
+
+    /**
+     * This field stores the <code>BankManager</code> the database is read for.
+     */
+    private BankManager manager;
+
+    /**
+     * This field stores a <code>Checkpointer</code> saving the database in the background as changes
+     * accumulate in the journal.<br><br>
+     * Remains <code>null</code> until the database has been read.
+     */
+    private Checkpointer checkpointer;
+
+    /**
+     * This field stores the sequence number of the last journal record contained in the file which was read.
+     */
+    private long sequence;
+
+    /**
+     * Default Constructor.<br><br>
+     * Uses the files <code>bankDatabase.ser</code>, <code>bankDatabase.journal</code>, and
+     * <code>bankDatabase.ledger</code> stored within the project files.
+     */
+    public SnapshotEngine() {
+        this(new File("bankDatabase.ser"), new File("bankDatabase.journal"), new File("bankDatabase.ledger"));
+    }
+
+    /**
+     * Overloaded Constructor.
+     *
+     * @param file    the snapshot file
+     * @param journal the journal file
+     * @param ledger  the ledger file
+     */
+    public SnapshotEngine(File file, File journal, File ledger) {
+        this(new Snapshot(file), journal, ledger);
+    }
+
+    /**
+     * Overloaded Constructor, saving the banks to a different on-disk layout.
+     *
+     * @param snapshot the <code>ImageStore</code> the banks are saved to
+     * @param journal  the journal file
+     * @param ledger   the ledger file
+     */
+    SnapshotEngine(ImageStore snapshot, File journal, File ledger) {
+        this.snapshot = snapshot;
+        this.ledger = new Ledger(ledger);
+        this.journal = new Journal(journal, this.ledger);
+    }
+
+    /**
+     * Retrieves the <code>Checkpointer</code> saving the database in the background, to inspect its metrics.
+     *
+     * @return the <code>Checkpointer</code>, or <code>null</code> if the database has not been read yet
+     */
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * Reads the banks from the snapshot file, and opens the ledger.<br><br>
+     * For files in the <code>Snapshot</code> format, only the index is read here, and each bank is read
+     * using <code>load(int)</code> once needed. The balances kept in the ledger are applied to every bank as it is read.
+     *
+     * @param manager the <code>BankManager</code> the banks are read for
+     * @return a <code>Map</code> of every bank in order, using the bank IDs as the key
+     */
+    @Override
+    public Map<Integer, Bank> load(BankManager manager) {
+        this.manager = manager;
+        ledger.open();
+        Map<Integer, Bank> banks;
+        try {
+            banks = snapshot.open();
+            sequence = snapshot.getSequence();
+        } catch (IOException | ClassNotFoundException e) {
+            banks = new LinkedHashMap<>();
+            sequence = 0;
+        }
+        for (Bank bank : banks.values()) {
+            if (bank != null) {
+                ledger.restore(bank);
+            }
+        }
+        checkpointer = new Checkpointer(snapshot, journal, ledger, manager::view);
+        return banks;
+    }
+
+    @Override
+    public Bank load(int bankId) throws IOException {
+        Bank bank = snapshot.load(bankId);
+        ledger.restore(bank);
+        return bank;
+    }
+
+    @Override
+    public String getName(int bankId) {
+        return snapshot.getName(bankId);
+    }
+
+    /**
+     * Replays every change recorded in the journal after the snapshot file was saved.
+     */
+    @Override
+    public void recover() {
+        journal.replay(manager, sequence);
+    }
+
+    /**
+     * Retrieves the <code>MutationListener</code> recording every change in the journal, which hands every
+     * change to a balance on to the ledger, and then starting a checkpoint in the background if one is due.
+     *
+     * @return the <code>MutationListener</code>
+     */
+    @Override
+    public MutationListener getMutationListener() {
+        return new Listeners(checkpointer::changed, journal);
+    }
+
+    /**
+     * Writes every bank which has changed since the last save to the snapshot file, and empties the journal.
+     *
+     * @return <code>true</code> if the database is successfully saved. Otherwise it will return
+     * <code>false</code>.
+     */
+    @Override
+    public boolean checkpoint() {
+        return checkpointer.checkpoint();
+    }
+
+    /**
+     * Captures every bank which has changed since the last save, and writes them to the snapshot file in the
+     * background.
+     *
+     * @return a <code>CompletableFuture</code> completing once the snapshot file has been written
+     */
+    @Override
+    public CompletableFuture<Boolean> checkpointAsync() {
+        return checkpointer.checkpointAsync();
+    }
+
+    /**
+     * Waits for any save still in progress, and forces any changes still pending in the ledger and the
+     * journal to the storage device.
+     */
+    @Override
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+        journal.close();
+        ledger.close();
+    }
+
+}
@@ -0,0 +1,123 @@
+package data;
+
+import bank.Bank;
+import bank.MutationListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface classifies classes which store the database of a <code>BankManager</code>.<br><br>
+ * A storage engine is used by the <code>BankManager</code> in the following order:
+ * <ol>
+ *     <li><code>load()</code> reads the banks saved by a previous session</li>
+ *     <li><code>recover()</code> applies any changes which were made after the banks were saved</li>
+ *     <li>every change made to the banks from then on is applied to the storage through the
+ *     <code>MutationListener</code> returned by <code>getMutationListener()</code></li>
+ *     <li><code>checkpoint()</code>, or <code>checkpointAsync()</code>, saves the database whenever the
+ *     session is saved</li>
+ *     <li><code>close()</code> ends the session</li>
+ * </ol>
+ * The engine used by the default constructor of the <code>BankManager</code> is chosen with the system property
+ * <code>bank.storage</code>, which accepts the names given to <code>create()</code>.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see BankManager
+ * @see SnapshotEngine
+ * @see ShardedEngine
+ * @see LogEngine
+ */
+public interface StorageEngine extends Closeable {
+
+    /**
+     * Creates a storage engine by its name.
+     *
+     * @param name <code>snapshot</code> for a <code>SnapshotEngine</code>, <code>sharded</code> for a
+     *             <code>ShardedEngine</code>, or <code>log</code> for a <code>LogEngine</code>
+     * @return the <code>StorageEngine</code>, using its default files
+     * @throws IllegalArgumentException if the name is not recognized
+     */
+    static StorageEngine create(String name) {
+        switch (name) {
+            case "snapshot":
+                return new SnapshotEngine();
+            case "sharded":
+                return new ShardedEngine();
+            case "log":
+                return new LogEngine();
+            default:
+                throw new IllegalArgumentException("Unknown storage engine: " + name);
+        }
+    }
+
+    /**
+     * Reads the banks saved by a previous session.<br><br>
+     * Banks may be read later rather than right away, in which case their bank IDs map to <code>null</code>,
+     * and they are read using <code>load(int)</code> once needed.
+     *
+     * @param manager the <code>BankManager</code> the banks are read for
+     * @return a <code>Map</code> of every bank in order, using the bank IDs as the key. The map is empty if
+     * nothing has been saved, or if the saved banks could not be read.
+     */
+    Map<Integer, Bank> load(BankManager manager);
+
+    /**
+     * Reads a single bank which has not been read by <code>load()</code>.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the <code>Bank</code>
+     * @throws IOException if the bank cannot be read
+     */
+    Bank load(int bankId) throws IOException;
+
+    /**
+     * Retrieves the name of a bank which has not been read by <code>load()</code>.
+     *
+     * @param bankId the 4-Digit bank ID as an <code>Integer</code>
+     * @return the bank's name, or <code>null</code> if not found
+     */
+    String getName(int bankId);
+
+    /**
+     * Applies any changes made after the banks were saved onto the <code>BankManager</code>, once it holds the
+     * banks returned by <code>load()</code>.
+     */
+    void recover();
+
+    /**
+     * Retrieves the <code>MutationListener</code> applying every change made to the banks to the storage.
+     *
+     * @return the <code>MutationListener</code>
+     */
+    MutationListener getMutationListener();
+
+    /**
+     * Saves the database, so that it can be read without recovering any changes.
+     *
+     * @return <code>true</code> if the database is successfully saved. Otherwise it will return
+     * <code>false</code>.
+     */
+    boolean checkpoint();
+
+    /**
+     * Starts saving the database without waiting for it to be written.<br><br>
+     * By default, the database is saved right away by <code>checkpoint()</code>. Engines which are able to
+     * save in the background override this method.
+     *
+     * @return a <code>CompletableFuture</code> completing once the database has been saved, with
+     * <code>true</code> if it is successfully saved. Otherwise it will complete with <code>false</code>.
+     */
+    default CompletableFuture<Boolean> checkpointAsync() {
+        return CompletableFuture.completedFuture(checkpoint());
+    }
+
+    /**
+     * Ends the session, forcing anything still pending to the storage device.
+     */
+    @Override
+    void close();
+
+}
@@ -98,6 +98,7 @@ public class DriverApp {
         } else {
             System.out.println("Saving error. This session is not saved.");
         }
+        manager.close();
         System.out.println("Thank you for using Banking Manager");
     }
 
@@ -5,6 +5,7 @@ import bank.Bank;
 import bank.Branch;
 import bank.Customer;
 import data.BankManager;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -15,11 +16,13 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
+import javafx.util.Duration;
 import utility.Address;
 
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class serves as the controller class for <code>mainWindow.fxml</code>
@@ -45,6 +48,28 @@ public class Controller {
      */
     private static final NumberFormat currency = NumberFormat.getCurrencyInstance();
 
+    /**
+     * The longest time in seconds the application waits for the database to be saved when it exits.
+     */
+    private static final int SHUTDOWN_TIMEOUT = 10;
+
+    /**
+     * The time the application waits after the last change before saving the database in the background.
+     */
+    private static final Duration SAVE_DELAY = Duration.seconds(2);
+
+    /**
+     * This field stores the number of saves started by <code>save()</code> which are still being written.
+     */
+    private int saving;
+
+    /**
+     * This field stores a <code>PauseTransition</code> which saves the database once no change has been made
+     * for <code>SAVE_DELAY</code>.<br><br>
+     * Restarted by every change, so that a burst of changes is saved once rather than once per change.
+     */
+    private final PauseTransition pendingSave = new PauseTransition(SAVE_DELAY);
+
     /**
      * This field stores a <code>Bank</code> object to keep track of the user's selected bank.
      */
@@ -78,6 +103,13 @@ public class Controller {
     @FXML
     private Label statusLabel;
 
+    /**
+     * This field refers to the <code>Label</code> shown at the right of the <code>statusLabel</code>
+     * while the database is being saved in the background.
+     */
+    @FXML
+    private Label savingLabel;
+
     /**
      * This field refers to the first <code>Button</code> in our <code>ToolBar</code> located
      * at the <code>top</code> position of our main <code>BorderPane</code>.
@@ -122,6 +154,7 @@ public class Controller {
      * @see GuiMain
      */
     public void initialize() {
+        pendingSave.setOnFinished(event -> saveNow());
         showBanks();
     }
 
@@ -609,6 +642,7 @@ public class Controller {
         if (result.isPresent() && result.get().equals(ButtonType.OK)) {
             statusLabel.setText("Deleted " + selectedBank.simplifiedString() + " from database.");
             manager.removeBank(selectedBank.getBankId());
+            save();
             showBanks();
         }
     }
@@ -631,6 +665,7 @@ public class Controller {
         if (result.isPresent() && result.get().equals(ButtonType.OK)) {
             statusLabel.setText("Deleted " + selectedBranch.simplifiedString() + " from database.");
             selectedBank.removeBranch(selectedBranch.getBranchCode());
+            save();
             showBranches(selectedBank);
         }
     }
@@ -653,6 +688,7 @@ public class Controller {
         if (result.isPresent() && result.get().equals(ButtonType.OK)) {
             statusLabel.setText(selectedCustomer.simplifiedString() + " has been removed.");
             selectedBranch.removeCustomer(selectedCustomer.getCustomerId());
+            save();
             showCustomers(selectedBranch);
         }
     }
@@ -702,6 +738,7 @@ public class Controller {
                     alert.show();
                     showBanks();
                     statusLabel.setText("You just added a new bank! Go ahead and manage it.");
+                    save();
                     break;
                 } else {
                     Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -761,6 +798,7 @@ public class Controller {
                     alert.show();
                     showBranches(selectedBank);
                     statusLabel.setText("You just added a new branch! Go ahead and manage it.");
+                    save();
                     break;
                 } else {
                     Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -827,6 +865,7 @@ public class Controller {
                     alert.show();
                     showCustomers(selectedBranch);
                     statusLabel.setText("You just added a new customer! Go ahead and manage it.");
+                    save();
                     break;
                 } else {
                     Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -865,6 +904,7 @@ public class Controller {
             alert.show();
             showAccounts(selectedCustomer);
             statusLabel.setText("You just opened a new account. Go ahead and manage it!");
+            save();
         } else {
             Alert alert = new Alert(Alert.AlertType.WARNING);
             alert.setTitle("Maximum number of accounts opened");
@@ -933,6 +973,7 @@ public class Controller {
                         showAccount(selectedAccount);
                         statusLabel.setText("You just deposited " + currency.format(amount) +
                                 " to account #" + selectedAccount.getAccountNumber() + ".");
+                        save();
                     } else {
                         cancel.show();
                     }
@@ -1004,6 +1045,7 @@ public class Controller {
                             showAccount(selectedAccount);
                             statusLabel.setText("You just withdrew " + currency.format(amount) +
                                     " from account #" + selectedAccount.getAccountNumber() + ".");
+                            save();
                             break;
                         } else {
                             Alert information = new Alert(Alert.AlertType.WARNING);
@@ -1160,6 +1202,7 @@ public class Controller {
                                                     showAccount(selectedAccount);
                                                     statusLabel.setText("You just transferred " + currency.format(amount) +
                                                             " to " + recipient.getName() + ".");
+                                                    save();
                                                     notDone = false;
                                                 } else {
                                                     Alert information = new Alert(Alert.AlertType.WARNING);
@@ -1210,6 +1253,7 @@ public class Controller {
                 selectedAccount.withdraw(selectedAccount.getBalance());
             }
             selectedCustomer.closeAccount(selectedAccount);
+            save();
             Alert done = new Alert(Alert.AlertType.INFORMATION);
             done.setTitle("Account closed");
             done.setHeaderText("Account has been closed.");
@@ -1272,6 +1316,7 @@ public class Controller {
                     alert.show();
                     showBranches(selectedBank);
                     statusLabel.setText("You just edited a bank name (" + bankName + ").");
+                    save();
                     break;
                 }
             } else {
@@ -1341,6 +1386,7 @@ public class Controller {
                         alert.show();
                         showCustomers(selectedBranch);
                         statusLabel.setText("You just edited a branch's details.");
+                        save();
                         break;
                     }
                 }
@@ -1396,6 +1442,7 @@ public class Controller {
                     alert.show();
                     showAccounts(selectedCustomer);
                     statusLabel.setText("You just edited a customer's details.");
+                    save();
                     break;
                 }
             } else {
@@ -1450,12 +1497,65 @@ public class Controller {
     }
 
     /**
-     * Calls the <code>save()</code> method from the <code>BankManager</code> class.
+     * Schedules the database to be saved in the background, once no other change has been made for
+     * <code>SAVE_DELAY</code>.
      * <br><br>
-     * Only called when the user quits the application.
+     * Called after every change made through the application. Each change is already recorded in the journal
+     * as it is made, so a change is never lost while the save waits, and a burst of changes, such as a number
+     * of deposits, only starts a single save.
+     *
+     * @see #saveNow()
+     */
+    private void save() {
+        pendingSave.playFromStart();
+    }
+
+    /**
+     * Starts saving the database in the background, showing the <code>savingLabel</code> until it has been
+     * written.
+     * <br><br>
+     * Called by the <code>pendingSave</code>, so that the window never waits for the database to be written.
+     * Should the save fail, the <code>statusLabel</code> will say so.
+     */
+    private void saveNow() {
+        saving++;
+        savingLabel.setVisible(true);
+        manager.saveAsync().whenComplete((saved, throwable) -> Platform.runLater(() -> {
+            saving--;
+            if (saving == 0) {
+                savingLabel.setVisible(false);
+            }
+            if (saved == null || !saved) {
+                statusLabel.setText("Your changes could not be saved.");
+            }
+        }));
+    }
+
+    /**
+     * Calls the <code>save()</code> and <code>close()</code> methods from the <code>BankManager</code> class.
+     * <br><br>
+     * Only called when the user quits the application. Any save still waiting for <code>SAVE_DELAY</code> is
+     * replaced by this one. The database is saved on a separate thread, waiting
+     * for it for at most <code>SHUTDOWN_TIMEOUT</code> seconds, so that a large database cannot keep the
+     * application from exiting. Any changes not saved by then are recovered from the journal the next time
+     * the application starts.
      */
     public void shutdown() {
-        manager.save();
+        pendingSave.stop();
+        Thread thread = new Thread(() -> {
+            manager.save();
+            manager.close();
+        }, "shutdown");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            System.out.println("Gave up waiting for the database to be saved.");
+        }
     }
 
 }
@@ -0,0 +1,249 @@
+package utility;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class is a thread-safe map from primitive <code>int</code> keys to values, which looks a key up in
+ * constant time without boxing it.<br><br>
+ * Entries are kept in a pair of arrays with open addressing: a key is stored at the slot its hash falls in,
+ * or at the next free slot after it. Removing an entry leaves a marker in its slot, so that the keys stored
+ * past it can still be found, and the arrays are rebuilt once more than three quarters (3/4) of their slots
+ * are taken by entries or markers.<br><br>
+ * Changes are made while holding the write lock of a <code>StampedLock</code>. Lookups never take the lock
+ * at first: they read optimistically, and only look the key up again under the read lock should a change
+ * have been made meanwhile.<br><br>
+ * <code>null</code> values are not accepted.
+ *
+ * @param <V> the type of values
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see java.util.concurrent.locks.StampedLock
+ */
+public class ConcurrentIntMap<V> {
+
+    /**
+     * The number of slots of an empty map. Always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The marker left in the slot of a removed entry.
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * This field stores the <code>StampedLock</code> guarding the entries.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * This field stores the key of every slot. Only meaningful where <code>values</code> holds an entry.
+     */
+    private int[] keys = new int[INITIAL_CAPACITY];
+
+    /**
+     * This field stores the value of every slot, <code>null</code> for a free slot, or <code>REMOVED</code>
+     * for the slot of a removed entry.
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    /**
+     * This field stores the number of entries.
+     */
+    private int size;
+
+    /**
+     * This field stores the number of slots taken by entries or markers.
+     */
+    private int used;
+
+    /**
+     * Retrieves the value of a key.
+     *
+     * @param key the key
+     * @return the value, or <code>null</code> if the key has none
+     */
+    public V get(int key) {
+        long stamp = lock.tryOptimisticRead();
+        V value = find(keys, values, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = find(keys, values, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores the value of a key, in place of any value it already has.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or <code>null</code> if the key had none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int free = -1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                Object current = values[i];
+                if (current == null) {
+                    if (free < 0) {
+                        free = i;
+                        used++;
+                    }
+                    break;
+                } else if (current == REMOVED) {
+                    if (free < 0) {
+                        free = i;
+                    }
+                } else if (keys[i] == key) {
+                    values[i] = value;
+                    return (V) current;
+                }
+            }
+            keys[free] = key;
+            values[free] = value;
+            size++;
+            if (used > keys.length - (keys.length >>> 2)) {
+                rebuild();
+            }
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entry of a key, only if the key has the given value. Values are compared by identity, so
+     * that an equal value which has since taken the place of the given one is kept.
+     *
+     * @param key   the key
+     * @param value the value the key is expected to have
+     * @return <code>true</code> if the entry has been removed. Otherwise, it will return <code>false</code>.
+     */
+    public boolean remove(int key, Object value) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (values[i] != REMOVED && keys[i] == key) {
+                    if (values[i] != value) {
+                        return false;
+                    }
+                    values[i] = REMOVED;
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of entries.
+     *
+     * @return the number of entries as an <code>Integer</code>
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            keys = new int[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+            size = 0;
+            used = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * A helper method to look a key up in a pair of arrays. The arrays may be changed while they are read,
+     * in which case the result is wrong but the lookup still ends, having gone through every slot at most
+     * once.
+     *
+     * @param keys   the keys
+     * @param values the values
+     * @param key    the key
+     * @return the value, or <code>null</code> if the key has none
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V find(int[] keys, Object[] values, int key) {
+        if (keys.length != values.length) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (int probes = 0; probes < keys.length; probes++, i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            } else if (value != REMOVED && keys[i] == key) {
+                return (V) value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A helper method to spread the bits of a key, so that keys which only differ in their highest bits
+     * still fall in different slots.
+     *
+     * @param key the key
+     * @return the hash as an <code>Integer</code>
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A helper method to store every entry in new arrays, leaving out the markers of removed entries, and
+     * doubling the number of slots should more than half of them still be taken.<br><br>
+     * Must only be called while holding the write lock.
+     */
+    private void rebuild() {
+        int capacity = size > keys.length >>> 1 ? keys.length << 1 : keys.length;
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] newKeys = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null && oldValues[j] != REMOVED) {
+                int i = hash(oldKeys[j]) & mask;
+                while (newValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = oldKeys[j];
+                newValues[i] = oldValues[j];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        used = size;
+    }
+
+}
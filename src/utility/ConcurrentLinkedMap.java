@@ -0,0 +1,423 @@
+package utility;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a thread-safe <code>Map</code> which iterates over its entries in the order they were
+ * inserted, like a <code>LinkedHashMap</code>.<br><br>
+ * Entries are looked up through a <code>ConcurrentHashMap</code>, and ordered through a
+ * <code>ConcurrentSkipListMap</code> keyed by the sequence number each entry is given when it is inserted.
+ * Lookups and iteration never block, and iterators are weakly consistent: they never throw
+ * <code>ConcurrentModificationException</code>, and reflect some, all, or none of the changes made after
+ * they were created. Replacing the value of a key keeps its place in the order.<br><br>
+ * Unlike a <code>ConcurrentHashMap</code>, <code>null</code> values are accepted, though <code>null</code>
+ * keys are not.<br><br>
+ * The map is saved by Java serialization as a <code>LinkedHashMap</code>, so data saved with it may still
+ * be read by code which expects one.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see LinkedHashMap
+ * @see ConcurrentHashMap
+ */
+public class ConcurrentLinkedMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * This field stores a <code>ConcurrentHashMap</code> used to look up the entry of every key.
+     */
+    private final ConcurrentHashMap<K, Node<K, V>> index;
+
+    /**
+     * This field stores a <code>ConcurrentSkipListMap</code> of every entry, keyed by its sequence number.
+     */
+    private final ConcurrentSkipListMap<Long, Node<K, V>> order = new ConcurrentSkipListMap<>();
+
+    /**
+     * This field stores the sequence number given to the last inserted entry.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * This field stores the view of the entries, created when first requested.
+     */
+    private transient Set<Map.Entry<K, V>> entries;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates an empty map.
+     */
+    public ConcurrentLinkedMap() {
+        this.index = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * Creates a map holding the entries of another map, in the order it iterates over them.
+     *
+     * @param map the map whose entries are copied
+     */
+    public ConcurrentLinkedMap(Map<? extends K, ? extends V> map) {
+        this.index = new ConcurrentHashMap<>(Math.max(16, map.size() * 4 / 3 + 1));
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = index.get(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        while (true) {
+            Node<K, V> node = index.get(key);
+            if (node == null) {
+                node = insert(key, value);
+                if (node == null) {
+                    return null;
+                }
+            }
+            synchronized (node) {
+                if (!node.removed) {
+                    V old = node.value;
+                    node.value = value;
+                    return old;
+                }
+            }
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        while (true) {
+            Node<K, V> node = index.get(key);
+            if (node == null) {
+                node = insert(key, value);
+                if (node == null) {
+                    return null;
+                }
+            }
+            synchronized (node) {
+                if (!node.removed) {
+                    return node.value;
+                }
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = index.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = index.get(key);
+        if (node == null) {
+            return false;
+        }
+        synchronized (node) {
+            if (node.removed || !Objects.equals(node.value, value) || !index.remove(key, node)) {
+                return false;
+            }
+            node.removed = true;
+        }
+        order.remove(node.sequence, node);
+        return true;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Node<K, V> node = index.get(key);
+        if (node == null) {
+            return false;
+        }
+        synchronized (node) {
+            if (node.removed || !Objects.equals(node.value, oldValue)) {
+                return false;
+            }
+            node.value = newValue;
+            return true;
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Node<K, V> node = index.get(key);
+        if (node == null) {
+            return null;
+        }
+        synchronized (node) {
+            if (node.removed) {
+                return null;
+            }
+            V old = node.value;
+            node.value = value;
+            return old;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Node<K, V> node : order.values()) {
+            if (index.remove(node.key, node)) {
+                unlink(node);
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entries == null) {
+            entries = new EntrySet();
+        }
+        return entries;
+    }
+
+    /**
+     * A helper method to insert a new entry at the end of the order, unless the key already has one.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return <code>null</code> if the entry has been inserted, or the existing entry of the key
+     */
+    private Node<K, V> insert(K key, V value) {
+        Node<K, V> node = new Node<>(sequence.incrementAndGet(), Objects.requireNonNull(key), value);
+        Node<K, V> existing = index.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing;
+        }
+        order.put(node.sequence, node);
+        if (node.removed) {
+            order.remove(node.sequence, node);
+        }
+        return null;
+    }
+
+    /**
+     * A helper method to take an entry which has been removed from the index out of the order.
+     *
+     * @param node the removed entry
+     */
+    private void unlink(Node<K, V> node) {
+        synchronized (node) {
+            node.removed = true;
+        }
+        order.remove(node.sequence, node);
+    }
+
+    /**
+     * Replaces the map with a <code>LinkedHashMap</code> holding the same entries when it is saved.
+     *
+     * @return the <code>LinkedHashMap</code>
+     */
+    private Object writeReplace() {
+        return new LinkedHashMap<>(this);
+    }
+
+    /**
+     * Refuses to read the map directly, as it is always saved as a <code>LinkedHashMap</code>.
+     *
+     * @param input the stream to read from
+     * @throws InvalidObjectException always
+     */
+    private void readObject(ObjectInputStream input) throws InvalidObjectException {
+        throw new InvalidObjectException("ConcurrentLinkedMap is saved as a LinkedHashMap");
+    }
+
+    /**
+     * This private class represents an entry of the map.
+     *
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     */
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+
+        /**
+         * This field stores the sequence number the entry was given when it was inserted.
+         */
+        private final long sequence;
+
+        /**
+         * This field stores the key of the entry.
+         */
+        private final K key;
+
+        /**
+         * This field stores the value of the entry.
+         */
+        private volatile V value;
+
+        /**
+         * This field stores a <code>Boolean</code> to indicate that the entry has been removed from the map.
+         */
+        private volatile boolean removed;
+
+        /**
+         * Constructor.
+         *
+         * @param sequence the sequence number of the entry
+         * @param key      the key of the entry
+         * @param value    the value of the entry
+         */
+        private Node(long sequence, K key, V value) {
+            this.sequence = sequence;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public synchronized V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * This private class is the view of the entries of the map, in the order they were inserted.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Node<K, V> node = index.get(entry.getKey());
+            return node != null && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return ConcurrentLinkedMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentLinkedMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            Iterator<Node<K, V>> nodes = order.values().iterator();
+            return new Iterator<>() {
+
+                private Node<K, V> next = advance();
+
+                private Node<K, V> last;
+
+                private Node<K, V> advance() {
+                    while (nodes.hasNext()) {
+                        Node<K, V> node = nodes.next();
+                        if (!node.removed) {
+                            return node;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    if (index.remove(last.key, last)) {
+                        unlink(last);
+                    }
+                    last = null;
+                }
+            };
+        }
+    }
+
+}
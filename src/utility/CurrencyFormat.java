@@ -0,0 +1,39 @@
+package utility;
+
+import java.text.NumberFormat;
+
+/**
+ * This class formats amounts of money to display as local currency.<br><br>
+ * The currency format is chosen from the system's local currency configurations. A single
+ * <code>NumberFormat</code> is kept for every thread, as <code>NumberFormat</code> objects are expensive
+ * to create and cannot be shared between threads.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see NumberFormat
+ */
+public final class CurrencyFormat {
+
+    /**
+     * This field stores a <code>NumberFormat</code> object for every thread.
+     */
+    private static final ThreadLocal<NumberFormat> FORMAT =
+            ThreadLocal.withInitial(NumberFormat::getCurrencyInstance);
+
+    /**
+     * Private Constructor. This class only provides static methods.
+     */
+    private CurrencyFormat() {
+    }
+
+    /**
+     * Formats an amount of money as local currency.
+     *
+     * @param amount the amount as a <code>Double</code>
+     * @return the formatted amount as a <code>String</code>, such as <em>$1,234.50</em>
+     */
+    public static String format(double amount) {
+        return FORMAT.get().format(amount);
+    }
+
+}
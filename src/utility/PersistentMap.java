@@ -0,0 +1,858 @@
+package utility;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class is an immutable <code>Map</code> which iterates over its entries in the order they were
+ * inserted, like a <code>LinkedHashMap</code>.<br><br>
+ * A map is never changed once created. Instead, <code>plus()</code> and <code>minus()</code> return a new map
+ * with the change made, which shares every part of the old map the change did not touch. Both take time
+ * proportional to the logarithm of the size of the map, in base 32, which is at most seven (7) steps.
+ * A map may therefore be kept as a snapshot at no cost, and read from any number of threads at once, while
+ * newer versions of it are made elsewhere.<br><br>
+ * Entries are looked up through a hash array mapped trie (HAMT): every node has up to 32 children, chosen by
+ * the next five (5) bits of the hash of the key, and only stores the children which are present. Entries are
+ * ordered through a second trie of 32-way nodes, indexed by the slot each entry is given when it is inserted.
+ * Removing an entry empties its slot, and the slots are numbered again once more of them are empty than in
+ * use. Replacing the value of a key keeps its place in the order.<br><br>
+ * The entries and values are split for parallel streams by ranges of slots. While no slot has been emptied
+ * since the slots were last numbered, every range holds exactly as many entries as slots, so the split parts
+ * report their exact sizes.<br><br>
+ * <code>null</code> values are accepted, though <code>null</code> keys are not. The methods inherited from
+ * <code>Map</code> which would change the map throw <code>UnsupportedOperationException</code>.<br><br>
+ * The map is saved by Java serialization as a <code>LinkedHashMap</code>, so data saved with it may still
+ * be read by code which expects one.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see SnapshotMap
+ * @see LinkedHashMap
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of bits of a hash, or of a slot, consumed at every level of either trie.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * The number of children of a node of either trie.
+     */
+    private static final int WIDTH = 1 << BITS;
+
+    /**
+     * The mask taking the bits of a hash, or of a slot, consumed at a single level.
+     */
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * The node of a lookup trie without any children.
+     */
+    private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+
+    /**
+     * The map without any entries.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<>(EMPTY_NODE, new Object[WIDTH], 0, 0, 0);
+
+    /**
+     * This field stores the root node of the trie looking up the entry of every key.
+     */
+    private final Node root;
+
+    /**
+     * This field stores the root node of the trie ordering the entries by slot.
+     */
+    private final Object[] order;
+
+    /**
+     * This field stores the number of bits the slot is shifted by at the root of the ordering trie. Zero (0)
+     * when the root holds the entries themselves.
+     */
+    private final int shift;
+
+    /**
+     * This field stores the number of slots given out, including those which have been emptied.
+     */
+    private final int slots;
+
+    /**
+     * This field stores the number of entries.
+     */
+    private final int size;
+
+    /**
+     * This field stores the view of the entries, created when first requested.
+     */
+    private transient Set<Map.Entry<K, V>> entries;
+
+    /**
+     * This field stores the view of the values, created when first requested.
+     */
+    private transient Collection<V> values;
+
+    /**
+     * Private Constructor. Maps are created through <code>empty()</code>, <code>copyOf()</code>,
+     * <code>plus()</code> and <code>minus()</code>.
+     *
+     * @param root  the root of the lookup trie
+     * @param order the root of the ordering trie
+     * @param shift the shift at the root of the ordering trie
+     * @param slots the number of slots given out
+     * @param size  the number of entries
+     */
+    private PersistentMap(Node root, Object[] order, int shift, int slots, int size) {
+        this.root = root;
+        this.order = order;
+        this.shift = shift;
+        this.slots = slots;
+        this.size = size;
+    }
+
+    /**
+     * Retrieves the map without any entries.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the empty <code>PersistentMap</code>
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Creates a map holding the entries of another map, in the order it iterates over them.
+     *
+     * @param map the map whose entries are copied
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the <code>PersistentMap</code>, or <code>map</code> itself if it already is one
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap<K, V>) map;
+        }
+        PersistentMap<K, V> copy = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            copy = copy.plus(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && find(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Entry<K, V> entry = key == null ? null : find(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Creates a map with the given value for the given key, and every other entry of this map. A new key is
+     * placed at the end of the order, while an existing key keeps its place.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the new <code>PersistentMap</code>, or this map if the key already has the very same value
+     * @throws NullPointerException if <code>key</code> is <code>null</code>
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        int hash = hash(Objects.requireNonNull(key));
+        Entry<K, V> existing = find(key);
+        if (existing != null) {
+            if (existing.value == value) {
+                return this;
+            }
+            Entry<K, V> entry = new Entry<>(key, value, hash, existing.slot);
+            return new PersistentMap<>(put(root, entry, 0), set(order, shift, entry.slot, entry),
+                    shift, slots, size);
+        }
+        Object[] order = this.order;
+        int shift = this.shift;
+        if (slots == 1 << (shift + BITS)) {
+            order = new Object[WIDTH];
+            order[0] = this.order;
+            shift += BITS;
+        }
+        Entry<K, V> entry = new Entry<>(key, value, hash, slots);
+        return new PersistentMap<>(put(root, entry, 0), set(order, shift, entry.slot, entry),
+                shift, slots + 1, size + 1);
+    }
+
+    /**
+     * Creates a map with every entry of this map, except for the entry of the given key.
+     *
+     * @param key the key
+     * @return the new <code>PersistentMap</code>, or this map if the key has no entry
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        Entry<K, V> existing = key == null ? null : find(key);
+        if (existing == null) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        PersistentMap<K, V> map = new PersistentMap<>(remove(root, key, existing.hash, 0),
+                set(order, shift, existing.slot, null), shift, slots, size - 1);
+        return map.slots - map.size > Math.max(WIDTH, map.size) ? map.compact() : map;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entries == null) {
+            entries = new EntrySet();
+        }
+        return entries;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new Values();
+        }
+        return values;
+    }
+
+    /**
+     * A helper method to find the entry of a key.
+     *
+     * @param key the key
+     * @return the entry, or <code>null</code> if the key has none
+     */
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> find(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (shift >= Integer.SIZE) {
+                for (Object child : node.array) {
+                    if (((Entry<K, V>) child).key.equals(key)) {
+                        return (Entry<K, V>) child;
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (child instanceof Entry) {
+                Entry<K, V> entry = (Entry<K, V>) child;
+                return entry.hash == hash && entry.key.equals(key) ? entry : null;
+            }
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * A helper method to create a map holding the same entries in the same order, with their slots
+     * numbered again from zero (0).
+     *
+     * @return the new <code>PersistentMap</code>
+     */
+    private PersistentMap<K, V> compact() {
+        PersistentMap<K, V> map = empty();
+        for (Map.Entry<K, V> entry : entrySet()) {
+            map = map.plus(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    /**
+     * A helper method to spread the hash code of a key, so that keys whose hash codes only differ in their
+     * highest bits still part ways near the root of the lookup trie.
+     *
+     * @param key the key
+     * @return the hash as an <code>Integer</code>
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A helper method to create a copy of a lookup node holding the given entry, in place of any entry with
+     * the same key.
+     *
+     * @param node  the node
+     * @param entry the entry
+     * @param shift the number of bits of the hash consumed above the node
+     * @return the new node
+     */
+    private static Node put(Node node, Entry<?, ?> entry, int shift) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.array.length; i++) {
+                if (((Entry<?, ?>) node.array[i]).key.equals(entry.key)) {
+                    return node.with(i, entry);
+                }
+            }
+            return node.inserted(node.array.length, 0, entry);
+        }
+        int bit = 1 << ((entry.hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            return node.inserted(index, bit, entry);
+        }
+        Object child = node.array[index];
+        if (child instanceof Node) {
+            return node.with(index, put((Node) child, entry, shift + BITS));
+        }
+        Entry<?, ?> existing = (Entry<?, ?>) child;
+        if (existing.key.equals(entry.key)) {
+            return node.with(index, entry);
+        }
+        return node.with(index, put(put(EMPTY_NODE, existing, shift + BITS), entry, shift + BITS));
+    }
+
+    /**
+     * A helper method to create a copy of a lookup node without the entry of the given key, which must be
+     * present. A node left with a single entry and no other node is replaced by that entry.
+     *
+     * @param node  the node
+     * @param key   the key
+     * @param hash  the hash of the key
+     * @param shift the number of bits of the hash consumed above the node
+     * @return the new node
+     */
+    private static Node remove(Node node, Object key, int hash, int shift) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.array.length; i++) {
+                if (((Entry<?, ?>) node.array[i]).key.equals(key)) {
+                    return node.removed(i, 0);
+                }
+            }
+            return node;
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object child = node.array[index];
+        if (child instanceof Entry) {
+            return node.removed(index, bit);
+        }
+        Node removed = remove((Node) child, key, hash, shift + BITS);
+        if (removed.array.length == 1 && removed.array[0] instanceof Entry) {
+            return node.with(index, removed.array[0]);
+        }
+        return node.with(index, removed);
+    }
+
+    /**
+     * A helper method to create a copy of the path of the ordering trie down to a slot, with the slot set.
+     *
+     * @param node  the node, or <code>null</code> if there is none yet
+     * @param shift the number of bits the slot is shifted by at the node
+     * @param slot  the slot
+     * @param value the entry, or <code>null</code> to empty the slot
+     * @return the new node
+     */
+    private static Object[] set(Object[] node, int shift, int slot, Object value) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int index = (slot >>> shift) & MASK;
+        copy[index] = shift == 0 ? value : set((Object[]) copy[index], shift - BITS, slot, value);
+        return copy;
+    }
+
+    /**
+     * A helper method to find the node of the ordering trie holding a slot.
+     *
+     * @param slot the slot
+     * @return the node holding the entries of the slot and its neighbours, or <code>null</code> if every one
+     * of them is empty
+     */
+    private Object[] leaf(int slot) {
+        Object[] node = order;
+        for (int level = shift; level > 0 && node != null; level -= BITS) {
+            node = (Object[]) node[(slot >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Refuses to be changed in place, as changes are made through <code>plus()</code> and <code>minus()</code>.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("PersistentMap cannot be changed in place");
+    }
+
+    /**
+     * Replaces the map with a <code>LinkedHashMap</code> holding the same entries when it is saved.
+     *
+     * @return the <code>LinkedHashMap</code>
+     */
+    private Object writeReplace() {
+        return new LinkedHashMap<>(this);
+    }
+
+    /**
+     * Refuses to read the map directly, as it is always saved as a <code>LinkedHashMap</code>.
+     *
+     * @param input the stream to read from
+     * @throws InvalidObjectException always
+     */
+    private void readObject(ObjectInputStream input) throws InvalidObjectException {
+        throw new InvalidObjectException("PersistentMap is saved as a LinkedHashMap");
+    }
+
+    /**
+     * This private class represents a node of the lookup trie.<br><br>
+     * A bit is set in the bitmap for every child present, and the children are stored in the order of their
+     * bits. Below the last bit of the hash, a node instead holds every entry whose key has that hash, with an
+     * empty bitmap.
+     */
+    private static final class Node {
+
+        /**
+         * This field stores the bitmap of the children present.
+         */
+        private final int bitmap;
+
+        /**
+         * This field stores the children, each of them an <code>Entry</code> or a <code>Node</code>.
+         */
+        private final Object[] array;
+
+        /**
+         * Constructor.
+         *
+         * @param bitmap the bitmap of the children present
+         * @param array  the children
+         */
+        private Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * Creates a copy of the node with a child replaced.
+         *
+         * @param index the position of the child
+         * @param child the new child
+         * @return the new node
+         */
+        private Node with(int index, Object child) {
+            Object[] copy = array.clone();
+            copy[index] = child;
+            return new Node(bitmap, copy);
+        }
+
+        /**
+         * Creates a copy of the node with a child inserted.
+         *
+         * @param index the position of the child
+         * @param bit   the bit of the child, or zero (0) below the last bit of the hash
+         * @param child the new child
+         * @return the new node
+         */
+        private Node inserted(int index, int bit, Object child) {
+            Object[] copy = new Object[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = child;
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            return new Node(bitmap | bit, copy);
+        }
+
+        /**
+         * Creates a copy of the node with a child removed.
+         *
+         * @param index the position of the child
+         * @param bit   the bit of the child, or zero (0) below the last bit of the hash
+         * @return the new node
+         */
+        private Node removed(int index, int bit) {
+            Object[] copy = new Object[array.length - 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+            return new Node(bitmap & ~bit, copy);
+        }
+    }
+
+    /**
+     * This private class represents an entry of the map. Entries are immutable, and are shared between every
+     * version of the map holding them.
+     *
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     */
+    private static final class Entry<K, V> implements Map.Entry<K, V> {
+
+        /**
+         * This field stores the key of the entry.
+         */
+        private final K key;
+
+        /**
+         * This field stores the value of the entry.
+         */
+        private final V value;
+
+        /**
+         * This field stores the spread hash of the key.
+         */
+        private final int hash;
+
+        /**
+         * This field stores the slot of the entry in the ordering trie.
+         */
+        private final int slot;
+
+        /**
+         * Constructor.
+         *
+         * @param key   the key of the entry
+         * @param value the value of the entry
+         * @param hash  the spread hash of the key
+         * @param slot  the slot of the entry
+         */
+        private Entry(K key, V value, int hash, int slot) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.slot = slot;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("PersistentMap cannot be changed in place");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * This private class is the view of the entries of the map, in the order they were inserted.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Entry<K, V> found = entry.getKey() == null ? null : find(entry.getKey());
+            return found != null && Objects.equals(found.value, entry.getValue());
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<>() {
+
+                private int slot;
+
+                private Object[] leaf;
+
+                private Entry<K, V> next = advance();
+
+                /**
+                 * Takes the entry of the next slot which has not been emptied, skipping every node of the
+                 * ordering trie which holds none.
+                 */
+                @SuppressWarnings("unchecked")
+                private Entry<K, V> advance() {
+                    while (slot < slots) {
+                        if (leaf == null || (slot & MASK) == 0) {
+                            leaf = leaf(slot);
+                            if (leaf == null) {
+                                slot = (slot | MASK) + 1;
+                                continue;
+                            }
+                        }
+                        Object entry = leaf[slot++ & MASK];
+                        if (entry != null) {
+                            return (Entry<K, V>) entry;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry<K, V> entry = next;
+                    next = advance();
+                    return entry;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return new Slots<>(entry -> entry, Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+
+    /**
+     * This private class is the view of the values of the map, in the order their keys were inserted.
+     */
+    private final class Values extends AbstractCollection<V> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            Iterator<Map.Entry<K, V>> entries = entrySet().iterator();
+            return new Iterator<>() {
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return entries.next().getValue();
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new Slots<>(entry -> entry.value, 0);
+        }
+    }
+
+    /**
+     * This private class splits the entries of the map by ranges of slots, handing out a view of each
+     * entry.<br><br>
+     * A range is split in half by its slots. While the map has no empty slot, the number of entries in a
+     * range is the number of slots in it, so every range is <code>SIZED</code> and <code>SUBSIZED</code>.
+     * Otherwise, only the whole map is <code>SIZED</code>, and each half is estimated to hold half of the
+     * entries.
+     *
+     * @param <T> the type of the view of each entry
+     */
+    private final class Slots<T> implements Spliterator<T> {
+
+        /**
+         * This field stores the function handing out the view of each entry.
+         */
+        private final Function<Entry<K, V>, T> view;
+
+        /**
+         * This field stores the characteristics of the view, besides those of the range.
+         */
+        private final int characteristics;
+
+        /**
+         * This field stores the slot past the end of the range.
+         */
+        private final int fence;
+
+        /**
+         * This field stores the next slot of the range.
+         */
+        private int slot;
+
+        /**
+         * This field stores the node of the ordering trie holding the next slot, or <code>null</code> if it
+         * has not been found yet.
+         */
+        private Object[] leaf;
+
+        /**
+         * This field stores the number of entries left in the range, or an estimate of it once the range has
+         * been split while the map has an empty slot.
+         */
+        private long estimate;
+
+        /**
+         * This field stores whether <code>estimate</code> is exact, which it always is while the map has no
+         * empty slot.
+         */
+        private boolean sized;
+
+        /**
+         * Constructor. <br><br>
+         * Creates a spliterator over every entry of the map.
+         *
+         * @param view            the function handing out the view of each entry
+         * @param characteristics the characteristics of the view, besides those of the range
+         */
+        private Slots(Function<Entry<K, V>, T> view, int characteristics) {
+            this(view, characteristics, 0, slots, size, true);
+        }
+
+        /**
+         * Constructor. <br><br>
+         * Creates a spliterator over a range of slots.
+         *
+         * @param view            the function handing out the view of each entry
+         * @param characteristics the characteristics of the view, besides those of the range
+         * @param slot            the first slot of the range
+         * @param fence           the slot past the end of the range
+         * @param estimate        the number of entries in the range, or an estimate of it
+         * @param sized           whether <code>estimate</code> is exact
+         */
+        private Slots(Function<Entry<K, V>, T> view, int characteristics, int slot, int fence, long estimate,
+                      boolean sized) {
+            this.view = view;
+            this.characteristics = characteristics;
+            this.slot = slot;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.sized = sized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            Entry<K, V> entry = advance();
+            if (entry == null) {
+                return false;
+            }
+            action.accept(view.apply(entry));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            for (Entry<K, V> entry = advance(); entry != null; entry = advance()) {
+                action.accept(view.apply(entry));
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int middle = (slot + fence) >>> 1;
+            if (middle <= slot) {
+                return null;
+            }
+            boolean dense = slots == size;
+            long half = dense ? middle - slot : estimate >>> 1;
+            Slots<T> prefix = new Slots<>(view, characteristics, slot, middle, half, dense);
+            slot = middle;
+            leaf = null;
+            estimate = dense ? fence - middle : estimate - half;
+            sized = dense;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics | Spliterator.ORDERED | Spliterator.IMMUTABLE | (sized ? Spliterator.SIZED : 0)
+                    | (slots == size ? Spliterator.SUBSIZED : 0);
+        }
+
+        /**
+         * A helper method to take the entry of the next slot of the range which has not been emptied, skipping
+         * every node of the ordering trie which holds none.
+         *
+         * @return the entry, or <code>null</code> if the range has been exhausted
+         */
+        @SuppressWarnings("unchecked")
+        private Entry<K, V> advance() {
+            while (slot < fence) {
+                if (leaf == null || (slot & MASK) == 0) {
+                    leaf = leaf(slot);
+                    if (leaf == null) {
+                        slot = (slot | MASK) + 1;
+                        continue;
+                    }
+                }
+                Object entry = leaf[slot++ & MASK];
+                if (entry != null) {
+                    if (estimate > 0) {
+                        estimate--;
+                    }
+                    return (Entry<K, V>) entry;
+                }
+            }
+            estimate = 0;
+            return null;
+        }
+    }
+
+}
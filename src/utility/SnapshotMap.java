@@ -0,0 +1,299 @@
+package utility;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class is a thread-safe <code>Map</code> which iterates over its entries in the order they were
+ * inserted, and can hand out a snapshot of its entries in constant time.<br><br>
+ * The entries are held in a <code>PersistentMap</code>, which is never changed. Every change instead builds a
+ * new version of it, sharing everything the change did not touch, and swaps it in with a single
+ * compare-and-set, trying again should another thread have swapped in its own version first. Lookups and
+ * iteration never block, and <code>snapshot()</code> simply returns the current version, which stays as it
+ * is for as long as it is kept, no matter what is changed afterwards. Iterators and spliterators walk the
+ * version which was current when they were created.<br><br>
+ * Unlike a <code>ConcurrentHashMap</code>, <code>null</code> values are accepted, though <code>null</code>
+ * keys are not.<br><br>
+ * The map is saved by Java serialization as a <code>LinkedHashMap</code>, so data saved with it may still
+ * be read by code which expects one.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see PersistentMap
+ * @see ConcurrentLinkedMap
+ */
+public class SnapshotMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The handle used to compare-and-set the <code>map</code> field.
+     */
+    private static final VarHandle MAP;
+
+    static {
+        try {
+            MAP = MethodHandles.lookup().findVarHandle(SnapshotMap.class, "map", PersistentMap.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * This field stores the current version of the entries. Only changed through the <code>MAP</code> handle.
+     */
+    private volatile PersistentMap<K, V> map;
+
+    /**
+     * This field stores the view of the entries, created when first requested.
+     */
+    private transient Set<Map.Entry<K, V>> entries;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates an empty map.
+     */
+    public SnapshotMap() {
+        this.map = PersistentMap.empty();
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * Creates a map holding the entries of another map, in the order it iterates over them.
+     *
+     * @param map the map whose entries are copied
+     */
+    public SnapshotMap(Map<? extends K, ? extends V> map) {
+        this.map = PersistentMap.copyOf(map);
+    }
+
+    /**
+     * Retrieves the entries of the map as they are right now, in constant time.<br><br>
+     * The snapshot is immutable, and is unaffected by any change made to the map afterwards.
+     *
+     * @return the snapshot as a <code>PersistentMap</code>
+     */
+    public PersistentMap<K, V> snapshot() {
+        return map;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (swap(current, current.plus(key, value))) {
+                return current.get(key);
+            }
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (current.containsKey(key)) {
+                return current.get(key);
+            }
+            if (swap(current, current.plus(key, value))) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (!current.containsKey(key)) {
+                return null;
+            }
+            if (swap(current, current.minus(key))) {
+                return current.get(key);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (!current.containsKey(key) || !Objects.equals(current.get(key), value)) {
+                return false;
+            }
+            if (swap(current, current.minus(key))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (!current.containsKey(key) || !Objects.equals(current.get(key), oldValue)) {
+                return false;
+            }
+            if (swap(current, current.plus(key, newValue))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        while (true) {
+            PersistentMap<K, V> current = map;
+            if (!current.containsKey(key)) {
+                return null;
+            }
+            if (swap(current, current.plus(key, value))) {
+                return current.get(key);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        map = PersistentMap.empty();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entries == null) {
+            entries = new EntrySet();
+        }
+        return entries;
+    }
+
+    /**
+     * A helper method to swap in a new version of the entries, unless another thread has already swapped in
+     * its own.
+     *
+     * @param current the version the change was made to
+     * @param next    the new version
+     * @return <code>true</code> if the new version has been swapped in. Otherwise, it will return
+     * <code>false</code>.
+     */
+    private boolean swap(PersistentMap<K, V> current, PersistentMap<K, V> next) {
+        return current == next || MAP.compareAndSet(this, current, next);
+    }
+
+    /**
+     * Replaces the map with a <code>LinkedHashMap</code> holding the same entries when it is saved.
+     *
+     * @return the <code>LinkedHashMap</code>
+     */
+    private Object writeReplace() {
+        return new LinkedHashMap<>(map);
+    }
+
+    /**
+     * Refuses to read the map directly, as it is always saved as a <code>LinkedHashMap</code>.
+     *
+     * @param input the stream to read from
+     * @throws InvalidObjectException always
+     */
+    private void readObject(ObjectInputStream input) throws InvalidObjectException {
+        throw new InvalidObjectException("SnapshotMap is saved as a LinkedHashMap");
+    }
+
+    /**
+     * This private class is the view of the entries of the map, in the order they were inserted.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.entrySet().contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return SnapshotMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            SnapshotMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            Iterator<Map.Entry<K, V>> entries = map.entrySet().iterator();
+            return new Iterator<>() {
+
+                private Map.Entry<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    last = entries.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    SnapshotMap.this.remove(last.getKey(), last.getValue());
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return map.entrySet().spliterator();
+        }
+    }
+
+}
@@ -0,0 +1,690 @@
+package utility;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This class is a thread-safe <code>Map</code> which iterates over its entries in the order they were
+ * inserted, and can hand out a snapshot of its entries, like a <code>SnapshotMap</code>, for maps which
+ * many threads insert into at once.<br><br>
+ * A <code>SnapshotMap</code> swaps in every change with a compare-and-set of a single version, so threads
+ * changing it at once all contend for the same version, and all but one of them build their change again.
+ * This map is instead split into stripes, each of them a <code>SnapshotMap</code> of the keys whose hash falls
+ * in it. A key falls in the stripe of the lowest bits of its hash, so that keys which are consecutive
+ * integers are spread evenly across the stripes, and changes to keys of different stripes never contend.
+ * <br><br>
+ * Every entry is given a sequence number when it is inserted, and iteration merges the stripes back together
+ * by sequence number, so entries are iterated over in the order they were inserted. Entries inserted by
+ * different threads at once may be iterated over in either order. Replacing the value of a key keeps its
+ * place in the order.<br><br>
+ * <code>snapshot()</code> takes the current version of every stripe, in time proportional to the number of
+ * stripes rather than to the number of entries. Every stripe is taken as it is at the time it is taken, so a
+ * change made to one stripe while the snapshot is being taken may be held by it, while an earlier change to a
+ * stripe taken before it is not. Iterators walk a snapshot taken when they were created.<br><br>
+ * Unlike a <code>ConcurrentHashMap</code>, <code>null</code> values are accepted, though <code>null</code>
+ * keys are not.<br><br>
+ * The map, and its snapshots, are saved by Java serialization as a <code>LinkedHashMap</code>, so data saved
+ * with them may still be read by code which expects one.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see SnapshotMap
+ * @see PersistentMap
+ */
+public class StripedSnapshotMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * This field stores a <code>SnapshotMap</code> for every stripe, holding the entries whose keys fall in
+     * the stripe. The number of stripes is a power of two.
+     */
+    private final SnapshotMap<K, Node<K, V>>[] stripes;
+
+    /**
+     * This field stores the sequence number given to the last inserted entry.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * This field stores the view of the entries, created when first requested.
+     */
+    private transient Set<Map.Entry<K, V>> entries;
+
+    /**
+     * Default Constructor. <br><br>
+     * Creates an empty map split into the given number of stripes.
+     *
+     * @param stripes the number of stripes, as a power of two
+     * @throws IllegalArgumentException if the number of stripes is not a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedSnapshotMap(int stripes) {
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("The number of stripes is not a power of two: " + stripes);
+        }
+        this.stripes = new SnapshotMap[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new SnapshotMap<>();
+        }
+    }
+
+    /**
+     * Overloaded Constructor. <br><br>
+     * Creates a map split into the given number of stripes, holding the entries of another map, in the order
+     * it iterates over them.
+     *
+     * @param map     the map whose entries are copied
+     * @param stripes the number of stripes, as a power of two
+     * @throws IllegalArgumentException if the number of stripes is not a power of two
+     */
+    public StripedSnapshotMap(Map<? extends K, ? extends V> map, int stripes) {
+        this(stripes);
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Retrieves the entries of the map as they are right now, in time proportional to the number of stripes.
+     * <br><br>
+     * The snapshot is immutable, and is unaffected by any change made to the map afterwards.
+     *
+     * @return the snapshot as an immutable <code>Map</code>
+     */
+    public Map<K, V> snapshot() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        PersistentMap<K, Node<K, V>>[] versions = new PersistentMap[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            versions[i] = stripes[i].snapshot();
+        }
+        return new Snapshot<>(versions);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (SnapshotMap<K, Node<K, V>> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (SnapshotMap<K, Node<K, V>> stripe : stripes) {
+            if (!stripe.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return stripe(key).containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = stripe(key).get(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        SnapshotMap<K, Node<K, V>> stripe = stripe(Objects.requireNonNull(key));
+        while (true) {
+            Node<K, V> node = stripe.get(key);
+            if (node == null) {
+                if (stripe.putIfAbsent(key, new Node<>(sequence.incrementAndGet(), key, value)) == null) {
+                    return null;
+                }
+            } else if (stripe.replace(key, node, new Node<>(node.sequence, key, value))) {
+                return node.value;
+            }
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        SnapshotMap<K, Node<K, V>> stripe = stripe(Objects.requireNonNull(key));
+        Node<K, V> node = stripe.get(key);
+        if (node == null) {
+            node = stripe.putIfAbsent(key, new Node<>(sequence.incrementAndGet(), key, value));
+        }
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = stripe(key).remove(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        SnapshotMap<K, Node<K, V>> stripe = stripe(key);
+        while (true) {
+            Node<K, V> node = stripe.get(key);
+            if (node == null || !Objects.equals(node.value, value)) {
+                return false;
+            }
+            if (stripe.remove(key, node)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        SnapshotMap<K, Node<K, V>> stripe = stripe(key);
+        while (true) {
+            Node<K, V> node = stripe.get(key);
+            if (node == null || !Objects.equals(node.value, oldValue)) {
+                return false;
+            }
+            if (stripe.replace(key, node, new Node<>(node.sequence, key, newValue))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        SnapshotMap<K, Node<K, V>> stripe = stripe(key);
+        while (true) {
+            Node<K, V> node = stripe.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (stripe.replace(key, node, new Node<>(node.sequence, key, value))) {
+                return node.value;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (SnapshotMap<K, Node<K, V>> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entries == null) {
+            entries = new EntrySet();
+        }
+        return entries;
+    }
+
+    /**
+     * A helper method to find the stripe a key falls in.
+     *
+     * @param key the key
+     * @return the stripe as a <code>SnapshotMap</code>
+     */
+    private SnapshotMap<K, Node<K, V>> stripe(Object key) {
+        return stripes[key == null ? 0 : key.hashCode() & (stripes.length - 1)];
+    }
+
+    /**
+     * Replaces the map with a <code>LinkedHashMap</code> holding the same entries when it is saved.
+     *
+     * @return the <code>LinkedHashMap</code>
+     */
+    private Object writeReplace() {
+        return new LinkedHashMap<>(snapshot());
+    }
+
+    /**
+     * Refuses to read the map directly, as it is always saved as a <code>LinkedHashMap</code>.
+     *
+     * @param input the stream to read from
+     * @throws InvalidObjectException always
+     */
+    private void readObject(ObjectInputStream input) throws InvalidObjectException {
+        throw new InvalidObjectException("StripedSnapshotMap is saved as a LinkedHashMap");
+    }
+
+    /**
+     * This private class represents an entry of the map, which is never changed. Replacing the value of a key
+     * swaps in a new entry with the same sequence number.
+     *
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     */
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+
+        /**
+         * This field stores the sequence number the key was given when it was inserted.
+         */
+        private final long sequence;
+
+        /**
+         * This field stores the key of the entry.
+         */
+        private final K key;
+
+        /**
+         * This field stores the value of the entry.
+         */
+        private final V value;
+
+        /**
+         * Constructor.
+         *
+         * @param sequence the sequence number of the key
+         * @param key      the key of the entry
+         * @param value    the value of the entry
+         */
+        private Node(long sequence, K key, V value) {
+            this.sequence = sequence;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * This private class walks the entries of every stripe of a snapshot at once, handing out the entry with
+     * the lowest sequence number among the next entry of every stripe.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static final class Merge<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        /**
+         * This field stores an iterator over the entries of every stripe.
+         */
+        private final Iterator<Node<K, V>>[] stripes;
+
+        /**
+         * This field stores the next entry of every stripe, or <code>null</code> once a stripe has run out.
+         */
+        private final Node<K, V>[] heads;
+
+        /**
+         * Constructor.
+         *
+         * @param versions the version of every stripe
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Merge(PersistentMap<K, Node<K, V>>[] versions) {
+            this.stripes = new Iterator[versions.length];
+            this.heads = new Node[versions.length];
+            for (int i = 0; i < versions.length; i++) {
+                stripes[i] = versions[i].values().iterator();
+                heads[i] = stripes[i].hasNext() ? stripes[i].next() : null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (Node<K, V> head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Node<K, V> next() {
+            int earliest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (earliest < 0 || heads[i].sequence < heads[earliest].sequence)) {
+                    earliest = i;
+                }
+            }
+            if (earliest < 0) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> next = heads[earliest];
+            heads[earliest] = stripes[earliest].hasNext() ? stripes[earliest].next() : null;
+            return next;
+        }
+    }
+
+    /**
+     * This private class is the view of the entries of the map, in the order they were inserted.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return StripedSnapshotMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Node<K, V> node = stripe(entry.getKey()).get(entry.getKey());
+            return node != null && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return StripedSnapshotMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            StripedSnapshotMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            Iterator<Map.Entry<K, V>> entries = snapshot().entrySet().iterator();
+            return new Iterator<>() {
+
+                private Map.Entry<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    last = entries.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    StripedSnapshotMap.this.remove(last.getKey(), last.getValue());
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return snapshot().entrySet().spliterator();
+        }
+    }
+
+    /**
+     * This private class is a snapshot of the map, holding the version of every stripe as it was when the
+     * snapshot was taken.<br><br>
+     * The entries and values of a snapshot of a single stripe are split for parallel streams by the
+     * <code>PersistentMap</code> of the stripe. Those of a snapshot of many stripes are merged in order, and
+     * split in batches.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static final class Snapshot<K, V> extends AbstractMap<K, V> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * This field stores the version of every stripe.
+         */
+        private final PersistentMap<K, Node<K, V>>[] versions;
+
+        /**
+         * This field stores the number of entries across every stripe.
+         */
+        private final int size;
+
+        /**
+         * This field stores the view of the entries, created when first requested.
+         */
+        private transient Set<Map.Entry<K, V>> entries;
+
+        /**
+         * This field stores the view of the values, created when first requested.
+         */
+        private transient Collection<V> values;
+
+        /**
+         * Constructor.
+         *
+         * @param versions the version of every stripe
+         */
+        private Snapshot(PersistentMap<K, Node<K, V>>[] versions) {
+            this.versions = versions;
+            int size = 0;
+            for (PersistentMap<K, Node<K, V>> version : versions) {
+                size += version.size();
+            }
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return version(key).containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            Node<K, V> node = version(key).get(key);
+            return node == null ? null : node.value;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            if (entries == null) {
+                entries = new AbstractSet<>() {
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public boolean contains(Object o) {
+                        if (!(o instanceof Map.Entry)) return false;
+                        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                        return containsKey(entry.getKey()) && Objects.equals(get(entry.getKey()), entry.getValue());
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return new Merge<>(versions);
+                    }
+
+                    @Override
+                    @SuppressWarnings({"unchecked", "rawtypes"})
+                    public Spliterator<Map.Entry<K, V>> spliterator() {
+                        if (versions.length == 1) {
+                            return (Spliterator) versions[0].values().spliterator();
+                        }
+                        return Spliterators.spliterator(iterator(), size,
+                                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+                    }
+                };
+            }
+            return entries;
+        }
+
+        @Override
+        public Collection<V> values() {
+            if (values == null) {
+                values = new AbstractCollection<>() {
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<V> iterator() {
+                        Iterator<Map.Entry<K, V>> entries = entrySet().iterator();
+                        return new Iterator<>() {
+
+                            @Override
+                            public boolean hasNext() {
+                                return entries.hasNext();
+                            }
+
+                            @Override
+                            public V next() {
+                                return entries.next().getValue();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public Spliterator<V> spliterator() {
+                        if (versions.length == 1) {
+                            return new Values<>(versions[0].values().spliterator());
+                        }
+                        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+                    }
+                };
+            }
+            return values;
+        }
+
+        /**
+         * A helper method to find the version of the stripe a key falls in.
+         *
+         * @param key the key
+         * @return the version as a <code>PersistentMap</code>
+         */
+        private PersistentMap<K, Node<K, V>> version(Object key) {
+            return versions[key == null ? 0 : key.hashCode() & (versions.length - 1)];
+        }
+
+        /**
+         * Replaces the snapshot with a <code>LinkedHashMap</code> holding the same entries when it is saved.
+         *
+         * @return the <code>LinkedHashMap</code>
+         */
+        private Object writeReplace() {
+            return new LinkedHashMap<>(this);
+        }
+
+        /**
+         * Refuses to read the snapshot directly, as it is always saved as a <code>LinkedHashMap</code>.
+         *
+         * @param input the stream to read from
+         * @throws InvalidObjectException always
+         */
+        private void readObject(ObjectInputStream input) throws InvalidObjectException {
+            throw new InvalidObjectException("StripedSnapshotMap is saved as a LinkedHashMap");
+        }
+    }
+
+    /**
+     * This private class hands out the values of the entries split by the spliterator of a single stripe,
+     * splitting wherever it splits.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    private static final class Values<K, V> implements Spliterator<V> {
+
+        /**
+         * This field stores the spliterator of the entries.
+         */
+        private final Spliterator<Node<K, V>> nodes;
+
+        /**
+         * Constructor.
+         *
+         * @param nodes the spliterator of the entries
+         */
+        private Values(Spliterator<Node<K, V>> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            return nodes.tryAdvance(node -> action.accept(node.value));
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            nodes.forEachRemaining(node -> action.accept(node.value));
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            Spliterator<Node<K, V>> split = nodes.trySplit();
+            return split == null ? null : new Values<>(split);
+        }
+
+        @Override
+        public long estimateSize() {
+            return nodes.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return nodes.characteristics() & ~(Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+    }
+
+}
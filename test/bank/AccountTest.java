@@ -0,0 +1,83 @@
+package bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that <code>Account.readCents()</code> reads any number of accounts at a single point in
+ * time, however many transfers are made between them while they are read.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Account#readCents(Account...)
+ */
+class AccountTest {
+
+    /**
+     * The longest time, in milliseconds, a thread is given to finish.
+     */
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    void readsEveryAccountAtASinglePointInTime() throws InterruptedException {
+        Account[] accounts = new Account[20000];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account(100000000 + i);
+            accounts[i].restoreCents(1000);
+        }
+        long total = 1000L * accounts.length;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong transfers = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    Account from = accounts[random.nextInt(accounts.length)];
+                    Account to = accounts[random.nextInt(accounts.length)];
+                    if (from.transfer(to, random.nextInt(1, 5))) {
+                        transfers.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        try {
+            for (int read = 0; read < 50; read++) {
+                assertEquals(total, sum(Account.readCents(accounts)));
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join(TIMEOUT);
+            }
+        }
+        assertTrue(transfers.get() > 0);
+        for (Thread thread : threads) {
+            assertFalse(thread.isAlive(), "A transfer was left waiting at the gate");
+        }
+        assertEquals(total, sum(Account.readCents(accounts)));
+    }
+
+    /**
+     * A helper method to add up a number of balances.
+     *
+     * @param cents the balances in cents
+     * @return the total in cents as a <code>Long</code>
+     */
+    private static long sum(long[] cents) {
+        long total = 0;
+        for (long c : cents) {
+            total += c;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,109 @@
+package bank;
+
+import org.junit.jupiter.api.Test;
+import utility.Address;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>CompositeKey</code> holds every level of the entity it was made for, and that
+ * the tag of an account number is only ever taken as a routing hint.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see CompositeKey
+ */
+class CompositeKeyTest {
+
+    /**
+     * The distance between two account numbers sharing a tag.
+     */
+    private static final int SAME_TAG = (1 << 22) - 1;
+
+    /**
+     * The address given to every branch and customer.
+     */
+    private static final Address ADDRESS = new Address("1 Main St", "Springfield", "Illinois", "62701");
+
+    @Test
+    void holdsEveryLevel() {
+        Customer customer = customer(9999, 999, 99999);
+        Account account = customer.openAccount(999999999);
+        long key = CompositeKey.of(account);
+        assertTrue(key >= 0);
+        assertEquals(9999, CompositeKey.bankId(key));
+        assertEquals(999, CompositeKey.branchCode(key));
+        assertEquals(99999, CompositeKey.customerId(key));
+        assertEquals(CompositeKey.tag(999999999), CompositeKey.accountTag(key));
+        long customerKey = CompositeKey.of(customer);
+        assertEquals(-1, CompositeKey.customerId(CompositeKey.of(customer.getBranch())));
+        assertEquals(0, CompositeKey.accountTag(customerKey));
+        assertEquals(customerKey, key & ~((1L << 22) - 1));
+    }
+
+    @Test
+    void hasNoKeyOutsideABank() {
+        Customer customer = new Customer(12345, "Ada", ADDRESS);
+        assertEquals(CompositeKey.NONE, CompositeKey.of(customer));
+        assertEquals(CompositeKey.NONE, CompositeKey.of(customer.openAccount(123456789)));
+        assertEquals(CompositeKey.NONE, CompositeKey.of(new Branch(123, "Main", ADDRESS)));
+        assertEquals(-1, CompositeKey.bankId(CompositeKey.NONE));
+        assertEquals(0, CompositeKey.accountTag(CompositeKey.NONE));
+    }
+
+    @Test
+    void keepsTagsInRange() {
+        for (int accountNumber : new int[]{100000000, 100000000 + SAME_TAG - 1, 999999999}) {
+            int tag = CompositeKey.tag(accountNumber);
+            assertTrue(tag >= 1 && tag < 1 << 22, accountNumber + " has tag " + tag);
+        }
+        assertEquals(CompositeKey.tag(100000000), CompositeKey.tag(100000000 + SAME_TAG));
+    }
+
+    @Test
+    void routesToNoneOfTheAccountsSharingATag() {
+        Customer customer = customer(1234, 123, 12345);
+        Account first = customer.openAccount(100000000);
+        Account second = customer.openAccount(100000000 + SAME_TAG);
+        long key = CompositeKey.of(first);
+        assertEquals(key, CompositeKey.of(second));
+        assertNull(CompositeKey.account(customer, key));
+        assertSame(first, CompositeKey.account(customer, key, 100000000));
+        assertSame(second, CompositeKey.account(customer, key, 100000000 + SAME_TAG));
+    }
+
+    @Test
+    void checksTheAccountNumberOfAKeyKeptAfterItsAccountIsClosed() {
+        Customer customer = customer(1234, 123, 12345);
+        Account closed = customer.openAccount(100000000);
+        long key = CompositeKey.of(closed);
+        assertTrue(customer.closeAccount(closed));
+        Account later = customer.openAccount(100000000 + SAME_TAG);
+        assertSame(later, CompositeKey.account(customer, key));
+        assertNull(CompositeKey.account(customer, key, 100000000));
+        assertSame(later, CompositeKey.account(customer, key, 100000000 + SAME_TAG));
+        assertNull(CompositeKey.account(customer, key, 100000001));
+    }
+
+    /**
+     * A helper method to register a customer at a branch of a bank, with no accounts open.
+     *
+     * @param bankId     the 4-digit bank ID
+     * @param branchCode the 3-digit branch code
+     * @param customerId the 5-digit customer ID
+     * @return the <code>Customer</code>
+     */
+    private static Customer customer(int bankId, int branchCode, int customerId) {
+        Bank bank = new Bank(bankId, "Bank");
+        assertTrue(bank.createBranch(branchCode, "Main", ADDRESS));
+        Customer customer = new Customer(customerId, "Ada", ADDRESS);
+        assertTrue(bank.getBranch(branchCode).addCustomer(customer));
+        for (Account account : customer.getAccounts()) {
+            customer.closeAccount(account);
+        }
+        return customer;
+    }
+}
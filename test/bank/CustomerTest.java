@@ -0,0 +1,107 @@
+package bank;
+
+import org.junit.jupiter.api.Test;
+import utility.Address;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the <code>MutationListener</code> is told of the changes made to a customer and its
+ * accounts in the order they were made, even though it is told once the locks have been released.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Customer
+ * @see Turnstile
+ */
+class CustomerTest {
+
+    /**
+     * The longest time, in milliseconds, a thread is given to make a change.
+     */
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * The address given to every branch and customer.
+     */
+    private static final Address ADDRESS = new Address("1 Main St", "Springfield", "Illinois", "62701");
+
+    @Test
+    void notifiesAnAccountOpenedBeforeAnyChangeToIt() throws InterruptedException {
+        Bank bank = new Bank(1234, "Bank 1234");
+        assertTrue(bank.createBranch(100, "Main", ADDRESS));
+        Customer customer = new Customer(11111, "Customer", ADDRESS);
+        assertTrue(bank.getBranch(100).addCustomer(customer));
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch opening = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        bank.setMutationListener(new MutationListener() {
+            @Override
+            public void accountOpened(Customer owner, Account account) {
+                opening.countDown();
+                await(proceed);
+                changes.add("opened " + account.getAccountNumber());
+            }
+
+            @Override
+            public void deposited(Account account, double amount, long cents) {
+                changes.add("deposited " + account.getAccountNumber() + " " + cents);
+            }
+
+            @Override
+            public void customerUpdated(Customer owner) {
+                changes.add("renamed " + owner.getName());
+            }
+        });
+        Thread opener = start(() -> customer.openAccount(123456789));
+        assertTrue(opening.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Account account = customer.getAccount(123456789);
+        assertNotNull(account);
+        Thread depositor = start(() -> account.deposit(5));
+        Thread renamer = start(() -> customer.setName("Renamed"));
+        Thread.sleep(100);
+        proceed.countDown();
+        for (Thread thread : new Thread[]{opener, depositor, renamer}) {
+            thread.join(TIMEOUT);
+        }
+        assertEquals(3, changes.size());
+        assertEquals("opened 123456789", changes.get(0));
+        assertTrue(changes.contains("deposited 123456789 500"));
+        assertTrue(changes.contains("renamed Renamed"));
+    }
+
+    /**
+     * A helper method to start a daemon thread.
+     *
+     * @param task the task run by the thread
+     * @return the started <code>Thread</code>
+     */
+    private static Thread start(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * A helper method to wait on a latch for at most <code>TIMEOUT</code> milliseconds, without being
+     * interrupted.
+     *
+     * @param latch the <code>CountDownLatch</code>
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that an <code>IdAllocator</code> never gives out an ID which is in use, both while it keeps
+ * the IDs in its hash set and once it has built its bitset, and that it fails at once when full.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see IdAllocator
+ */
+class IdAllocatorTest {
+
+    @Test
+    void allocatesEveryIdOfANamespaceOnce() {
+        for (int highest : new int[]{1, 64, 130, 999}) {
+            IdAllocator ids = new IdAllocator(1, highest);
+            Set<Integer> allocated = new HashSet<>();
+            for (int i = 0; i < highest; i++) {
+                int id = ids.allocate();
+                assertTrue(id >= 1 && id <= highest, id + " is outside of the namespace");
+                assertTrue(allocated.add(id), id + " was allocated twice");
+            }
+            assertEquals(0, ids.getAvailable());
+            assertThrows(IllegalStateException.class, ids::allocate);
+        }
+    }
+
+    @Test
+    void allocatesTheOnlyFreeId() {
+        IdAllocator ids = new IdAllocator(100, 999);
+        for (int i = 0; i < 900; i++) {
+            ids.allocate();
+        }
+        for (int id : new int[]{100, 563, 999}) {
+            assertTrue(ids.release(id));
+            assertEquals(id, ids.allocate());
+        }
+    }
+
+    @Test
+    void reservesAndReleasesIds() {
+        IdAllocator ids = new IdAllocator(1000, 9999);
+        assertTrue(ids.reserve(1000));
+        assertFalse(ids.reserve(1000));
+        assertTrue(ids.isAllocated(1000));
+        assertEquals(8999, ids.getAvailable());
+        assertTrue(ids.release(1000));
+        assertFalse(ids.release(1000));
+        assertFalse(ids.isAllocated(1000));
+        assertEquals(9000, ids.getAvailable());
+    }
+
+    @Test
+    void acceptsIdsOutsideOfTheNamespaceWithoutTrackingThem() {
+        IdAllocator ids = new IdAllocator(1000, 9999);
+        assertTrue(ids.reserve(999));
+        assertTrue(ids.reserve(999));
+        assertTrue(ids.reserve(10000));
+        assertFalse(ids.isAllocated(999));
+        assertFalse(ids.release(10000));
+        assertEquals(9000, ids.getAvailable());
+        assertThrows(IllegalArgumentException.class, () -> new IdAllocator(10, 9));
+    }
+
+    @Test
+    void agreesWithASetOfTheIdsInUse() {
+        for (int highest : new int[]{99999, 999999999}) {
+            IdAllocator ids = new IdAllocator(10000, highest);
+            Set<Integer> used = new HashSet<>();
+            Random random = new Random(highest);
+            for (int i = 0; i < 20000; i++) {
+                int operation = random.nextInt(4);
+                if (operation == 0 && !used.isEmpty()) {
+                    int id = used.iterator().next();
+                    assertTrue(ids.release(id));
+                    used.remove(id);
+                } else if (operation == 1) {
+                    int id = 10000 + random.nextInt(90000);
+                    assertEquals(used.add(id), ids.reserve(id));
+                } else {
+                    int id = ids.allocate();
+                    assertTrue(used.add(id), id + " was allocated while in use");
+                }
+            }
+            for (int id = 10000; id < 100000; id++) {
+                assertEquals(used.contains(id), ids.isAllocated(id), "ID " + id);
+            }
+            assertEquals((long) highest - 10000 + 1 - used.size(), ids.getAvailable());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package bank;
+
+import org.junit.jupiter.api.Test;
+import utility.Address;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>TransactionEngine</code> applies a batch as it would be applied on a single
+ * thread, and that a partition which fails never leaves another partition waiting on a transfer.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see TransactionEngine
+ */
+class TransactionEngineTest {
+
+    /**
+     * The longest time, in milliseconds, a batch is given to be applied.
+     */
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * The address given to every branch and customer.
+     */
+    private static final Address ADDRESS = new Address("1 Main St", "Springfield", "Illinois", "62701");
+
+    @Test
+    void appliesTransfersBetweenPartitions() {
+        Bank bank = bank();
+        Account first = open(bank, 11111, 0, 2);
+        Account second = open(bank, 22222, 1, 2);
+        try (TransactionEngine engine = new TransactionEngine(2)) {
+            boolean[] results = engine.submit(List.of(
+                    Transaction.deposit(first, 100),
+                    Transaction.transfer(first, second, 60),
+                    Transaction.withdrawal(second, 10),
+                    Transaction.transfer(second, first, 80),
+                    Transaction.transfer(first, second, 30)));
+            assertArrayEquals(new boolean[]{true, true, true, false, true}, results);
+        }
+        assertEquals(10.0, first.getBalance());
+        assertEquals(80.0, second.getBalance());
+    }
+
+    @Test
+    void abandonsTransfersAwaitedByAnotherPartitionWhenOneFails() throws InterruptedException {
+        Bank bank = bank();
+        Account sender = open(bank, 11111, 0, 2);
+        Account failing = open(bank, 22222, 1, 2);
+        IllegalStateException thrown = new IllegalStateException("Listener failed");
+        bank.setMutationListener(new MutationListener() {
+            @Override
+            public void deposited(Account account, double amount) {
+                if (account == failing) {
+                    throw thrown;
+                }
+            }
+        });
+        sender.deposit(100);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        TransactionEngine engine = new TransactionEngine(2);
+        Thread submitter = new Thread(() -> {
+            try {
+                engine.submit(List.of(
+                        Transaction.deposit(failing, 5),
+                        Transaction.transfer(sender, failing, 40)));
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        submitter.setDaemon(true);
+        submitter.start();
+        submitter.join(TIMEOUT);
+        assertFalse(submitter.isAlive(), "The batch was left waiting on an abandoned transfer");
+        engine.close();
+        assertSame(thrown, failure.get());
+        assertEquals(100.0, sender.getBalance());
+    }
+
+    /**
+     * A helper method to create a bank with a single branch.
+     *
+     * @return the <code>Bank</code>
+     */
+    private static Bank bank() {
+        Bank bank = new Bank(1234, "Bank 1234");
+        assertTrue(bank.createBranch(100, "Main", ADDRESS));
+        return bank;
+    }
+
+    /**
+     * A helper method to register a customer at the branch of a bank, and open an account for them belonging
+     * to the given partition.
+     *
+     * @param bank       the <code>Bank</code>
+     * @param customerId the 5-digit customer ID
+     * @param partition  the partition the account belongs to
+     * @param partitions the number of partitions
+     * @return the <code>Account</code>
+     */
+    private static Account open(Bank bank, int customerId, int partition, int partitions) {
+        Customer customer = new Customer(customerId, "Customer " + customerId, ADDRESS);
+        assertTrue(bank.getBranch(100).addCustomer(customer));
+        for (int accountNumber = 100000000; ; accountNumber++) {
+            Account account = customer.openAccount(accountNumber);
+            if (TransactionEngine.partitionOf(account, partitions) == partition) {
+                return account;
+            }
+            assertTrue(customer.closeAccount(account));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Customer;
+import bank.MutationListener;
+import org.junit.jupiter.api.Test;
+import utility.Address;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the <code>AccountIndex</code> of a <code>BankManager</code> indexes every bank as it
+ * is read, and only reads the banks it needs: the bank which gave out an account number to find it, and no
+ * other bank to give one out.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see AccountIndex
+ * @see BankManager#findAccount(int)
+ */
+class AccountIndexTest {
+
+    /**
+     * The address given to every branch and customer.
+     */
+    private static final Address ADDRESS = new Address("1 Main St", "Springfield", "Illinois", "62701");
+
+    @Test
+    void readsBanksOnlyUntilANumberIsFound() {
+        Engine engine = new Engine();
+        BankManager manager = new BankManager(engine);
+        Account account = manager.findAccount(100000007);
+        assertNotNull(account);
+        assertEquals(1000, account.getCustomer().getBranch().getBank().getBankId());
+        assertEquals(List.of(1000), engine.loaded);
+        assertEquals(account, manager.findAccount(100000007));
+        assertEquals(List.of(1000), engine.loaded);
+        manager.close();
+    }
+
+    @Test
+    void readsEveryBankOnceForNumbersNotFound() {
+        Engine engine = new Engine();
+        BankManager manager = new BankManager(engine);
+        assertNull(manager.findAccount(123456789));
+        assertEquals(List.of(1000, 2000), engine.loaded);
+        assertNotNull(manager.findAccount(100000099));
+        assertNull(manager.findAccount(987654321));
+        assertEquals(List.of(1000, 2000), engine.loaded);
+        manager.close();
+    }
+
+    @Test
+    void readsOnlyTheBankWhichGaveOutANumberToFindIt() {
+        Engine engine = new Engine();
+        BankManager manager = new BankManager(engine);
+        Account account = manager.findAccount(200000042);
+        assertNotNull(account);
+        assertEquals(2000, account.getCustomer().getBranch().getBank().getBankId());
+        assertEquals(List.of(2000), engine.loaded);
+        manager.close();
+    }
+
+    @Test
+    void givesOutNumbersWithoutReadingOtherBanks() {
+        Engine engine = new Engine();
+        BankManager manager = new BankManager(engine);
+        Bank bank = manager.getBank(1000);
+        for (int i = 0; i < 100; i++) {
+            int accountNumber = bank.getAccountNumbers().allocate();
+            assertTrue(accountNumber >= 100000000 && accountNumber <= 100099999);
+            assertNotEquals(100000007, accountNumber);
+        }
+        assertEquals(List.of(1000), engine.loaded);
+        manager.close();
+    }
+
+    @Test
+    void readsEveryBankForNumbersOutsideTheBlockOfTheirBank() {
+        Engine engine = new Engine();
+        BankManager manager = new BankManager(engine);
+        Account account = manager.findAccount(100000099);
+        assertNotNull(account);
+        assertEquals(2000, account.getCustomer().getBranch().getBank().getBankId());
+        assertEquals(List.of(1000, 2000), engine.loaded);
+        assertNull(manager.findAccount(123456789));
+        assertEquals(List.of(1000, 2000), engine.loaded);
+        manager.close();
+    }
+
+    /**
+     * A helper method to create a bank with a single branch, and a customer holding an account with each of
+     * the given numbers.
+     *
+     * @param bankId         the 4-digit bank ID
+     * @param accountNumbers the 9-digit account numbers
+     * @return the <code>Bank</code>
+     */
+    private static Bank bank(int bankId, int... accountNumbers) {
+        Bank bank = new Bank(bankId, "Bank " + bankId);
+        assertTrue(bank.createBranch(100, "Main", ADDRESS));
+        Customer customer = new Customer(11111, "Customer", ADDRESS);
+        assertTrue(bank.getBranch(100).addCustomer(customer));
+        for (int accountNumber : accountNumbers) {
+            assertNotNull(customer.openAccount(accountNumber));
+        }
+        return bank;
+    }
+
+    /**
+     * This private class is a <code>StorageEngine</code> holding two banks which have not been read yet, and
+     * recording every bank read from it.<br><br>
+     * Bank 2000 holds an account numbered from its own block, and another from the block of bank 1000, as an
+     * account saved before the numbers were split between banks would be.
+     */
+    private static final class Engine implements StorageEngine {
+
+        /**
+         * This field stores every bank, using the bank IDs as the key.
+         */
+        private final Map<Integer, Bank> banks = new LinkedHashMap<>();
+
+        /**
+         * This field stores the bank IDs of the banks read, in the order they were read.
+         */
+        private final List<Integer> loaded = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Default Constructor.
+         */
+        private Engine() {
+            banks.put(1000, bank(1000, 100000007));
+            banks.put(2000, bank(2000, 200000042, 100000099));
+        }
+
+        @Override
+        public Map<Integer, Bank> load(BankManager manager) {
+            Map<Integer, Bank> unread = new LinkedHashMap<>();
+            for (int bankId : banks.keySet()) {
+                unread.put(bankId, null);
+            }
+            return unread;
+        }
+
+        @Override
+        public Bank load(int bankId) {
+            loaded.add(bankId);
+            return banks.get(bankId);
+        }
+
+        @Override
+        public String getName(int bankId) {
+            return "Bank " + bankId;
+        }
+
+        @Override
+        public void recover() {
+        }
+
+        @Override
+        public MutationListener getMutationListener() {
+            return new MutationListener() {
+            };
+        }
+
+        @Override
+        public boolean checkpoint() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package data;
+
+import bank.Account;
+import bank.Bank;
+import bank.Customer;
+import org.junit.jupiter.api.Test;
+import utility.Address;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>Ledger</code> keeps the balance of every account apart, across the ledger
+ * being closed and opened again, and never writes a change before it has been flushed.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Ledger
+ */
+class LedgerTest {
+
+    /**
+     * The account number held by more than one customer.
+     */
+    private static final int SHARED_NUMBER = 123456789;
+
+    /**
+     * The address given to every branch and customer.
+     */
+    private static final Address ADDRESS = new Address("1 Main St", "Springfield", "Illinois", "62701");
+
+    @Test
+    void keepsAccountsSharingANumberApart() throws IOException {
+        File file = file();
+        Bank bank = bank(1234);
+        Account alice = open(bank, 11111, SHARED_NUMBER);
+        Account bob = open(bank, 22222, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(alice, 10000, 1);
+        ledger.update(bob, 700, 2);
+        assertEquals(1, ledger.getVersion(alice));
+        assertEquals(2, ledger.getVersion(bob));
+        ledger.flush();
+        ledger.close();
+
+        alice.restoreCents(0);
+        bob.restoreCents(0);
+        ledger = opened(file);
+        ledger.restore(bank);
+        assertEquals(10000, alice.getCents());
+        assertEquals(700, bob.getCents());
+        assertEquals(1, ledger.getVersion(alice));
+        assertEquals(2, ledger.getVersion(bob));
+        ledger.close();
+    }
+
+    @Test
+    void holdsChangesBackUntilFlushed() throws IOException {
+        File file = file();
+        Account account = open(bank(1234), 11111, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(account, 500, 7);
+        Ledger reader = opened(file);
+        assertEquals(-1, reader.getVersion(account));
+        ledger.flush();
+        reader.close();
+        reader = opened(file);
+        assertEquals(7, reader.getVersion(account));
+        reader.close();
+        ledger.close();
+    }
+
+    @Test
+    void onlyFlushesChangesFromForcedRecords() throws IOException {
+        File file = file();
+        Bank bank = bank(1234);
+        Account alice = open(bank, 11111, SHARED_NUMBER);
+        Account bob = open(bank, 22222, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(alice, 100, 1);
+        ledger.update(bob, 200, 2);
+        ledger.update(alice, 300, 3);
+        ledger.flush(2);
+        Ledger reader = opened(file);
+        assertEquals(-1, reader.getVersion(alice));
+        assertEquals(2, reader.getVersion(bob));
+        reader.close();
+        assertEquals(3, ledger.getVersion(alice));
+        ledger.flush(3);
+        reader = opened(file);
+        assertEquals(3, reader.getVersion(alice));
+        reader.close();
+        ledger.close();
+    }
+
+    @Test
+    void discardsChangesNotFlushedWhenClosed() throws IOException {
+        File file = file();
+        Account account = open(bank(1234), 11111, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(account, 500, 1);
+        ledger.flush();
+        ledger.update(account, 900, 2);
+        ledger.close();
+
+        ledger = opened(file);
+        ledger.restore(account);
+        assertEquals(500, account.getCents());
+        assertEquals(1, ledger.getVersion(account));
+        ledger.close();
+    }
+
+    @Test
+    void freesTheSlotsOfReleasedAccounts() throws IOException {
+        File file = file();
+        Bank bank = bank(1234);
+        Account alice = open(bank, 11111, SHARED_NUMBER);
+        Account bob = open(bank, 22222, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(alice, 10000, 1);
+        ledger.update(bob, 700, 2);
+        ledger.release(alice, 3);
+        assertEquals(-1, ledger.getVersion(alice));
+        ledger.flush();
+        ledger.close();
+
+        ledger = opened(file);
+        assertEquals(-1, ledger.getVersion(alice));
+        assertEquals(2, ledger.getVersion(bob));
+        ledger.close();
+    }
+
+    @Test
+    void releasesEveryAccountOfARemovedBank() throws IOException {
+        File file = file();
+        Bank removed = bank(1234);
+        Bank kept = bank(5678);
+        Account flushed = open(removed, 11111, SHARED_NUMBER);
+        Account held = open(removed, 22222, SHARED_NUMBER + 1);
+        Account other = open(kept, 11111, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.update(flushed, 100, 1);
+        ledger.update(other, 300, 2);
+        ledger.flush();
+        ledger.update(held, 200, 3);
+        ledger.release(removed.getBankId(), 4);
+        ledger.flush();
+        ledger.close();
+
+        ledger = opened(file);
+        assertEquals(-1, ledger.getVersion(flushed));
+        assertEquals(-1, ledger.getVersion(held));
+        assertEquals(2, ledger.getVersion(other));
+        ledger.close();
+    }
+
+    @Test
+    void givesTheSlotsOfAVersion1FileToTheFirstAccountRestored() throws IOException {
+        File file = file();
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+            output.writeInt(0x4C444752);
+            output.writeInt(1);
+            output.writeInt(2);
+            output.writeInt(0);
+            output.writeInt(SHARED_NUMBER);
+            output.writeInt(0);
+            output.writeLong(5);
+            output.writeLong(4200);
+            output.write(new byte[24]);
+        }
+        Bank bank = bank(1234);
+        Account first = open(bank, 11111, SHARED_NUMBER);
+        Account second = open(bank, 22222, SHARED_NUMBER);
+        Ledger ledger = opened(file);
+        ledger.restore(first);
+        ledger.restore(second);
+        assertEquals(4200, first.getCents());
+        assertEquals(0, second.getCents());
+        assertEquals(5, ledger.getVersion(first));
+        assertEquals(-1, ledger.getVersion(second));
+        ledger.close();
+    }
+
+    /**
+     * A helper method to create an empty ledger file, deleted once the tests are done.
+     *
+     * @return the <code>File</code>
+     * @throws IOException if the file cannot be created
+     */
+    private static File file() throws IOException {
+        File file = File.createTempFile("bankDatabase", ".ledger");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * A helper method to open a ledger on the given file.
+     *
+     * @param file the ledger file
+     * @return the opened <code>Ledger</code>
+     */
+    private static Ledger opened(File file) {
+        Ledger ledger = new Ledger(file);
+        assertTrue(ledger.open());
+        return ledger;
+    }
+
+    /**
+     * A helper method to create a bank with a single branch.
+     *
+     * @param bankId the 4-digit bank ID
+     * @return the <code>Bank</code>
+     */
+    private static Bank bank(int bankId) {
+        Bank bank = new Bank(bankId, "Bank " + bankId);
+        assertTrue(bank.createBranch(100, "Main", ADDRESS));
+        return bank;
+    }
+
+    /**
+     * A helper method to register a customer at the branch of a bank, and open an account with the given
+     * number for them.
+     *
+     * @param bank          the <code>Bank</code>
+     * @param customerId    the 5-digit customer ID
+     * @param accountNumber the 9-digit account number
+     * @return the <code>Account</code>
+     */
+    private static Account open(Bank bank, int customerId, int accountNumber) {
+        Customer customer = new Customer(customerId, "Customer " + customerId, ADDRESS);
+        assertTrue(bank.getBranch(100).addCustomer(customer));
+        return customer.openAccount(accountNumber);
+    }
+}
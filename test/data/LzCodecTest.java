@@ -0,0 +1,140 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that <code>LzCodec</code> restores every input it compresses, at the edges of its format:
+ * empty and incompressible input, matches longer than a single length byte, and references reaching back the
+ * furthest a reference may point.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see LzCodec
+ */
+class LzCodecTest {
+
+    /**
+     * The furthest a reference may point back, as <code>LzCodec.MAX_OFFSET</code>.
+     */
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    @Test
+    void restoresEmptyInput() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    void restoresInputShorterThanAMatch() throws IOException {
+        assertRoundTrip(new byte[]{1});
+        assertRoundTrip(new byte[]{1, 2, 3});
+        assertRoundTrip(new byte[]{1, 1, 1, 1});
+    }
+
+    @Test
+    void restoresIncompressibleInputWithinTheBoundOfTheOutput() throws IOException {
+        for (int length : new int[]{15, 16, 269, 270, 100000}) {
+            byte[] bytes = random(length, length);
+            byte[] compressed = assertRoundTrip(bytes);
+            assertTrue(compressed.length <= length + length / 255 + 16,
+                    length + " random bytes grew to " + compressed.length);
+        }
+    }
+
+    @Test
+    void restoresLongMatches() throws IOException {
+        byte[] zeros = new byte[1 << 20];
+        byte[] compressed = assertRoundTrip(zeros);
+        assertTrue(compressed.length < zeros.length / 200, "a run of zeros compressed to " + compressed.length);
+        for (int length : new int[]{MAX_OFFSET + 4 + 15 + 255, 4 + 15 + 255 * 3}) {
+            byte[] bytes = random(length, 7);
+            Arrays.fill(bytes, 16, length, (byte) 42);
+            assertRoundTrip(bytes);
+        }
+    }
+
+    @Test
+    void restoresOverlappingMatches() throws IOException {
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) "abc".charAt(i % 3);
+        }
+        assertRoundTrip(bytes);
+    }
+
+    @Test
+    void restoresRepeatsAroundTheMaximumOffset() throws IOException {
+        for (int distance : new int[]{MAX_OFFSET - 1, MAX_OFFSET, MAX_OFFSET + 1}) {
+            byte[] block = random(64, distance);
+            byte[] bytes = random(distance + block.length, -distance);
+            System.arraycopy(block, 0, bytes, 0, block.length);
+            System.arraycopy(block, 0, bytes, distance, block.length);
+            assertRoundTrip(bytes);
+        }
+    }
+
+    @Test
+    void decompressesAReferenceAtTheMaximumOffset() throws IOException {
+        byte[] original = random(MAX_OFFSET + 4, 3);
+        System.arraycopy(original, 0, original, MAX_OFFSET, 4);
+        byte[] compressed = new byte[MAX_OFFSET + 512];
+        int position = 0;
+        compressed[position++] = (byte) (0x80 | ((MAX_OFFSET + 4) & 0x7F));
+        compressed[position++] = (byte) (0x80 | (((MAX_OFFSET + 4) >>> 7) & 0x7F));
+        compressed[position++] = (byte) ((MAX_OFFSET + 4) >>> 14);
+        compressed[position++] = (byte) 0xF0;
+        int extra = MAX_OFFSET - 15;
+        while (extra >= 255) {
+            compressed[position++] = (byte) 255;
+            extra -= 255;
+        }
+        compressed[position++] = (byte) extra;
+        System.arraycopy(original, 0, compressed, position, MAX_OFFSET);
+        position += MAX_OFFSET;
+        compressed[position++] = (byte) MAX_OFFSET;
+        compressed[position++] = (byte) (MAX_OFFSET >>> 8);
+        compressed[position++] = 0;
+        assertArrayEquals(original, LzCodec.decompress(Arrays.copyOf(compressed, position)));
+    }
+
+    @Test
+    void rejectsCorruptedInput() throws IOException {
+        byte[] compressed = LzCodec.compress(random(1000, 11));
+        assertThrows(IOException.class, () -> LzCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+        assertThrows(IOException.class, () -> LzCodec.decompress(new byte[]{8, 0x00, 1, 0, 0}));
+        assertThrows(IOException.class, () -> LzCodec.decompress(new byte[]{4, 0x10, 1, 2, 0}));
+    }
+
+    /**
+     * A helper method to compress the given bytes, and check that they are restored exactly.
+     *
+     * @param bytes the bytes to be compressed
+     * @return the compressed bytes
+     * @throws IOException if the compressed bytes cannot be restored
+     */
+    private static byte[] assertRoundTrip(byte[] bytes) throws IOException {
+        byte[] compressed = LzCodec.compress(bytes);
+        assertArrayEquals(bytes, LzCodec.decompress(compressed));
+        return compressed;
+    }
+
+    /**
+     * A helper method to generate random bytes.
+     *
+     * @param length the number of bytes
+     * @param seed   the seed of the <code>Random</code> object generating them
+     * @return the bytes
+     */
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests that a <code>Sequencer</code> applies operations in the order they were submitted, and that
+ * closing it never leaves a submitting thread waiting on a slot, however full the ring is.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see Sequencer
+ */
+class SequencerTest {
+
+    /**
+     * The longest time, in milliseconds, a thread is given to return once the sequencer has been closed.
+     */
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    void appliesOperationsInSubmittedOrder() throws ExecutionException, InterruptedException {
+        Sequencer<List<Integer>> sequencer = new Sequencer<>(new ArrayList<>(), 4);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            results.add(sequencer.submit(list -> {
+                list.add(value);
+                return list.size();
+            }));
+        }
+        CompletableFuture<Integer> failed = sequencer.submit(list -> {
+            throw new IllegalArgumentException("Rejected");
+        });
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, (int) results.get(i).get());
+        }
+        assertThrows(ExecutionException.class, failed::get);
+        sequencer.close();
+        assertEquals(100, sequencer.getSequence());
+        assertThrows(IllegalStateException.class, () -> sequencer.submit(list -> list));
+    }
+
+    @Test
+    void releasesThreadsWaitingForASlotWhenClosed() throws InterruptedException {
+        Sequencer<AtomicInteger> sequencer = new Sequencer<>(new AtomicInteger(), 1);
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        sequencer.submit(count -> {
+            applying.countDown();
+            await(release);
+            return count.incrementAndGet();
+        });
+        applying.await();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submitters.add(start(() -> {
+                try {
+                    sequencer.submit(AtomicInteger::incrementAndGet).join();
+                    accepted.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                }
+            }));
+        }
+        Thread.sleep(100);
+        Thread closer = start(sequencer::close);
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join(TIMEOUT);
+            assertFalse(submitter.isAlive(), "A thread was left waiting for a slot");
+        }
+        closer.join(TIMEOUT);
+        assertFalse(closer.isAlive(), "The sequencer was not closed");
+        assertEquals(4, accepted.get() + rejected.get());
+    }
+
+    @Test
+    void neverLeavesAThreadWaitingOnceClosed() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            Sequencer<AtomicInteger> sequencer = new Sequencer<>(new AtomicInteger(), 1);
+            List<Thread> submitters = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                submitters.add(start(() -> {
+                    try {
+                        while (true) {
+                            sequencer.submit(AtomicInteger::incrementAndGet);
+                        }
+                    } catch (IllegalStateException e) {
+                        // closed
+                    }
+                }));
+            }
+            Thread.sleep(2);
+            sequencer.close();
+            for (Thread submitter : submitters) {
+                submitter.join(TIMEOUT);
+                assertFalse(submitter.isAlive(), "A thread was left waiting for a slot in round " + round);
+            }
+        }
+    }
+
+    /**
+     * A helper method to start a daemon thread.
+     *
+     * @param task the task run by the thread
+     * @return the started <code>Thread</code>
+     */
+    private static Thread start(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * A helper method to wait on a latch, without being interrupted.
+     *
+     * @param latch the <code>CountDownLatch</code>
+     */
+    private static void await(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // keep waiting
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>ConcurrentIntMap</code> finds every key it holds, across removals and the
+ * arrays being rebuilt, and that a lookup made while the map is being changed never finds the value of
+ * another key.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see ConcurrentIntMap
+ */
+class ConcurrentIntMapTest {
+
+    @Test
+    void replacesAndRemovesValues() {
+        ConcurrentIntMap<String> map = new ConcurrentIntMap<>();
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-1, "minus one"));
+        assertEquals("zero", map.put(0, "nought"));
+        assertEquals("nought", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertNull(map.get(1));
+        assertEquals(2, map.size());
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    void onlyRemovesTheGivenValue() {
+        ConcurrentIntMap<String> map = new ConcurrentIntMap<>();
+        String value = new String("value");
+        map.put(123456789, value);
+        assertFalse(map.remove(123456789, new String("value")));
+        assertFalse(map.remove(987654321, value));
+        assertSame(value, map.get(123456789));
+        assertTrue(map.remove(123456789, value));
+        assertFalse(map.remove(123456789, value));
+        assertNull(map.get(123456789));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void agreesWithAHashMap() {
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(5000) << 6;
+            if (random.nextInt(3) == 0) {
+                Integer value = expected.get(key);
+                assertEquals(value != null, map.remove(key, value));
+                expected.remove(key);
+            } else {
+                Integer value = i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), map.get(entry.getKey()));
+        }
+        for (int key = 0; key < 5000 << 6; key += 1 << 6) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void neverFindsTheValueOfAnotherKeyWhileChanging() throws InterruptedException {
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 50; round++) {
+                for (int key = 0; key < 2000; key++) {
+                    map.put(key, key);
+                }
+                for (int key = 0; key < 2000; key++) {
+                    map.remove(key, map.get(key));
+                }
+            }
+        });
+        writer.start();
+        Random random = new Random(7);
+        while (writer.isAlive()) {
+            int key = random.nextInt(2000);
+            Integer value = map.get(key);
+            if (value != null && value != key) {
+                failure.set("key " + key + " found " + value);
+            }
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(0, map.size());
+    }
+}
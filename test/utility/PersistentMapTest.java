@@ -0,0 +1,175 @@
+package utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>PersistentMap</code> behaves as a <code>LinkedHashMap</code> would, across
+ * colliding hashes and its slots being numbered again, while every older version of it is left untouched.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see PersistentMap
+ */
+class PersistentMapTest {
+
+    @Test
+    void leavesOlderVersionsUntouched() {
+        PersistentMap<String, Integer> first = PersistentMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        PersistentMap<String, Integer> second = first.plus("c", 3).plus("a", 4).minus("b");
+        assertEquals(List.of("a", "b"), new ArrayList<>(first.keySet()));
+        assertEquals(List.of(1, 2), new ArrayList<>(first.values()));
+        assertEquals(List.of("a", "c"), new ArrayList<>(second.keySet()));
+        assertEquals(List.of(4, 3), new ArrayList<>(second.values()));
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    void returnsItselfWhenNothingChanges() {
+        Integer value = 1000;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value);
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("b"));
+        assertSame(map, map.minus(null));
+        assertSame(map, PersistentMap.copyOf(map));
+        assertTrue(map.minus("a").isEmpty());
+    }
+
+    @Test
+    void acceptsNullValuesButNotNullKeys() {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", null);
+        assertTrue(map.containsKey("a"));
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey(null));
+        assertNull(map.get(null));
+        assertThrows(NullPointerException.class, () -> map.plus(null, 1));
+        assertThrows(UnsupportedOperationException.class, () -> map.put("b", 2));
+    }
+
+    @Test
+    void agreesWithALinkedHashMap() {
+        PersistentMap<Colliding, Integer> map = PersistentMap.empty();
+        Map<Colliding, Integer> expected = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            Colliding key = new Colliding(random.nextInt(3000));
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+            if (i % 5000 == 0) {
+                assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+            }
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+        for (int id = 0; id < 3000; id++) {
+            Colliding key = new Colliding(id);
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.get(key), map.get(key));
+        }
+        while (!expected.isEmpty()) {
+            Colliding key = expected.keySet().iterator().next();
+            map = map.minus(key);
+            expected.remove(key);
+            assertEquals(expected.size(), map.size());
+        }
+        assertSame(PersistentMap.empty(), map);
+    }
+
+    @Test
+    void splitsInOrderForParallelStreams() {
+        Map<Integer, Integer> source = new LinkedHashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            source.put(i * 7919 % 10007, i);
+        }
+        PersistentMap<Integer, Integer> map = PersistentMap.copyOf(source);
+        Spliterator<Map.Entry<Integer, Integer>> spliterator = map.entrySet().spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED));
+        assertEquals(10000, spliterator.getExactSizeIfKnown());
+        Spliterator<Map.Entry<Integer, Integer>> half = spliterator.trySplit();
+        assertEquals(10000, half.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown());
+        assertEquals(new ArrayList<>(source.keySet()),
+                map.keySet().parallelStream().collect(Collectors.toList()));
+        for (int i = 0; i < 10000; i += 3) {
+            map = map.minus(i * 7919 % 10007);
+            source.remove(i * 7919 % 10007);
+        }
+        assertEquals(new ArrayList<>(source.values()), map.values().parallelStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void isSavedAsALinkedHashMap() throws IOException, ClassNotFoundException {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("b", 2).plus("a", 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(map);
+        }
+        Object copy;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = input.readObject();
+        }
+        assertTrue(copy instanceof LinkedHashMap);
+        assertEquals(List.of("b", "a"), new ArrayList<>(((Map<?, ?>) copy).keySet()));
+    }
+
+    /**
+     * This private class is a key whose hash is shared by eight (8) keys in a row, so that entries collide in every
+     * level of the trie.
+     */
+    private static final class Colliding {
+
+        /**
+         * This field stores the number telling the key apart from the keys sharing its hash.
+         */
+        private final int id;
+
+        /**
+         * Default Constructor.
+         *
+         * @param id the number telling the key apart from the keys sharing its hash
+         */
+        private Colliding(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id / 8;
+        }
+
+        @Override
+        public String toString() {
+            return "Colliding" + id;
+        }
+    }
+}
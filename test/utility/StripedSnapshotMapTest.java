@@ -0,0 +1,138 @@
+package utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that a <code>StripedSnapshotMap</code> iterates over its entries in the order they were
+ * inserted across every stripe, and that its snapshots are left untouched by later changes, however many
+ * threads insert at once.
+ *
+ * @author Samuel A. Kosasih
+ *
+ * @see StripedSnapshotMap
+ */
+class StripedSnapshotMapTest {
+
+    @Test
+    void iteratesInInsertionOrderAcrossStripes() {
+        StripedSnapshotMap<Integer, String> map = new StripedSnapshotMap<>(4);
+        for (int key : new int[]{7, 2, 12, 5, 0, 9}) {
+            assertNull(map.put(key, "v" + key));
+        }
+        assertEquals("v2", map.put(2, "w2"));
+        assertTrue(map.remove(12, "v12"));
+        assertNull(map.putIfAbsent(12, "x12"));
+        assertEquals("v7", map.putIfAbsent(7, "x7"));
+        assertEquals(List.of(7, 2, 5, 0, 9, 12), new ArrayList<>(map.keySet()));
+        assertEquals(List.of("v7", "w2", "v5", "v0", "v9", "x12"), new ArrayList<>(map.values()));
+        assertEquals(6, map.size());
+        assertEquals(List.of("v7", "w2", "v5", "v0", "v9", "x12"),
+                map.snapshot().values().parallelStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void leavesSnapshotsUntouched() {
+        StripedSnapshotMap<Integer, String> map = new StripedSnapshotMap<>(2);
+        map.put(1, "a");
+        map.put(2, "b");
+        Map<Integer, String> snapshot = map.snapshot();
+        map.put(3, "c");
+        map.remove(1);
+        map.replace(2, "d");
+        assertEquals(Map.of(1, "a", 2, "b"), snapshot);
+        assertEquals(List.of(1, 2), new ArrayList<>(snapshot.keySet()));
+        assertEquals(List.of(2, 3), new ArrayList<>(map.keySet()));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.put(4, "e"));
+    }
+
+    @Test
+    void acceptsNullValuesButNotNullKeys() {
+        StripedSnapshotMap<Integer, String> map = new StripedSnapshotMap<>(2);
+        map.put(1, null);
+        assertTrue(map.containsKey(1));
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(null));
+        assertNull(map.remove(null));
+        assertThrows(NullPointerException.class, () -> map.put(null, "a"));
+        assertThrows(IllegalArgumentException.class, () -> new StripedSnapshotMap<Integer, String>(3));
+    }
+
+    @Test
+    void keepsEveryKeyInsertedByManyThreads() throws InterruptedException {
+        StripedSnapshotMap<Integer, Integer> map = new StripedSnapshotMap<>(8);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int key = first; key < 4000; key += threads.length) {
+                    map.put(key, key);
+                    if (key % 3 == 0) {
+                        map.remove(key);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        for (int key = 0; key < 4000; key++) {
+            if (key % 3 != 0) {
+                expected.put(key, key);
+            }
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), map.snapshot().entrySet().stream().count());
+    }
+
+    @Test
+    void isSavedAsALinkedHashMap() throws IOException, ClassNotFoundException {
+        StripedSnapshotMap<Integer, String> map = new StripedSnapshotMap<>(4);
+        map.put(3, "c");
+        map.put(1, "a");
+        map.put(2, "b");
+        Object read = copy(map);
+        assertEquals(LinkedHashMap.class, read.getClass());
+        assertEquals(List.of(3, 1, 2), new ArrayList<>(((Map<?, ?>) read).keySet()));
+        read = copy(map.snapshot());
+        assertEquals(LinkedHashMap.class, read.getClass());
+        assertEquals(List.of(3, 1, 2), new ArrayList<>(((Map<?, ?>) read).keySet()));
+    }
+
+    /**
+     * A helper method to write an object through Java serialization, and read it back.
+     *
+     * @param object the object to write
+     * @return the object as it was read
+     * @throws IOException            if the object cannot be written or read
+     * @throws ClassNotFoundException if the class of the object read cannot be found
+     */
+    private static Object copy(Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(object);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return input.readObject();
+        }
+    }
+}